@@ -0,0 +1,94 @@
+package de.nikl4s.bench;
+
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.nikl4s.PointsManager;
+import de.nikl4s.UserStats;
+
+/**
+ * Mehrere Threads auf einem gemeinsamen {@link PointsManager}.
+ *
+ * - handleGym/handleAwake: 8 Schreiber, jeder auf einem eigenen Ausschnitt der Nutzer
+ * - mixed: 6 Schreiber (handleGym) gegen 2 Leser (buildRankMessage), wie ein voller Server
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContendedPointsManagerBenchmark {
+    @Param({ "10", "1000", "100000", "1000000" })
+    public int users;
+
+    Population population;
+    final AtomicInteger threadNo = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        population = Population.create(users);
+    }
+
+    /**
+     * Fortlaufender Zähler je Thread; Threads starten an verschiedenen Stellen der Nutzerliste.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        long next;
+
+        @Setup(Level.Trial)
+        public void setup(ContendedPointsManagerBenchmark shared) {
+            next = (long) shared.threadNo.getAndIncrement() * 7919;
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public UserStats.AwardResult handleGym(Cursor cursor) {
+        return gym(cursor);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public PointsManager.WakeResult handleAwake(Cursor cursor) {
+        int u = (int) (cursor.next % users);
+        return population.points.handleAwake(population.ids[u], population.names[u], population.dayFor(cursor.next++), LocalTime.of(6, 0));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(6)
+    public UserStats.AwardResult mixedGym(Cursor cursor) {
+        return gym(cursor);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public String mixedRank() {
+        return population.points.buildRankMessage();
+    }
+
+    private UserStats.AwardResult gym(Cursor cursor) {
+        int u = (int) (cursor.next % users);
+        return population.points.handleGym(population.ids[u], population.names[u], population.dayFor(cursor.next++));
+    }
+}
@@ -0,0 +1,58 @@
+package de.nikl4s.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.nikl4s.Metrics;
+
+/**
+ * Kosten des Erfassens in {@link Metrics}. Mit dem gc-Profiler des {@link BenchmarkRunner} muss
+ * gc.alloc.rate.norm bei 0 B/op liegen; "contended" misst vier Threads auf demselben Histogramm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+    private long value = 1;
+
+    @Benchmark
+    public void recordHistogram() {
+        // grob über die Bucket-Bereiche verteilt, ohne Zufallszahlen-Objekte
+        value = value * 6364136223846793005L + 1442695040888963407L;
+        Metrics.LOCK_WAIT.record((value >>> 34) & 0x3FFFFFFL);
+    }
+
+    @Benchmark
+    public void recordSince() {
+        Metrics.LOCK_WAIT.recordSince(System.nanoTime());
+    }
+
+    @Benchmark
+    public void incrementCounter() {
+        Metrics.IMAGE_BYTES.add(4096);
+    }
+
+    @Benchmark
+    public void slashCommandLookup() {
+        Metrics.slashCommand("rank").record(1_500_000);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void contended() {
+        Metrics.LOCK_WAIT.recordSince(System.nanoTime());
+    }
+}
@@ -0,0 +1,115 @@
+package de.nikl4s.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Lokaler Nachbau von POST /channels/{id}/messages der Discord-REST-API zum Testen der {@link de.nikl4s.OutboundQueue}.
+ *
+ * Pro Kanal ein Bucket mit {@code limit} Nachrichten pro {@code windowMillis}; Antworten tragen
+ * X-RateLimit-Remaining und X-RateLimit-Reset-After, ein voller Bucket liefert 429 mit Retry-After.
+ * Nachrichten über 2000 Zeichen werden wie bei Discord mit 400 abgelehnt.
+ */
+public class MockDiscordRest implements AutoCloseable {
+    private final HttpServer server;
+    private final int limit;
+    private final long windowMillis;
+    private final Map<Long, Bucket> buckets = new ConcurrentHashMap<>();
+
+    public final AtomicInteger accepted = new AtomicInteger();
+    public final AtomicInteger rateLimited = new AtomicInteger();
+    public final AtomicInteger rejected = new AtomicInteger();
+    public final AtomicLong lines = new AtomicLong();
+
+    private static final class Bucket {
+        int used;
+        long resetAt;
+    }
+
+    public MockDiscordRest(int limit, long windowMillis) throws IOException {
+        this.limit = limit;
+        this.windowMillis = windowMillis;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/v10/channels/", this::handle);
+        server.start();
+    }
+
+    public URI baseUri() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/api/v10");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            // /api/v10/channels/{id}/messages
+            if (!"POST".equals(exchange.getRequestMethod()) || path.length != 6 || !"messages".equals(path[5])) {
+                reply(exchange, 404, "{}");
+                return;
+            }
+            long channelId = Long.parseUnsignedLong(path[4]);
+            String body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            Bucket bucket = buckets.computeIfAbsent(channelId, id -> new Bucket());
+            int remaining;
+            long resetAfter;
+            synchronized (bucket) {
+                long now = System.currentTimeMillis();
+                if (now >= bucket.resetAt) {
+                    bucket.used = 0;
+                    bucket.resetAt = now + windowMillis;
+                }
+                resetAfter = bucket.resetAt - now;
+                if (bucket.used >= limit) {
+                    rateLimited.incrementAndGet();
+                    exchange.getResponseHeaders().add("Retry-After", seconds(resetAfter));
+                    reply(exchange, 429, "{\"retry_after\": " + seconds(resetAfter) + "}");
+                    return;
+                }
+                bucket.used++;
+                remaining = limit - bucket.used;
+            }
+            String content = RestSink.decodeContent(body);
+            if (content == null || content.length() > 2000) {
+                rejected.incrementAndGet();
+                reply(exchange, 400, "{}");
+                return;
+            }
+            accepted.incrementAndGet();
+            lines.addAndGet(content.split("\n", -1).length);
+            exchange.getResponseHeaders().add("X-RateLimit-Remaining", Integer.toString(remaining));
+            exchange.getResponseHeaders().add("X-RateLimit-Reset-After", seconds(resetAfter));
+            reply(exchange, 200, "{}");
+        }
+    }
+
+    private static String seconds(long millis) {
+        return String.format(java.util.Locale.ROOT, "%.3f", millis / 1000.0);
+    }
+
+    private static void reply(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
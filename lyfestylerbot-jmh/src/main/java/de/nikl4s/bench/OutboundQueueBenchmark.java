@@ -0,0 +1,74 @@
+package de.nikl4s.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.nikl4s.OutboundQueue;
+
+/**
+ * Ende-zu-Ende-Zeit, bis ein morgendlicher Schwall an Antworten plus ein langes Ranking bei einem lokalen
+ * {@link MockDiscordRest} angekommen ist. Der Mock arbeitet mit 5 Nachrichten pro Sekunde und Kanal, damit
+ * ein Durchlauf kurz bleibt; am Ende werden angenommene, per 429 abgewiesene und ungültige Anfragen ausgegeben.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OutboundQueueBenchmark {
+    private static final long CHANNEL = 1_000_000_000_000_000_001L;
+
+    @Param({ "10", "50" })
+    public int replies;
+
+    private MockDiscordRest mock;
+    private OutboundQueue queue;
+    private String ranking;
+    private long expectedLines;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        mock = new MockDiscordRest(5, 1000);
+        queue = new OutboundQueue(new RestSink(mock.baseUri(), "mock"));
+        StringBuilder sb = new StringBuilder(":trophy: Ranking\n");
+        for (int i = 1; i <= 150; i++) {
+            sb.append(i).append(". Nutzer ").append(i).append(" – ").append(1000 - i).append(" Punkte\n");
+        }
+        ranking = sb.toString().trim();
+        expectedLines = ranking.split("\n").length + replies;
+    }
+
+    @Benchmark
+    public long burst() throws InterruptedException {
+        long before = mock.lines.get();
+        for (int i = 0; i < replies; i++) {
+            queue.send(CHANNEL, "<@" + i + "> ist am Pumpen! (+10 Punkte, Streak: " + i + ")");
+        }
+        queue.send(CHANNEL, ranking);
+        while (mock.lines.get() - before < expectedLines) {
+            Thread.sleep(1);
+        }
+        return mock.lines.get();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        queue.shutdown(1000);
+        mock.close();
+        System.out.println("\nangenommen=" + mock.accepted + " 429=" + mock.rateLimited + " abgelehnt=" + mock.rejected);
+    }
+}
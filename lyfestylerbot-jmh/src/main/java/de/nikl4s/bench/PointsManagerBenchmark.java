@@ -0,0 +1,121 @@
+package de.nikl4s.bench;
+
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.nikl4s.PointsManager;
+import de.nikl4s.UserStats;
+
+/**
+ * Single-Thread-Benchmarks der heißen Pfade von {@link PointsManager}.
+ *
+ * "...Cached"-Varianten messen den Render-Cache, "...AfterUpdate"-Varianten eine Änderung plus
+ * Neuaufbau der Nachricht. Rollover läuft auf einem eigenen Manager, da er den Monat weiterschaltet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PointsManagerBenchmark {
+    @Param({ "10", "1000", "100000", "1000000" })
+    public int users;
+
+    private Population population;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        population = Population.create(users);
+    }
+
+    private int nextUser() {
+        return (int) (next % users);
+    }
+
+    @Benchmark
+    public UserStats.AwardResult handleGym() {
+        int u = nextUser();
+        return population.points.handleGym(population.ids[u], population.names[u], population.dayFor(next++));
+    }
+
+    @Benchmark
+    public PointsManager.WakeResult handleAwake() {
+        int u = nextUser();
+        return population.points.handleAwake(population.ids[u], population.names[u], population.dayFor(next++), LocalTime.of(6, 0));
+    }
+
+    @Benchmark
+    public List<UserStats.Snapshot> topRanking() {
+        return population.points.getTopRanking(25);
+    }
+
+    @Benchmark
+    public int rankOf() {
+        return population.points.getRankOf(population.ids[(int) (next++ % users)]);
+    }
+
+    @Benchmark
+    public String buildRankMessageCached() {
+        return population.points.buildRankMessage();
+    }
+
+    @Benchmark
+    public String buildRankMessageAfterUpdate() {
+        handleGym();
+        return population.points.buildRankMessage();
+    }
+
+    @Benchmark
+    public String buildWakeOrderMessageCached() {
+        return population.points.buildWakeOrderMessage();
+    }
+
+    @Benchmark
+    public String buildWakeOrderMessageAfterUpdate() {
+        handleAwake();
+        return population.points.buildWakeOrderMessage();
+    }
+
+    /**
+     * Eigener Manager für den Monatswechsel; jeder Aufruf schaltet einen Monat weiter.
+     */
+    @State(Scope.Benchmark)
+    public static class RolloverState {
+        @Param({ "10", "1000", "100000", "1000000" })
+        public int users;
+
+        PointsManager points;
+        YearMonth month;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            points = Population.create(users).points;
+            month = YearMonth.now();
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public YearMonth rolloverToNextMonth(RolloverState state) {
+        state.month = state.month.plusMonths(1);
+        state.points.rolloverToNextMonth(state.month);
+        return state.month;
+    }
+}
@@ -0,0 +1,57 @@
+package de.nikl4s.bench;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import de.nikl4s.PointsManager;
+
+/**
+ * Erzeugt einen {@link PointsManager} mit {@code users} Nutzern und zufälligen Punkteständen.
+ * Nutzer-IDs sind snowflake-ähnliche Zahlen wie bei Discord.
+ */
+final class Population {
+    final PointsManager points;
+    final String[] ids;
+    final String[] names;
+    // Zwei Tage im aktuellen Monat: abwechselnd verwendet, damit jeder Check-in neu gezählt wird
+    final LocalDate dayA;
+    final LocalDate dayB;
+
+    private Population(PointsManager points, String[] ids, String[] names, LocalDate dayA, LocalDate dayB) {
+        this.points = points;
+        this.ids = ids;
+        this.names = names;
+        this.dayA = dayA;
+        this.dayB = dayB;
+    }
+
+    static Population create(int users) {
+        SplittableRandom random = new SplittableRandom(42);
+        PointsManager points = new PointsManager();
+        String[] ids = new String[users];
+        String[] names = new String[users];
+        for (int i = 0; i < users; i++) {
+            ids[i] = Long.toString(1_000_000_000_000_000L + i);
+            names[i] = "user" + i;
+            points.setPoints(ids[i], names[i], random.nextInt(300));
+        }
+        List<String> wakePlayers = new ArrayList<>();
+        for (int i = 0; i < Math.min(users, 20); i++) {
+            wakePlayers.add(ids[i]);
+        }
+        points.setWakePlayers(wakePlayers);
+        points.setPlayerCount(wakePlayers.size());
+        YearMonth month = YearMonth.now();
+        return new Population(points, ids, names, month.atDay(10), month.atDay(11));
+    }
+
+    /**
+     * Tag für den n-ten Aufruf: wechselt nach jeder vollen Runde über alle Nutzer.
+     */
+    LocalDate dayFor(long n) {
+        return ((n / ids.length) & 1) == 0 ? dayA : dayB;
+    }
+}
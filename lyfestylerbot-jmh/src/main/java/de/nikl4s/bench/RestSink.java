@@ -0,0 +1,101 @@
+package de.nikl4s.bench;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+
+import de.nikl4s.OutboundQueue;
+
+/**
+ * {@link OutboundQueue.Sink} direkt gegen eine Discord-kompatible REST-API (hier den {@link MockDiscordRest}).
+ * Liest die Rate-Limit-Header und gibt sie an die Queue weiter.
+ */
+public class RestSink implements OutboundQueue.Sink {
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final URI baseUri;
+    private final String token;
+
+    public RestSink(URI baseUri, String token) {
+        this.baseUri = baseUri;
+        this.token = token;
+    }
+
+    @Override
+    public CompletableFuture<OutboundQueue.SendResult> send(long channelId, String content) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUri + "/channels/" + Long.toUnsignedString(channelId) + "/messages"))
+                .header("Authorization", "Bot " + token)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(encodeContent(content)))
+                .build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).thenApply(response -> {
+            if (response.statusCode() == 429) {
+                long retryAfter = millis(response.headers().firstValue("Retry-After").orElse("1"));
+                return new OutboundQueue.SendResult(0, retryAfter, Math.max(1, retryAfter));
+            }
+            if (response.statusCode() / 100 != 2) {
+                throw new IllegalStateException("HTTP " + response.statusCode());
+            }
+            int remaining = response.headers().firstValue("X-RateLimit-Remaining").map(Integer::parseInt).orElse(-1);
+            long resetAfter = response.headers().firstValue("X-RateLimit-Reset-After").map(RestSink::millis).orElse(-1L);
+            return new OutboundQueue.SendResult(remaining, resetAfter, 0);
+        });
+    }
+
+    private static long millis(String seconds) {
+        return (long) Math.ceil(Double.parseDouble(seconds) * 1000);
+    }
+
+    static String encodeContent(String content) {
+        StringBuilder sb = new StringBuilder("{\"content\":\"");
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.append("\"}").toString();
+    }
+
+    /**
+     * Gegenstück zu {@link #encodeContent(String)}; null, wenn der Body nicht diese Form hat.
+     */
+    static String decodeContent(String json) {
+        String prefix = "{\"content\":\"";
+        if (!json.startsWith(prefix) || !json.endsWith("\"}")) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = prefix.length(); i < json.length() - 2; i++) {
+            char c = json.charAt(i);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char e = json.charAt(++i);
+            switch (e) {
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'u' -> {
+                    sb.append((char) Integer.parseInt(json.substring(i + 1, i + 5), 16));
+                    i += 4;
+                }
+                default -> sb.append(e);
+            }
+        }
+        return sb.toString();
+    }
+}
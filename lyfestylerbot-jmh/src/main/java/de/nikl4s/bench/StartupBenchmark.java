@@ -0,0 +1,83 @@
+package de.nikl4s.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.nikl4s.GuildShards;
+
+/**
+ * Zeit, bis beim Start alle gespeicherten Server geladen sind ({@link GuildShards#warmUp(int)}), seriell
+ * gegenüber parallel. Das ist der Teil des Starts, der ohne Discord messbar ist; die Zeit vom Prozessstart bis
+ * zum ersten bearbeiteten Event meldet der Bot selbst ("[Startup] Erstes Event ...", lyfe_startup_seconds).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+    @Param({ "1", "4" })
+    public int parallelism;
+
+    @Param({ "64" })
+    public int guilds;
+
+    @Param({ "2000" })
+    public int usersPerGuild;
+
+    private Path dataDir;
+    private GuildShards shards;
+
+    @Setup(Level.Trial)
+    public void populate() throws IOException {
+        dataDir = Files.createTempDirectory("lyfe-startup");
+        GuildShards writer = new GuildShards(dataDir);
+        LocalDate day = LocalDate.now().withDayOfMonth(1);
+        for (int g = 0; g < guilds; g++) {
+            try (GuildShards.Lease lease = writer.acquire(900_000_000_000_000_000L + g)) {
+                for (int u = 0; u < usersPerGuild; u++) {
+                    lease.points().handleGym(Long.toString(1_000_000_000_000_000L + u), "user" + u, day);
+                }
+            }
+        }
+        writer.close();
+    }
+
+    @Benchmark
+    public int warmUp() {
+        shards = new GuildShards(dataDir);
+        return shards.warmUp(parallelism).join();
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeShards() {
+        shards.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteData() throws IOException {
+        try (Stream<Path> paths = Files.walk(dataDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package de.nikl4s.bench;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.nikl4s.UserStats;
+import de.nikl4s.UserStatsStore;
+
+/**
+ * Misst den Heap-Bedarf pro Nutzer: {@link UserStatsStore} gegenüber dem früheren Layout
+ * (ein Objekt pro Nutzer mit String-ID und LocalDate-Feldern in einer ConcurrentHashMap).
+ *
+ * Kein JMH-Benchmark, sondern ein eigener Einstieg:
+ *   java -XX:+UseSerialGC -Xmx2g -cp target/benchmarks.jar de.nikl4s.bench.StatsFootprint [nutzer]
+ *
+ * Beide Varianten bekommen dieselben IDs, Anzeigenamen und Gym-Daten; Namen kommen wie von JDA als
+ * eigene String-Instanzen pro Nutzer.
+ */
+public class StatsFootprint {
+    /**
+     * Nachbau des früheren UserStats-Objekts (gleiche Felder, gleiche Typen).
+     */
+    @SuppressWarnings("unused")
+    private static final class LegacyStats {
+        final String userId;
+        String displayName;
+        int points;
+        int yearPoints;
+        int currentStreak;
+        int bestStreak;
+        int bestMonthlyPoints;
+        int bestYearlyPoints;
+        LocalDate lastGymDate;
+        int wakeFirstCurrentStreak;
+        int wakeFirstBestStreak;
+        LocalDate lastWakeFirstDate;
+
+        LegacyStats(String userId, String displayName) {
+            this.userId = userId;
+            this.displayName = displayName;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        LocalDate day = LocalDate.of(2026, 3, 10);
+
+        long base = usedHeap();
+        Map<String, LegacyStats> legacy = new ConcurrentHashMap<>();
+        for (int i = 0; i < users; i++) {
+            String id = Long.toString(1_000_000_000_000_000L + i);
+            LegacyStats s = legacy.computeIfAbsent(id, k -> new LegacyStats(k, name(k)));
+            s.points = 10;
+            s.currentStreak = 1;
+            s.bestStreak = 1;
+            s.lastGymDate = day.plusDays(i % 20);
+        }
+        long legacyBytes = usedHeap() - base;
+        report("Objekt pro Nutzer (alt)", legacyBytes, users, legacy.size());
+        legacy = null;
+
+        base = usedHeap();
+        UserStatsStore store = new UserStatsStore();
+        for (int i = 0; i < users; i++) {
+            String id = Long.toString(1_000_000_000_000_000L + i);
+            UserStats s = store.view(store.rowFor(Long.parseUnsignedLong(id), name(id)));
+            s.awardGymPoints(day.plusDays(i % 20), 10);
+        }
+        long storeBytes = usedHeap() - base;
+        report("UserStatsStore", storeBytes, users, store.size());
+        System.out.printf(java.util.Locale.ROOT, "Ersparnis: %.1f %%%n", 100.0 * (legacyBytes - storeBytes) / legacyBytes);
+    }
+
+    private static String name(String id) {
+        return "user" + id.substring(id.length() - 7);
+    }
+
+    private static void report(String label, long bytes, int users, int size) {
+        System.out.printf(java.util.Locale.ROOT, "%-26s %8.1f MiB  %6.1f B/Nutzer  (%d Nutzer)%n",
+                label, bytes / (1024.0 * 1024.0), (double) bytes / users, size);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+            used = Math.min(used, rt.totalMemory() - rt.freeMemory());
+        }
+        return used;
+    }
+}
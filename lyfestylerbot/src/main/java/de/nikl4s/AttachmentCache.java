@@ -0,0 +1,266 @@
+package de.nikl4s;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inhaltsadressierter Cache für Discord-Anhänge, Schlüssel ist Anhang-ID plus Dateigröße.
+ *
+ * Zwei Stufen:
+ * - Speicher: LRU der abgeleiteten Metadaten ({@link Meta}: Aufnahmedatum, Wahrnehmungs-Hash)
+ * - Platte: je Anhang eine .meta-Datei und heruntergeladene Varianten (z.B. die Vorschau), begrenzt auf
+ *   {@link #MAX_DISK_BYTES}; bei Überschreitung fliegen die am längsten nicht genutzten Dateien raus
+ *
+ * Damit wird jedes Bild höchstens einmal geladen: Bearbeitete oder erneut verarbeitete Nachrichten
+ * und weitere Prüfungen lesen die Ergebnisse aus dem Cache.
+ */
+public class AttachmentCache {
+    public static final long MAX_DISK_BYTES = 128L * 1024 * 1024;
+    public static final int MAX_MEMORY_ENTRIES = 4096;
+    private static final String META_SUFFIX = ".meta";
+    private static final int META_BYTES = 1 + 4 + 8;
+
+    private final Path dir;
+    private final Map<Key, Meta> memory = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Meta> eldest) {
+            return size() > MAX_MEMORY_ENTRIES;
+        }
+    };
+    // Dateiname -> Größe, in Zugriffsreihenfolge (älteste zuerst)
+    private final LinkedHashMap<String, Long> diskFiles = new LinkedHashMap<>(256, 0.75f, true);
+    private long diskBytes;
+
+    /**
+     * Schlüssel eines Anhangs. Die Größe schützt davor, dass eine wiederverwendete ID andere Daten liefert.
+     */
+    public static final class Key {
+        public final long attachmentId;
+        public final long size;
+
+        public Key(long attachmentId, long size) {
+            this.attachmentId = attachmentId;
+            this.size = size;
+        }
+
+        String fileName(String variant) {
+            return Long.toUnsignedString(attachmentId) + "-" + size + variant;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key k && k.attachmentId == attachmentId && k.size == size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(attachmentId * 31 + size);
+        }
+    }
+
+    /**
+     * Bereits ermittelte Ergebnisse zu einem Anhang.
+     */
+    public static final class Meta {
+        public final boolean shotDateChecked;
+        public final LocalDate shotDate; // null, wenn nicht geprüft oder nicht vorhanden
+        public final boolean hashed;
+        public final long hash;
+
+        public Meta(boolean shotDateChecked, LocalDate shotDate, boolean hashed, long hash) {
+            this.shotDateChecked = shotDateChecked;
+            this.shotDate = shotDate;
+            this.hashed = hashed;
+            this.hash = hash;
+        }
+
+        /**
+         * Ergänzt fehlende Werte aus {@code other}.
+         */
+        Meta merge(Meta other) {
+            if (other == null) {
+                return this;
+            }
+            return new Meta(shotDateChecked || other.shotDateChecked,
+                    shotDateChecked ? shotDate : other.shotDate,
+                    hashed || other.hashed,
+                    hashed ? hash : other.hash);
+        }
+    }
+
+    /**
+     * Lädt die Bytes einer Variante, wenn sie nicht im Cache liegt.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        byte[] load() throws IOException, InterruptedException;
+    }
+
+    private AttachmentCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Öffnet den Cache und liest den Bestand der Platte (älteste Dateien zuerst).
+     */
+    public static AttachmentCache open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        AttachmentCache cache = new AttachmentCache(dir);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path file : stream) {
+                if (file.getFileName().toString().endsWith(".tmp")) {
+                    Files.deleteIfExists(file);
+                } else {
+                    files.add(file);
+                }
+            }
+        }
+        List<FileTime> times = new ArrayList<>(files.size());
+        for (Path file : files) {
+            times.add(Files.getLastModifiedTime(file));
+        }
+        Integer[] order = new Integer[files.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> times.get(a).compareTo(times.get(b)));
+        for (int i : order) {
+            long size = Files.size(files.get(i));
+            cache.diskFiles.put(files.get(i).getFileName().toString(), size);
+            cache.diskBytes += size;
+        }
+        synchronized (cache) {
+            cache.trimDisk();
+        }
+        return cache;
+    }
+
+    /**
+     * Metadaten aus dem Speicher oder von der Platte; null, wenn zu dem Anhang noch nichts bekannt ist.
+     */
+    public synchronized Meta meta(Key key) {
+        Meta meta = memory.get(key);
+        if (meta != null) {
+            return meta;
+        }
+        byte[] raw = readDisk(key.fileName(META_SUFFIX));
+        if (raw == null || raw.length != META_BYTES) {
+            return null;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(raw);
+        byte flags = buf.get();
+        int epochDay = buf.getInt();
+        long hash = buf.getLong();
+        meta = new Meta((flags & 1) != 0, (flags & 4) != 0 ? LocalDate.ofEpochDay(epochDay) : null, (flags & 2) != 0, hash);
+        memory.put(key, meta);
+        return meta;
+    }
+
+    /**
+     * Legt Metadaten ab; bereits bekannte Werte bleiben erhalten.
+     * @return die zusammengeführten Metadaten
+     */
+    public synchronized Meta putMeta(Key key, Meta meta) {
+        Meta merged = meta.merge(meta(key));
+        memory.put(key, merged);
+        ByteBuffer buf = ByteBuffer.allocate(META_BYTES);
+        int flags = (merged.shotDateChecked ? 1 : 0) | (merged.hashed ? 2 : 0) | (merged.shotDate != null ? 4 : 0);
+        buf.put((byte) flags)
+           .putInt(merged.shotDate != null ? (int) merged.shotDate.toEpochDay() : 0)
+           .putLong(merged.hash);
+        writeDisk(key.fileName(META_SUFFIX), buf.array());
+        return merged;
+    }
+
+    /**
+     * Liefert eine heruntergeladene Variante des Anhangs von der Platte oder lädt sie einmalig über {@code loader}.
+     * Der Download läuft außerhalb des Cache-Locks.
+     */
+    public byte[] bytes(Key key, String variant, Loader loader) throws IOException, InterruptedException {
+        String name = key.fileName("." + variant);
+        synchronized (this) {
+            byte[] cached = readDisk(name);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        byte[] loaded = loader.load();
+        synchronized (this) {
+            writeDisk(name, loaded);
+        }
+        return loaded;
+    }
+
+    private byte[] readDisk(String name) {
+        if (diskFiles.get(name) == null) {
+            return null;
+        }
+        Path file = dir.resolve(name);
+        try {
+            byte[] data = Files.readAllBytes(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return data;
+        } catch (NoSuchFileException e) {
+            forget(name);
+            return null;
+        } catch (IOException e) {
+            System.err.println("[AttachmentCache] " + name + " nicht lesbar: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeDisk(String name, byte[] data) {
+        Path file = dir.resolve(name);
+        Path tmp = dir.resolve(name + ".tmp");
+        try {
+            Files.write(tmp, data);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("[AttachmentCache] " + name + " nicht gespeichert: " + e.getMessage());
+            return;
+        }
+        forget(name);
+        diskFiles.put(name, (long) data.length);
+        diskBytes += data.length;
+        trimDisk();
+    }
+
+    private void forget(String name) {
+        Long size = diskFiles.remove(name);
+        if (size != null) {
+            diskBytes -= size;
+        }
+    }
+
+    private void trimDisk() {
+        Iterator<Map.Entry<String, Long>> it = diskFiles.entrySet().iterator();
+        while (diskBytes > MAX_DISK_BYTES && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            diskBytes -= eldest.getValue();
+            try {
+                Files.deleteIfExists(dir.resolve(eldest.getKey()));
+            } catch (IOException e) {
+                System.err.println("[AttachmentCache] " + eldest.getKey() + " nicht gelöscht: " + e.getMessage());
+            }
+        }
+    }
+
+    public synchronized long diskBytes() {
+        return diskBytes;
+    }
+}
@@ -0,0 +1,146 @@
+package de.nikl4s;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Unveränderliche Bot-Konfiguration, einmal aus einer Properties-Datei in Lookup-Tabellen aufgelöst.
+ *
+ * Schlüssel (Listen kommagetrennt):
+ * - owner.ids: Discord User IDs, die Admin-Befehle verwenden dürfen
+ * - channels.gym: Kanal-IDs für "!gym" und den Monatsabschluss
+ * - channels.wake: Kanal-IDs für "!awake" und den Monatsanfangs-Post
+ * - points.per.gym: Punkte pro gültigem "!gym"
+ *
+ * Sind keine Kanal-IDs eingetragen, erkennt der {@link MessageRouter} die Kanäle weiterhin über ihre Namen.
+ */
+public final class BotConfig {
+    public static final long DEFAULT_OWNER_ID = 1076562395595538572L;
+
+    private final long[] ownerIds;
+    private final Map<Long, MessageRouter.ChannelKind> channelKinds;
+    private final long[] gymChannelIds;
+    private final long[] wakeChannelIds;
+    private final int pointsPerGym;
+
+    private BotConfig(long[] ownerIds, Map<Long, MessageRouter.ChannelKind> channelKinds, long[] gymChannelIds, long[] wakeChannelIds, int pointsPerGym) {
+        this.ownerIds = ownerIds;
+        this.channelKinds = channelKinds;
+        this.gymChannelIds = gymChannelIds;
+        this.wakeChannelIds = wakeChannelIds;
+        this.pointsPerGym = pointsPerGym;
+    }
+
+    /**
+     * Konfiguration ohne Datei: bisheriger Owner, Kanäle nach Namen, Standard-Punkte.
+     */
+    public static BotConfig defaults() {
+        return new BotConfig(new long[] { DEFAULT_OWNER_ID }, Map.of(), new long[0], new long[0], PointsManager.DEFAULT_GYM_POINTS);
+    }
+
+    /**
+     * Liest und prüft die Datei vollständig; bei Fehlern wird nichts Halbes zurückgegeben.
+     * @throws IllegalArgumentException bei ungültigen Werten
+     */
+    public static BotConfig load(Path file) throws IOException {
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            props.load(reader);
+        }
+        long[] owners = parseIds(props, "owner.ids");
+        if (owners.length == 0) {
+            owners = new long[] { DEFAULT_OWNER_ID };
+        }
+        long[] gym = parseIds(props, "channels.gym");
+        long[] wake = parseIds(props, "channels.wake");
+        Map<Long, MessageRouter.ChannelKind> kinds = new HashMap<>();
+        for (long id : gym) {
+            kinds.put(id, MessageRouter.ChannelKind.GYM);
+        }
+        for (long id : wake) {
+            if (kinds.put(id, MessageRouter.ChannelKind.WAKE) != null) {
+                throw new IllegalArgumentException("Kanal " + id + " ist gleichzeitig Gym- und Wake-Kanal");
+            }
+        }
+        String points = props.getProperty("points.per.gym", "").trim();
+        int pointsPerGym = points.isEmpty() ? PointsManager.DEFAULT_GYM_POINTS : Integer.parseInt(points);
+        if (pointsPerGym < 0) {
+            throw new IllegalArgumentException("points.per.gym darf nicht negativ sein: " + pointsPerGym);
+        }
+        return new BotConfig(owners, Map.copyOf(kinds), gym, wake, pointsPerGym);
+    }
+
+    private static long[] parseIds(Properties props, String key) {
+        String raw = props.getProperty(key, "").trim();
+        if (raw.isEmpty()) {
+            return new long[0];
+        }
+        String[] parts = raw.split("\\s*,\\s*");
+        long[] ids = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                ids[i] = Long.parseUnsignedLong(parts[i]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(key + ": ungültige ID '" + parts[i] + "'", e);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Schreibt eine Vorlage mit den Standardwerten, falls die Datei noch nicht existiert.
+     */
+    public static void writeTemplateIfMissing(Path file) throws IOException {
+        if (Files.exists(file)) {
+            return;
+        }
+        String template = "# Lyfestylerbot-Konfiguration. Änderungen werden ohne Neustart übernommen.\n"
+                + "# Listen sind kommagetrennt. Ohne Kanal-IDs werden die Kanäle über ihre Namen erkannt.\n"
+                + "owner.ids=" + Long.toUnsignedString(DEFAULT_OWNER_ID) + "\n"
+                + "channels.gym=\n"
+                + "channels.wake=\n"
+                + "points.per.gym=" + PointsManager.DEFAULT_GYM_POINTS + "\n";
+        Files.writeString(file, template, StandardCharsets.UTF_8);
+    }
+
+    public boolean isOwner(long userId) {
+        for (long id : ownerIds) {
+            if (id == userId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true, wenn Kanäle per ID konfiguriert sind (statt Erkennung über den Namen)
+     */
+    public boolean hasChannelIds() {
+        return !channelKinds.isEmpty();
+    }
+
+    /**
+     * Art des Kanals laut Konfiguration; OTHER für nicht eingetragene Kanäle.
+     */
+    public MessageRouter.ChannelKind channelKind(long channelId) {
+        return channelKinds.getOrDefault(channelId, MessageRouter.ChannelKind.OTHER);
+    }
+
+    public long[] gymChannelIds() {
+        return gymChannelIds.clone();
+    }
+
+    public long[] wakeChannelIds() {
+        return wakeChannelIds.clone();
+    }
+
+    public int pointsPerGym() {
+        return pointsPerGym;
+    }
+}
@@ -0,0 +1,467 @@
+package de.nikl4s;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import net.dv8tion.jda.api.exceptions.ParsingException;
+import net.dv8tion.jda.api.utils.data.DataObject;
+
+/**
+ * Massen-Import und -Export der Nutzerstatistiken eines Servers (/import, /export).
+ *
+ * Spalten (CSV-Kopfzeile bzw. Schlüssel in JSON Lines): user_id, name und die Kennzahlen aus {@link #COLUMN_NAMES}.
+ * Nur user_id ist Pflicht; fehlende Spalten lassen den bisherigen Wert stehen, so reicht z.B. "user_id,points"
+ * für eine Punktekorrektur, ebenso leere Zahlenfelder. Datumswerte im Format JJJJ-MM-TT, leer = kein Datum.
+ *
+ * Der Import liest zeilenweise und legt nur die geprüften Werte kompakt in einem {@link Batch} ab; ist irgendeine
+ * Zeile ungültig, wird nichts übernommen. Übernommen wird der Batch in einem Schritt über
+ * {@link PointsManager#applyBatch(Batch)}.
+ */
+public final class BulkTransfer {
+    /**
+     * Namen der Kennzahl-Spalten, Index = Spalte im {@link UserStatsStore}.
+     */
+    static final String[] COLUMN_NAMES = {
+        "points", "year_points", "current_streak", "best_streak", "best_monthly_points", "best_yearly_points",
+        "last_gym_day", "wake_first_current_streak", "wake_first_best_streak", "last_wake_first_day"
+    };
+    static final String USER_ID = "user_id";
+    static final String NAME = "name";
+    public static final int MAX_ROWS = 200_000;
+    private static final int MAX_ERRORS = 10;
+    private static final int NAME_MASK = 1 << UserStatsStore.COLUMNS;
+    // Felder einer Eingabezeile: Kennzahl-Spalten, dahinter user_id und name
+    private static final int FIELD_ID = UserStatsStore.COLUMNS;
+    private static final int FIELD_NAME = UserStatsStore.COLUMNS + 1;
+    private static final int FIELDS = UserStatsStore.COLUMNS + 2;
+
+    public enum Format { CSV, JSON_LINES }
+
+    private BulkTransfer() {
+    }
+
+    /**
+     * Format anhand der Dateiendung (.csv, .jsonl/.ndjson); null, wenn unbekannt.
+     */
+    public static Format formatOf(String fileName) {
+        String lower = fileName.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".csv")) {
+            return Format.CSV;
+        }
+        if (lower.endsWith(".jsonl") || lower.endsWith(".ndjson")) {
+            return Format.JSON_LINES;
+        }
+        return null;
+    }
+
+    /**
+     * Geprüfte Importzeilen in primitiven Arrays. Pro Zeile sagt eine Bitmaske, welche Spalten gesetzt werden
+     * (Bit = Spalte im {@link UserStatsStore}, darüber ein Bit für den Namen).
+     */
+    public static final class Batch {
+        private long[] userIds = new long[64];
+        private String[] names = new String[64];
+        private int[] masks = new int[64];
+        private int[] values = new int[64 * UserStatsStore.COLUMNS];
+        private int size;
+
+        private int add(long userId) {
+            if (size == userIds.length) {
+                int capacity = size * 2;
+                userIds = Arrays.copyOf(userIds, capacity);
+                names = Arrays.copyOf(names, capacity);
+                masks = Arrays.copyOf(masks, capacity);
+                values = Arrays.copyOf(values, capacity * UserStatsStore.COLUMNS);
+            }
+            userIds[size] = userId;
+            return size++;
+        }
+
+        public int size() { return size; }
+        long userId(int i) { return userIds[i]; }
+        boolean hasName(int i) { return (masks[i] & NAME_MASK) != 0; }
+        String name(int i) { return names[i]; }
+        boolean has(int i, int column) { return (masks[i] & (1 << column)) != 0; }
+        int value(int i, int column) { return values[i * UserStatsStore.COLUMNS + column]; }
+    }
+
+    /**
+     * Ungültige Eingabe; enthält die ersten Fehler mit Zeilennummer.
+     */
+    public static final class ImportException extends Exception {
+        private static final long serialVersionUID = 1L;
+        public final List<String> errors;
+
+        ImportException(List<String> errors) {
+            super(String.join("\n", errors));
+            this.errors = List.copyOf(errors);
+        }
+    }
+
+    /**
+     * Liest und prüft eine Eingabe vollständig. Liefert erst, wenn alle Zeilen gültig sind.
+     */
+    public static Batch parse(Reader reader, Format format) throws IOException, ImportException {
+        Parser parser = new Parser();
+        if (format == Format.CSV) {
+            parser.readCsv(reader);
+        } else {
+            parser.readJsonLines(reader);
+        }
+        if (!parser.errors.isEmpty()) {
+            throw new ImportException(parser.errors);
+        }
+        return parser.batch;
+    }
+
+    private static final class Parser {
+        final Batch batch = new Batch();
+        final List<String> errors = new ArrayList<>();
+        final Set<Long> seen = new HashSet<>();
+
+        void error(long line, String message) {
+            if (errors.size() < MAX_ERRORS) {
+                errors.add("Zeile " + line + ": " + message);
+            } else if (errors.size() == MAX_ERRORS) {
+                errors.add("…");
+            }
+        }
+
+        void readCsv(Reader reader) throws IOException {
+            CsvReader csv = new CsvReader(reader);
+            List<String> header = csv.next();
+            if (header == null) {
+                error(1, "Datei ist leer");
+                return;
+            }
+            int[] fields = new int[header.size()];
+            boolean hasId = false;
+            for (int f = 0; f < header.size(); f++) {
+                String key = header.get(f).trim().toLowerCase(Locale.ROOT);
+                fields[f] = fieldOf(key);
+                if (fields[f] < 0) {
+                    error(1, "unbekannte Spalte \"" + key + "\"");
+                }
+                hasId |= fields[f] == FIELD_ID;
+            }
+            if (!hasId) {
+                error(1, "Spalte user_id fehlt");
+            }
+            if (!errors.isEmpty()) {
+                return;
+            }
+            List<String> cells;
+            while ((cells = csv.next()) != null) {
+                long line = csv.line;
+                if (cells.size() == 1 && cells.get(0).isBlank()) {
+                    continue;
+                }
+                if (cells.size() != fields.length) {
+                    error(line, cells.size() + " statt " + fields.length + " Felder");
+                    continue;
+                }
+                String[] row = new String[FIELDS];
+                for (int f = 0; f < fields.length; f++) {
+                    row[fields[f]] = cells.get(f);
+                }
+                addRow(line, row);
+            }
+        }
+
+        void readJsonLines(Reader reader) throws IOException {
+            BufferedReader in = new BufferedReader(reader);
+            String text;
+            long line = 0;
+            while ((text = in.readLine()) != null) {
+                line++;
+                if (text.isBlank()) {
+                    continue;
+                }
+                Map<String, Object> object;
+                try {
+                    object = DataObject.fromJson(text).toMap();
+                } catch (ParsingException e) {
+                    error(line, "kein gültiges JSON-Objekt");
+                    continue;
+                }
+                String[] row = new String[FIELDS];
+                boolean valid = true;
+                for (Map.Entry<String, Object> e : object.entrySet()) {
+                    int field = fieldOf(e.getKey().toLowerCase(Locale.ROOT));
+                    if (field < 0) {
+                        error(line, "unbekannter Schlüssel \"" + e.getKey() + "\"");
+                        valid = false;
+                        continue;
+                    }
+                    row[field] = e.getValue() == null ? "" : jsonValue(e.getValue());
+                }
+                if (valid) {
+                    addRow(line, row);
+                }
+            }
+        }
+
+        private static String jsonValue(Object value) {
+            // ganze Zahlen kommen je nach Größe als Integer, Long oder Double an
+            if (value instanceof Double d && d == Math.rint(d)) {
+                return Long.toString(d.longValue());
+            }
+            return value.toString();
+        }
+
+        private void addRow(long line, String[] row) {
+            String rawId = row[FIELD_ID];
+            if (rawId == null || rawId.isBlank()) {
+                error(line, "user_id fehlt");
+                return;
+            }
+            long userId;
+            try {
+                userId = Long.parseUnsignedLong(rawId.trim());
+            } catch (NumberFormatException e) {
+                error(line, "ungültige user_id \"" + rawId + "\"");
+                return;
+            }
+            if (!seen.add(userId)) {
+                error(line, "user_id " + rawId.trim() + " kommt mehrfach vor");
+                return;
+            }
+            if (batch.size >= MAX_ROWS) {
+                error(line, "mehr als " + MAX_ROWS + " Zeilen");
+                return;
+            }
+            int mask = 0;
+            int[] parsed = new int[UserStatsStore.COLUMNS];
+            for (int column = 0; column < UserStatsStore.COLUMNS; column++) {
+                String raw = row[column];
+                if (raw == null) {
+                    continue;
+                }
+                raw = raw.trim();
+                if (raw.isEmpty() && !isDay(column)) {
+                    continue;
+                }
+                try {
+                    parsed[column] = isDay(column) ? parseDay(raw) : parseCount(column, raw);
+                } catch (NumberFormatException | DateTimeParseException e) {
+                    error(line, COLUMN_NAMES[column] + ": ungültiger Wert \"" + raw + "\"");
+                    return;
+                }
+                mask |= 1 << column;
+            }
+            String name = row[FIELD_NAME];
+            if (name != null && !name.isBlank()) {
+                mask |= NAME_MASK;
+            }
+            int i = batch.add(userId);
+            batch.masks[i] = mask;
+            batch.names[i] = name == null ? null : name.trim();
+            System.arraycopy(parsed, 0, batch.values, i * UserStatsStore.COLUMNS, UserStatsStore.COLUMNS);
+        }
+
+        private static int parseCount(int column, String raw) {
+            int value = Integer.parseInt(raw);
+            // Monatspunkte dürfen durch Strafen negativ sein, alles andere nicht
+            if (value < 0 && column != UserStatsStore.POINTS) {
+                throw new NumberFormatException(raw);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * @return Feldindex oder -1 für einen unbekannten Namen
+     */
+    private static int fieldOf(String key) {
+        if (USER_ID.equals(key)) {
+            return FIELD_ID;
+        }
+        if (NAME.equals(key)) {
+            return FIELD_NAME;
+        }
+        return Arrays.asList(COLUMN_NAMES).indexOf(key);
+    }
+
+    private static boolean isDay(int column) {
+        return column == UserStatsStore.LAST_GYM_DAY || column == UserStatsStore.LAST_WAKE_FIRST_DAY;
+    }
+
+    private static int parseDay(String raw) {
+        return raw.isEmpty() ? UserStatsStore.NO_DAY : (int) LocalDate.parse(raw).toEpochDay();
+    }
+
+    /**
+     * Minimaler RFC-4180-Leser: Felder in Anführungszeichen dürfen Kommas, "" und Zeilenumbrüche enthalten.
+     */
+    private static final class CsvReader {
+        private final Reader in;
+        private final char[] buffer = new char[8192];
+        private int pos;
+        private int limit;
+        long line;
+
+        CsvReader(Reader in) {
+            this.in = in;
+        }
+
+        private int read() throws IOException {
+            if (pos == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[pos++];
+        }
+
+        /**
+         * Nächster Datensatz oder null am Dateiende.
+         */
+        List<String> next() throws IOException {
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+            line++;
+            if (line == 1 && c == '\uFEFF') {
+                c = read();
+            }
+            List<String> cells = new ArrayList<>();
+            StringBuilder cell = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        cells.add(cell.toString());
+                        return cells;
+                    }
+                    if (c == '"') {
+                        int n = read();
+                        if (n == '"') {
+                            cell.append('"');
+                        } else {
+                            quoted = false;
+                            c = n;
+                            continue;
+                        }
+                    } else {
+                        cell.append((char) c);
+                    }
+                } else if (c == -1 || c == '\n') {
+                    int end = cell.length();
+                    if (end > 0 && cell.charAt(end - 1) == '\r') {
+                        cell.setLength(end - 1);
+                    }
+                    cells.add(cell.toString());
+                    return cells;
+                } else if (c == ',') {
+                    cells.add(cell.toString());
+                    cell.setLength(0);
+                } else if (c == '"' && cell.length() == 0) {
+                    quoted = true;
+                } else {
+                    cell.append((char) c);
+                }
+                c = read();
+            }
+        }
+    }
+
+    /**
+     * Schreibt alle Nutzer mit allen Spalten als CSV (Kopfzeile wie beim Import).
+     * @return Anzahl Zeilen ohne Kopfzeile
+     */
+    public static int exportStats(PointsManager pointsManager, Writer out) throws IOException {
+        out.write(USER_ID + "," + NAME);
+        for (String column : COLUMN_NAMES) {
+            out.write(',');
+            out.write(column);
+        }
+        out.write('\n');
+        int[] values = new int[UserStatsStore.COLUMNS];
+        StringBuilder line = new StringBuilder(128);
+        return pointsManager.forEachUser(stats -> {
+            stats.copyColumns(values);
+            line.setLength(0);
+            line.append(stats.getUserId()).append(',');
+            appendCsv(line, stats.getDisplayName());
+            for (int column = 0; column < UserStatsStore.COLUMNS; column++) {
+                line.append(',');
+                if (!isDay(column)) {
+                    line.append(values[column]);
+                } else if (values[column] != UserStatsStore.NO_DAY) {
+                    line.append(LocalDate.ofEpochDay(values[column]));
+                }
+            }
+            line.append('\n');
+            out.append(line);
+        });
+    }
+
+    /**
+     * Schreibt die Monatswerte aller Nutzer aus der Historie als CSV:
+     * user_id,month,gym_days,penalties,wake_ups,first_wake_ups,points. Ein Durchlauf pro Monat.
+     * @return Anzahl Zeilen ohne Kopfzeile
+     */
+    public static int exportHistory(HistoryLog history, Writer out) throws IOException {
+        out.write("user_id,month,gym_days,penalties,wake_ups,first_wake_ups,points\n");
+        int rows = 0;
+        for (YearMonth ym : history.months()) {
+            HistoryLog.Month month = history.month(ym);
+            // je Nutzer: gym_days, penalties, wake_ups, first_wake_ups, points
+            Map<Long, int[]> sums = new TreeMap<>(Long::compareUnsigned);
+            for (int i = 0; i < month.size(); i++) {
+                int[] s = sums.computeIfAbsent(month.userId(i), id -> new int[5]);
+                int value = month.value(i);
+                switch (month.type(i)) {
+                    case HistoryLog.EVENT_GYM -> {
+                        s[0]++;
+                        s[4] += value;
+                    }
+                    case HistoryLog.EVENT_PENALTY -> {
+                        s[1]++;
+                        s[4] += value;
+                    }
+                    case HistoryLog.EVENT_SET_POINTS -> s[4] += value;
+                    case HistoryLog.EVENT_AWAKE -> {
+                        s[2]++;
+                        if (value == 1) {
+                            s[3]++;
+                        }
+                    }
+                    default -> { }
+                }
+            }
+            for (Map.Entry<Long, int[]> e : sums.entrySet()) {
+                int[] s = e.getValue();
+                out.write(Long.toUnsignedString(e.getKey()) + "," + ym + "," + s[0] + "," + s[1] + ","
+                        + s[2] + "," + s[3] + "," + s[4] + "\n");
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private static void appendCsv(StringBuilder line, String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            line.append(value);
+            return;
+        }
+        line.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+}
@@ -0,0 +1,114 @@
+package de.nikl4s;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hält die aktuelle {@link BotConfig} und lädt sie neu, sobald sich die Datei ändert.
+ *
+ * Eine neue Konfiguration wird erst vollständig gelesen und geprüft und dann atomar ausgetauscht;
+ * Leser holen sich per {@link #current()} immer einen in sich stimmigen Stand. Ist die geänderte
+ * Datei fehlerhaft, bleibt der bisherige Stand aktiv.
+ */
+public class ConfigWatcher implements AutoCloseable {
+    // Editoren schreiben oft in mehreren Schritten; erst nach kurzer Ruhe neu laden
+    private static final long DEBOUNCE_MILLIS = 250;
+
+    private final Path file;
+    private final AtomicReference<BotConfig> current;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    private ConfigWatcher(Path file, BotConfig initial, WatchService watchService) {
+        this.file = file;
+        this.current = new AtomicReference<>(initial);
+        this.watchService = watchService;
+        this.thread = new Thread(this::watch, "config-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Legt bei Bedarf eine Vorlage an, lädt die Datei und beginnt, sie zu beobachten.
+     */
+    public static ConfigWatcher start(Path file) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        BotConfig.writeTemplateIfMissing(absolute);
+        BotConfig initial = BotConfig.load(absolute);
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        absolute.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        ConfigWatcher watcher = new ConfigWatcher(absolute, initial, watchService);
+        watcher.thread.start();
+        return watcher;
+    }
+
+    /**
+     * Feste Konfiguration ohne Datei und ohne Beobachtung.
+     */
+    public static ConfigWatcher fixed(BotConfig config) {
+        return new ConfigWatcher(null, config, null);
+    }
+
+    public BotConfig current() {
+        return current.get();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (changed) {
+                    Thread.sleep(DEBOUNCE_MILLIS);
+                    WatchKey pending;
+                    while ((pending = watchService.poll()) != null) {
+                        pending.pollEvents();
+                        pending.reset();
+                    }
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // beendet
+        }
+    }
+
+    /**
+     * Lädt die Datei neu; bei Fehlern bleibt die bisherige Konfiguration aktiv.
+     * @return true, wenn eine neue Konfiguration übernommen wurde
+     */
+    public boolean reload() {
+        if (file == null || !Files.exists(file)) {
+            return false;
+        }
+        try {
+            current.set(BotConfig.load(file));
+            System.out.println("Konfiguration neu geladen: " + file);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Konfiguration fehlerhaft, alte bleibt aktiv: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+}
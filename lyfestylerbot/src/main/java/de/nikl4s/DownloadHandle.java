@@ -0,0 +1,60 @@
+package de.nikl4s;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Die HTTP-Bodys, die eine Bildprüfung gerade liest. {@link #abort()} schließt den offenen Body von einem
+ * anderen Thread aus; ein darin blockiertes read() endet dann sofort mit einer IOException. Ein Interrupt
+ * reicht dafür nicht, der Stream des {@link java.net.http.HttpClient} reagiert nicht darauf.
+ *
+ * Nach {@link #abort()} wird jeder weitere Body gleich beim Öffnen geschlossen.
+ */
+final class DownloadHandle {
+    /** Für Aufrufe ohne Frist; {@link #abort()} ist hier nie vorgesehen. */
+    static final DownloadHandle NONE = new DownloadHandle();
+
+    private InputStream open;
+    private boolean aborted;
+
+    /**
+     * Merkt sich {@code body} als den gerade gelesenen Body.
+     * @throws IOException wenn die Prüfung schon abgebrochen wurde (der Body ist dann geschlossen)
+     */
+    InputStream track(InputStream body) throws IOException {
+        synchronized (this) {
+            if (!aborted) {
+                open = body;
+                return body;
+            }
+        }
+        body.close();
+        throw new IOException("Download abgebrochen");
+    }
+
+    synchronized void release(InputStream body) {
+        if (open == body) {
+            open = null;
+        }
+    }
+
+    synchronized boolean isAborted() {
+        return aborted;
+    }
+
+    void abort() {
+        InputStream body;
+        synchronized (this) {
+            aborted = true;
+            body = open;
+            open = null;
+        }
+        if (body != null) {
+            try {
+                body.close();
+            } catch (IOException e) {
+                // der lesende Thread bekommt seinen Fehler ohnehin
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package de.nikl4s;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.imaging.ImageProcessingException;
+import com.drew.imaging.jpeg.JpegSegmentType;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifReader;
+import com.drew.metadata.exif.ExifSubIFDDirectory;
+
+/**
+ * Liest das Aufnahmedatum (EXIF DateTimeOriginal) eines Bildes, ohne die ganze Datei zu laden.
+ *
+ * Bei JPEGs wird per HTTP-Range nur der Dateianfang angefordert und der Stream segmentweise gelesen,
+ * bis das EXIF-APP1-Segment vollständig ist; danach wird die Verbindung geschlossen. Ignoriert der
+ * Server den Range-Header, schützt das frühe Schließen trotzdem vor dem Rest der Datei.
+ * Nur Formate ohne JPEG-Segmentstruktur (z.B. HEIC, PNG) oder JPEGs mit ungewöhnlich großem
+ * Header werden vollständig geladen und mit {@link ImageMetadataReader} gelesen.
+ */
+public class ExifDateReader {
+    /** So viele Bytes werden für den JPEG-Header angefordert (APP1 ist max. 64 KiB groß). */
+    public static final int PREFIX_BYTES = 128 * 1024;
+
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_EOI = 0xD9;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final byte[] EXIF_PREAMBLE = ExifReader.JPEG_SEGMENT_PREAMBLE.getBytes(StandardCharsets.ISO_8859_1);
+
+    private final HttpClient client;
+    private final Duration timeout;
+
+    public ExifDateReader(HttpClient client, Duration timeout) {
+        this.client = client;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Ermittelt das Aufnahmedatum des Bildes unter {@code uri}.
+     * @return Aufnahmedatum oder null, wenn das Bild keines enthält
+     */
+    public LocalDate readShotDate(URI uri) throws IOException, InterruptedException {
+        return readShotDate(uri, DownloadHandle.NONE);
+    }
+
+    /**
+     * Wie {@link #readShotDate(URI)}; die Bodys werden in {@code handle} geführt, damit eine abgelaufene Frist
+     * den Download von außen abbrechen kann.
+     */
+    LocalDate readShotDate(URI uri, DownloadHandle handle) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .header("Range", "bytes=0-" + (PREFIX_BYTES - 1))
+                .GET()
+                .build();
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        InputStream raw = handle.track(response.body());
+        try (InputStream body = new CountingInputStream(raw)) {
+            if (response.statusCode() != 200 && response.statusCode() != 206) {
+                throw new IOException("HTTP " + response.statusCode() + " für " + uri);
+            }
+            JpegHeader header = readJpegHeader(body);
+            if (header.complete) {
+                return header.app1 == null ? null : parseExif(header.app1);
+            }
+        } finally {
+            handle.release(raw);
+        }
+        return readShotDateFully(uri, handle);
+    }
+
+    /**
+     * Fallback: lädt die komplette Datei und überlässt die Formaterkennung dem metadata-extractor.
+     */
+    private LocalDate readShotDateFully(URI uri, DownloadHandle handle) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(timeout).GET().build();
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        InputStream raw = handle.track(response.body());
+        try (InputStream body = new CountingInputStream(raw)) {
+            if (response.statusCode() != 200) {
+                throw new IOException("HTTP " + response.statusCode() + " für " + uri);
+            }
+            Metadata metadata = ImageMetadataReader.readMetadata(body);
+            return toLocalDate(metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class));
+        } catch (ImageProcessingException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            handle.release(raw);
+        }
+    }
+
+    /**
+     * Zählt die gelesenen Bytes und verbucht sie beim Schließen in {@link Metrics#IMAGE_BYTES}.
+     */
+    static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            Metrics.IMAGE_BYTES.add(count);
+            count = 0;
+            super.close();
+        }
+    }
+
+    /**
+     * Ergebnis des Segment-Scans: complete=false heißt, der Header ließ sich aus dem Präfix nicht
+     * vollständig lesen (kein JPEG, oder der Präfix endete vorher) und ein Vollabruf ist nötig.
+     */
+    static final class JpegHeader {
+        final boolean complete;
+        final byte[] app1;
+
+        JpegHeader(boolean complete, byte[] app1) {
+            this.complete = complete;
+            this.app1 = app1;
+        }
+    }
+
+    /**
+     * Liest JPEG-Segmente bis zum EXIF-APP1-Segment bzw. bis zum Start der Bilddaten (SOS).
+     * Liest nie über das benötigte Segment hinaus.
+     */
+    static JpegHeader readJpegHeader(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        try {
+            if (in.readUnsignedByte() != 0xFF || in.readUnsignedByte() != 0xD8) {
+                return new JpegHeader(false, null);
+            }
+            while (true) {
+                int prefix = in.readUnsignedByte();
+                if (prefix != 0xFF) {
+                    return new JpegHeader(false, null);
+                }
+                int marker = in.readUnsignedByte();
+                while (marker == 0xFF) { // Füllbytes
+                    marker = in.readUnsignedByte();
+                }
+                if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                    return new JpegHeader(true, null);
+                }
+                if (marker >= 0xD0 && marker <= 0xD7) { // RSTn ohne Länge
+                    continue;
+                }
+                int length = in.readUnsignedShort() - 2;
+                if (length < 0) {
+                    return new JpegHeader(false, null);
+                }
+                if (marker == MARKER_APP1) {
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    if (startsWithExifPreamble(payload)) {
+                        return new JpegHeader(true, payload);
+                    }
+                } else {
+                    in.skipNBytes(length);
+                }
+            }
+        } catch (EOFException e) {
+            return new JpegHeader(false, null);
+        }
+    }
+
+    private static boolean startsWithExifPreamble(byte[] payload) {
+        return payload.length >= EXIF_PREAMBLE.length
+                && Arrays.equals(payload, 0, EXIF_PREAMBLE.length, EXIF_PREAMBLE, 0, EXIF_PREAMBLE.length);
+    }
+
+    /**
+     * Parst nur das EXIF-Segment, keine XMP-, ICC- oder sonstigen Verzeichnisse.
+     */
+    static LocalDate parseExif(byte[] app1) {
+        Metadata metadata = new Metadata();
+        new ExifReader().readJpegSegments(List.of(app1), metadata, JpegSegmentType.APP1);
+        return toLocalDate(metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class));
+    }
+
+    /**
+     * Das Aufnahmedatum, wie es die Kamera notiert hat, unabhängig von der Zeitzone des Hosts. DateTimeOriginal ist
+     * Ortszeit ohne Zone; metadata-extractor liest sie mit der übergebenen Zone, außer OffsetTimeOriginal ist
+     * gesetzt. Zurückgerechnet wird deshalb mit genau dieser Zone bzw. diesem Offset.
+     */
+    private static LocalDate toLocalDate(ExifSubIFDDirectory exif) {
+        if (exif == null) {
+            return null;
+        }
+        Date original = exif.getDateOriginal(UTC);
+        if (original == null) {
+            return null;
+        }
+        ZoneOffset offset = ZoneOffset.UTC;
+        String recorded = exif.getString(ExifSubIFDDirectory.TAG_TIME_ZONE_ORIGINAL);
+        if (recorded != null) {
+            try {
+                offset = ZoneOffset.of(recorded.trim());
+            } catch (DateTimeException e) {
+                // unlesbarer Offset: metadata-extractor hat dann ebenfalls UTC verwendet
+            }
+        }
+        return original.toInstant().atOffset(offset).toLocalDate();
+    }
+}
@@ -0,0 +1,84 @@
+package de.nikl4s;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Geordnetes Herunterfahren beim Beenden der JVM (SIGTERM, SIGINT), als Shutdown-Hook registriert.
+ *
+ * Die Schritte laufen in der Reihenfolge ihrer Anmeldung, z.B.: keine Events mehr annehmen, laufende
+ * Bildprüfungen abschließen, Jobs beenden, ausgehende Nachrichten senden, JDA beenden, Zustand schreiben.
+ * Jeder Schritt bekommt die Restzeit bis zur gemeinsamen Frist. Ist sie abgelaufen, werden normale Schritte
+ * übersprungen; mit {@link #always(String, Step)} angemeldete Schritte (Zustand auf die Platte) laufen trotzdem.
+ */
+public class GracefulShutdown implements Runnable {
+    /**
+     * Ein Schritt; liefert false, wenn er in der Zeit nicht vollständig fertig wurde.
+     */
+    @FunctionalInterface
+    public interface Step {
+        boolean run(long remainingMillis) throws Exception;
+    }
+
+    private static final class Entry {
+        final String name;
+        final Step step;
+        final boolean always;
+
+        Entry(String name, Step step, boolean always) {
+            this.name = name;
+            this.step = step;
+            this.always = always;
+        }
+    }
+
+    private final long timeoutMillis;
+    private final List<Entry> steps = new ArrayList<>();
+
+    public GracefulShutdown(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public GracefulShutdown step(String name, Step step) {
+        steps.add(new Entry(name, step, false));
+        return this;
+    }
+
+    public GracefulShutdown always(String name, Step step) {
+        steps.add(new Entry(name, step, true));
+        return this;
+    }
+
+    /**
+     * Meldet die Schritte als Shutdown-Hook an.
+     */
+    public void install() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this, "graceful-shutdown"));
+    }
+
+    @Override
+    public void run() {
+        long start = System.currentTimeMillis();
+        long deadline = start + timeoutMillis;
+        System.out.println("[Shutdown] Fahre herunter, Frist " + timeoutMillis + " ms");
+        for (Entry entry : steps) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0 && !entry.always) {
+                System.err.println("[Shutdown] " + entry.name + ": übersprungen, Frist abgelaufen");
+                continue;
+            }
+            long stepStart = System.currentTimeMillis();
+            try {
+                boolean complete = entry.step.run(Math.max(0, remaining));
+                System.out.println("[Shutdown] " + entry.name + (complete ? ": fertig" : ": unvollständig") + " ("
+                        + (System.currentTimeMillis() - stepStart) + " ms)");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("[Shutdown] " + entry.name + ": unterbrochen");
+            } catch (Exception e) {
+                System.err.println("[Shutdown] " + entry.name + ": " + e.getMessage());
+            }
+        }
+        System.out.println("[Shutdown] Beendet nach " + (System.currentTimeMillis() - start) + " ms");
+    }
+}
@@ -0,0 +1,351 @@
+package de.nikl4s;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hält pro Discord-Server (Guild) einen eigenen, isolierten {@link PointsManager} samt {@link StateStore}
+ * und {@link ImageHashIndex}.
+ *
+ * Shards werden beim ersten Zugriff angelegt bzw. von der Platte geladen (data/guilds/&lt;guildId&gt;/).
+ * Ein Hintergrund-Thread lagert Shards aus, die länger als {@link #IDLE_TIMEOUT_MILLIS} ungenutzt sind
+ * oder die über {@link #MAX_RESIDENT_SHARDS} hinausgehen (am längsten ungenutzte zuerst): Snapshot
+ * schreiben, Journal schließen, aus dem Speicher entfernen.
+ *
+ * Zugriff nur über {@link #acquire(long)}: solange ein {@link Lease} offen ist, wird der Shard nicht
+ * ausgelagert. Das gilt auch für asynchrone Abläufe wie die EXIF-Prüfung.
+ *
+ * Beim Start kann {@link #warmUp(int)} die bekannten Shards parallel vorladen, während JDA noch verbindet.
+ *
+ * Scheitert das Laden, wird alles bereits Geöffnete wieder geschlossen und der Fehler gemerkt: Bis zum nächsten
+ * Versuch ({@link #LOAD_RETRY_MIN_MILLIS}, bei jedem weiteren Fehlschlag doppelt so lange, höchstens
+ * {@link #LOAD_RETRY_MAX_MILLIS}) wirft {@link #acquire(long)} sofort denselben Fehler, statt bei jedem Event
+ * erneut von der Platte zu lesen.
+ */
+public class GuildShards implements AutoCloseable {
+    public static final int MAX_RESIDENT_SHARDS = 256;
+    public static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    private static final long EVICTION_INTERVAL_SECONDS = 60;
+    public static final long LOAD_RETRY_MIN_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    public static final long LOAD_RETRY_MAX_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final Path guildsDir;
+    private final Clock clock;
+    // genug Buckets von Anfang an: computeIfAbsent sperrt beim Laden den Bucket, parallele Ladevorgänge
+    // verschiedener Server sollen sich dabei nicht gegenseitig blockieren
+    private final Map<Long, Shard> shards = new ConcurrentHashMap<>(MAX_RESIDENT_SHARDS * 4);
+    private final ScheduledExecutorService evictor;
+    // Server, deren Laden zuletzt gescheitert ist
+    private final Map<Long, LoadFailure> failures = new ConcurrentHashMap<>();
+
+    /**
+     * Letzter Ladefehler eines Servers und frühester Zeitpunkt für den nächsten Versuch.
+     */
+    private static final class LoadFailure {
+        final UncheckedIOException error;
+        final int attempts;
+        final long retryAt;
+
+        LoadFailure(UncheckedIOException error, int attempts, long retryAt) {
+            this.error = error;
+            this.attempts = attempts;
+            this.retryAt = retryAt;
+        }
+    }
+
+    /**
+     * Zustand eines Servers. active/evicted werden nur unter dem Monitor des Shards geändert.
+     */
+    private static final class Shard {
+        final long guildId;
+        final PointsManager points;
+        final ImageHashIndex images;
+        volatile long lastAccess;
+        int active;
+        boolean evicted;
+
+        Shard(long guildId, PointsManager points, ImageHashIndex images) {
+            this.guildId = guildId;
+            this.points = points;
+            this.images = images;
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Zugriff auf den Shard eines Servers; verhindert dessen Auslagerung bis {@link #close()}.
+     */
+    public final class Lease implements AutoCloseable {
+        private final Shard shard;
+        private boolean closed;
+
+        private Lease(Shard shard) {
+            this.shard = shard;
+        }
+
+        public PointsManager points() {
+            return shard.points;
+        }
+
+        public ImageHashIndex images() {
+            return shard.images;
+        }
+
+        @Override
+        public void close() {
+            synchronized (shard) {
+                if (!closed) {
+                    closed = true;
+                    shard.active--;
+                    shard.lastAccess = System.currentTimeMillis();
+                }
+            }
+        }
+    }
+
+    public GuildShards(Path dataDir) {
+        this(dataDir, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param clock Uhr der {@link PointsManager} aller Shards; das Auslagern richtet sich weiter nach der echten Zeit
+     */
+    public GuildShards(Path dataDir, Clock clock) {
+        this.guildsDir = dataDir.resolve("guilds");
+        this.clock = clock;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "shard-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        evictor.scheduleWithFixedDelay(this::evictIdle, EVICTION_INTERVAL_SECONDS, EVICTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Liefert den Shard des Servers; lädt ihn bei Bedarf von der Platte.
+     * @throws UncheckedIOException wenn der gespeicherte Zustand nicht gelesen werden kann (auch während der
+     *         Wartezeit nach einem gescheiterten Versuch)
+     */
+    public Lease acquire(long guildId) {
+        LoadFailure failure = failures.get(guildId);
+        if (failure != null && System.currentTimeMillis() < failure.retryAt) {
+            throw new UncheckedIOException(failure.error.getMessage(), failure.error.getCause());
+        }
+        while (true) {
+            Shard shard = shards.computeIfAbsent(guildId, this::load);
+            synchronized (shard) {
+                if (!shard.evicted) {
+                    shard.active++;
+                    shard.lastAccess = System.currentTimeMillis();
+                    if (shards.size() > MAX_RESIDENT_SHARDS) {
+                        evictor.execute(this::evictIdle);
+                    }
+                    return new Lease(shard);
+                }
+            }
+            // Shard wurde gerade ausgelagert und ist bereits aus der Map entfernt; neu laden
+        }
+    }
+
+    private Shard load(long guildId) {
+        PointsManager points = new PointsManager(PointsManager.DEFAULT_GYM_POINTS, clock);
+        ImageHashIndex images;
+        Path dir = guildsDir.resolve(Long.toUnsignedString(guildId));
+        StateStore store = null;
+        boolean attached = false;
+        try {
+            store = StateStore.open(dir);
+            points.attachStore(store);
+            attached = true;
+            points.attachHistory(HistoryLog.open(dir.resolve("history")));
+            points.attachCloseArchive(dir.resolve("closes"));
+            points.attachLedger(SettlementLedger.open(dir.resolve("settlements.ldg")));
+            images = ImageHashIndex.open(dir.resolve("image-hashes.bin"));
+        } catch (IOException | RuntimeException e) {
+            UncheckedIOException error = new UncheckedIOException("Shard " + guildId + " konnte nicht geladen werden",
+                    e instanceof IOException io ? io : new IOException(e.getMessage(), e));
+            // Bereits Geöffnetes schließen: detachStore schließt auch Historie und Kassenbuch
+            try {
+                if (attached) {
+                    points.detachStore();
+                } else if (store != null) {
+                    store.close();
+                }
+            } catch (RuntimeException cleanup) {
+                error.addSuppressed(cleanup);
+            }
+            LoadFailure previous = failures.get(guildId);
+            int attempts = previous == null ? 1 : previous.attempts + 1;
+            long backoff = Math.min(LOAD_RETRY_MAX_MILLIS, LOAD_RETRY_MIN_MILLIS << Math.min(attempts - 1, 20));
+            failures.put(guildId, new LoadFailure(error, attempts, System.currentTimeMillis() + backoff));
+            throw error;
+        }
+        failures.remove(guildId);
+        return new Shard(guildId, points, images);
+    }
+
+    /**
+     * Lädt die gespeicherten Shards (zuletzt geänderte zuerst, höchstens {@link #MAX_RESIDENT_SHARDS}) mit
+     * {@code parallelism} Threads vorab. Fehler einzelner Server werden nur protokolliert; sie werden dann
+     * wie bisher beim ersten Zugriff geladen.
+     * @return Anzahl der geladenen Shards, sobald alle fertig sind
+     */
+    public CompletableFuture<Integer> warmUp(int parallelism) {
+        List<Long> ids = storedGuildIdsByRecency();
+        if (ids.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        AtomicInteger threadNo = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, ids.size())), r -> {
+            Thread t = new Thread(r, "shard-warmup-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicInteger loaded = new AtomicInteger();
+        List<CompletableFuture<Void>> tasks = new ArrayList<>(ids.size());
+        for (long guildId : ids.subList(0, Math.min(ids.size(), MAX_RESIDENT_SHARDS))) {
+            tasks.add(CompletableFuture.runAsync(() -> {
+                try {
+                    acquire(guildId).close();
+                    loaded.incrementAndGet();
+                } catch (UncheckedIOException e) {
+                    System.err.println("[GuildShards] " + e.getMessage() + ": " + e.getCause().getMessage());
+                }
+            }, pool));
+        }
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((ignored, error) -> pool.shutdown())
+                .thenApply(ignored -> loaded.get());
+    }
+
+    private List<Long> storedGuildIdsByRecency() {
+        List<Path> dirs = new ArrayList<>();
+        if (Files.isDirectory(guildsDir)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(guildsDir, Files::isDirectory)) {
+                stream.forEach(dirs::add);
+            } catch (IOException e) {
+                System.err.println("[GuildShards] " + guildsDir + " nicht lesbar: " + e.getMessage());
+            }
+        }
+        Map<Path, Long> modified = new HashMap<>();
+        for (Path dir : dirs) {
+            try {
+                modified.put(dir, Files.getLastModifiedTime(dir).toMillis());
+            } catch (IOException e) {
+                modified.put(dir, 0L);
+            }
+        }
+        dirs.sort(Comparator.comparingLong((Path dir) -> modified.get(dir)).reversed());
+        List<Long> ids = new ArrayList<>(dirs.size());
+        for (Path dir : dirs) {
+            try {
+                ids.add(Long.parseUnsignedLong(dir.getFileName().toString()));
+            } catch (NumberFormatException e) {
+                // fremdes Verzeichnis
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * IDs aller Server mit gespeichertem oder residentem Zustand, auch ausgelagerter.
+     */
+    public List<Long> knownGuildIds() {
+        Set<Long> ids = new TreeSet<>(shards.keySet());
+        if (Files.isDirectory(guildsDir)) {
+            try (DirectoryStream<Path> dirs = Files.newDirectoryStream(guildsDir, Files::isDirectory)) {
+                for (Path dir : dirs) {
+                    try {
+                        ids.add(Long.parseUnsignedLong(dir.getFileName().toString()));
+                    } catch (NumberFormatException e) {
+                        // fremdes Verzeichnis
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("[GuildShards] " + guildsDir + " nicht lesbar: " + e.getMessage());
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    public int residentCount() {
+        return shards.size();
+    }
+
+    /**
+     * Lagert ungenutzte Shards aus. Läuft auf dem Evictor-Thread.
+     */
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        List<Shard> candidates = new ArrayList<>(shards.values());
+        candidates.sort(Comparator.comparingLong(s -> s.lastAccess));
+        int excess = candidates.size() - MAX_RESIDENT_SHARDS;
+        for (Shard shard : candidates) {
+            boolean idle = now - shard.lastAccess > IDLE_TIMEOUT_MILLIS;
+            if (!idle && excess <= 0) {
+                continue;
+            }
+            if (evict(shard)) {
+                excess--;
+            }
+        }
+    }
+
+    /**
+     * Schreibt und entfernt den Shard unter dessen Monitor, damit ein gleichzeitiges {@link #acquire(long)}
+     * erst danach (mit frisch geladenem Zustand) weitermacht und nie zwei Stores dasselbe Verzeichnis nutzen.
+     */
+    private boolean evict(Shard shard) {
+        synchronized (shard) {
+            if (shard.active > 0 || shard.evicted) {
+                return false;
+            }
+            shard.evicted = true;
+            release(shard);
+            shards.remove(shard.guildId, shard);
+            return true;
+        }
+    }
+
+    private static void release(Shard shard) {
+        shard.points.detachStore();
+        try {
+            shard.images.close();
+        } catch (IOException e) {
+            System.err.println("[GuildShards] Bild-Index von " + shard.guildId + " nicht geschlossen: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Beendet die Auslagerung und schreibt alle residenten Shards auf die Platte.
+     */
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        for (Shard shard : new ArrayList<>(shards.values())) {
+            synchronized (shard) {
+                shard.evicted = true;
+                release(shard);
+                shards.remove(shard.guildId, shard);
+            }
+        }
+    }
+}
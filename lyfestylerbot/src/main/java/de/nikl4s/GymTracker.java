@@ -0,0 +1,143 @@
+package de.nikl4s;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.Message.Attachment;
+
+/**
+ * Handler für "!gym" und "!rank". Aufgerufen vom {@link MessageRouter}, der Kanal und Kommando
+ * bereits geprüft hat. Punkte werden im Shard des jeweiligen Servers geführt.
+ *
+ * Die Bildprüfung zu "!gym" (EXIF-Datum und Wiederholung über den {@link ImageHashIndex}) läuft
+ * asynchron im {@link ImageVerifier}; Punkte bzw. Strafe werden erst vergeben, wenn sie abgeschlossen ist.
+ */
+public class GymTracker {
+    private final GuildShards shards;
+    private final ConfigWatcher config;
+    private final ImageVerifier imageVerifier;
+    private final OutboundQueue outbound;
+    private final Clock clock;
+
+    /**
+     * @param clock liefert die Zeitzone, in der der Zeitstempel einer Nachricht zum Stichtag wird
+     */
+    public GymTracker(GuildShards shards, ConfigWatcher config, ImageVerifier imageVerifier, OutboundQueue outbound, Clock clock) {
+        this.shards = shards;
+        this.config = config;
+        this.imageVerifier = imageVerifier;
+        this.outbound = outbound;
+        this.clock = clock;
+    }
+
+    /**
+     * "!gym" im Pumper-Kanal: Bild prüfen und Punkte vergeben.
+     */
+    public void handleGym(MessageReceivedEvent Nachricht) {
+        long start = System.nanoTime();
+        var member = Nachricht.getMember();
+        if (member == null) {
+            return;
+        }
+        String displayName = member.getEffectiveName();
+        long guildId = Nachricht.getGuild().getIdLong();
+
+        Message message = Nachricht.getMessage();
+        List<Attachment> attachments = message.getAttachments();
+        Optional<Attachment> firstImage = attachments.stream().filter(Attachment::isImage).findFirst();
+        if (firstImage.isEmpty()) {
+            outbound.send(Nachricht.getChannel(), displayName + ", bitte schicke ein Bild mit deinem !gym Kommando.");
+            Metrics.GYM.recordSince(start);
+            return;
+        }
+
+        Attachment image = firstImage.get();
+        String userId = Nachricht.getAuthor().getId();
+        // Stichtag ist der Zeitpunkt der Nachricht, nicht der Abschluss der Prüfung
+        LocalDate today = message.getTimeCreated().atZoneSameInstant(clock.getZone()).toLocalDate();
+        // Lease bleibt bis zum Ende der Prüfung offen (höchstens ImageVerifier.DOWNLOAD_TIMEOUT_SECONDS), damit der Shard
+        // nicht zwischendurch ausgelagert wird
+        GuildShards.Lease lease = shards.acquire(guildId);
+        try {
+            imageVerifier.inspect(image, true).whenComplete((check, error) -> {
+                try {
+                    if (error != null) {
+                        System.err.println("[GymTracker] " + error.getMessage());
+                    }
+                    // nur nachsehen: aufgenommen wird das Bild erst, wenn der Check-in zählt
+                    ImageHashIndex.Match duplicate = lease.images().findRepost(check, userId, today);
+                    if (duplicate != null) {
+                        if (lease.points().penalize(userId, displayName, today, -5).periodClosed) {
+                            sendPeriodClosed(Nachricht, displayName);
+                            return;
+                        }
+                        Metrics.CHEATS_REPOST.increment();
+                        outbound.send(Nachricht.getChannel(), "<@" + userId + "> hat ein Bild verwendet, das schon am "
+                                + duplicate.day + " gepostet wurde. -5 Punkte!");
+                        return;
+                    }
+                    boolean isCheat = check != null && check.shotDate != null && check.shotDate.isBefore(today.minusDays(1));
+                    if (applyGym(lease.points(), Nachricht, userId, displayName, today, isCheat)) {
+                        lease.images().accept(check, userId, today);
+                    }
+                } finally {
+                    lease.close();
+                    Metrics.GYM.recordSince(start);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            lease.close();
+            outbound.send(Nachricht.getChannel(), displayName + ", gerade werden zu viele Bilder geprüft. Versuch es gleich nochmal.");
+            Metrics.GYM.recordSince(start);
+        }
+    }
+
+    /**
+     * "!rank" in einem beliebigen Kanal: Monats- und Jahresranking senden (die Queue bündelt beide).
+     */
+    public void handleRank(MessageReceivedEvent Nachricht) {
+        long start = System.nanoTime();
+        try (var lease = shards.acquire(Nachricht.getGuild().getIdLong())) {
+            outbound.send(Nachricht.getChannel(), lease.points().buildRankMessage());
+            outbound.send(Nachricht.getChannel(), lease.points().buildYearRankMessage());
+        }
+        Metrics.RANK.recordSince(start);
+    }
+
+    /**
+     * @return true, wenn der Check-in angenommen wurde und Punkte gebracht hat
+     */
+    private boolean applyGym(PointsManager pointsManager, MessageReceivedEvent Nachricht, String userId, String displayName, LocalDate today, boolean isCheat) {
+        if (isCheat) {
+            if (pointsManager.penalize(userId, displayName, today, -5).periodClosed) {
+                sendPeriodClosed(Nachricht, displayName);
+                return false;
+            }
+            Metrics.CHEATS_OLD_IMAGE.increment();
+            outbound.send(Nachricht.getChannel(), "<@" + userId + "> hat ein altes Bild verwendet. -5 Punkte!");
+            return false;
+        }
+
+        var res = pointsManager.handleGym(userId, displayName, today, config.current().pointsPerGym());
+        if (res.accepted) {
+            outbound.send(Nachricht.getChannel(), displayName + " ist am Pumpen! (+" + res.pointsAdded + " Punkte, Streak: " + res.currentStreak + ")");
+        } else if (res.periodClosed) {
+            sendPeriodClosed(Nachricht, displayName);
+        } else {
+            outbound.send(Nachricht.getChannel(), displayName + ", du hast heute schon eingecheckt. (Punkte: " + res.totalPoints + ")");
+        }
+        return res.accepted;
+    }
+
+    /**
+     * Antwort auf einen Check-in, dessen Tag in einem bereits abgeschlossenen Monat liegt: weder Punkte noch Strafe.
+     */
+    private void sendPeriodClosed(MessageReceivedEvent Nachricht, String displayName) {
+        outbound.send(Nachricht.getChannel(), displayName + ", der Monat ist schon abgeschlossen. Der Check-in zählt nicht mehr.");
+    }
+}
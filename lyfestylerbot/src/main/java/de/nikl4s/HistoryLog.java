@@ -0,0 +1,433 @@
+package de.nikl4s;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only-Historie aller Check-ins eines Servers (Event-Sourcing).
+ *
+ * Jedes Ereignis (Gym, Strafe, Punktkorrektur, Wake-Up) wird als Datensatz fester Länge an die Datei
+ * seines Monats angehängt (history/yyyy-MM.evt):
+ *   [byte type][long userId][int epochDay][int secondOfDay][int value]
+ * Im Speicher liegt ein Monat spaltenweise in primitiven Arrays ({@link Month}); Abfragen und
+ * Neuberechnungen einer Rangliste laufen in einem einzigen Durchlauf über diese Arrays.
+ *
+ * Der laufende Monat wird beim Anhängen mitgeführt, abgeschlossene Monate werden bei Bedarf gelesen
+ * und in einem kleinen LRU-Cache gehalten. Ein angerissener letzter Datensatz (Absturz) wird ignoriert.
+ *
+ * {@link #append} legt das Ereignis nur in eine Queue und kehrt sofort zurück; Datei und Monats-Arrays pflegt ein
+ * eigener Writer-Thread, der anstehende Ereignisse gesammelt mit einem Schreibaufruf anhängt. Der Check-in wartet
+ * damit weder auf die Platte noch auf andere Check-ins. Abfragen warten, bis alles vor ihnen Angehängte
+ * geschrieben ist, und sehen so immer die eigenen Ereignisse.
+ */
+public class HistoryLog implements AutoCloseable {
+    public static final byte EVENT_GYM = 1;        // value = vergebene Punkte
+    public static final byte EVENT_PENALTY = 2;    // value = Punktänderung (z.B. -5 bei altem Bild)
+    public static final byte EVENT_SET_POINTS = 3; // value = Differenz zum alten Punktestand
+    public static final byte EVENT_AWAKE = 4;      // value = Platz in der Wake-Order (1-basiert)
+
+    static final int RECORD_BYTES = 1 + 8 + 4 + 4 + 4;
+    private static final int CACHED_MONTHS = 12;
+
+    private final Path dir;
+    private final Map<YearMonth, Month> closedMonths = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<YearMonth, Month> eldest) {
+            return size() > CACHED_MONTHS;
+        }
+    };
+    private YearMonth openMonth;
+    private FileChannel openChannel;
+    private Month open;
+
+    // Übergabe an den Writer-Thread; appended/written zählen die Ereignisse, written nur unter dem Monitor
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong appended = new AtomicLong();
+    private long written;
+    private final Thread writer;
+    private volatile boolean closed = false;
+
+    private static final Object SHUTDOWN = new Object();
+
+    /** Ein angehängtes, noch nicht geschriebenes Ereignis. */
+    private static final class Event {
+        final byte type;
+        final long userId;
+        final int epochDay;
+        final int secondOfDay;
+        final int value;
+
+        Event(byte type, long userId, int epochDay, int secondOfDay, int value) {
+            this.type = type;
+            this.userId = userId;
+            this.epochDay = epochDay;
+            this.secondOfDay = secondOfDay;
+            this.value = value;
+        }
+    }
+
+    private HistoryLog(Path dir) {
+        this.dir = dir;
+        this.writer = new Thread(this::writeLoop, "history-writer");
+        this.writer.setDaemon(true);
+    }
+
+    public static HistoryLog open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        HistoryLog log = new HistoryLog(dir);
+        log.writer.start();
+        return log;
+    }
+
+    /**
+     * Spaltenweise Ereignisse eines Monats in Einfüge-Reihenfolge.
+     */
+    public static final class Month {
+        private byte[] types;
+        private long[] userIds;
+        private int[] epochDays;
+        private int[] secondsOfDay;
+        private int[] values;
+        private int size;
+
+        Month(int capacity) {
+            capacity = Math.max(capacity, 16);
+            types = new byte[capacity];
+            userIds = new long[capacity];
+            epochDays = new int[capacity];
+            secondsOfDay = new int[capacity];
+            values = new int[capacity];
+        }
+
+        void add(byte type, long userId, int epochDay, int secondOfDay, int value) {
+            if (size == types.length) {
+                int capacity = size * 2;
+                types = Arrays.copyOf(types, capacity);
+                userIds = Arrays.copyOf(userIds, capacity);
+                epochDays = Arrays.copyOf(epochDays, capacity);
+                secondsOfDay = Arrays.copyOf(secondsOfDay, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            types[size] = type;
+            userIds[size] = userId;
+            epochDays[size] = epochDay;
+            secondsOfDay[size] = secondOfDay;
+            values[size] = value;
+            size++;
+        }
+
+        public int size() { return size; }
+        public byte type(int i) { return types[i]; }
+        public long userId(int i) { return userIds[i]; }
+        public LocalDate day(int i) { return LocalDate.ofEpochDay(epochDays[i]); }
+        public LocalTime time(int i) { return LocalTime.ofSecondOfDay(secondsOfDay[i]); }
+        public int value(int i) { return values[i]; }
+    }
+
+    /**
+     * Hängt ein Ereignis an die Datei des Monats von {@code day} an. Kehrt sofort zurück; geschrieben wird im
+     * Writer-Thread, in der Reihenfolge der Aufrufe.
+     * @throws IllegalStateException wenn die Historie bereits geschlossen ist
+     */
+    public void append(byte type, long userId, LocalDate day, LocalTime time, int value) {
+        if (closed) {
+            throw new IllegalStateException("Historie ist geschlossen");
+        }
+        queue.add(new Event(type, userId, (int) day.toEpochDay(), time.toSecondOfDay(), value));
+        appended.incrementAndGet();
+    }
+
+    private void writeLoop() {
+        List<Object> batch = new ArrayList<>();
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_BYTES * 256);
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            queue.drainTo(batch);
+            int events = 0;
+            for (Object item : batch) {
+                if (item == SHUTDOWN) {
+                    running = false;
+                } else {
+                    events++;
+                }
+            }
+            synchronized (this) {
+                try {
+                    for (Object item : batch) {
+                        if (!(item instanceof Event e)) {
+                            continue;
+                        }
+                        YearMonth ym = YearMonth.from(LocalDate.ofEpochDay(e.epochDay));
+                        if (!ym.equals(openMonth) || !buf.hasRemaining()) {
+                            flush(buf);
+                        }
+                        Month month = writableMonth(ym);
+                        buf.put(e.type).putLong(e.userId).putInt(e.epochDay).putInt(e.secondOfDay).putInt(e.value);
+                        month.add(e.type, e.userId, e.epochDay, e.secondOfDay, e.value);
+                    }
+                    flush(buf);
+                } catch (IOException e) {
+                    buf.clear();
+                    System.err.println("[History] Schreiben fehlgeschlagen: " + e.getMessage());
+                }
+                // auch bei Fehlern als erledigt zählen, sonst warten Abfragen ewig
+                written += events;
+                notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Schreibt die gesammelten Datensätze in die Datei des offenen Monats.
+     */
+    private void flush(ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            openChannel.write(buf);
+        }
+        buf.clear();
+    }
+
+    /**
+     * Wartet, bis alle bisher angehängten Ereignisse geschrieben sind. Nur unter dem Monitor aufrufen.
+     */
+    private void awaitWritten() throws IOException {
+        long target = appended.get();
+        while (written < target && writer.isAlive()) {
+            try {
+                wait(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Warten auf die Historie unterbrochen", e);
+            }
+        }
+    }
+
+    private Month writableMonth(YearMonth ym) throws IOException {
+        if (ym.equals(openMonth)) {
+            return open;
+        }
+        Month month = readMonth(ym);
+        FileChannel channel = FileChannel.open(fileOf(ym),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        // Angerissenen Datensatz abschneiden, damit neue Einträge wieder ausgerichtet sind
+        channel.truncate((long) month.size * RECORD_BYTES);
+        if (openChannel != null) {
+            openChannel.force(false);
+            openChannel.close();
+            closedMonths.put(openMonth, open);
+        }
+        closedMonths.remove(ym);
+        openMonth = ym;
+        openChannel = channel;
+        open = month;
+        return month;
+    }
+
+    /**
+     * Ereignisse eines Monats; leer, wenn es für den Monat keine gibt.
+     * Das Ergebnis darf nicht verändert werden und spiegelt beim laufenden Monat nur den Stand beim Aufruf.
+     */
+    public synchronized Month month(YearMonth ym) throws IOException {
+        awaitWritten();
+        if (ym.equals(openMonth)) {
+            return copyOf(open);
+        }
+        Month month = closedMonths.get(ym);
+        if (month == null) {
+            month = readMonth(ym);
+            closedMonths.put(ym, month);
+        }
+        return month;
+    }
+
+    private static Month copyOf(Month m) {
+        Month copy = new Month(0);
+        copy.types = Arrays.copyOf(m.types, m.size);
+        copy.userIds = Arrays.copyOf(m.userIds, m.size);
+        copy.epochDays = Arrays.copyOf(m.epochDays, m.size);
+        copy.secondsOfDay = Arrays.copyOf(m.secondsOfDay, m.size);
+        copy.values = Arrays.copyOf(m.values, m.size);
+        copy.size = m.size;
+        return copy;
+    }
+
+    private Month readMonth(YearMonth ym) throws IOException {
+        Path file = fileOf(ym);
+        if (!Files.exists(file)) {
+            return new Month(0);
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+        int count = buf.remaining() / RECORD_BYTES;
+        Month month = new Month(count);
+        for (int i = 0; i < count; i++) {
+            month.add(buf.get(), buf.getLong(), buf.getInt(), buf.getInt(), buf.getInt());
+        }
+        return month;
+    }
+
+    /**
+     * Alle Monate mit einer Ereignisdatei, aufsteigend.
+     */
+    public synchronized List<YearMonth> months() throws IOException {
+        awaitWritten();
+        List<YearMonth> months = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.evt")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    months.add(YearMonth.parse(name.substring(0, name.length() - 4)));
+                } catch (DateTimeParseException e) {
+                    // fremde Datei im Verzeichnis
+                }
+            }
+        }
+        months.sort(null);
+        return months;
+    }
+
+    private Path fileOf(YearMonth ym) {
+        return dir.resolve(ym + ".evt");
+    }
+
+    /**
+     * Punkte je Nutzer im Monat, neu berechnet aus allen Ereignissen (ein Durchlauf).
+     */
+    public Map<Long, Integer> pointsByUser(YearMonth ym) throws IOException {
+        Map<Long, Integer> points = new HashMap<>();
+        addPoints(month(ym), points, false);
+        return points;
+    }
+
+    /**
+     * Jahrespunkte je Nutzer, ein Durchlauf pro Monat. Wie im Jahresranking zählen nur Gym-Punkte.
+     */
+    public Map<Long, Integer> pointsByUser(Year year) throws IOException {
+        Map<Long, Integer> points = new HashMap<>();
+        for (int m = 1; m <= 12; m++) {
+            addPoints(month(year.atMonth(m)), points, true);
+        }
+        return points;
+    }
+
+    private static void addPoints(Month month, Map<Long, Integer> points, boolean gymOnly) {
+        for (int i = 0; i < month.size; i++) {
+            if (gymOnly ? month.types[i] == EVENT_GYM : month.types[i] != EVENT_AWAKE) {
+                points.merge(month.userIds[i], month.values[i], Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Kennzahlen eines Nutzers in einem Zeitraum.
+     */
+    public static final class UserSummary {
+        public final int gymDays;
+        public final int penalties;
+        public final int wakeUps;
+        public final int firstWakeUps;
+        public final int points;
+        public final List<LocalDate> gymDates;
+
+        UserSummary(int gymDays, int penalties, int wakeUps, int firstWakeUps, int points, List<LocalDate> gymDates) {
+            this.gymDays = gymDays;
+            this.penalties = penalties;
+            this.wakeUps = wakeUps;
+            this.firstWakeUps = firstWakeUps;
+            this.points = points;
+            this.gymDates = gymDates;
+        }
+    }
+
+    /**
+     * Fasst alle Ereignisse eines Nutzers zwischen {@code from} und {@code to} (jeweils inklusive) zusammen.
+     */
+    public UserSummary summarize(long userId, LocalDate from, LocalDate to) throws IOException {
+        int gymDays = 0, penalties = 0, wakeUps = 0, firstWakeUps = 0, points = 0;
+        List<LocalDate> gymDates = new ArrayList<>();
+        long fromDay = from.toEpochDay();
+        long toDay = to.toEpochDay();
+        for (YearMonth ym = YearMonth.from(from); !ym.isAfter(YearMonth.from(to)); ym = ym.plusMonths(1)) {
+            Month month = month(ym);
+            for (int i = 0; i < month.size; i++) {
+                if (month.userIds[i] != userId || month.epochDays[i] < fromDay || month.epochDays[i] > toDay) {
+                    continue;
+                }
+                switch (month.types[i]) {
+                    case EVENT_GYM -> {
+                        gymDays++;
+                        points += month.values[i];
+                        gymDates.add(LocalDate.ofEpochDay(month.epochDays[i]));
+                    }
+                    case EVENT_PENALTY -> {
+                        penalties++;
+                        points += month.values[i];
+                    }
+                    case EVENT_SET_POINTS -> points += month.values[i];
+                    case EVENT_AWAKE -> {
+                        wakeUps++;
+                        if (month.values[i] == 1) {
+                            firstWakeUps++;
+                        }
+                    }
+                    default -> { }
+                }
+            }
+        }
+        return new UserSummary(gymDays, penalties, wakeUps, firstWakeUps, points, gymDates);
+    }
+
+    /**
+     * Schreibt alle ausstehenden Ereignisse, beendet den Writer-Thread und schließt die Datei.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.add(SHUTDOWN);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeChannel();
+    }
+
+    private synchronized void closeChannel() throws IOException {
+        if (openChannel != null) {
+            openChannel.force(false);
+            openChannel.close();
+            openChannel = null;
+            openMonth = null;
+            open = null;
+        }
+    }
+}
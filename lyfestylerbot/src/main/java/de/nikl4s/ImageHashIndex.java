@@ -0,0 +1,218 @@
+package de.nikl4s;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Index aller bisher geposteten Bild-Hashes eines Servers zur Erkennung von Wiederholungen.
+ *
+ * Multi-Index-Hashing: Der 64-Bit-Hash wird in {@link #BLOCKS} Blöcke zu 8 Bit zerlegt. Unterscheiden
+ * sich zwei Hashes in höchstens {@link #MAX_DISTANCE} Bits, stimmt nach dem Schubfachprinzip mindestens
+ * ein Block exakt überein. Pro Block gibt es eine sortierte Tabelle (Blockwert, Eintrag); eine Suche
+ * ist damit eine Binärsuche pro Block plus Hamming-Vergleich der Kandidaten mit gleichem Blockwert.
+ * Neue Einträge landen zunächst in einem kleinen unsortierten Rest, der linear geprüft und ab
+ * {@link #MAX_UNSORTED} Einträgen in die Tabellen einsortiert wird.
+ *
+ * Persistenz: Datensätze fester Länge [long hash][long userId][int epochDay] werden an die Datei
+ * angehängt. Beim Laden wird die Datei per Memory-Mapping gelesen, ein angerissener Rest abgeschnitten.
+ */
+public class ImageHashIndex implements AutoCloseable {
+    public static final int BLOCKS = 8;
+    public static final int MAX_DISTANCE = BLOCKS - 1;
+    static final int RECORD_BYTES = 8 + 8 + 4;
+    static final int MAX_UNSORTED = 4096;
+
+    private final FileChannel channel;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+    private long[] hashes;
+    private long[] userIds;
+    private int[] epochDays;
+    private int size;
+    // Einträge [0, sorted) stehen in den Tabellen, [sorted, size) werden linear geprüft
+    private int sorted;
+    // je Block sortiert: (Blockwert << 32) | Eintragsnummer
+    private final long[][] tables = new long[BLOCKS][];
+
+    /**
+     * Früherer Eintrag, dem ein neues Bild ähnelt.
+     */
+    public static final class Match {
+        public final long userId;
+        public final LocalDate day;
+        public final int distance;
+
+        Match(long userId, LocalDate day, int distance) {
+            this.userId = userId;
+            this.day = day;
+            this.distance = distance;
+        }
+    }
+
+    private ImageHashIndex(FileChannel channel, int capacity) {
+        this.channel = channel;
+        capacity = Math.max(capacity, 16);
+        this.hashes = new long[capacity];
+        this.userIds = new long[capacity];
+        this.epochDays = new int[capacity];
+        for (int b = 0; b < BLOCKS; b++) {
+            tables[b] = new long[capacity];
+        }
+    }
+
+    public static ImageHashIndex open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int count = (int) (channel.size() / RECORD_BYTES);
+        channel.truncate((long) count * RECORD_BYTES);
+        ImageHashIndex index = new ImageHashIndex(channel, count);
+        if (count > 0) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) count * RECORD_BYTES);
+            for (int i = 0; i < count; i++) {
+                index.hashes[i] = mapped.getLong();
+                index.userIds[i] = mapped.getLong();
+                index.epochDays[i] = mapped.getInt();
+            }
+            index.size = count;
+            index.sortTables();
+        }
+        channel.position(channel.size());
+        return index;
+    }
+
+    private static int block(long hash, int b) {
+        return (int) (hash >>> (8 * b)) & 0xFF;
+    }
+
+    private void sortTables() {
+        for (int b = 0; b < BLOCKS; b++) {
+            for (int i = sorted; i < size; i++) {
+                tables[b][i] = key(block(hashes[i], b), i);
+            }
+            Arrays.sort(tables[b], 0, size);
+        }
+        sorted = size;
+    }
+
+    private static long key(int blockValue, int entry) {
+        return ((long) blockValue << 32) | entry;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Sucht den ähnlichsten früheren Eintrag mit Abstand ≤ {@link #MAX_DISTANCE}.
+     * @return Treffer oder null
+     */
+    public synchronized Match findSimilar(long hash) {
+        int best = -1;
+        int bestDistance = MAX_DISTANCE + 1;
+        for (int b = 0; b < BLOCKS; b++) {
+            long[] table = tables[b];
+            long lo = key(block(hash, b), 0);
+            int i = Arrays.binarySearch(table, 0, sorted, lo);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            for (; i < sorted && (table[i] >>> 32) == (lo >>> 32); i++) {
+                int entry = (int) table[i];
+                int distance = Long.bitCount(hashes[entry] ^ hash);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = entry;
+                }
+            }
+        }
+        for (int entry = sorted; entry < size; entry++) {
+            int distance = Long.bitCount(hashes[entry] ^ hash);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = entry;
+            }
+        }
+        return best < 0 ? null : new Match(userIds[best], LocalDate.ofEpochDay(epochDays[best]), bestDistance);
+    }
+
+    /**
+     * Prüft auf einen ähnlichen früheren Eintrag und nimmt den Hash nur auf, wenn es keinen gibt.
+     * @return Treffer (Hash wurde nicht aufgenommen) oder null (Hash ist neu und gespeichert)
+     */
+    public synchronized Match checkAndAdd(long hash, long userId, LocalDate day) throws IOException {
+        Match match = findSimilar(hash);
+        if (match != null) {
+            return match;
+        }
+        record.clear();
+        record.putLong(hash).putLong(userId).putInt((int) day.toEpochDay()).flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        add(hash, userId, (int) day.toEpochDay());
+        return null;
+    }
+
+    /**
+     * Liefert einen früheren Treffer, wenn das geprüfte Bild eine Wiederholung ist; aufgenommen wird nichts.
+     * Eine Wiederholung des eigenen Bildes vom selben Tag (z.B. doppelt gesendet) zählt nicht.
+     * @return Treffer oder null, auch wenn kein Hash vorliegt
+     */
+    public Match findRepost(ImageVerifier.ImageCheck check, String userId, LocalDate day) {
+        if (check == null || !check.hashed) {
+            return null;
+        }
+        Match match = findSimilar(check.hash);
+        if (match != null && match.userId == Long.parseUnsignedLong(userId) && match.day.equals(day)) {
+            return null;
+        }
+        return match;
+    }
+
+    /**
+     * Nimmt das Bild eines angenommenen Check-ins auf. Nur solche Bilder dürfen später als Wiederholung gelten;
+     * ein abgelehnter Check-in (schon eingecheckt, Monat abgeschlossen, altes Bild) hat keine Punkte gebracht.
+     * Ein inzwischen aufgenommenes ähnliches Bild bleibt der frühere Eintrag. Fehler beim Speichern werden nur geloggt.
+     */
+    public void accept(ImageVerifier.ImageCheck check, String userId, LocalDate day) {
+        if (check == null || !check.hashed) {
+            return;
+        }
+        try {
+            checkAndAdd(check.hash, Long.parseUnsignedLong(userId), day);
+        } catch (IOException e) {
+            System.err.println("[ImageHashIndex] " + e.getMessage());
+        }
+    }
+
+    private void add(long hash, long userId, int epochDay) {
+        if (size == hashes.length) {
+            int capacity = size * 2;
+            hashes = Arrays.copyOf(hashes, capacity);
+            userIds = Arrays.copyOf(userIds, capacity);
+            epochDays = Arrays.copyOf(epochDays, capacity);
+            for (int b = 0; b < BLOCKS; b++) {
+                tables[b] = Arrays.copyOf(tables[b], capacity);
+            }
+        }
+        hashes[size] = hash;
+        userIds[size] = userId;
+        epochDays[size] = epochDay;
+        size++;
+        if (size - sorted >= MAX_UNSORTED) {
+            sortTables();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+}
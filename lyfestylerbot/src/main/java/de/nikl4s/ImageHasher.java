@@ -0,0 +1,135 @@
+package de.nikl4s;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Berechnet einen Wahrnehmungs-Hash (dHash, 64 Bit) eines Bildes.
+ *
+ * Geladen wird eine verkleinerte Vorschau über den Discord-Media-Proxy; beim Dekodieren wird
+ * zusätzlich per Subsampling nur jede n-te Zeile/Spalte gelesen. Das Bild wird auf 9x8 Graustufen
+ * gemittelt, jedes Bit sagt, ob ein Pixel heller als sein rechter Nachbar ist. Neu gespeicherte,
+ * skalierte oder leicht komprimierte Kopien desselben Fotos unterscheiden sich so nur in wenigen Bits.
+ */
+public class ImageHasher {
+    /** Kantenlänge der angeforderten Vorschau. */
+    public static final int PREVIEW_SIZE = 256;
+    /** Ab dieser Kantenlänge wird beim Dekodieren per Subsampling verkleinert. */
+    private static final int DECODE_TARGET = 64;
+
+    private final HttpClient client;
+    private final Duration timeout;
+
+    public ImageHasher(HttpClient client, Duration timeout) {
+        this.client = client;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Lädt die verkleinerte Vorschau von {@code proxyUrl}.
+     */
+    public byte[] fetchPreview(String proxyUrl) throws IOException, InterruptedException {
+        return fetchPreview(proxyUrl, DownloadHandle.NONE);
+    }
+
+    /**
+     * Wie {@link #fetchPreview(String)}; der Body wird in {@code handle} geführt, damit eine abgelaufene Frist
+     * den Download von außen abbrechen kann.
+     */
+    byte[] fetchPreview(String proxyUrl, DownloadHandle handle) throws IOException, InterruptedException {
+        String sized = proxyUrl + (proxyUrl.contains("?") ? "&" : "?") + "width=" + PREVIEW_SIZE + "&height=" + PREVIEW_SIZE;
+        HttpRequest request = HttpRequest.newBuilder(URI.create(sized)).timeout(timeout).GET().build();
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        InputStream raw = handle.track(response.body());
+        try (InputStream body = new ExifDateReader.CountingInputStream(raw)) {
+            if (response.statusCode() != 200) {
+                throw new IOException("HTTP " + response.statusCode() + " für Vorschau");
+            }
+            return body.readAllBytes();
+        } finally {
+            handle.release(raw);
+        }
+    }
+
+    /**
+     * Hasht eine (Vorschau-)Bilddatei.
+     * @throws IOException wenn das Bild nicht dekodiert werden kann
+     */
+    public static long hash(byte[] image) throws IOException {
+        return dHash(decodeSubsampled(new ByteArrayInputStream(image)));
+    }
+
+    /**
+     * Dekodiert das Bild und liest dabei nur so viele Pixel, wie für den Hash nötig sind.
+     */
+    static BufferedImage decodeSubsampled(InputStream in) throws IOException {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(in)) {
+            if (stream == null) {
+                throw new IOException("Bild nicht lesbar");
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                throw new IOException("Unbekanntes Bildformat");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                int step = Math.max(1, Math.min(reader.getWidth(0), reader.getHeight(0)) / DECODE_TARGET);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * dHash: 9x8 gemittelte Graustufen, Bit = linkes Pixel heller als rechtes.
+     */
+    static long dHash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double[] sum = new double[9 * 8];
+        int[] count = new int[9 * 8];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int cy = y * 8 / height;
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                int r = (rgb >> 16) & 0xFF, g = (rgb >> 8) & 0xFF, b = rgb & 0xFF;
+                int cell = cy * 9 + x * 9 / width;
+                sum[cell] += 0.299 * r + 0.587 * g + 0.114 * b;
+                count[cell]++;
+            }
+        }
+        long hash = 0;
+        int bit = 0;
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                int left = y * 9 + x;
+                double l = count[left] == 0 ? 0 : sum[left] / count[left];
+                double r = count[left + 1] == 0 ? 0 : sum[left + 1] / count[left + 1];
+                if (l > r) {
+                    hash |= 1L << bit;
+                }
+                bit++;
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,200 @@
+package de.nikl4s;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.dv8tion.jda.api.entities.Message.Attachment;
+
+/**
+ * Eigene, begrenzte Verarbeitungsstufe für die EXIF-Prüfung von Bildern.
+ *
+ * Der Abruf erfolgt über den {@link ExifDateReader}, der bei JPEGs nur den Dateianfang lädt.
+ * Zusätzlich wird per {@link ImageHasher} ein Wahrnehmungs-Hash einer verkleinerten Vorschau berechnet.
+ * Ergebnisse landen im {@link AttachmentCache}: ein bereits geprüfter Anhang wird ohne Download und ohne
+ * Worker beantwortet, gleichzeitige Prüfungen desselben Anhangs teilen sich einen Future.
+ * Download und Parsing laufen auf einem kleinen Worker-Pool statt auf dem JDA-Event-Thread.
+ * Die Warteschlange ist begrenzt: ist sie voll, wird {@link #inspect(Attachment, boolean)} sofort
+ * mit {@link RejectedExecutionException} abgewiesen (Backpressure), statt Arbeit unbegrenzt aufzustauen.
+ *
+ * Jede Prüfung hat eine Frist von {@link #DOWNLOAD_TIMEOUT_SECONDS} ab dem Einreihen, Wartezeit und Lesen des
+ * Bodys eingeschlossen ({@code HttpRequest.timeout} begrenzt nur das Warten auf die Antwort-Header). Läuft sie ab,
+ * endet der Future mit einer {@link TimeoutException} und der gerade gelesene Body wird geschlossen
+ * ({@link DownloadHandle}), sodass ein hängender Server keinen der Worker festhält.
+ */
+public class ImageVerifier {
+    public static final int WORKERS = 2;
+    public static final int QUEUE_CAPACITY = 16;
+    public static final long DOWNLOAD_TIMEOUT_SECONDS = 15;
+
+    private final ThreadPoolExecutor executor;
+    private final ExifDateReader exifReader;
+    private final ImageHasher hasher;
+    private final AttachmentCache cache;
+    private final Map<AttachmentCache.Key, CompletableFuture<ImageCheck>> inFlightWithDate = new ConcurrentHashMap<>();
+    private final Map<AttachmentCache.Key, CompletableFuture<ImageCheck>> inFlightHashOnly = new ConcurrentHashMap<>();
+
+    public ImageVerifier(AttachmentCache cache) {
+        this(HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(DOWNLOAD_TIMEOUT_SECONDS))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build(), cache);
+    }
+
+    private ImageVerifier(HttpClient client, AttachmentCache cache) {
+        this(new ExifDateReader(client, Duration.ofSeconds(DOWNLOAD_TIMEOUT_SECONDS)),
+                new ImageHasher(client, Duration.ofSeconds(DOWNLOAD_TIMEOUT_SECONDS)), cache);
+    }
+
+    public ImageVerifier(ExifDateReader exifReader, ImageHasher hasher, AttachmentCache cache) {
+        this.exifReader = exifReader;
+        this.hasher = hasher;
+        this.cache = cache;
+        AtomicInteger threadNo = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(WORKERS, WORKERS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                r -> {
+                    Thread t = new Thread(r, "image-verify-" + threadNo.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Ergebnis einer Bildprüfung.
+     */
+    public static final class ImageCheck {
+        public final LocalDate shotDate; // null, wenn nicht gelesen oder nicht vorhanden
+        public final boolean hashed;     // false, wenn die Vorschau nicht geladen/dekodiert werden konnte
+        public final long hash;
+
+        public ImageCheck(LocalDate shotDate, boolean hashed, long hash) {
+            this.shotDate = shotDate;
+            this.hashed = hashed;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Prüft das Bild asynchron: optional Aufnahmedatum (EXIF DateTimeOriginal), immer Wahrnehmungs-Hash.
+     * Ein fehlgeschlagener Hash bricht die Prüfung nicht ab ({@link ImageCheck#hashed} ist dann false);
+     * ein Fehler beim EXIF-Lesen beendet den Future mit einer Exception.
+     *
+     * @param withShotDate true, wenn das Aufnahmedatum gelesen werden soll
+     * @throws RejectedExecutionException wenn die Warteschlange voll ist
+     */
+    public CompletableFuture<ImageCheck> inspect(Attachment image, boolean withShotDate) {
+        AttachmentCache.Key key = new AttachmentCache.Key(image.getIdLong(), image.getSize());
+        AttachmentCache.Meta known = cache.meta(key);
+        if (covers(known, withShotDate)) {
+            return CompletableFuture.completedFuture(new ImageCheck(withShotDate ? known.shotDate : null, true, known.hash));
+        }
+        // eine laufende Prüfung mit Aufnahmedatum deckt auch eine ohne ab
+        CompletableFuture<ImageCheck> running = inFlightWithDate.get(key);
+        if (running != null) {
+            return running;
+        }
+        Map<AttachmentCache.Key, CompletableFuture<ImageCheck>> inFlight = withShotDate ? inFlightWithDate : inFlightHashOnly;
+        CompletableFuture<ImageCheck> future = inFlight.computeIfAbsent(key, k -> submit(image, k, withShotDate));
+        future.whenComplete((check, error) -> inFlight.remove(key, future));
+        return future;
+    }
+
+    /**
+     * Reiht die Prüfung ein; der gelieferte Future endet spätestens nach {@link #DOWNLOAD_TIMEOUT_SECONDS}.
+     */
+    private CompletableFuture<ImageCheck> submit(Attachment image, AttachmentCache.Key key, boolean withShotDate) {
+        CompletableFuture<ImageCheck> future = new CompletableFuture<>();
+        DownloadHandle downloads = new DownloadHandle();
+        executor.execute(() -> {
+            if (future.isDone()) { // Frist schon in der Warteschlange abgelaufen
+                return;
+            }
+            try {
+                future.complete(check(image, key, withShotDate, downloads));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        future.orTimeout(DOWNLOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS).whenComplete((check, error) -> {
+            if (error instanceof TimeoutException) {
+                Metrics.IMAGE_ERRORS.increment();
+                System.err.println("[ImageVerifier] Prüfung nach " + DOWNLOAD_TIMEOUT_SECONDS + " s abgebrochen: " + image.getUrl());
+                downloads.abort();
+            }
+        });
+        return future;
+    }
+
+    private static boolean covers(AttachmentCache.Meta meta, boolean withShotDate) {
+        return meta != null && meta.hashed && (meta.shotDateChecked || !withShotDate);
+    }
+
+    private ImageCheck check(Attachment image, AttachmentCache.Key key, boolean withShotDate, DownloadHandle downloads) {
+        try {
+            AttachmentCache.Meta known = cache.meta(key);
+            LocalDate shotDate = null;
+            boolean shotDateChecked = false;
+            if (withShotDate) {
+                if (known != null && known.shotDateChecked) {
+                    shotDate = known.shotDate;
+                } else {
+                    long start = System.nanoTime();
+                    shotDate = exifReader.readShotDate(URI.create(image.getUrl()), downloads);
+                    Metrics.EXIF_READ.recordSince(start);
+                }
+                shotDateChecked = true;
+            }
+            if (known != null && known.hashed) {
+                cache.putMeta(key, new AttachmentCache.Meta(shotDateChecked, shotDate, true, known.hash));
+                return new ImageCheck(shotDate, true, known.hash);
+            }
+            try {
+                long start = System.nanoTime();
+                byte[] preview = cache.bytes(key, "preview", () -> hasher.fetchPreview(image.getProxyUrl(), downloads));
+                long hash = ImageHasher.hash(preview);
+                Metrics.IMAGE_HASH.recordSince(start);
+                cache.putMeta(key, new AttachmentCache.Meta(shotDateChecked, shotDate, true, hash));
+                return new ImageCheck(shotDate, true, hash);
+            } catch (IOException | RuntimeException e) {
+                if (downloads.isAborted()) {
+                    // Frist abgelaufen: kein Fehlschlag, der im Cache landen darf
+                    throw new IllegalStateException("Vorschau-Download abgebrochen", e);
+                }
+                Metrics.IMAGE_ERRORS.increment();
+                System.err.println("[ImageVerifier] Hash fehlgeschlagen: " + e.getMessage());
+                cache.putMeta(key, new AttachmentCache.Meta(shotDateChecked, shotDate, false, 0L));
+                return new ImageCheck(shotDate, false, 0L);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Bildprüfung unterbrochen", e);
+        } catch (Exception e) {
+            if (!downloads.isAborted()) { // der Abbruch ist schon gezählt
+                Metrics.IMAGE_ERRORS.increment();
+            }
+            throw new IllegalStateException("EXIF-Prüfung fehlgeschlagen: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Nimmt keine neuen Bilder mehr an und wartet höchstens {@code timeoutMillis} auf laufende Prüfungen.
+     * @return true, wenn alle Prüfungen abgeschlossen wurden
+     */
+    public boolean shutdown(long timeoutMillis) throws InterruptedException {
+        executor.shutdown();
+        return executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+}
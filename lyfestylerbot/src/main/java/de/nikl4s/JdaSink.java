@@ -0,0 +1,36 @@
+package de.nikl4s;
+
+import java.util.concurrent.CompletableFuture;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
+
+/**
+ * Versendet die Nachrichten der {@link OutboundQueue} über JDA.
+ *
+ * JDA wiederholt abgewiesene Anfragen selbst und gibt keine Rate-Limit-Header heraus; die Queue plant
+ * daher mit ihrem eigenen Kanal-Bucket.
+ */
+public class JdaSink implements OutboundQueue.Sink {
+    private volatile JDA jda;
+
+    /**
+     * Direkt nach {@code JDABuilder.build()} aufrufen, bevor Nachrichten-Events eintreffen.
+     */
+    public void bind(JDA jda) {
+        this.jda = jda;
+    }
+
+    @Override
+    public CompletableFuture<OutboundQueue.SendResult> send(long channelId, String content) {
+        JDA current = jda;
+        if (current == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("JDA noch nicht verbunden"));
+        }
+        MessageChannel channel = current.getChannelById(MessageChannel.class, channelId);
+        if (channel == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Kanal " + channelId + " unbekannt"));
+        }
+        return channel.sendMessage(content).submit().thenApply(message -> OutboundQueue.SendResult.UNKNOWN);
+    }
+}
@@ -0,0 +1,358 @@
+package de.nikl4s;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Zeitgesteuerte Jobs (Tages-/Monatsabschluss, Monatsanfangs-Post) auf eigenen Threads, getrennt vom JDA-Gateway.
+ *
+ * Zeitrad: {@link #WHEEL_SIZE} Fächer zu je {@link #TICK_MILLIS}; ein Job liegt im Fach seines Fälligkeits-Ticks
+ * und zählt ganze Umdrehungen herunter. Der Rad-Thread prüft pro Tick nur ein Fach, ausgeführt wird auf einem
+ * separaten Runner-Thread, nacheinander in Fälligkeitsreihenfolge.
+ *
+ * Fälligkeiten sind Kalenderzeiten in der Zeitzone von {@link #clock}: fällt eine Uhrzeit in eine
+ * Zeitumstellungs-Lücke, läuft der Job direkt danach (02:30 wird zu 03:30); in der doppelten Stunde läuft er nur einmal.
+ *
+ * Nach jedem erfolgreichen Lauf wird die geplante Zeit als Marke gespeichert. Beim Start wird ein verpasster
+ * Lauf einmal nachgeholt, sofern er nicht älter als das Nachhol-Fenster des Jobs ist.
+ *
+ * Ohne {@link #start()} lassen sich die Jobs mit {@link #runDue()} auf dem aufrufenden Thread treiben, etwa mit
+ * einer vorgestellten Uhr in der {@link Simulation}.
+ */
+public class JobScheduler {
+    public static final long TICK_MILLIS = 1000;
+    public static final int WHEEL_SIZE = 512;
+
+    private final Path markerFile;
+    private final Clock clock;
+    private final Properties markers = new Properties();
+    private final List<Entry> entries = new ArrayList<>();
+
+    // Fächer werden nur vom Rad-Thread angefasst; neue Timeouts kommen über pending
+    private final List<ArrayDeque<Timeout>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private final ConcurrentLinkedQueue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final ExecutorService runner;
+    private volatile Thread wheelThread;
+    private volatile boolean stopped;
+    private long startNanos;
+    private long tick;
+
+    /**
+     * Berechnet die nächste Fälligkeit echt nach {@code after}.
+     */
+    @FunctionalInterface
+    public interface Trigger {
+        ZonedDateTime next(ZonedDateTime after);
+    }
+
+    /**
+     * Auszuführende Arbeit; {@code scheduledFor} ist die geplante (ggf. nachgeholte) Zeit.
+     */
+    @FunctionalInterface
+    public interface Job {
+        void run(ZonedDateTime scheduledFor) throws Exception;
+    }
+
+    private static final class Entry {
+        final String name;
+        final Trigger trigger;
+        final Duration catchUp;
+        final Job job;
+        ZonedDateTime nextDue; // nur für runDue()
+
+        Entry(String name, Trigger trigger, Duration catchUp, Job job) {
+            this.name = name;
+            this.trigger = trigger;
+            this.catchUp = catchUp;
+            this.job = job;
+        }
+    }
+
+    private static final class Timeout {
+        final Entry entry;
+        final ZonedDateTime due;
+        long rounds;
+
+        Timeout(Entry entry, ZonedDateTime due) {
+            this.entry = entry;
+            this.due = due;
+        }
+    }
+
+    private JobScheduler(Path markerFile, Clock clock) {
+        this.markerFile = markerFile;
+        this.clock = clock;
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ArrayDeque<>());
+        }
+        this.runner = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "job-runner");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Lädt die gespeicherten Lauf-Marken; Jobs laufen erst nach {@link #start()}.
+     * @param clock Zeitzone der Fälligkeiten und Wanduhr für Marken und Nachholen
+     */
+    public static JobScheduler open(Path markerFile, Clock clock) throws IOException {
+        JobScheduler scheduler = new JobScheduler(markerFile, clock);
+        if (Files.exists(markerFile)) {
+            try (Reader reader = Files.newBufferedReader(markerFile, StandardCharsets.UTF_8)) {
+                scheduler.markers.load(reader);
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * Täglich zur Uhrzeit {@code at}.
+     */
+    public static Trigger daily(LocalTime at) {
+        return after -> {
+            LocalDate day = after.toLocalDate();
+            while (true) {
+                ZonedDateTime candidate = ZonedDateTime.of(day, at, after.getZone());
+                if (candidate.isAfter(after)) {
+                    return candidate;
+                }
+                day = day.plusDays(1);
+            }
+        };
+    }
+
+    /**
+     * Monatlich am Tag {@code dayOfMonth} (1-28) zur Uhrzeit {@code at}.
+     */
+    public static Trigger monthly(int dayOfMonth, LocalTime at) {
+        if (dayOfMonth < 1 || dayOfMonth > 28) {
+            throw new IllegalArgumentException("dayOfMonth muss zwischen 1 und 28 liegen: " + dayOfMonth);
+        }
+        return after -> {
+            LocalDate day = after.toLocalDate().withDayOfMonth(dayOfMonth);
+            while (true) {
+                ZonedDateTime candidate = ZonedDateTime.of(day, at, after.getZone());
+                if (candidate.isAfter(after)) {
+                    return candidate;
+                }
+                day = day.plusMonths(1);
+            }
+        };
+    }
+
+    /**
+     * Meldet einen Job an. Nur vor {@link #start()} aufrufen.
+     * @param catchUp wie alt ein verpasster Lauf beim Start höchstens sein darf, um nachgeholt zu werden
+     */
+    public void schedule(String name, Trigger trigger, Duration catchUp, Job job) {
+        if (wheelThread != null) {
+            throw new IllegalStateException("Scheduler läuft bereits");
+        }
+        for (Entry existing : entries) {
+            if (existing.name.equals(name)) {
+                throw new IllegalArgumentException("Job " + name + " ist schon angemeldet");
+            }
+        }
+        entries.add(new Entry(name, trigger, catchUp, job));
+    }
+
+    /**
+     * Holt verpasste Läufe nach und startet das Zeitrad.
+     */
+    public synchronized void start() {
+        if (wheelThread != null) {
+            return;
+        }
+        ZonedDateTime now = ZonedDateTime.now(clock);
+        for (Entry entry : entries) {
+            String marker = markers.getProperty(entry.name);
+            if (marker == null) {
+                // Erster Start mit diesem Job: nichts nachholen
+                writeMarker(entry, now);
+            } else {
+                ZonedDateTime missed = latestMissed(entry, Instant.parse(marker).atZone(clock.getZone()), now);
+                if (missed != null) {
+                    if (Duration.between(missed, now).compareTo(entry.catchUp) <= 0) {
+                        System.out.println("[JobScheduler] Hole " + entry.name + " für " + missed + " nach");
+                        runner.execute(() -> execute(entry, missed));
+                    } else {
+                        System.out.println("[JobScheduler] " + entry.name + " für " + missed + " zu alt, übersprungen");
+                        writeMarker(entry, missed);
+                    }
+                }
+            }
+            pending.add(new Timeout(entry, entry.trigger.next(now)));
+        }
+        startNanos = System.nanoTime();
+        Thread t = new Thread(this::runWheel, "job-wheel");
+        t.setDaemon(true);
+        wheelThread = t;
+        t.start();
+    }
+
+    /**
+     * Letzte Fälligkeit zwischen Marke und jetzt; null, wenn keine verpasst wurde.
+     */
+    private static ZonedDateTime latestMissed(Entry entry, ZonedDateTime lastRun, ZonedDateTime now) {
+        ZonedDateTime missed = null;
+        ZonedDateTime next = entry.trigger.next(lastRun);
+        while (!next.isAfter(now)) {
+            missed = next;
+            next = entry.trigger.next(next);
+        }
+        return missed;
+    }
+
+    private void runWheel() {
+        while (!stopped) {
+            long deadline = startNanos + TimeUnit.MILLISECONDS.toNanos((tick + 1) * TICK_MILLIS);
+            long sleep = deadline - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            Timeout added;
+            while ((added = pending.poll()) != null) {
+                place(added);
+            }
+            ArrayDeque<Timeout> slot = wheel.get((int) (tick % WHEEL_SIZE));
+            for (Iterator<Timeout> it = slot.iterator(); it.hasNext(); ) {
+                Timeout timeout = it.next();
+                if (timeout.rounds > 0) {
+                    timeout.rounds--;
+                    continue;
+                }
+                it.remove();
+                fire(timeout);
+            }
+            tick++;
+        }
+    }
+
+    /**
+     * Legt den Timeout in das Fach seines Fälligkeits-Ticks. Nur auf dem Rad-Thread aufrufen.
+     */
+    private void place(Timeout timeout) {
+        long delayMillis = Math.max(0, timeout.due.toInstant().toEpochMilli() - clock.millis());
+        long elapsedTicks = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) / TICK_MILLIS;
+        long dueTick = Math.max(tick, elapsedTicks + (delayMillis + TICK_MILLIS - 1) / TICK_MILLIS);
+        timeout.rounds = (dueTick - tick) / WHEEL_SIZE;
+        wheel.get((int) (dueTick % WHEEL_SIZE)).add(timeout);
+    }
+
+    private void fire(Timeout timeout) {
+        // Das Rad misst monotone Zeit; ist die Wanduhr zurückgestellt worden, erneut einreihen
+        if (timeout.due.toInstant().toEpochMilli() > clock.millis()) {
+            place(timeout);
+            return;
+        }
+        Entry entry = timeout.entry;
+        runner.execute(() -> {
+            execute(entry, timeout.due);
+            if (!stopped) {
+                // Fälligkeiten, die während eines langen Laufs verstrichen sind, nicht nachholen
+                ZonedDateTime now = ZonedDateTime.now(clock);
+                pending.add(new Timeout(entry, entry.trigger.next(now.isAfter(timeout.due) ? now : timeout.due)));
+            }
+        });
+    }
+
+    /**
+     * Führt alle bis jetzt (laut {@link #clock}) fälligen Läufe sofort auf dem aufrufenden Thread aus, in
+     * Fälligkeitsreihenfolge und ohne Zeitrad. Anders als beim Start wird dabei jede Fälligkeit einzeln nachgeholt.
+     * Nicht zusammen mit {@link #start()} verwenden.
+     * @return Anzahl der ausgeführten Läufe
+     */
+    public synchronized int runDue() {
+        if (wheelThread != null) {
+            throw new IllegalStateException("Scheduler läuft bereits mit Zeitrad");
+        }
+        ZonedDateTime now = ZonedDateTime.now(clock);
+        int runs = 0;
+        while (true) {
+            Entry due = null;
+            for (Entry entry : entries) {
+                if (entry.nextDue == null) {
+                    String marker = markers.getProperty(entry.name);
+                    ZonedDateTime from = marker == null ? now : Instant.parse(marker).atZone(clock.getZone());
+                    if (marker == null) {
+                        writeMarker(entry, now);
+                    }
+                    entry.nextDue = entry.trigger.next(from);
+                }
+                if (!entry.nextDue.isAfter(now) && (due == null || entry.nextDue.isBefore(due.nextDue))) {
+                    due = entry;
+                }
+            }
+            if (due == null) {
+                return runs;
+            }
+            execute(due, due.nextDue);
+            due.nextDue = due.trigger.next(due.nextDue);
+            runs++;
+        }
+    }
+
+    private void execute(Entry entry, ZonedDateTime scheduledFor) {
+        try {
+            entry.job.run(scheduledFor);
+            writeMarker(entry, scheduledFor);
+        } catch (Exception e) {
+            System.err.println("[JobScheduler] " + entry.name + " fehlgeschlagen: " + e.getMessage());
+        }
+    }
+
+    private synchronized void writeMarker(Entry entry, ZonedDateTime ranFor) {
+        markers.setProperty(entry.name, ranFor.toInstant().toString());
+        Path tmp = markerFile.resolveSibling(markerFile.getFileName() + ".tmp");
+        try {
+            if (markerFile.getParent() != null) {
+                Files.createDirectories(markerFile.getParent());
+            }
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                markers.store(writer, "Letzte Läufe der geplanten Jobs");
+            }
+            Files.move(tmp, markerFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("[JobScheduler] Marke für " + entry.name + " nicht gespeichert: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Hält das Zeitrad an und wartet höchstens {@code timeoutMillis} auf einen laufenden Job.
+     * @return true, wenn kein Job mehr läuft
+     */
+    public boolean shutdown(long timeoutMillis) throws InterruptedException {
+        stopped = true;
+        Thread t = wheelThread;
+        if (t != null) {
+            t.interrupt();
+        }
+        runner.shutdown();
+        return runner.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,122 @@
+package de.nikl4s;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
+import net.dv8tion.jda.api.interactions.components.buttons.Button;
+
+/**
+ * Blätterbares Ranking für /rank: ein Embed pro Seite, Vor/Zurück über Buttons.
+ *
+ * Jede /rank-Antwort bekommt einen Cursor mit dem eingefrorenen Stand der Rangliste ({@link PointsManager.RankBoard});
+ * beim Blättern wird nur der Ausschnitt der Seite formatiert, unabhängig von der Anzahl der Mitglieder. Die Button-IDs
+ * tragen Cursor, Rangliste und Zielseite ("rank:&lt;cursor&gt;:&lt;m|y&gt;:&lt;seite&gt;"); ist der Cursor nicht mehr
+ * im Cache (Neustart, verdrängt, älter als {@link #CURSOR_TTL_MILLIS}), wird er aus dem aktuellen Stand neu angelegt.
+ */
+public class LeaderboardPages {
+    public static final String BUTTON_PREFIX = "rank:";
+    public static final int PAGE_SIZE = 15;
+    public static final int MAX_CURSORS = 512;
+    public static final long CURSOR_TTL_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    private final GuildShards shards;
+    private final AtomicLong nextCursor = new AtomicLong(System.currentTimeMillis());
+    private final Map<Long, Cursor> cursors = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Cursor> eldest) {
+            return size() > MAX_CURSORS;
+        }
+    };
+
+    private static final class Cursor {
+        final long guildId;
+        final PointsManager.RankBoard board;
+        final long createdAt;
+
+        Cursor(long guildId, PointsManager.RankBoard board) {
+            this.guildId = guildId;
+            this.board = board;
+            this.createdAt = System.currentTimeMillis();
+        }
+    }
+
+    public LeaderboardPages(GuildShards shards) {
+        this.shards = shards;
+    }
+
+    /**
+     * /rank [liste]: erste Seite der Monats- oder Jahresrangliste.
+     */
+    public void handleRank(PointsManager pointsManager, SlashCommandInteractionEvent event) {
+        var option = event.getOption("liste");
+        boolean year = option != null && "jahr".equals(option.getAsString());
+        long id = nextCursor.incrementAndGet();
+        Cursor cursor = new Cursor(event.getGuild().getIdLong(), pointsManager.rankBoard(year));
+        synchronized (cursors) {
+            cursors.put(id, cursor);
+        }
+        event.replyEmbeds(render(cursor, 0)).addActionRow(buttons(id, cursor, 0)).queue();
+    }
+
+    /**
+     * Button "zurück"/"weiter" unter einer /rank-Antwort.
+     */
+    public void handleButton(ButtonInteractionEvent event) {
+        String[] parts = event.getComponentId().split(":");
+        if (parts.length != 4 || event.getGuild() == null) {
+            return;
+        }
+        long id;
+        int page;
+        try {
+            id = Long.parseLong(parts[1]);
+            page = Integer.parseInt(parts[3]);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        boolean year = "y".equals(parts[2]);
+        long guildId = event.getGuild().getIdLong();
+        Cursor cursor;
+        synchronized (cursors) {
+            cursor = cursors.get(id);
+        }
+        if (cursor == null || cursor.guildId != guildId || System.currentTimeMillis() - cursor.createdAt > CURSOR_TTL_MILLIS) {
+            try (var lease = shards.acquire(guildId)) {
+                cursor = new Cursor(guildId, lease.points().rankBoard(year));
+            }
+            synchronized (cursors) {
+                cursors.put(id, cursor);
+            }
+        }
+        page = Math.max(0, Math.min(page, pageCount(cursor) - 1));
+        event.editMessageEmbeds(render(cursor, page)).setActionRow(buttons(id, cursor, page)).queue();
+    }
+
+    private static int pageCount(Cursor cursor) {
+        return Math.max(1, (cursor.board.size() + PAGE_SIZE - 1) / PAGE_SIZE);
+    }
+
+    private static MessageEmbed render(Cursor cursor, int page) {
+        int total = cursor.board.size();
+        String lines = cursor.board.renderLines(page * PAGE_SIZE, PAGE_SIZE);
+        return new EmbedBuilder()
+                .setTitle(cursor.board.title)
+                .setDescription(lines.isEmpty() ? (cursor.board.year ? "Es gibt noch keine Jahrespunkte." : "Es gibt noch keine Punkte.") : lines)
+                .setFooter("Seite " + (page + 1) + "/" + pageCount(cursor) + " · " + total + " Teilnehmer")
+                .build();
+    }
+
+    private static Button[] buttons(long id, Cursor cursor, int page) {
+        String base = BUTTON_PREFIX + id + ":" + (cursor.board.year ? "y" : "m") + ":";
+        return new Button[] {
+            Button.secondary(base + (page - 1), "◀ Zurück").withDisabled(page == 0),
+            Button.secondary(base + (page + 1), "Weiter ▶").withDisabled(page >= pageCount(cursor) - 1)
+        };
+    }
+}
@@ -0,0 +1,156 @@
+package de.nikl4s;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.channel.Channel;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.entities.channel.middleman.GuildMessageChannel;
+import net.dv8tion.jda.api.events.channel.ChannelCreateEvent;
+import net.dv8tion.jda.api.events.channel.ChannelDeleteEvent;
+import net.dv8tion.jda.api.events.channel.update.ChannelUpdateNameEvent;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.events.session.ReadyEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+
+/**
+ * Einziger Listener für Nachrichten. Klassifiziert jede Nachricht genau einmal und reicht nur
+ * Kommandos an die zuständigen Handler ({@link GymTracker}, {@link WakeUpTracker}) weiter.
+ *
+ * Reihenfolge der Prüfungen, billigste zuerst:
+ * - erstes Zeichen des Roh-Inhalts ist kein '!': sofort verwerfen (normaler Chat)
+ * - Kommando per regionMatches erkennen, ohne neue Strings anzulegen
+ * - Kanal-Art über die Kanal-ID aus einer vorberechneten Map
+ *
+ * Die Kanal-IDs stammen aus der {@link BotConfig}. Nur wenn dort keine eingetragen sind, gilt die
+ * alte Erkennung über Kanalnamen: Die Map dafür wird beim Start aus allen Textkanälen befüllt und bei Anlage, Umbenennung oder Löschung
+ * eines Kanals aktualisiert; unbekannte Kanäle werden beim ersten Kommando einmalig nachgetragen.
+ */
+public class MessageRouter extends ListenerAdapter {
+    public static final String GYM_CHANNEL = "╠►pumper";
+    public static final String WAKE_CHANNEL = "╠►frühe-vögel";
+
+    /**
+     * Art eines Kanals; OTHER steht auch für "bereits geprüft, kein Bot-Kanal".
+     */
+    public enum ChannelKind { GYM, WAKE, OTHER }
+
+    private final ConfigWatcher config;
+    private final GymTracker gymTracker;
+    private final WakeUpTracker wakeUpTracker;
+    // Erkennung über Kanalnamen, nur solange keine Kanal-IDs konfiguriert sind
+    private final Map<Long, ChannelKind> channelKinds = new ConcurrentHashMap<>();
+
+    public MessageRouter(ConfigWatcher config, GymTracker gymTracker, WakeUpTracker wakeUpTracker) {
+        this.config = config;
+        this.gymTracker = gymTracker;
+        this.wakeUpTracker = wakeUpTracker;
+    }
+
+    /**
+     * Kanäle eines Servers für Bot-Posts: die konfigurierten IDs dieser Art, sonst die Kanäle mit dem bekannten Namen.
+     */
+    public static List<TextChannel> channelsOf(Guild guild, BotConfig config, ChannelKind kind) {
+        long[] ids = kind == ChannelKind.GYM ? config.gymChannelIds() : kind == ChannelKind.WAKE ? config.wakeChannelIds() : new long[0];
+        if (ids.length == 0) {
+            String name = kind == ChannelKind.GYM ? GYM_CHANNEL : kind == ChannelKind.WAKE ? WAKE_CHANNEL : null;
+            return name == null ? List.of() : guild.getTextChannelsByName(name, true);
+        }
+        List<TextChannel> channels = new ArrayList<>();
+        for (long id : ids) {
+            TextChannel channel = guild.getTextChannelById(id);
+            if (channel != null) {
+                channels.add(channel);
+            }
+        }
+        return channels;
+    }
+
+    @Override
+    public void onMessageReceived(MessageReceivedEvent event) {
+        String content = event.getMessage().getContentRaw();
+        if (content.isEmpty() || content.charAt(0) != '!') {
+            return;
+        }
+        if (!event.isFromGuild() || event.getAuthor().isBot()) {
+            return;
+        }
+        Metrics.firstEventHandled();
+
+        if (isCommand(content, "!gym", true)) {
+            if (kindOf(event) == ChannelKind.GYM) {
+                gymTracker.handleGym(event);
+            }
+        } else if (isCommand(content, "!rank", true)) {
+            gymTracker.handleRank(event);
+        } else if (isCommand(content, "!awake", false)) {
+            if (kindOf(event) == ChannelKind.WAKE) {
+                wakeUpTracker.handleAwake(event);
+            }
+        }
+    }
+
+    /**
+     * Vergleicht ohne Beachtung der Groß-/Kleinschreibung und ohne Allokation.
+     * @param exact true: Inhalt muss genau das Kommando sein, false: Inhalt muss damit beginnen
+     */
+    static boolean isCommand(String content, String command, boolean exact) {
+        if (exact ? content.length() != command.length() : content.length() < command.length()) {
+            return false;
+        }
+        return content.regionMatches(true, 0, command, 0, command.length());
+    }
+
+    private ChannelKind kindOf(MessageReceivedEvent event) {
+        long channelId = event.getChannel().getIdLong();
+        BotConfig current = config.current();
+        if (current.hasChannelIds()) {
+            return current.channelKind(channelId);
+        }
+        ChannelKind kind = channelKinds.get(channelId);
+        if (kind == null) {
+            kind = classify(event.getChannel().getName());
+            channelKinds.put(channelId, kind);
+        }
+        return kind;
+    }
+
+    static ChannelKind classify(String channelName) {
+        if (GYM_CHANNEL.equalsIgnoreCase(channelName)) {
+            return ChannelKind.GYM;
+        }
+        if (WAKE_CHANNEL.equalsIgnoreCase(channelName)) {
+            return ChannelKind.WAKE;
+        }
+        return ChannelKind.OTHER;
+    }
+
+    @Override
+    public void onReady(ReadyEvent event) {
+        for (GuildMessageChannel channel : event.getJDA().getTextChannels()) {
+            channelKinds.put(channel.getIdLong(), classify(channel.getName()));
+        }
+    }
+
+    @Override
+    public void onChannelCreate(ChannelCreateEvent event) {
+        updateChannel(event.getChannel());
+    }
+
+    @Override
+    public void onChannelUpdateName(ChannelUpdateNameEvent event) {
+        updateChannel(event.getChannel());
+    }
+
+    @Override
+    public void onChannelDelete(ChannelDeleteEvent event) {
+        channelKinds.remove(event.getChannel().getIdLong());
+    }
+
+    private void updateChannel(Channel channel) {
+        channelKinds.put(channel.getIdLong(), classify(channel.getName()));
+    }
+}
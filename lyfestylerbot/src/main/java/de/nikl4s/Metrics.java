@@ -0,0 +1,317 @@
+package de.nikl4s;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prozessweite Kennzahlen des Bots: Latenz-Histogramme und Zähler, abrufbar im Prometheus-Textformat
+ * ({@link MetricsServer}) und als Kurzfassung für /botstats.
+ *
+ * Alle Metriken sind Konstanten dieser Klasse (bzw. pro Slash-Command einmal angelegt), damit das Erfassen
+ * nur aus Array-/Adder-Updates besteht und nichts allokiert. Histogramme arbeiten log-linear wie HdrHistogram:
+ * Werte in Mikrosekunden, 16 Unterteilungen pro Zweierpotenz (höchstens 6,25 % Abweichung), bis ca. 19 Stunden.
+ */
+public final class Metrics {
+    private static final Map<String, Family> FAMILIES = new LinkedHashMap<>();
+    private static final Map<String, Histogram> SLASH_COMMANDS = new ConcurrentHashMap<>();
+
+    // Zeit vom Eingang eines Kommandos bis zur Übergabe der Antwort (Queue bzw. Interaction-Reply)
+    private static final String COMMAND_LATENCY = "lyfe_command_latency_seconds";
+    private static final String COMMAND_LATENCY_HELP = "Zeit vom Eingang eines Kommandos bis zur Übergabe der Antwort";
+    public static final Histogram GYM = histogram(COMMAND_LATENCY, COMMAND_LATENCY_HELP, "command", "!gym");
+    public static final Histogram AWAKE = histogram(COMMAND_LATENCY, COMMAND_LATENCY_HELP, "command", "!awake");
+    public static final Histogram RANK = histogram(COMMAND_LATENCY, COMMAND_LATENCY_HELP, "command", "!rank");
+
+    public static final Histogram EXIF_READ = histogram("lyfe_exif_read_seconds",
+            "Aufnahmedatum lesen (Download des Dateianfangs und Parsen)", null, null);
+    public static final Histogram IMAGE_HASH = histogram("lyfe_image_hash_seconds",
+            "Vorschau laden bzw. aus dem Cache holen und hashen", null, null);
+    public static final Counter IMAGE_BYTES = counter("lyfe_image_download_bytes_total",
+            "Von Discord geladene Bild-Bytes (EXIF-Anfang und Vorschauen)", null, null);
+    public static final Counter IMAGE_ERRORS = counter("lyfe_image_check_errors_total",
+            "Fehlgeschlagene Bildprüfungen (EXIF oder Hash)", null, null);
+    public static final Counter CHEATS_OLD_IMAGE = counter("lyfe_cheats_total",
+            "Erkannte Schummelversuche", "reason", "old_image");
+    public static final Counter CHEATS_REPOST = counter("lyfe_cheats_total",
+            "Erkannte Schummelversuche", "reason", "repost");
+    public static final Histogram LOCK_WAIT = histogram("lyfe_points_lock_wait_seconds",
+            "Wartezeit auf den periodLock im PointsManager (nur Wartezeiten ab 1 µs)", null, null);
+
+    public static final Histogram STARTUP = histogram("lyfe_startup_seconds",
+            "Zeit vom Prozessstart bis zum ersten bearbeiteten Event", null, null);
+    private static final AtomicBoolean FIRST_EVENT = new AtomicBoolean();
+
+    private Metrics() {
+    }
+
+    private static final class Family {
+        final String name;
+        final String help;
+        final String type;
+        final List<Metric> members = new ArrayList<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Gemeinsame Basis; {@code labels} ist schon als Prometheus-Fragment vorbereitet (z.B. {@code command="!gym"}).
+     */
+    public abstract static class Metric {
+        final String labels;
+        final String labelValue;
+
+        Metric(String labelKey, String labelValue) {
+            this.labels = labelKey == null ? "" : labelKey + "=\"" + labelValue.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+            this.labelValue = labelValue;
+        }
+    }
+
+    /**
+     * Monotoner Zähler.
+     */
+    public static final class Counter extends Metric {
+        private final LongAdder value = new LongAdder();
+
+        Counter(String labelKey, String labelValue) {
+            super(labelKey, labelValue);
+        }
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long delta) {
+            value.add(delta);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * Log-lineares Latenz-Histogramm. {@link #record(long)} nimmt Nanosekunden und ist allokationsfrei.
+     */
+    public static final class Histogram extends Metric {
+        static final int SUB_BITS = 4;
+        static final int SUB_COUNT = 1 << SUB_BITS;
+        static final int MAX_EXPONENT = 36;
+        static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+        // Grenzen der exportierten Prometheus-Buckets in Sekunden
+        private static final double[] EXPORT_BOUNDS = { 0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30 };
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder sumMicros = new LongAdder();
+        private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+        Histogram(String labelKey, String labelValue) {
+            super(labelKey, labelValue);
+        }
+
+        public void record(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            counts.incrementAndGet(index(micros));
+            sumMicros.add(micros);
+            maxMicros.accumulate(micros);
+        }
+
+        /**
+         * Erfasst die Zeit seit {@code startNanos} ({@link System#nanoTime()}).
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        static int index(long micros) {
+            if (micros < SUB_COUNT) {
+                return (int) micros;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(micros);
+            if (exponent > MAX_EXPONENT) {
+                return BUCKETS - 1;
+            }
+            int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+            return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+        }
+
+        /**
+         * Größter Wert (in µs), der in Bucket {@code index} fällt.
+         */
+        static long upperBound(int index) {
+            if (index < SUB_COUNT) {
+                return index;
+            }
+            int exponent = index / SUB_COUNT + SUB_BITS - 1;
+            int sub = index % SUB_COUNT;
+            long width = 1L << (exponent - SUB_BITS);
+            return ((SUB_COUNT + sub) * width) + width - 1;
+        }
+
+        private long[] snapshot() {
+            long[] copy = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                copy[i] = counts.get(i);
+            }
+            return copy;
+        }
+
+        /**
+         * Quantil in µs (obere Bucket-Grenze, höchstens das Maximum), 0 ohne Werte.
+         */
+        static long quantile(long[] buckets, long total, long max, double q) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(q * total));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+
+    private static synchronized <M extends Metric> M register(String name, String help, String type, M metric) {
+        Family family = FAMILIES.computeIfAbsent(name, n -> new Family(n, help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(name + " ist bereits als " + family.type + " registriert");
+        }
+        family.members.add(metric);
+        return metric;
+    }
+
+    /**
+     * Vom ersten bearbeiteten Event aufzurufen: erfasst einmalig die Zeit seit dem Start der JVM in {@link #STARTUP}.
+     */
+    public static void firstEventHandled() {
+        if (FIRST_EVENT.get() || !FIRST_EVENT.compareAndSet(false, true)) {
+            return;
+        }
+        long millis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        STARTUP.record(millis * 1_000_000);
+        System.out.println("[Startup] Erstes Event " + millis + " ms nach Prozessstart");
+    }
+
+    static Histogram histogram(String name, String help, String labelKey, String labelValue) {
+        return register(name, help, "histogram", new Histogram(labelKey, labelValue));
+    }
+
+    static Counter counter(String name, String help, String labelKey, String labelValue) {
+        return register(name, help, "counter", new Counter(labelKey, labelValue));
+    }
+
+    /**
+     * Latenz-Histogramm eines Slash-Commands; für bekannte Namen ohne Allokation.
+     */
+    public static Histogram slashCommand(String name) {
+        Histogram histogram = SLASH_COMMANDS.get(name);
+        if (histogram == null) {
+            histogram = SLASH_COMMANDS.computeIfAbsent(name, n -> histogram(COMMAND_LATENCY, COMMAND_LATENCY_HELP, "command", "/" + n));
+        }
+        return histogram;
+    }
+
+    /**
+     * Alle Metriken im Prometheus-Textformat (Version 0.0.4).
+     */
+    public static String prometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        for (Family family : families()) {
+            sb.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            sb.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (Metric metric : members(family)) {
+                if (metric instanceof Counter) {
+                    sb.append(family.name).append(braces(metric.labels)).append(' ').append(((Counter) metric).get()).append('\n');
+                } else {
+                    appendHistogram(sb, family.name, (Histogram) metric);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendHistogram(StringBuilder sb, String name, Histogram histogram) {
+        long[] buckets = histogram.snapshot();
+        String prefix = histogram.labels.isEmpty() ? "{" : "{" + histogram.labels + ",";
+        // ein feiner Bucket zählt erst zur Grenze, wenn er vollständig darunter liegt (höchstens 6,25 % zu spät)
+        long cumulative = 0;
+        int i = 0;
+        for (double bound : Histogram.EXPORT_BOUNDS) {
+            long limitMicros = (long) (bound * 1_000_000);
+            while (i < buckets.length && Histogram.upperBound(i) <= limitMicros) {
+                cumulative += buckets[i++];
+            }
+            sb.append(name).append("_bucket").append(prefix).append("le=\"").append(bound).append("\"} ").append(cumulative).append('\n');
+        }
+        while (i < buckets.length) {
+            cumulative += buckets[i++];
+        }
+        sb.append(name).append("_bucket").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+        sb.append(name).append("_sum").append(braces(histogram.labels)).append(' ')
+          .append(String.format(Locale.ROOT, "%.6f", histogram.sumMicros.sum() / 1e6)).append('\n');
+        sb.append(name).append("_count").append(braces(histogram.labels)).append(' ').append(cumulative).append('\n');
+    }
+
+    private static String braces(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    /**
+     * Kurzfassung für /botstats: pro Histogramm Anzahl, p50/p99/Max, pro Zähler der Stand. Leere Histogramme fehlen.
+     */
+    public static String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Family family : families()) {
+            for (Metric metric : members(family)) {
+                String label = family.name + (metric.labelValue == null ? "" : " " + metric.labelValue);
+                if (metric instanceof Counter) {
+                    sb.append(label).append(": ").append(((Counter) metric).get()).append('\n');
+                    continue;
+                }
+                Histogram histogram = (Histogram) metric;
+                long[] buckets = histogram.snapshot();
+                long total = 0;
+                for (long c : buckets) {
+                    total += c;
+                }
+                if (total == 0) {
+                    continue;
+                }
+                long max = histogram.maxMicros.get();
+                sb.append(label).append(": n=").append(total)
+                  .append(" p50=").append(millis(Histogram.quantile(buckets, total, max, 0.5)))
+                  .append(" p99=").append(millis(Histogram.quantile(buckets, total, max, 0.99)))
+                  .append(" max=").append(millis(max)).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String millis(long micros) {
+        return String.format(Locale.ROOT, "%.1fms", micros / 1000.0);
+    }
+
+    private static synchronized List<Family> families() {
+        return new ArrayList<>(FAMILIES.values());
+    }
+
+    private static synchronized List<Metric> members(Family family) {
+        return new ArrayList<>(family.members);
+    }
+}
@@ -0,0 +1,139 @@
+package de.nikl4s;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.YearMonth;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+
+/**
+ * Monats-/Jahresabschluss für alle Server um Mitternacht: Highscores festschreiben, zurücksetzen und
+ * Gewinner samt Ranking in die Gym-Kanäle posten.
+ *
+ * Hat ein Check-in den Wechsel schon ausgelöst (z.B. weil der Bot um Mitternacht nicht lief), werden die
+ * dabei gerenderten Abschlusstexte gepostet. Wurde der Shard seitdem ausgelagert oder der Bot neu gestartet,
+ * kommen die Texte aus der Ablage ({@link PeriodClose#unposted}). Ein Abschluss gilt erst nach dem Posten als
+ * erledigt; der Job ist idempotent und kann daher gefahrlos nachgeholt werden.
+ */
+public class MonthCloseJob implements JobScheduler.Job {
+
+    /**
+     * Empfänger der angefallenen Abschlüsse eines Servers.
+     */
+    interface Poster {
+        /**
+         * @return false, wenn nicht gepostet werden konnte; die Abschlüsse bleiben dann offen
+         */
+        boolean post(long guildId, List<PeriodClose> closes);
+
+        /**
+         * Abschluss aus der Ablage, von dem nur noch der Text vorliegt.
+         * @return false, wenn nicht gepostet werden konnte
+         */
+        boolean postArchived(long guildId, YearMonth month, String text);
+    }
+
+    private final JDA jda;
+    private final GuildShards shards;
+    private final ConfigWatcher config;
+    private final OutboundQueue outbound;
+
+    public MonthCloseJob(JDA jda, GuildShards shards, ConfigWatcher config, OutboundQueue outbound) {
+        this.jda = jda;
+        this.shards = shards;
+        this.config = config;
+        this.outbound = outbound;
+    }
+
+    @Override
+    public void run(ZonedDateTime scheduledFor) {
+        closeAll(shards, YearMonth.from(scheduledFor), new Poster() {
+            @Override
+            public boolean post(long guildId, List<PeriodClose> closes) {
+                return postCloses(guildId, closes);
+            }
+
+            @Override
+            public boolean postArchived(long guildId, YearMonth month, String text) {
+                return postArchivedClose(guildId, text);
+            }
+        });
+    }
+
+    /**
+     * Schließt für alle bekannten Server die Monate vor {@code month} ab und übergibt angefallene sowie abgelegte,
+     * noch nicht gepostete Abschlüsse an {@code poster}; erfolgreich gepostete werden danach als gepostet vermerkt.
+     * Auch von der {@link Simulation} genutzt, die statt zu posten prüft.
+     * @throws IllegalStateException wenn Server nicht geladen werden konnten; die übrigen sind dann abgeschlossen
+     */
+    static void closeAll(GuildShards shards, YearMonth month, Poster poster) {
+        int failed = 0;
+        for (long guildId : shards.knownGuildIds()) {
+            try (GuildShards.Lease lease = shards.acquire(guildId)) {
+                PointsManager points = lease.points();
+                List<PeriodClose> closes = points.closePeriod(month);
+                Map<YearMonth, String> archived = points.unpostedArchivedCloses();
+                for (Map.Entry<YearMonth, String> e : archived.entrySet()) {
+                    // gerade erst abgeschlossene Monate liegen noch im Speicher und kommen unten
+                    if (e.getKey().isBefore(month) && closes.stream().noneMatch(c -> c.month.equals(e.getKey()))
+                            && poster.postArchived(guildId, e.getKey(), e.getValue())) {
+                        points.markPosted(e.getKey());
+                    }
+                }
+                if (!closes.isEmpty() && poster.post(guildId, closes)) {
+                    points.markPosted(closes);
+                }
+            } catch (UncheckedIOException e) {
+                System.err.println("[MonthCloseJob] " + e.getMessage());
+                failed++;
+            } catch (IOException e) {
+                System.err.println("[MonthCloseJob] Ablage von Server " + Long.toUnsignedString(guildId) + ": " + e.getMessage());
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            throw new IllegalStateException(failed + " Server nicht abgeschlossen");
+        }
+    }
+
+    private boolean postCloses(long guildId, List<PeriodClose> closes) {
+        List<TextChannel> channels = gymChannels(guildId);
+        if (channels == null) {
+            return false;
+        }
+        for (PeriodClose close : closes) {
+            for (TextChannel channel : channels) {
+                outbound.send(channel, close.monthEndText());
+                if (close.yearEnded) {
+                    outbound.send(channel, close.yearEndText());
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean postArchivedClose(long guildId, String text) {
+        List<TextChannel> channels = gymChannels(guildId);
+        if (channels == null) {
+            return false;
+        }
+        for (TextChannel channel : channels) {
+            outbound.send(channel, text);
+        }
+        return true;
+    }
+
+    private List<TextChannel> gymChannels(long guildId) {
+        Guild guild = jda.getGuildById(guildId);
+        if (guild == null) {
+            System.out.println("[MonthCloseJob] Server " + Long.toUnsignedString(guildId) + " nicht erreichbar, Abschluss nicht gepostet");
+            return null;
+        }
+        return MessageRouter.channelsOf(guild, config.current(), MessageRouter.ChannelKind.GYM);
+    }
+}
@@ -0,0 +1,202 @@
+package de.nikl4s;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
+
+/**
+ * Ausgehende Bot-Nachrichten, gebündelt pro Kanal.
+ *
+ * - Nachrichten, die innerhalb von {@link #COALESCE_MILLIS} für denselben Kanal anfallen, gehen als eine
+ *   Nachricht raus (zeilenweise verbunden, höchstens {@link #MAX_MESSAGE_LENGTH} Zeichen).
+ * - Zu lange Texte (z.B. Rankings) werden an Zeilengrenzen geteilt, nur einzelne überlange Zeilen hart.
+ * - Pro Kanal gibt es einen Rate-Limit-Bucket: Solange die {@link Sink} keine Werte liefert, gilt das
+ *   Discord-Kanallimit von {@link #BUCKET_SIZE} Nachrichten pro {@link #BUCKET_WINDOW_MILLIS}; meldet sie
+ *   verbleibende Anfragen, Reset oder ein 429, wird danach geplant. Was während des Wartens anfällt, wird
+ *   mit gebündelt.
+ * - Pro Kanal ist immer höchstens eine Nachricht unterwegs, die Reihenfolge bleibt erhalten.
+ */
+public class OutboundQueue {
+    public static final int MAX_MESSAGE_LENGTH = 2000;
+    public static final long COALESCE_MILLIS = 150;
+    public static final int BUCKET_SIZE = 5;
+    public static final long BUCKET_WINDOW_MILLIS = 5000;
+
+    private final Sink sink;
+    private final Map<Long, Channel> channels = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+    private final AtomicInteger busyChannels = new AtomicInteger();
+
+    /**
+     * Versand einer fertigen Nachricht.
+     */
+    @FunctionalInterface
+    public interface Sink {
+        /**
+         * @return Ergebnis mit Rate-Limit-Angaben; ein fehlgeschlagener Future verwirft die Nachricht
+         */
+        CompletableFuture<SendResult> send(long channelId, String content);
+    }
+
+    /**
+     * Antwort der {@link Sink}. Negative Werte bedeuten "unbekannt".
+     */
+    public static final class SendResult {
+        public static final SendResult UNKNOWN = new SendResult(-1, -1, 0);
+
+        public final int remaining;          // verbleibende Nachrichten im Bucket
+        public final long resetAfterMillis;  // bis der Bucket wieder voll ist
+        public final long retryAfterMillis;  // > 0: abgewiesen (429), später erneut senden
+
+        public SendResult(int remaining, long resetAfterMillis, long retryAfterMillis) {
+            this.remaining = remaining;
+            this.resetAfterMillis = resetAfterMillis;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+    }
+
+    /**
+     * Zustand eines Kanals; alle Felder nur unter dessen Monitor.
+     */
+    private static final class Channel {
+        final long id;
+        final ArrayDeque<String> pending = new ArrayDeque<>();
+        boolean busy;       // Flush geplant oder Nachricht unterwegs
+        int remaining = BUCKET_SIZE;
+        long resetAt;
+
+        Channel(long id) {
+            this.id = id;
+        }
+    }
+
+    public OutboundQueue(Sink sink) {
+        this.sink = sink;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "outbound");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void send(MessageChannel channel, String text) {
+        send(channel.getIdLong(), text);
+    }
+
+    /**
+     * Reiht den Text für den Kanal ein; versendet wird gebündelt nach {@link #COALESCE_MILLIS}.
+     */
+    public void send(long channelId, String text) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        Channel channel = channels.computeIfAbsent(channelId, Channel::new);
+        synchronized (channel) {
+            channel.pending.addAll(split(text));
+            if (!channel.busy) {
+                channel.busy = true;
+                busyChannels.incrementAndGet();
+                timer.schedule(() -> flush(channel), COALESCE_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Teilt {@code text} in Stücke von höchstens {@link #MAX_MESSAGE_LENGTH} Zeichen, bevorzugt an Zeilenumbrüchen.
+     */
+    static List<String> split(String text) {
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        while (text.length() - start > MAX_MESSAGE_LENGTH) {
+            int end = text.lastIndexOf('\n', start + MAX_MESSAGE_LENGTH);
+            if (end <= start) {
+                // Zeile länger als eine Nachricht
+                end = start + MAX_MESSAGE_LENGTH;
+                parts.add(text.substring(start, end));
+                start = end;
+            } else {
+                parts.add(text.substring(start, end));
+                start = end + 1;
+            }
+        }
+        if (start < text.length()) {
+            parts.add(text.substring(start));
+        }
+        return parts;
+    }
+
+    private void flush(Channel channel) {
+        String content;
+        synchronized (channel) {
+            if (channel.pending.isEmpty()) {
+                channel.busy = false;
+                busyChannels.decrementAndGet();
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (now >= channel.resetAt) {
+                channel.remaining = BUCKET_SIZE;
+                channel.resetAt = now + BUCKET_WINDOW_MILLIS;
+            }
+            if (channel.remaining <= 0) {
+                timer.schedule(() -> flush(channel), channel.resetAt - now, TimeUnit.MILLISECONDS);
+                return;
+            }
+            channel.remaining--;
+            StringBuilder sb = new StringBuilder(channel.pending.poll());
+            while (!channel.pending.isEmpty() && sb.length() + 1 + channel.pending.peek().length() <= MAX_MESSAGE_LENGTH) {
+                sb.append('\n').append(channel.pending.poll());
+            }
+            content = sb.toString();
+        }
+        CompletableFuture<SendResult> sent;
+        try {
+            sent = sink.send(channel.id, content);
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        sent.whenComplete((result, error) -> onSent(channel, content, result, error));
+    }
+
+    private void onSent(Channel channel, String content, SendResult result, Throwable error) {
+        long delay = 0;
+        synchronized (channel) {
+            long now = System.currentTimeMillis();
+            if (error != null) {
+                System.err.println("[OutboundQueue] Nachricht an " + channel.id + " verworfen: " + error.getMessage());
+            } else if (result.retryAfterMillis > 0) {
+                channel.pending.addFirst(content);
+                channel.remaining = 0;
+                channel.resetAt = now + result.retryAfterMillis;
+                delay = result.retryAfterMillis;
+            } else if (result.remaining >= 0 && result.resetAfterMillis >= 0) {
+                channel.remaining = result.remaining;
+                channel.resetAt = now + result.resetAfterMillis;
+            }
+        }
+        timer.schedule(() -> flush(channel), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Wartet höchstens {@code timeoutMillis}, bis alle eingereihten Nachrichten versendet sind, und beendet den Timer.
+     * @return true, wenn nichts mehr aussteht
+     */
+    public boolean shutdown(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (busyChannels.get() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        boolean drained = busyChannels.get() == 0;
+        timer.shutdownNow();
+        return drained;
+    }
+}
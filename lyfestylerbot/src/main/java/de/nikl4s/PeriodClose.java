@@ -0,0 +1,291 @@
+package de.nikl4s;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Unveränderlicher Abschlussstand eines Monats (und ggf. Jahres): Endstand der Ranglisten, Einsatzdaten und daraus
+ * abgeleitet Gewinner, Auszahlung und neue Highscores.
+ *
+ * Beim Wechsel hält der {@link PointsManager} nur die aktuellen {@link RankIndex.Version}s fest (O(1)), bevor er die
+ * Monatswerte zurücksetzt. Texte und Archivdateien entstehen erst danach aus diesem Stand; die Ablage schreibt der
+ * {@link PointsManager} noch unter dem periodLock, damit der Abschluss einen Absturz übersteht. Jeder Text wird genau
+ * einmal gerendert, gleichzeitige Abfragen warten darauf.
+ *
+ * Solange ein abgelegter Abschluss nicht gepostet ist, liegt neben den Texten eine leere Marke yyyy-MM.unposted.
+ * So übersteht ein offener Abschluss das Auslagern des Shards und einen Neustart; der {@link MonthCloseJob} postet
+ * ihn dann aus der Ablage ({@link #unposted(Path)}). Ablagen ohne Marke gelten als gepostet.
+ */
+public final class PeriodClose {
+    private static final int MAX_HIGHSCORE_NAMES = 10;
+    static final String UNPOSTED_SUFFIX = ".unposted";
+
+    public final YearMonth month;
+    public final boolean yearEnded;
+    public final int playerCount;
+    public final int stakePerPlayerCents;
+    private final RankIndex.Version monthRanking;
+    private final RankIndex.Version yearRanking;
+    private final Settlement.Weighting weighting;
+    private Settlement settlement;
+    private String monthEndText; // gerendert beim ersten Zugriff, unter dem Monitor
+    private String yearEndText;
+    private boolean posted; // unter dem Monitor, damit archive(..) nach dem Posten keine Marke mehr anlegt
+
+    PeriodClose(YearMonth month, boolean yearEnded, RankIndex.Version monthRanking, RankIndex.Version yearRanking,
+                int playerCount, int stakePerPlayerCents, Settlement.Weighting weighting) {
+        this.month = month;
+        this.yearEnded = yearEnded;
+        this.monthRanking = monthRanking;
+        this.yearRanking = yearRanking;
+        this.playerCount = playerCount;
+        this.stakePerPlayerCents = stakePerPlayerCents;
+        this.weighting = weighting;
+    }
+
+    public Year year() {
+        return Year.of(month.getYear());
+    }
+
+    /**
+     * Endstand des Monats in Ranglisten-Reihenfolge.
+     */
+    public List<UserStats.Snapshot> monthRanking() {
+        return monthRanking.all();
+    }
+
+    /**
+     * Endstand des Jahres in Ranglisten-Reihenfolge.
+     */
+    public List<UserStats.Snapshot> yearRanking() {
+        return yearRanking.all();
+    }
+
+    /**
+     * Nutzer, die mit diesem Monat ihren Monats-Highscore überboten haben, in Ranglisten-Reihenfolge.
+     * Die Rangliste ist nach Punkten sortiert, die Suche endet also beim ersten Nutzer ohne Punkte.
+     */
+    public List<UserStats.Snapshot> monthHighscores() {
+        return highscores(monthRanking, false);
+    }
+
+    public List<UserStats.Snapshot> yearHighscores() {
+        return highscores(yearRanking, true);
+    }
+
+    private static List<UserStats.Snapshot> highscores(RankIndex.Version version, boolean year) {
+        List<UserStats.Snapshot> out = new ArrayList<>();
+        int size = version.size();
+        for (int from = 0; from < size; from += 256) {
+            for (UserStats.Snapshot s : version.slice(from, 256)) {
+                int score = year ? s.yearPoints : s.points;
+                if (score <= 0) {
+                    return out;
+                }
+                if (score > (year ? s.bestYearlyPoints : s.bestMonthlyPoints)) {
+                    out.add(s);
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Auszahlung des Monats-Topfs auf die ersten playerCount Plätze, nach der beim Abschluss gültigen Gewichtung.
+     */
+    public synchronized Settlement settlement() {
+        if (settlement == null) {
+            settlement = Settlement.of(month, monthRanking.top(Math.max(0, playerCount)), playerCount,
+                    stakePerPlayerCents, weighting);
+        }
+        return settlement;
+    }
+
+    /**
+     * Monatsabschluss mit Gewinner, Auszahlung, neuen Highscores und Endstand.
+     */
+    public synchronized String monthEndText() {
+        if (monthEndText == null) {
+            monthEndText = renderMonthEnd();
+        }
+        return monthEndText;
+    }
+
+    /**
+     * Jahresabschluss inkl. Pflicht für den Letztplatzierten; null, wenn mit dem Monat kein Jahr endete.
+     */
+    public synchronized String yearEndText() {
+        if (!yearEnded) {
+            return null;
+        }
+        if (yearEndText == null) {
+            yearEndText = renderYearEnd();
+        }
+        return yearEndText;
+    }
+
+    private String renderMonthEnd() {
+        List<UserStats.Snapshot> ranking = monthRanking.top(1);
+        if (ranking.isEmpty()) {
+            return "Diesen Monat keine Teilnehmer.";
+        }
+        UserStats.Snapshot winner = ranking.get(0);
+        StringBuilder sb = new StringBuilder();
+        sb.append(":confetti_ball: Gewinner ")
+          .append(month)
+          .append(": ")
+          .append(winner.displayName)
+          .append(" mit ")
+          .append(winner.points)
+          .append(" Punkten!\n\n");
+
+        sb.append(settlement().message());
+        appendHighscores(sb, "Neuer Monats-Highscore", monthHighscores(), false);
+        sb.append("\n\n");
+        sb.append(PointsManager.renderRankMessage(monthRanking.all(), month));
+        return sb.toString();
+    }
+
+    private String renderYearEnd() {
+        if (yearRanking.size() == 0) {
+            return "Dieses Jahr keine Teilnehmer.";
+        }
+        UserStats.Snapshot winner = yearRanking.top(1).get(0);
+        UserStats.Snapshot last = yearRanking.slice(yearRanking.size() - 1, 1).get(0);
+        StringBuilder sb = new StringBuilder();
+        sb.append(":confetti_ball: Jahresgewinner ")
+          .append(year())
+          .append(": ")
+          .append(winner.displayName)
+          .append(" mit ")
+          .append(winner.yearPoints)
+          .append(" Punkten!");
+        appendHighscores(sb, "Neuer Jahres-Highscore", yearHighscores(), true);
+        sb.append("\n\n");
+
+        sb.append(PointsManager.renderYearRankMessage(yearRanking.all(), year()))
+          .append("\n")
+          .append("<@")
+          .append(last.userId)
+          .append("> muss einmal fett Essen ausgeben habibi");
+        return sb.toString();
+    }
+
+    private static void appendHighscores(StringBuilder sb, String label, List<UserStats.Snapshot> highscores, boolean year) {
+        if (highscores.isEmpty()) {
+            return;
+        }
+        sb.append("\n:chart_with_upwards_trend: ").append(label).append(": ");
+        int shown = Math.min(highscores.size(), MAX_HIGHSCORE_NAMES);
+        for (int i = 0; i < shown; i++) {
+            UserStats.Snapshot s = highscores.get(i);
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(s.displayName).append(" (").append(year ? s.yearPoints : s.points).append(")");
+        }
+        if (highscores.size() > shown) {
+            sb.append(" und ").append(highscores.size() - shown).append(" weitere");
+        }
+    }
+
+    /**
+     * Legt den Abschluss unter {@code dir} ab: Texte als yyyy-MM.txt, Monatsendstand als yyyy-MM.csv
+     * (place,user_id,name,points,year_points,current_streak,best_streak,best_monthly_points,best_yearly_points).
+     * Beide Dateien werden erst fertig geschrieben und dann umbenannt; ist der Abschluss noch nicht gepostet,
+     * folgt danach die Marke yyyy-MM.unposted.
+     */
+    public void archive(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        String text = yearEnded ? monthEndText() + "\n\n" + yearEndText() : monthEndText();
+        writeAtomically(dir.resolve(month + ".txt"), out -> out.write(text));
+        writeAtomically(dir.resolve(month + ".csv"), out -> {
+            out.write("place,user_id,name,points,year_points,current_streak,best_streak,best_monthly_points,best_yearly_points\n");
+            int place = 1;
+            for (UserStats.Snapshot s : monthRanking.all()) {
+                out.write(place++ + "," + s.userId + "," + csv(s.displayName) + "," + s.points + "," + s.yearPoints + ","
+                        + s.currentStreak + "," + s.bestStreak + "," + s.bestMonthlyPoints + "," + s.bestYearlyPoints + "\n");
+            }
+        });
+        synchronized (this) {
+            if (!posted) {
+                writeAtomically(dir.resolve(month + UNPOSTED_SUFFIX), out -> { });
+            }
+        }
+    }
+
+    /**
+     * Vermerkt den Abschluss als gepostet und entfernt ggf. die Marke unter {@code dir} (null = keine Ablage).
+     */
+    public synchronized void markPosted(Path dir) throws IOException {
+        posted = true;
+        if (dir != null) {
+            markPosted(dir, month);
+        }
+    }
+
+    /**
+     * Vermerkt einen abgelegten Abschluss als gepostet.
+     */
+    static void markPosted(Path dir, YearMonth month) throws IOException {
+        Files.deleteIfExists(dir.resolve(month + UNPOSTED_SUFFIX));
+    }
+
+    /**
+     * Abgelegte, noch nicht gepostete Abschlüsse unter {@code dir}: Monat -> Text (yyyy-MM.txt), aufsteigend.
+     */
+    static Map<YearMonth, String> unposted(Path dir) throws IOException {
+        Map<YearMonth, String> out = new TreeMap<>();
+        if (!Files.isDirectory(dir)) {
+            return out;
+        }
+        try (DirectoryStream<Path> markers = Files.newDirectoryStream(dir, "*" + UNPOSTED_SUFFIX)) {
+            for (Path marker : markers) {
+                String name = marker.getFileName().toString();
+                YearMonth month;
+                try {
+                    month = YearMonth.parse(name.substring(0, name.length() - UNPOSTED_SUFFIX.length()));
+                } catch (DateTimeParseException e) {
+                    continue; // fremde Datei
+                }
+                Path text = dir.resolve(month + ".txt");
+                if (Files.exists(text)) {
+                    out.put(month, Files.readString(text, StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return out;
+    }
+
+    @FunctionalInterface
+    private interface Content {
+        void write(BufferedWriter out) throws IOException;
+    }
+
+    private static void writeAtomically(Path file, Content content) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            content.write(out);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
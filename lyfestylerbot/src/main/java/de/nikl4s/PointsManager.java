@@ -1,17 +1,23 @@
 package de.nikl4s;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
 import java.time.LocalDate;
+import java.time.LocalTime;
 import java.time.Year;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.Locale;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
 
 /**
  * Verwalter für Punkte, Streaks und Monats-Rollovers.
@@ -21,24 +27,87 @@ import java.util.stream.Collectors;
  * - buildRankMessage(): erzeugt ein sortiertes Ranking als Text
  * - buildMonthEndMessage(): generiert Monatsabschluss samt Gewinner
  * - rolloverToNextMonth(..): setzt für neuen Monat zurück
+ * - closePeriod(..): Monatsabschluss durch den {@link JobScheduler}, liefert die Abschlussstände ({@link PeriodClose})
+ *
+ * Ist ein {@link StateStore} angehängt, wird jede Mutation ins Journal geschrieben (asynchron, Group Commit im
+ * Writer-Thread des Stores).
+ *
+ * "Jetzt" (Startmonat, Zeitstempel in der Historie) kommt aus der übergebenen {@link Clock}; eine Simulation
+ * kann damit ein ganzes Jahr in Sekunden durchspielen ({@link Simulation}).
+ *
+ * Nebenläufigkeit:
+ * - Änderungen an einem Nutzer laufen unter dessen Monitor ({@link UserStats#lock()}, gestreift über den
+ *   {@link UserStatsStore}); verschiedene Nutzer blockieren sich nur bei gleicher Stripe kurz.
+ * - Alle Änderungen halten zusätzlich den Lese-Teil von periodLock. Nur Monats-/Jahreswechsel
+ *   und Snapshots nehmen den Schreib-Teil und sehen damit einen stillstehenden Gesamtzustand.
+ * - Wake-Ups und Einstellungen haben je einen eigenen kleinen Lock.
+ * - Ranglisten-Indizes (compare-and-set auf die Wurzel) und Historie (Queue an ihren Writer-Thread) nehmen keinen
+ *   globalen Lock; unter dem Nutzer-Monitor wird nur ein Pfad kopiert bzw. ein Ereignis eingereiht.
+ * - Leser (Rankings, Nachrichten) arbeiten lock-frei auf unveränderlichen Ständen aus dem {@link RankIndex}.
  */
 public class PointsManager {
     public static final int DEFAULT_GYM_POINTS = 10;
+    private static final DateTimeFormatter MONTH_LABEL = DateTimeFormatter.ofPattern("LLL. - yyyy", Locale.GERMAN);
 
-    private final Map<String, UserStats> userIdToStats = new HashMap<>();
-    private YearMonth currentMonth = YearMonth.now();
-    private Year currentYear = Year.now();
+    private final UserStatsStore users = new UserStatsStore();
+    // Ranglisten-Indizes, nach jeder Änderung eines Nutzers per reindex(..) aktualisiert
+    private final RankIndex monthRanking = new RankIndex(s -> s.points);
+    private final RankIndex yearRanking = new RankIndex(s -> s.yearPoints);
+    private final ReentrantReadWriteLock periodLock = new ReentrantReadWriteLock();
+    private volatile YearMonth currentMonth;
+    private volatile Year currentYear;
     private final int pointsPerGym;
+    private final Clock clock;
 
     // Einsatz-Logik
-    private int stakePerPlayerCents = 0; // in Cent gespeichert
-    private int playerCount = 0;
+    private final Object settingsLock = new Object();
+    private volatile int stakePerPlayerCents = 0; // in Cent gespeichert
+    private volatile int playerCount = 0;
+    private volatile Settlement.Weighting payoutWeighting = Settlement.LINEAR;
 
     // WakeUp-Tracking: Liste der teilnehmenden Spieler (Discord User IDs)
-    private final List<String> wakePlayers = new ArrayList<>();
-    // Heutige Wake-Order (User IDs) und Zeitpunkte
-    private final Map<String, java.time.LocalTime> todayWakeTimes = new HashMap<>();
-    private LocalDate wakeDate = null; // Datum, für das todayWakeTimes gilt
+    private volatile List<String> wakePlayers = List.of();
+    // Heutige Wake-Order in Ankunftsreihenfolge inkl. Schläfer unter den wakePlayers; Zugriff nur unter wakeLock
+    private final Object wakeLock = new Object();
+    private final WakeLedger wakeLedger = new WakeLedger();
+
+    // Render-Cache: Generationen werden bei jeder relevanten Änderung erhöht
+    private final AtomicLong statsGeneration = new AtomicLong();    // Punkte, Streaks, Namen, Highscores, Periode
+    private final AtomicLong settingsGeneration = new AtomicLong(); // Einsatz und Spieleranzahl
+    private final AtomicLong wakeGeneration = new AtomicLong();     // heutige Wake-Order inkl. Namen/Streaks der Wachen
+    private volatile CachedText rankText = null;
+    private volatile CachedText yearRankText = null;
+    private volatile CachedText monthEndText = null;
+    private volatile CachedText wakeOrderText = null;
+
+    /**
+     * Gerenderter Text samt der Generation, für die er gilt.
+     */
+    private static final class CachedText {
+        final long generation;
+        final String text;
+
+        CachedText(long generation, String text) {
+            this.generation = generation;
+            this.text = text;
+        }
+    }
+
+    // Persistenz: Journal und laufende Sequenznummer der Mutationen
+    private volatile StateStore store = null;
+    private final AtomicLong journalSeq = new AtomicLong();
+    private volatile boolean snapshotDue = false;
+    private volatile boolean replaying = false;
+
+    // Ereignis-Historie; während der Wiederherstellung aus dem Journal wird nichts erneut angehängt
+    private volatile HistoryLog history = null;
+
+    // Abschlüsse, die noch nicht gepostet wurden; nur unter dem Schreib-Teil von periodLock
+    private final List<PeriodClose> pendingCloses = new ArrayList<>();
+    // Ablage der Abschlussstände (Texte, Endstand als CSV, Marke für "noch nicht gepostet"); null = keine Ablage
+    private volatile Path closeArchive = null;
+    // Kassenbuch der Auszahlungen; null = es wird nicht gebucht
+    private volatile SettlementLedger ledger = null;
 
     /**
      * Erstellt den Manager mit Standard-Punkten pro Gym-Eintrag.
@@ -52,7 +121,226 @@ public class PointsManager {
      * @param pointsPerGym Anzahl der Punkte, die pro gültigem "!gym" vergeben werden
      */
     public PointsManager(int pointsPerGym) {
+        this(pointsPerGym, Clock.systemDefaultZone());
+    }
+
+    /**
+     * Wie {@link #PointsManager(int)}, mit eigener Uhr (Zeitzone und "jetzt").
+     */
+    public PointsManager(int pointsPerGym, Clock clock) {
         this.pointsPerGym = pointsPerGym;
+        this.clock = clock;
+        this.currentMonth = YearMonth.now(clock);
+        this.currentYear = Year.now(clock);
+    }
+
+    /**
+     * Stellt den Zustand aus dem Store wieder her und schreibt ab jetzt alle Mutationen ins Journal.
+     * Direkt danach wird ein frischer Snapshot angestoßen, der das wiederhergestellte Journal kompaktiert.
+     */
+    public void attachStore(StateStore store) throws IOException {
+        acquire(periodLock.writeLock());
+        try {
+            replaying = true;
+            try {
+                store.recover(this);
+            } finally {
+                replaying = false;
+            }
+            this.store = store;
+            store.snapshot(this);
+        } finally {
+            periodLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ab jetzt werden Check-ins, Strafen, Punktkorrekturen und Wake-Ups zusätzlich in der Historie abgelegt.
+     */
+    public void attachHistory(HistoryLog history) {
+        this.history = history;
+    }
+
+    public HistoryLog getHistory() {
+        return history;
+    }
+
+    /**
+     * Ab jetzt wird jeder Monatsabschluss unter {@code dir} abgelegt (siehe {@link PeriodClose#archive(Path)}).
+     */
+    public void attachCloseArchive(Path dir) {
+        this.closeArchive = dir;
+    }
+
+    /**
+     * Ab jetzt wird die Auszahlung jedes Monatsabschlusses gebucht. Das Kassenbuch wird mit dem Store geschlossen.
+     */
+    public void attachLedger(SettlementLedger ledger) {
+        this.ledger = ledger;
+    }
+
+    public SettlementLedger getLedger() {
+        return ledger;
+    }
+
+    /**
+     * Legt ein Ereignis in der Historie ab (nur eingereiht, geschrieben wird im Writer-Thread der {@link HistoryLog}).
+     * Fehler werden nur protokolliert; der Punktestand bleibt maßgeblich.
+     */
+    private void record(byte type, String userId, LocalDate day, LocalTime time, int value) {
+        HistoryLog h = history;
+        if (h == null || replaying) {
+            return;
+        }
+        try {
+            h.append(type, Long.parseUnsignedLong(userId), day, time, value);
+        } catch (IllegalStateException | NumberFormatException e) {
+            System.err.println("[History] Ereignis für " + userId + " nicht gespeichert: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Schreibt einen abschließenden Snapshot, schließt den Store und beendet das Journaling.
+     * Eine angehängte Historie wird ebenfalls geschlossen.
+     */
+    public void detachStore() {
+        acquire(periodLock.writeLock());
+        try {
+            StateStore s = store;
+            if (s == null) {
+                return;
+            }
+            s.snapshot(this);
+            store = null;
+            s.close();
+            HistoryLog h = history;
+            if (h != null) {
+                history = null;
+                try {
+                    h.close();
+                } catch (IOException e) {
+                    System.err.println("[History] Schließen fehlgeschlagen: " + e.getMessage());
+                }
+            }
+            SettlementLedger l = ledger;
+            if (l != null) {
+                ledger = null;
+                try {
+                    l.close();
+                } catch (IOException e) {
+                    System.err.println("[Ledger] Schließen fehlgeschlagen: " + e.getMessage());
+                }
+            }
+        } finally {
+            periodLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Hängt eine Mutation ans Journal. Muss unter dem Lock aufgerufen werden, der die Mutation schützt,
+     * damit die Reihenfolge im Journal für jeden Nutzer der Reihenfolge der Änderungen entspricht.
+     */
+    private void journal(byte op, StateStore.Record record) {
+        StateStore s = store;
+        if (s == null) {
+            return;
+        }
+        if (s.append(journalSeq.incrementAndGet(), op, record)) {
+            snapshotDue = true;
+        }
+    }
+
+    /**
+     * Schreibt einen fälligen Snapshot. Nur ohne gehaltenen periodLock aufrufen.
+     */
+    private void snapshotIfDue() {
+        if (!snapshotDue) {
+            return;
+        }
+        acquire(periodLock.writeLock());
+        try {
+            if (snapshotDue) {
+                snapshotDue = false;
+                store.snapshot(this);
+            }
+        } finally {
+            periodLock.writeLock().unlock();
+        }
+    }
+
+    void restoreSequence(long seq) {
+        journalSeq.set(seq);
+    }
+
+    /**
+     * Nimmt einen Teil des periodLock und erfasst echte Wartezeiten (ab 1 µs) in {@link Metrics#LOCK_WAIT}.
+     * Sofort erhaltene Locks landen nicht im Histogramm, damit parallele Schreiber nicht alle denselben Bucket treffen.
+     */
+    private static void acquire(Lock lock) {
+        long start = System.nanoTime();
+        lock.lock();
+        long waited = System.nanoTime() - start;
+        if (waited >= 1000) {
+            Metrics.LOCK_WAIT.record(waited);
+        }
+    }
+
+    /**
+     * Nimmt den Lese-Teil des periodLock für den Monat von {@code today}. Liegt {@code today} in einem
+     * späteren Monat, wird zuerst exklusiv der Wechsel durchgeführt und der Lock dann herabgestuft.
+     * Der Lese-Teil wird in jedem Fall gehalten und muss vom Aufrufer freigegeben werden.
+     *
+     * Ein verspäteter Check-in (z.B. um 23:59 gesendet, aber erst nach dem Abschluss durch den {@link JobScheduler}
+     * verarbeitet) gehört zu einem abgeschlossenen Monat: Er setzt nichts zurück und wird vom Aufrufer abgelehnt,
+     * da der Abschluss samt Auszahlung bereits feststeht.
+     * @return false, wenn {@code today} vor dem aktuellen Monat liegt
+     */
+    private boolean lockPeriod(LocalDate today) {
+        YearMonth ym = YearMonth.from(today);
+        acquire(periodLock.readLock());
+        if (!ym.isAfter(currentMonth)) {
+            return !ym.isBefore(currentMonth);
+        }
+        periodLock.readLock().unlock();
+        acquire(periodLock.writeLock());
+        try {
+            if (ym.isAfter(currentMonth)) {
+                rollover(ym);
+            }
+            acquire(periodLock.readLock());
+        } finally {
+            periodLock.writeLock().unlock();
+        }
+        return !ym.isBefore(currentMonth);
+    }
+
+    private UserStats statsFor(String userId, String displayName) {
+        return users.view(users.rowFor(Long.parseUnsignedLong(userId), displayName));
+    }
+
+    /**
+     * Veröffentlicht den neuen Stand eines Nutzers in den Indizes. Unter dem Monitor des Nutzers aufrufen.
+     */
+    private void reindex(UserStats stats) {
+        UserStats.Snapshot snapshot = stats.snapshot();
+        monthRanking.update(snapshot);
+        yearRanking.update(snapshot);
+        statsGeneration.incrementAndGet();
+        if (wakeLedger.contains(snapshot.userId)) {
+            wakeGeneration.incrementAndGet();
+        }
+    }
+
+    private void rebuildIndexes() {
+        int size = users.size();
+        IntStream rows = IntStream.range(0, size);
+        List<UserStats.Snapshot> all = (size > UserStatsStore.CHUNK_SIZE ? rows.parallel() : rows)
+                .mapToObj(row -> users.view(row).snapshot())
+                .toList();
+        monthRanking.rebuild(all);
+        yearRanking.rebuild(all);
+        statsGeneration.incrementAndGet();
+        wakeGeneration.incrementAndGet();
     }
 
     /**
@@ -64,70 +352,293 @@ public class PointsManager {
      * @param today aktuelles Datum
      * @return Ergebnisobjekt mit hinzugefügten Punkten, Gesamtpunkten und Streak-Infos
      */
-    public synchronized UserStats.AwardResult handleGym(String userId, String displayName, LocalDate today) {
-        rolloverIfPeriodChanged(today);
-        UserStats stats = userIdToStats.computeIfAbsent(userId, id -> new UserStats(id, displayName));
-        stats.setDisplayName(displayName);
-        UserStats.AwardResult res = stats.awardGymPoints(today, pointsPerGym);
-        if (res.accepted && res.pointsAdded > 0) {
-            stats.addYearPoints(res.pointsAdded);
+    public UserStats.AwardResult handleGym(String userId, String displayName, LocalDate today) {
+        return handleGym(userId, displayName, today, pointsPerGym);
+    }
+
+    /**
+     * Wie {@link #handleGym(String, String, LocalDate)}, aber mit explizit vorgegebenen Punkten
+     * (z.B. aus der Konfiguration). Die Punkte werden mit ins Journal geschrieben.
+     */
+    public UserStats.AwardResult handleGym(String userId, String displayName, LocalDate today, int pointsPerGym) {
+        UserStats.AwardResult res;
+        boolean open = lockPeriod(today);
+        try {
+            if (!open) {
+                return UserStats.AwardResult.periodClosed();
+            }
+            UserStats stats = statsFor(userId, displayName);
+            synchronized (stats.lock()) {
+                stats.setDisplayName(displayName);
+                res = stats.awardGymPoints(today, pointsPerGym);
+                if (res.accepted && res.pointsAdded > 0) {
+                    stats.addYearPoints(res.pointsAdded);
+                }
+                if (res.accepted) {
+                    record(HistoryLog.EVENT_GYM, userId, today, LocalTime.now(clock), res.pointsAdded);
+                }
+                reindex(stats);
+                journal(StateStore.OP_GYM_POINTS, out -> {
+                    out.writeUTF(userId);
+                    out.writeUTF(displayName);
+                    out.writeLong(today.toEpochDay());
+                    out.writeInt(pointsPerGym);
+                });
+            }
+        } finally {
+            periodLock.readLock().unlock();
         }
+        snapshotIfDue();
         return res;
     }
 
-    
-
-    
-
     /**
-     * Passt Punkte eines Nutzers an (z.B. -5 bei Betrugsversuch). Beeinflusst keine Streaks.
+     * Passt Punkte eines Nutzers im aktuellen Monat an. Beeinflusst keine Streaks. Strafen zu einem Check-in laufen
+     * über {@link #penalize}, das den Monat der Nachricht berücksichtigt.
      * @return neue Gesamtpunkte
      */
-    public synchronized int adjustPoints(String userId, String displayName, int delta) {
-        UserStats stats = userIdToStats.computeIfAbsent(userId, id -> new UserStats(id, displayName));
-        stats.setDisplayName(displayName);
-        return stats.adjustPoints(delta);
+    public int adjustPoints(String userId, String displayName, int delta) {
+        int total;
+        acquire(periodLock.readLock());
+        try {
+            UserStats stats = statsFor(userId, displayName);
+            synchronized (stats.lock()) {
+                stats.setDisplayName(displayName);
+                total = stats.adjustPoints(delta);
+                reindex(stats);
+                record(HistoryLog.EVENT_PENALTY, userId, LocalDate.now(clock), LocalTime.now(clock), delta);
+                journal(StateStore.OP_ADJUST_POINTS, out -> {
+                    out.writeUTF(userId);
+                    out.writeUTF(displayName);
+                    out.writeInt(delta);
+                });
+            }
+        } finally {
+            periodLock.readLock().unlock();
+        }
+        snapshotIfDue();
+        return total;
+    }
+
+    /**
+     * Strafe für einen Check-in vom {@code day} (z.B. -5 für ein altes oder wiederholtes Bild). Beeinflusst keine
+     * Streaks. Wie bei {@link #handleGym} entscheidet der Tag der Nachricht über den Monat: Liegt er in einem
+     * bereits abgeschlossenen Monat, wird nichts abgezogen, liegt er in einem späteren, wird zuerst gewechselt.
+     * @return {@link UserStats.AwardResult#periodClosed()} für einen abgeschlossenen Monat, sonst die abgezogenen
+     *         Punkte ({@code pointsAdded} = {@code delta}) und die neuen Gesamtpunkte
+     */
+    public UserStats.AwardResult penalize(String userId, String displayName, LocalDate day, int delta) {
+        UserStats.AwardResult res;
+        boolean open = lockPeriod(day);
+        try {
+            if (!open) {
+                return UserStats.AwardResult.periodClosed();
+            }
+            UserStats stats = statsFor(userId, displayName);
+            synchronized (stats.lock()) {
+                stats.setDisplayName(displayName);
+                int total = stats.adjustPoints(delta);
+                res = new UserStats.AwardResult(delta, total, stats.getCurrentStreak(), stats.getBestStreak(), true);
+                reindex(stats);
+                record(HistoryLog.EVENT_PENALTY, userId, day, LocalTime.now(clock), delta);
+                journal(StateStore.OP_PENALTY, out -> {
+                    out.writeUTF(userId);
+                    out.writeUTF(displayName);
+                    out.writeLong(day.toEpochDay());
+                    out.writeInt(delta);
+                });
+            }
+        } finally {
+            periodLock.readLock().unlock();
+        }
+        snapshotIfDue();
+        return res;
     }
 
     /**
      * Setzt die Punkte eines Nutzers direkt auf einen Wert. Beeinflusst keine Streaks.
      * @return neue Gesamtpunkte
      */
-    public synchronized int setPoints(String userId, String displayName, int newPoints) {
-        UserStats stats = userIdToStats.computeIfAbsent(userId, id -> new UserStats(id, displayName));
-        stats.setDisplayName(displayName);
-        int delta = newPoints - stats.getPoints();
-        return stats.adjustPoints(delta);
+    public int setPoints(String userId, String displayName, int newPoints) {
+        int total;
+        acquire(periodLock.readLock());
+        try {
+            UserStats stats = statsFor(userId, displayName);
+            synchronized (stats.lock()) {
+                stats.setDisplayName(displayName);
+                int delta = newPoints - stats.getPoints();
+                total = stats.adjustPoints(delta);
+                reindex(stats);
+                record(HistoryLog.EVENT_SET_POINTS, userId, LocalDate.now(clock), LocalTime.now(clock), delta);
+                journal(StateStore.OP_SET_POINTS, out -> {
+                    out.writeUTF(userId);
+                    out.writeUTF(displayName);
+                    out.writeInt(newPoints);
+                });
+            }
+        } finally {
+            periodLock.readLock().unlock();
+        }
+        snapshotIfDue();
+        return total;
     }
 
     /**
      * Setzt den Streak eines Nutzers direkt auf einen Wert und aktualisiert ggf. den Best-Streak.
      * @return der gesetzte aktuelle Streak
      */
-    public synchronized int setStreak(String userId, String displayName, int newStreak) {
-        UserStats stats = userIdToStats.computeIfAbsent(userId, id -> new UserStats(id, displayName));
-        stats.setDisplayName(displayName);
-        return stats.setStreak(newStreak);
+    public int setStreak(String userId, String displayName, int newStreak) {
+        int streak;
+        acquire(periodLock.readLock());
+        try {
+            UserStats stats = statsFor(userId, displayName);
+            synchronized (stats.lock()) {
+                stats.setDisplayName(displayName);
+                streak = stats.setStreak(newStreak);
+                reindex(stats);
+                journal(StateStore.OP_SET_STREAK, out -> {
+                    out.writeUTF(userId);
+                    out.writeUTF(displayName);
+                    out.writeInt(newStreak);
+                });
+            }
+        } finally {
+            periodLock.readLock().unlock();
+        }
+        snapshotIfDue();
+        return streak;
+    }
+
+    /**
+     * Übernimmt einen geprüften Massen-Import ({@link BulkTransfer}) in einem Schritt: unter dem Schreib-Teil von
+     * periodLock, danach ein Snapshot statt einzelner Journal-Einträge. Nach einem Absturz ist der Import also ganz
+     * oder gar nicht da. Ein höherer aktueller Streak hebt den Best-Streak mit an (wie bei /setstreak),
+     * Punktänderungen landen als Korrektur in der Historie.
+     * @return Anzahl übernommener Zeilen
+     */
+    public int applyBatch(BulkTransfer.Batch batch) {
+        LocalDate today = LocalDate.now(clock);
+        LocalTime now = LocalTime.now(clock);
+        acquire(periodLock.writeLock());
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                long userId = batch.userId(i);
+                int row = users.row(userId);
+                if (row < 0) {
+                    row = users.rowFor(userId, batch.hasName(i) ? batch.name(i) : Long.toUnsignedString(userId));
+                } else if (batch.hasName(i)) {
+                    users.setName(row, batch.name(i));
+                }
+                int oldPoints = users.get(row, UserStatsStore.POINTS);
+                for (int column = 0; column < UserStatsStore.COLUMNS; column++) {
+                    if (batch.has(i, column)) {
+                        users.set(row, column, batch.value(i, column));
+                    }
+                }
+                raiseBest(row, UserStatsStore.CURRENT_STREAK, UserStatsStore.BEST_STREAK);
+                raiseBest(row, UserStatsStore.WAKE_FIRST_CURRENT_STREAK, UserStatsStore.WAKE_FIRST_BEST_STREAK);
+                int delta = users.get(row, UserStatsStore.POINTS) - oldPoints;
+                if (delta != 0) {
+                    record(HistoryLog.EVENT_SET_POINTS, Long.toUnsignedString(userId), today, now, delta);
+                }
+            }
+            rebuildIndexes();
+            StateStore s = store;
+            if (s != null) {
+                snapshotDue = false;
+                s.snapshot(this);
+            }
+        } finally {
+            periodLock.writeLock().unlock();
+        }
+        return batch.size();
+    }
+
+    private void raiseBest(int row, int currentColumn, int bestColumn) {
+        int current = users.get(row, currentColumn);
+        if (current > users.get(row, bestColumn)) {
+            users.set(row, bestColumn, current);
+        }
+    }
+
+    /**
+     * Callback für {@link #forEachUser(UserVisitor)}; darf beim Schreiben scheitern.
+     */
+    @FunctionalInterface
+    public interface UserVisitor {
+        void visit(UserStats stats) throws IOException;
+    }
+
+    /**
+     * Besucht alle Nutzer in Speicherreihenfolge, jeden unter seinem Lock (zeilenweise konsistent).
+     * Check-ins laufen währenddessen weiter, nur Monats- und Jahreswechsel warten.
+     * @return Anzahl besuchter Nutzer
+     */
+    public int forEachUser(UserVisitor visitor) throws IOException {
+        acquire(periodLock.readLock());
+        try {
+            int size = users.size();
+            for (int row = 0; row < size; row++) {
+                UserStats stats = users.view(row);
+                synchronized (stats.lock()) {
+                    visitor.visit(stats);
+                }
+            }
+            return size;
+        } finally {
+            periodLock.readLock().unlock();
+        }
     }
 
     // WakeUp: Verwaltung der Teilnehmer
-    public synchronized void setWakePlayers(List<String> userIds) {
-        wakePlayers.clear();
-        wakePlayers.addAll(userIds);
+    public void setWakePlayers(List<String> userIds) {
+        List<String> ids = List.copyOf(userIds);
+        acquire(periodLock.readLock());
+        try {
+            synchronized (settingsLock) {
+                wakePlayers = ids;
+                // Unter wakeLock journalen, damit der Eintrag relativ zu OP_AWAKE in der richtigen Reihenfolge landet
+                synchronized (wakeLock) {
+                    wakeLedger.setPlayers(ids);
+                    journal(StateStore.OP_SET_WAKE_PLAYERS, out -> {
+                        out.writeInt(ids.size());
+                        for (String id : ids) {
+                            out.writeUTF(id);
+                        }
+                    });
+                }
+            }
+        } finally {
+            periodLock.readLock().unlock();
+        }
+        snapshotIfDue();
     }
 
-    public synchronized List<String> getWakePlayers() {
+    public List<String> getWakePlayers() {
         return new ArrayList<>(wakePlayers);
     }
 
+    /**
+     * Wake-Spieler, die heute ({@code today}) noch nicht eingecheckt haben, in der Reihenfolge der Spielerliste.
+     */
+    public List<String> getSleepers(LocalDate today) {
+        synchronized (wakeLock) {
+            LocalDate date = wakeLedger.date();
+            if (date == null || !date.isEqual(today)) {
+                return getWakePlayers();
+            }
+            return wakeLedger.sleepers();
+        }
+    }
+
     /**
      * Verarbeitet einen !awake-Checkin. Erwartet, dass im Channel ein Bild gepostet wurde (Prüfung im Listener).
      * Liefert Informationen, ob erster/letzter etc.
      */
     public static class WakeResult {
-        public final boolean accepted; // ignoriert, wenn bereits wach registriert
+        public final boolean accepted; // ignoriert, wenn bereits wach registriert oder der Monat abgeschlossen ist (Position 0)
         public final boolean isFirst;
-        public final boolean isLast;
+        public final boolean isLast; // letzter der Wake-Spieler, danach sind alle wach
         public final int position; // 1-basiert
         public final LocalDate date;
         public final java.time.LocalTime time;
@@ -142,277 +653,572 @@ public class PointsManager {
         }
     }
 
-    public synchronized WakeResult handleAwake(String userId, String displayName, LocalDate today, java.time.LocalTime now) {
-        rolloverIfPeriodChanged(today);
-        if (wakeDate == null || !wakeDate.isEqual(today)) {
-            todayWakeTimes.clear();
-            wakeDate = today;
-        }
-        if (todayWakeTimes.containsKey(userId)) {
-            return new WakeResult(false, false, false, new ArrayList<>(todayWakeTimes.keySet()).indexOf(userId) + 1, today, todayWakeTimes.get(userId));
+    public WakeResult handleAwake(String userId, String displayName, LocalDate today, java.time.LocalTime now) {
+        WakeResult result;
+        boolean open = lockPeriod(today);
+        try {
+            if (!open) {
+                return new WakeResult(false, false, false, 0, today, now);
+            }
+            synchronized (wakeLock) {
+                if (wakeLedger.startDay(today)) {
+                    wakeGeneration.incrementAndGet();
+                }
+                int asleepBefore = wakeLedger.asleepCount();
+                int pos = wakeLedger.add(userId, now);
+                if (pos < 0) {
+                    return new WakeResult(false, false, false, -pos, today, wakeLedger.timeAt(-pos));
+                }
+                wakeGeneration.incrementAndGet();
+                journal(StateStore.OP_AWAKE, out -> {
+                    out.writeUTF(userId);
+                    out.writeUTF(displayName);
+                    out.writeLong(today.toEpochDay());
+                    out.writeLong(now.toNanoOfDay());
+                });
+                record(HistoryLog.EVENT_AWAKE, userId, today, now, pos);
+                boolean isFirst = pos == 1;
+                boolean isLast = asleepBefore > 0 && wakeLedger.allPlayersAwake();
+                result = new WakeResult(true, isFirst, isLast, pos, today, now);
+            }
+
+            // Frühster Vogel Streak beim ersten
+            if (result.isFirst) {
+                UserStats stats = statsFor(userId, displayName);
+                synchronized (stats.lock()) {
+                    stats.setDisplayName(displayName);
+                    stats.recordWakeFirst(today);
+                    reindex(stats);
+                }
+            }
+        } finally {
+            periodLock.readLock().unlock();
         }
-        todayWakeTimes.put(userId, now);
-        int pos = todayWakeTimes.size();
-        boolean isFirst = pos == 1;
-        boolean isLast = !wakePlayers.isEmpty() && pos >= Math.min(playerCount, wakePlayers.size());
+        snapshotIfDue();
+        return result;
+    }
 
-        // Frühster Vogel Streak beim ersten
-        if (isFirst) {
-            UserStats stats = userIdToStats.computeIfAbsent(userId, id -> new UserStats(id, displayName));
-            stats.setDisplayName(displayName);
-            stats.recordWakeFirst(today);
+    public String buildWakeOrderMessage() {
+        long generation = wakeGeneration.get();
+        CachedText cached = wakeOrderText;
+        if (cached != null && cached.generation == generation) {
+            return cached.text;
         }
-        return new WakeResult(true, isFirst, isLast, pos, today, now);
+        String text;
+        synchronized (wakeLock) {
+            text = renderWakeOrderMessage();
+        }
+        wakeOrderText = new CachedText(generation, text);
+        return text;
     }
 
-    public synchronized String buildWakeOrderMessage() {
-        if (wakeDate == null || todayWakeTimes.isEmpty()) {
+    private String renderWakeOrderMessage() {
+        if (wakeLedger.date() == null || wakeLedger.isEmpty()) {
             return "Heute noch keine Wake-Ups.";
         }
         StringBuilder sb = new StringBuilder();
-        sb.append(":alarm_clock: Aufsteh-Reihenfolge für ").append(wakeDate).append("\n");
-        var ordered = todayWakeTimes.entrySet().stream()
-                .sorted(Map.Entry.comparingByValue())
-                .toList();
-        int i = 1;
-        for (var e : ordered) {
-            String userId = e.getKey();
-            java.time.LocalTime t = e.getValue();
-            UserStats stats = userIdToStats.get(userId);
-            String name = stats != null ? stats.getDisplayName() : userId;
-            sb.append(i++)
+        sb.append(":alarm_clock: Aufsteh-Reihenfolge für ").append(wakeLedger.date()).append("\n");
+        // Ledger ist bereits in Ankunftsreihenfolge
+        for (int i = 1; i <= wakeLedger.size(); i++) {
+            String userId = wakeLedger.userAt(i);
+            UserStats.Snapshot stats = monthRanking.get(userId);
+            String name = stats != null ? stats.displayName : userId;
+            sb.append(i)
               .append(". ")
               .append(name)
               .append(" — ")
-              .append(t.toString())
+              .append(wakeLedger.timeAt(i).toString())
               .append("\n");
         }
-        if (!ordered.isEmpty()) {
-            String firstId = ordered.get(0).getKey();
-            UserStats first = userIdToStats.get(firstId);
-            if (first != null) {
-                sb.append("\n:bird: Frühster Vogel: ")
-                  .append(first.getDisplayName())
-                  .append(" — Streak: ")
-                  .append(first.getWakeFirstCurrentStreak())
-                  .append(" (Best: ")
-                  .append(first.getWakeFirstBestStreak())
-                  .append(")");
-            }
+        UserStats.Snapshot first = monthRanking.get(wakeLedger.userAt(1));
+        if (first != null) {
+            sb.append("\n:bird: Frühster Vogel: ")
+              .append(first.displayName)
+              .append(" — Streak: ")
+              .append(first.wakeFirstCurrentStreak)
+              .append(" (Best: ")
+              .append(first.wakeFirstBestStreak)
+              .append(")");
         }
         return sb.toString();
     }
 
     /**
-     * Setzt den Manager auf einen neuen Monat und leert die Monatswerte.
+     * Setzt den Manager auf einen neuen Monat und leert die Monatswerte. Nicht spätere Monate werden ignoriert.
+     */
+    public void rolloverToNextMonth(YearMonth newMonth) {
+        acquire(periodLock.writeLock());
+        try {
+            if (!newMonth.isAfter(currentMonth)) {
+                return;
+            }
+            rollover(newMonth);
+            journal(StateStore.OP_ROLLOVER, out -> {
+                out.writeInt(newMonth.getYear());
+                out.writeInt(newMonth.getMonthValue());
+            });
+        } finally {
+            periodLock.writeLock().unlock();
+        }
+        snapshotIfDue();
+    }
+
+    /**
+     * Schließt alle Monate vor {@code month} ab, falls das noch nicht passiert ist, und liefert die Abschlusstexte,
+     * die seit dem letzten Aufruf angefallen sind (auch von einem Wechsel, den ein Check-in ausgelöst hat).
+     */
+    public List<PeriodClose> closePeriod(YearMonth month) {
+        List<PeriodClose> closes;
+        acquire(periodLock.writeLock());
+        try {
+            if (month.isAfter(currentMonth)) {
+                rollover(month);
+                journal(StateStore.OP_ROLLOVER, out -> {
+                    out.writeInt(month.getYear());
+                    out.writeInt(month.getMonthValue());
+                });
+            }
+            closes = new ArrayList<>(pendingCloses);
+            pendingCloses.clear();
+        } finally {
+            periodLock.writeLock().unlock();
+        }
+        snapshotIfDue();
+        return closes;
+    }
+
+    /**
+     * Vermerkt die Abschlüsse als gepostet (entfernt ihre Marke in der Ablage).
+     */
+    public void markPosted(List<PeriodClose> closes) throws IOException {
+        for (PeriodClose close : closes) {
+            close.markPosted(closeArchive);
+        }
+    }
+
+    /**
+     * Vermerkt einen abgelegten Abschluss aus {@link #unpostedArchivedCloses()} als gepostet.
+     */
+    public void markPosted(YearMonth month) throws IOException {
+        Path archive = closeArchive;
+        if (archive != null) {
+            PeriodClose.markPosted(archive, month);
+        }
+    }
+
+    /**
+     * Abgelegte, nie gepostete Abschlüsse (Monat -> Text), z.B. weil der Shard vor dem {@link MonthCloseJob}
+     * ausgelagert wurde oder der Bot neu gestartet ist. Ohne Ablage leer.
+     */
+    public Map<YearMonth, String> unpostedArchivedCloses() throws IOException {
+        Path archive = closeArchive;
+        return archive == null ? Map.of() : PeriodClose.unposted(archive);
+    }
+
+    public YearMonth getCurrentMonth() {
+        return currentMonth;
+    }
+
+    /**
+     * Monats-/Jahreswechsel auf einen späteren Monat. Nur unter dem Schreib-Teil von periodLock aufrufen.
+     *
+     * Der Abschlussstand ist nur ein Festhalten der aktuellen Ranglisten-Versionen. Ist eine Ablage angehängt, wird
+     * er noch unter dem Lock samt Marke "noch nicht gepostet" abgelegt, wie die Auszahlung im Kassenbuch: Ein von
+     * einem Check-in ausgelöster Wechsel steht nicht als OP_ROLLOVER im Journal, und bei der Wiederherstellung
+     * entsteht kein Abschluss. Läge er nur im Speicher, ginge der Monatsabschluss-Post mit einem Absturz verloren,
+     * obwohl die Auszahlung schon gebucht ist. Ohne Ablage werden die Texte erst beim ersten Zugriff gerendert.
      */
-    public synchronized void rolloverToNextMonth(YearMonth newMonth) {
+    private void rollover(YearMonth newMonth) {
+        if (!newMonth.isAfter(currentMonth)) {
+            throw new IllegalStateException("Rollover nur vorwärts: " + currentMonth + " -> " + newMonth);
+        }
         boolean yearChanged = newMonth.getYear() != this.currentMonth.getYear();
-        // Monat abschließen
-        for (UserStats s : userIdToStats.values()) {
-            s.finalizeMonthHighscore();
+        PeriodClose close = null;
+        if (!replaying) {
+            close = new PeriodClose(currentMonth, yearChanged, monthRanking.version(), yearRanking.version(),
+                    playerCount, stakePerPlayerCents, payoutWeighting);
+            pendingCloses.add(close);
+            book(close);
         }
-        // Jahr ggf. abschließen
+        // Monat (und ggf. Jahr) in einem parallelen Durchlauf über alle Nutzer abschließen
+        users.closePeriod(yearChanged);
         if (yearChanged) {
-            for (UserStats s : userIdToStats.values()) {
-                s.finalizeYearHighscore();
-                s.resetForNewYear();
-            }
             this.currentYear = Year.of(newMonth.getYear());
         }
-        // Monat zurücksetzen
         this.currentMonth = newMonth;
-        for (UserStats s : userIdToStats.values()) {
-            s.resetForNewMonth();
+        rebuildIndexes();
+        if (close != null) {
+            archive(close);
         }
     }
 
-    private void rolloverIfPeriodChanged(LocalDate today) {
-        YearMonth ym = YearMonth.from(today);
-        if (!ym.equals(currentMonth)) {
-            rolloverToNextMonth(ym);
+    /**
+     * Bucht die Auszahlung noch unter dem Lock (nur die ersten playerCount Plätze), damit ein Absturz danach keinen
+     * Monat unverbucht lässt. Fehler werden protokolliert; der Abschluss selbst läuft weiter.
+     */
+    private void book(PeriodClose close) {
+        SettlementLedger l = ledger;
+        if (l == null) {
             return;
         }
+        try {
+            l.append(close.settlement());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[Ledger] Auszahlung " + close.month + " nicht gebucht: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Legt den Abschluss samt Marke ab (siehe {@link #rollover}). Nur unter dem Schreib-Teil von periodLock aufrufen.
+     * Fehler werden protokolliert; der Abschluss bleibt dann nur in {@link #closePeriod} erhalten.
+     */
+    private void archive(PeriodClose close) {
+        Path archive = closeArchive;
+        if (archive == null) {
+            return;
+        }
+        try {
+            close.archive(archive);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[PointsManager] Abschluss " + close.month + " nicht archiviert: " + e.getMessage());
+        }
     }
 
     /**
      * Liefert die Nutzer sortiert nach Punkten (desc), Best-Streak (desc) und Name (asc).
      */
-    private List<UserStats> getRanking() {
-        Collection<UserStats> values = new ArrayList<>(userIdToStats.values());
-        return values.stream()
-                .sorted(Comparator.comparingInt(UserStats::getPoints).reversed()
-                        .thenComparing(UserStats::getBestStreak, Comparator.reverseOrder())
-                        .thenComparing(UserStats::getDisplayName))
-                .collect(Collectors.toList());
+    private List<UserStats.Snapshot> getRanking() {
+        return monthRanking.all();
     }
 
     /**
      * Liefert die Nutzer sortiert nach Jahrespunkten (desc), Best-Streak (desc) und Name (asc).
      */
-    private List<UserStats> getYearRanking() {
-        Collection<UserStats> values = new ArrayList<>(userIdToStats.values());
-        return values.stream()
-                .sorted(Comparator.comparingInt(UserStats::getYearPoints).reversed()
-                        .thenComparing(UserStats::getBestStreak, Comparator.reverseOrder())
-                        .thenComparing(UserStats::getDisplayName))
-                .collect(Collectors.toList());
+    private List<UserStats.Snapshot> getYearRanking() {
+        return yearRanking.all();
+    }
+
+    /**
+     * Liefert die besten {@code count} Nutzer des Monats, ohne die ganze Rangliste zu sortieren.
+     */
+    public List<UserStats.Snapshot> getTopRanking(int count) {
+        return monthRanking.top(count);
+    }
+
+    /**
+     * Liefert einen Ausschnitt der Monatsrangliste ab Platz {@code from+1}.
+     */
+    public List<UserStats.Snapshot> getRankingSlice(int from, int count) {
+        return monthRanking.slice(from, count);
+    }
+
+    /**
+     * @return 1-basierter Monatsplatz des Nutzers oder 0, wenn er noch nicht gewertet ist
+     */
+    public int getRankOf(String userId) {
+        return monthRanking.rankOf(userId);
+    }
+
+    /**
+     * @return 1-basierter Jahresplatz des Nutzers oder 0, wenn er noch nicht gewertet ist
+     */
+    public int getYearRankOf(String userId) {
+        return yearRanking.rankOf(userId);
+    }
+
+    public int getRankedUserCount() {
+        return monthRanking.size();
     }
 
     /**
      * Baut eine Ranking-Nachricht für das aktuelle Jahr.
      */
-    public synchronized String buildYearRankMessage() {
-        List<UserStats> ranking = getYearRanking();
+    public String buildYearRankMessage() {
+        long generation = statsGeneration.get();
+        CachedText cached = yearRankText;
+        if (cached != null && cached.generation == generation) {
+            return cached.text;
+        }
+        String text = renderYearRankMessage(getYearRanking(), currentYear);
+        yearRankText = new CachedText(generation, text);
+        return text;
+    }
+
+    static String renderYearRankMessage(List<UserStats.Snapshot> ranking, Year year) {
         if (ranking.isEmpty()) {
             return "Es gibt noch keine Jahrespunkte.";
         }
         StringBuilder sb = new StringBuilder();
-        sb.append(":trophy: Jahresranking (").append(currentYear).append(")\n");
+        sb.append(yearTitle(year)).append("\n");
         int place = 1;
-        for (UserStats s : ranking) {
-            sb.append(place++)
-              .append(". ")
-              .append(s.getDisplayName())
-              .append(" — Jahrespunkte: ")
-              .append(s.getYearPoints());
-            if (s.getBestStreak() > 0) sb.append(", Best-Streak: ").append(s.getBestStreak());
-            if (s.getBestMonthlyPoints() > 0) sb.append(", Monats-HS: ").append(s.getBestMonthlyPoints());
-            if (s.getBestYearlyPoints() > 0) sb.append(", Jahres-HS: ").append(s.getBestYearlyPoints());
-            sb.append("\n");
+        for (UserStats.Snapshot s : ranking) {
+            appendYearRankLine(sb, place++, s);
         }
         return sb.toString();
     }
 
+    private static void appendYearRankLine(StringBuilder sb, int place, UserStats.Snapshot s) {
+        sb.append(place)
+          .append(". ")
+          .append(s.displayName)
+          .append(" — Jahrespunkte: ")
+          .append(s.yearPoints);
+        if (s.bestStreak > 0) sb.append(", Best-Streak: ").append(s.bestStreak);
+        if (s.bestMonthlyPoints > 0) sb.append(", Monats-HS: ").append(s.bestMonthlyPoints);
+        if (s.bestYearlyPoints > 0) sb.append(", Jahres-HS: ").append(s.bestYearlyPoints);
+        sb.append("\n");
+    }
+
+    private String rankTitle(boolean year) {
+        return year ? yearTitle(currentYear) : monthTitle(currentMonth);
+    }
+
+    private static String yearTitle(Year year) {
+        return ":trophy: Jahresranking (" + year + ")";
+    }
+
+    private static String monthTitle(YearMonth month) {
+        return ":trophy: Aktuelles Ranking (" + month.atDay(1).format(MONTH_LABEL) + ")";
+    }
+
+    /**
+     * Eingefrorener Stand einer Rangliste zum seitenweisen Blättern. Formatiert wird nur die angefragte Seite.
+     */
+    public static final class RankBoard {
+        public final boolean year;
+        public final String title;
+        public final RankIndex.Version version;
+
+        RankBoard(boolean year, String title, RankIndex.Version version) {
+            this.year = year;
+            this.title = title;
+            this.version = version;
+        }
+
+        public int size() {
+            return version.size();
+        }
+
+        /**
+         * Zeilen für die Plätze {@code from+1} bis {@code from+count}; Kosten O(log n + count).
+         */
+        public String renderLines(int from, int count) {
+            StringBuilder sb = new StringBuilder();
+            int place = from + 1;
+            for (UserStats.Snapshot s : version.slice(from, count)) {
+                if (year) {
+                    appendYearRankLine(sb, place++, s);
+                } else {
+                    appendRankLine(sb, place++, s);
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Aktueller Stand der Monats- bzw. Jahresrangliste für {@link LeaderboardPages}.
+     */
+    public RankBoard rankBoard(boolean year) {
+        return new RankBoard(year, rankTitle(year), year ? yearRanking.version() : monthRanking.version());
+    }
+
     /**
      * Erweiterte Monats-Ranking-Nachricht mit Highscores (wenn >0).
      */
-    public synchronized String buildRankMessage() {
-        List<UserStats> ranking = getRanking();
+    public String buildRankMessage() {
+        long generation = statsGeneration.get();
+        CachedText cached = rankText;
+        if (cached != null && cached.generation == generation) {
+            return cached.text;
+        }
+        String text = renderRankMessage(getRanking(), currentMonth);
+        rankText = new CachedText(generation, text);
+        return text;
+    }
+
+    static String renderRankMessage(List<UserStats.Snapshot> ranking, YearMonth month) {
         if (ranking.isEmpty()) {
             return "Es gibt noch keine Punkte.";
         }
         StringBuilder sb = new StringBuilder();
-        String monthLabel = currentMonth.atDay(1)
-                .format(DateTimeFormatter.ofPattern("LLL. - yyyy", Locale.GERMAN));
-        sb.append(":trophy: Aktuelles Ranking (").append(monthLabel).append(")\n");
+        sb.append(monthTitle(month)).append("\n");
         int place = 1;
-        for (UserStats s : ranking) {
-            sb.append(place++)
-              .append(". ")
-              .append(s.getDisplayName())
-              .append(" — Punkte: ")
-              .append(s.getPoints())
-              .append(", Streak: ")
-              .append(s.getCurrentStreak())
-              .append(" (Best: ")
-              .append(s.getBestStreak())
-              .append(")");
-            if (s.getBestMonthlyPoints() > 0) sb.append(", Monats-HS: ").append(s.getBestMonthlyPoints());
-            if (s.getBestYearlyPoints() > 0) sb.append(", Jahres-HS: ").append(s.getBestYearlyPoints());
-            sb.append("\n");
+        for (UserStats.Snapshot s : ranking) {
+            appendRankLine(sb, place++, s);
         }
         return sb.toString();
     }
 
+    private static void appendRankLine(StringBuilder sb, int place, UserStats.Snapshot s) {
+        sb.append(place)
+          .append(". ")
+          .append(s.displayName)
+          .append(" — Punkte: ")
+          .append(s.points)
+          .append(", Streak: ")
+          .append(s.currentStreak)
+          .append(" (Best: ")
+          .append(s.bestStreak)
+          .append(")");
+        if (s.bestMonthlyPoints > 0) sb.append(", Monats-HS: ").append(s.bestMonthlyPoints);
+        if (s.bestYearlyPoints > 0) sb.append(", Jahres-HS: ").append(s.bestYearlyPoints);
+        sb.append("\n");
+    }
+
     /**
-     * Monatsabschluss mit Gewinner und Auszahlung gemäß arithmetischer Folge.
+     * Monatsabschluss mit Gewinner und Auszahlung nach der eingestellten Gewichtung.
      */
-    public synchronized String buildMonthEndMessage() {
-        List<UserStats> ranking = getRanking();
-        if (ranking.isEmpty()) {
-            return "Diesen Monat keine Teilnehmer.";
+    public String buildMonthEndMessage() {
+        // Beide Generationen steigen nur, die Summe ändert sich also bei jeder relevanten Änderung
+        long generation = statsGeneration.get() + settingsGeneration.get();
+        CachedText cached = monthEndText;
+        if (cached != null && cached.generation == generation) {
+            return cached.text;
         }
-        UserStats winner = ranking.get(0);
-        StringBuilder sb = new StringBuilder();
-        sb.append(":confetti_ball: Gewinner ")
-          .append(currentMonth)
-          .append(": ")
-          .append(winner.getDisplayName())
-          .append(" mit ")
-          .append(winner.getPoints())
-          .append(" Punkten!\n\n");
-
-        sb.append(buildPayoutsMessage(ranking));
-        sb.append("\n\n");
-        sb.append(buildRankMessage());
-        return sb.toString();
+        String text = renderMonthEndMessage();
+        monthEndText = new CachedText(generation, text);
+        return text;
+    }
+
+    private String renderMonthEndMessage() {
+        return currentClose(false).monthEndText();
     }
 
     /**
      * Nachricht zum Jahresende inkl. Pflicht für den Letztplatzierten.
      */
-    public synchronized String buildYearEndMessage() {
-        List<UserStats> ranking = getYearRanking();
-        if (ranking.isEmpty()) {
-            return "Dieses Jahr keine Teilnehmer.";
-        }
-        StringBuilder sb = new StringBuilder();
-        sb.append(":confetti_ball: Jahresgewinner ")
-          .append(currentYear)
-          .append(": ")
-          .append(ranking.get(0).getDisplayName())
-          .append(" mit ")
-          .append(ranking.get(0).getYearPoints())
-          .append(" Punkten!\n\n");
-
-        UserStats last = ranking.get(ranking.size() - 1);
-        sb.append(buildYearRankMessage())
-          .append("\n")
-          .append("<@")
-          .append(last.getUserId())
-          .append("> muss einmal fett Essen ausgeben habibi");
-        return sb.toString();
+    public String buildYearEndMessage() {
+        return currentClose(true).yearEndText();
+    }
+
+    /**
+     * Abschlussstand, als ob die Periode jetzt endete (Vorschau; gerendert wird wie beim echten Abschluss).
+     */
+    private PeriodClose currentClose(boolean yearEnded) {
+        return new PeriodClose(currentMonth, yearEnded, monthRanking.version(), yearRanking.version(),
+                playerCount, stakePerPlayerCents, payoutWeighting);
     }
 
     /**
       * Setzt den Einsatz pro Spieler in Euro (als Zahl mit bis zu 2 Nachkommastellen).
       */
-    public synchronized void setStakePerPlayerEuro(double euro) {
-        this.stakePerPlayerCents = (int) Math.round(euro * 100.0);
+    public void setStakePerPlayerEuro(double euro) {
+        acquire(periodLock.readLock());
+        try {
+            synchronized (settingsLock) {
+                this.stakePerPlayerCents = (int) Math.round(euro * 100.0);
+                settingsGeneration.incrementAndGet();
+                journal(StateStore.OP_SET_STAKE, out -> out.writeDouble(euro));
+            }
+        } finally {
+            periodLock.readLock().unlock();
+        }
+        snapshotIfDue();
+    }
+
+    public void setPlayerCount(int count) {
+        acquire(periodLock.readLock());
+        try {
+            synchronized (settingsLock) {
+                this.playerCount = Math.max(0, count);
+                settingsGeneration.incrementAndGet();
+                journal(StateStore.OP_SET_PLAYER_COUNT, out -> out.writeInt(count));
+            }
+        } finally {
+            periodLock.readLock().unlock();
+        }
+        snapshotIfDue();
     }
 
-    public synchronized void setPlayerCount(int count) {
-        this.playerCount = Math.max(0, count);
+    /**
+     * Setzt, wie der Einsatz-Topf auf die Plätze verteilt wird (siehe {@link Settlement}).
+     */
+    public void setPayoutWeighting(Settlement.Weighting weighting) {
+        acquire(periodLock.readLock());
+        try {
+            synchronized (settingsLock) {
+                this.payoutWeighting = weighting;
+                settingsGeneration.incrementAndGet();
+                journal(StateStore.OP_SET_PAYOUT_WEIGHTING, out -> out.writeUTF(weighting.spec()));
+            }
+        } finally {
+            periodLock.readLock().unlock();
+        }
+        snapshotIfDue();
     }
 
-    public synchronized int getPlayerCount() { return playerCount; }
-    public synchronized int getStakePerPlayerCents() { return stakePerPlayerCents; }
+    public Settlement.Weighting getPayoutWeighting() { return payoutWeighting; }
+    public int getPlayerCount() { return playerCount; }
+    public int getStakePerPlayerCents() { return stakePerPlayerCents; }
 
-    private String buildPayoutsMessage(List<UserStats> ranking) {
-        if (playerCount <= 0 || stakePerPlayerCents <= 0) {
-            return "Keine Einsatzdaten gesetzt.";
+    /**
+     * Schreibt den Gesamtzustand inkl. Journal-Sequenznummer (Snapshot-Format des {@link StateStore}).
+     * Nur unter dem Schreib-Teil von periodLock aufrufen.
+     */
+    void writeSnapshot(DataOutput out) throws IOException {
+        out.writeLong(journalSeq.get());
+        out.writeInt(currentMonth.getYear());
+        out.writeInt(currentMonth.getMonthValue());
+        out.writeInt(currentYear.getValue());
+        out.writeInt(stakePerPlayerCents);
+        out.writeInt(playerCount);
+        List<String> players = wakePlayers;
+        out.writeInt(players.size());
+        for (String id : players) {
+            out.writeUTF(id);
         }
-        int n = Math.min(playerCount, ranking.size());
-        if (n <= 1) {
-            int potCents = playerCount * stakePerPlayerCents;
-            return "Gesamteinsatz: " + formatEuroCents(potCents) + " — keine Verteilung (zu wenige Spieler).";
+        LocalDate wakeDate = wakeLedger.date();
+        out.writeLong(wakeDate == null ? Long.MIN_VALUE : wakeDate.toEpochDay());
+        out.writeInt(wakeLedger.size());
+        for (int i = 1; i <= wakeLedger.size(); i++) {
+            out.writeUTF(wakeLedger.userAt(i));
+            out.writeLong(wakeLedger.timeAt(i).toNanoOfDay());
         }
-        int potCents = playerCount * stakePerPlayerCents;
-        int sumWeights = n * (n - 1) / 2; // 0..n-1
-        StringBuilder sb = new StringBuilder();
-        sb.append(":moneybag: Einsatz-Topf: ").append(formatEuroCents(potCents)).append(" bei ").append(playerCount).append(" Spielern (je ").append(formatEuroCents(stakePerPlayerCents)).append(")\n");
-        for (int i = 0; i < n; i++) {
-            int weight = (n - 1 - i); // 1.,2.,...,n → n-1,...,0
-            int payout = sumWeights == 0 ? 0 : (int) Math.round((double) potCents * weight / (double) sumWeights);
-            UserStats s = ranking.get(i);
-            sb.append(i + 1)
-              .append(". ")
-              .append(s.getDisplayName())
-              .append(": ")
-              .append(formatEuroCents(payout))
-              .append("\n");
+        int userCount = users.size();
+        out.writeInt(userCount);
+        for (int row = 0; row < userCount; row++) {
+            users.view(row).writeTo(out);
         }
-        return sb.toString();
+        out.writeUTF(payoutWeighting.spec());
     }
 
-    private static String formatEuroCents(int cents) {
-        int abs = Math.abs(cents);
-        int eur = abs / 100;
-        int rem = abs % 100;
-        String sign = cents < 0 ? "-" : "";
-        return sign + eur + "," + String.format("%02d", rem) + " €";
+    /**
+     * Ersetzt den Gesamtzustand durch einen Snapshot. Nur unter dem Schreib-Teil von periodLock aufrufen.
+     * @return Journal-Sequenznummer, bis zu der der Snapshot reicht
+     */
+    long readSnapshot(DataInput in, int version) throws IOException {
+        journalSeq.set(in.readLong());
+        currentMonth = YearMonth.of(in.readInt(), in.readInt());
+        currentYear = Year.of(in.readInt());
+        stakePerPlayerCents = in.readInt();
+        playerCount = in.readInt();
+        settingsGeneration.incrementAndGet();
+        int wakePlayerCount = in.readInt();
+        List<String> players = new ArrayList<>(wakePlayerCount);
+        for (int i = 0; i < wakePlayerCount; i++) {
+            players.add(in.readUTF());
+        }
+        wakePlayers = List.copyOf(players);
+        long wakeEpochDay = in.readLong();
+        int wakeCount = in.readInt();
+        List<String> wakeIds = new ArrayList<>(wakeCount);
+        long[] wakeNanos = new long[wakeCount];
+        for (int i = 0; i < wakeCount; i++) {
+            wakeIds.add(in.readUTF());
+            wakeNanos[i] = in.readLong();
+        }
+        synchronized (wakeLock) {
+            wakeLedger.setPlayers(wakePlayers);
+            wakeLedger.load(wakeEpochDay == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(wakeEpochDay), wakeIds, wakeNanos);
+        }
+        users.clear();
+        int userCount = in.readInt();
+        for (int i = 0; i < userCount; i++) {
+            UserStats.readInto(users, in);
+        }
+        payoutWeighting = version >= 2 ? Settlement.weighting(in.readUTF()) : Settlement.LINEAR;
+        rebuildIndexes();
+        return journalSeq.get();
     }
 }
-
-
@@ -0,0 +1,397 @@
+package de.nikl4s;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToIntFunction;
+
+/**
+ * Inkrementell gepflegter Ranglisten-Index (persistenter Order-Statistics-Treap).
+ *
+ * Sortierung: Wertung (desc), Best-Streak (desc), Name (asc), User-ID (asc).
+ * Einfügen, Aktualisieren, Entfernen und Platz-Abfragen kosten O(log n);
+ * ein Ausschnitt der Rangliste (Top-N, Seite) kostet O(log n + k) statt eines Voll-Sorts.
+ *
+ * Der Index speichert unveränderliche {@link UserStats.Snapshot}s. Jede {@link Version} besteht aus der Rangliste
+ * und einem zweiten persistenten Treap von User-ID auf den eingefügten Eintrag; beide werden zusammen als ein
+ * Objekt per compare-and-set veröffentlicht. Schreiber kopieren nur die Pfade zur geänderten Stelle; hat ein anderer
+ * Schreiber zwischenzeitlich veröffentlicht, wird auf dessen Stand neu eingefügt. Leser (auch {@link #get} und
+ * {@link #rankOf}) lesen genau eine Version und hängen damit nie vom Fortschritt eines Schreibers ab.
+ * Auch Schreiber nehmen keinen Lock.
+ *
+ * Voraussetzung: {@link #rebuild} läuft exklusiv zu allen anderen Schreibern (unter dem Schreib-Teil von periodLock).
+ */
+public class RankIndex {
+    private final ToIntFunction<UserStats.Snapshot> score;
+    private final AtomicReference<Version> current = new AtomicReference<>(new Version(null, null));
+
+    /**
+     * @param score liefert die Wertung, nach der absteigend sortiert wird (z.B. Monats- oder Jahrespunkte)
+     */
+    public RankIndex(ToIntFunction<UserStats.Snapshot> score) {
+        this.score = score;
+    }
+
+    /** Sortierschlüssel eines Nutzers zum Zeitpunkt des Einfügens. */
+    private static final class Entry {
+        final int score;
+        final UserStats.Snapshot stats;
+
+        Entry(int score, UserStats.Snapshot stats) {
+            this.score = score;
+            this.stats = stats;
+        }
+    }
+
+    private static final class Node {
+        final Entry entry;
+        final int priority;
+        final Node left;
+        final Node right;
+        final int size;
+
+        Node(Entry entry, int priority, Node left, Node right) {
+            this.entry = entry;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + size(left) + size(right);
+        }
+
+        Node withChildren(Node newLeft, Node newRight) {
+            return new Node(entry, priority, newLeft, newRight);
+        }
+    }
+
+    /** Knoten des Treaps nach User-ID; liefert den Eintrag, unter dem ein Nutzer in der Rangliste steht. */
+    private static final class IdNode {
+        final Entry entry;
+        final int priority;
+        final IdNode left;
+        final IdNode right;
+
+        IdNode(Entry entry, int priority, IdNode left, IdNode right) {
+            this.entry = entry;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+        }
+
+        String userId() {
+            return entry.stats.userId;
+        }
+
+        IdNode withChildren(IdNode newLeft, IdNode newRight) {
+            return new IdNode(entry, priority, newLeft, newRight);
+        }
+    }
+
+    /**
+     * Unveränderlicher Stand der Rangliste. Alle Abfragen auf derselben Version sind untereinander konsistent.
+     */
+    public static final class Version {
+        private final Node root;
+        private final IdNode ids;
+
+        private Version(Node root, IdNode ids) {
+            this.root = root;
+            this.ids = ids;
+        }
+
+        public int size() {
+            return RankIndex.size(root);
+        }
+
+        /**
+         * Liefert die Plätze {@code from+1} bis {@code from+count} in Ranglisten-Reihenfolge.
+         */
+        public List<UserStats.Snapshot> slice(int from, int count) {
+            List<UserStats.Snapshot> out = new ArrayList<>(Math.max(0, Math.min(count, size() - from)));
+            if (count > 0 && from >= 0) {
+                collect(root, from, from + count, 0, out);
+            }
+            return out;
+        }
+
+        public List<UserStats.Snapshot> top(int count) {
+            return slice(0, count);
+        }
+
+        public List<UserStats.Snapshot> all() {
+            return slice(0, size());
+        }
+    }
+
+    private static int compare(Entry a, Entry b) {
+        int c = Integer.compare(b.score, a.score);
+        if (c != 0) return c;
+        c = Integer.compare(b.stats.bestStreak, a.stats.bestStreak);
+        if (c != 0) return c;
+        c = a.stats.displayName.compareTo(b.stats.displayName);
+        if (c != 0) return c;
+        return a.stats.userId.compareTo(b.stats.userId);
+    }
+
+    /**
+     * Fügt den Nutzer ein oder sortiert ihn nach einer Änderung neu ein. Lock-frei (siehe Klassenkommentar).
+     */
+    public void update(UserStats.Snapshot stats) {
+        Entry entry = new Entry(score.applyAsInt(stats), stats);
+        Node node = new Node(entry, ThreadLocalRandom.current().nextInt(), null, null);
+        int idPriority = ThreadLocalRandom.current().nextInt();
+        while (true) {
+            Version base = current.get();
+            Entry old = find(base.ids, stats.userId);
+            Node root = old != null ? delete(base.root, old) : base.root;
+            Version next = new Version(insert(root, node), put(base.ids, entry, idPriority));
+            if (current.compareAndSet(base, next)) {
+                return;
+            }
+        }
+    }
+
+    public void remove(String userId) {
+        while (true) {
+            Version base = current.get();
+            Entry old = find(base.ids, userId);
+            if (old == null) {
+                return;
+            }
+            if (current.compareAndSet(base, new Version(delete(base.root, old), removeId(base.ids, userId)))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Baut den Index aus allen Nutzern neu auf (z.B. nach Rollover oder Snapshot-Import); bei doppelten IDs zählt
+     * der letzte Stand. Statt n einzelner Einfügungen wird einmal (parallel) sortiert und der Baum in O(n)
+     * balanciert aufgebaut, danach wird die neue Wurzel in einem Schritt veröffentlicht.
+     */
+    public void rebuild(Iterable<UserStats.Snapshot> all) {
+        Map<String, Entry> newEntries = new HashMap<>();
+        for (UserStats.Snapshot s : all) {
+            newEntries.put(s.userId, new Entry(score.applyAsInt(s), s));
+        }
+        Entry[] sorted = newEntries.values().toArray(new Entry[0]);
+        Entry[] byId = sorted.clone();
+        Arrays.parallelSort(sorted, RankIndex::compare);
+        Arrays.parallelSort(byId, Comparator.comparing(e -> e.stats.userId));
+        current.set(new Version(build(sorted, 0, sorted.length), buildIds(byId, 0, byId.length)));
+    }
+
+    /**
+     * Balancierter Teilbaum aus sortierten Einträgen. Die Priorität wächst mit der Höhe (obere Bits) und ist
+     * darunter zufällig, damit die Heap-Bedingung gilt und spätere Einfügungen sich wie gewohnt einordnen.
+     */
+    private static Node build(Entry[] sorted, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int mid = (from + to) >>> 1;
+        Node left = build(sorted, from, mid);
+        Node right = build(sorted, mid + 1, to);
+        int height = 32 - Integer.numberOfLeadingZeros(to - from);
+        return new Node(sorted[mid], (height << 26) | ThreadLocalRandom.current().nextInt(1 << 26), left, right);
+    }
+
+    /**
+     * Wie {@link #build}, für den Treap nach User-ID aus nach ID sortierten Einträgen.
+     */
+    private static IdNode buildIds(Entry[] byId, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int mid = (from + to) >>> 1;
+        IdNode left = buildIds(byId, from, mid);
+        IdNode right = buildIds(byId, mid + 1, to);
+        int height = 32 - Integer.numberOfLeadingZeros(to - from);
+        return new IdNode(byId[mid], (height << 26) | ThreadLocalRandom.current().nextInt(1 << 26), left, right);
+    }
+
+    /**
+     * Aktueller, unveränderlicher Stand der Rangliste.
+     */
+    public Version version() {
+        return current.get();
+    }
+
+    public int size() {
+        return current.get().size();
+    }
+
+    /**
+     * Zuletzt eingefügter Stand eines Nutzers oder null.
+     */
+    public UserStats.Snapshot get(String userId) {
+        Entry e = find(current.get().ids, userId);
+        return e == null ? null : e.stats;
+    }
+
+    /**
+     * @return 1-basierter Platz des Nutzers oder 0, wenn er nicht im Index ist
+     */
+    public int rankOf(String userId) {
+        Version v = current.get();
+        Entry key = find(v.ids, userId);
+        return key == null ? 0 : rankOf(v.root, key);
+    }
+
+    private static int rankOf(Node n, Entry key) {
+        int rank = 0;
+        while (n != null) {
+            int c = compare(key, n.entry);
+            if (c < 0) {
+                n = n.left;
+            } else {
+                rank += size(n.left) + 1;
+                if (c == 0) {
+                    return rank;
+                }
+                n = n.right;
+            }
+        }
+        return 0;
+    }
+
+    public List<UserStats.Snapshot> slice(int from, int count) {
+        return current.get().slice(from, count);
+    }
+
+    public List<UserStats.Snapshot> top(int count) {
+        return current.get().top(count);
+    }
+
+    public List<UserStats.Snapshot> all() {
+        return current.get().all();
+    }
+
+    private static void collect(Node n, int from, int to, int offset, List<UserStats.Snapshot> out) {
+        if (n == null || offset >= to || offset + n.size <= from) {
+            return;
+        }
+        int leftSize = size(n.left);
+        collect(n.left, from, to, offset, out);
+        int pos = offset + leftSize;
+        if (pos >= from && pos < to) {
+            out.add(n.entry.stats);
+        }
+        collect(n.right, from, to, pos + 1, out);
+    }
+
+    private static int size(Node n) {
+        return n == null ? 0 : n.size;
+    }
+
+    private static Node insert(Node n, Node node) {
+        if (n == null) {
+            return node;
+        }
+        if (node.priority > n.priority) {
+            Node[] parts = split(n, node.entry);
+            return node.withChildren(parts[0], parts[1]);
+        }
+        if (compare(node.entry, n.entry) < 0) {
+            return n.withChildren(insert(n.left, node), n.right);
+        }
+        return n.withChildren(n.left, insert(n.right, node));
+    }
+
+    private static Node delete(Node n, Entry key) {
+        if (n == null) {
+            return null;
+        }
+        int c = compare(key, n.entry);
+        if (c == 0) {
+            return merge(n.left, n.right);
+        }
+        if (c < 0) {
+            return n.withChildren(delete(n.left, key), n.right);
+        }
+        return n.withChildren(n.left, delete(n.right, key));
+    }
+
+    /** Teilt in (kleiner als key, größer/gleich key). */
+    private static Node[] split(Node n, Entry key) {
+        if (n == null) {
+            return new Node[] { null, null };
+        }
+        if (compare(n.entry, key) < 0) {
+            Node[] parts = split(n.right, key);
+            return new Node[] { n.withChildren(n.left, parts[0]), parts[1] };
+        }
+        Node[] parts = split(n.left, key);
+        return new Node[] { parts[0], n.withChildren(parts[1], n.right) };
+    }
+
+    private static Entry find(IdNode n, String userId) {
+        while (n != null) {
+            int c = userId.compareTo(n.userId());
+            if (c == 0) {
+                return n.entry;
+            }
+            n = c < 0 ? n.left : n.right;
+        }
+        return null;
+    }
+
+    /** Setzt den Eintrag des Nutzers; ein vorhandener Knoten behält seine Priorität. */
+    private static IdNode put(IdNode n, Entry entry, int priority) {
+        if (n == null) {
+            return new IdNode(entry, priority, null, null);
+        }
+        int c = entry.stats.userId.compareTo(n.userId());
+        if (c == 0) {
+            return new IdNode(entry, n.priority, n.left, n.right);
+        }
+        if (c < 0) {
+            IdNode l = put(n.left, entry, priority);
+            if (l.priority > n.priority) { // Rechtsrotation
+                return l.withChildren(l.left, n.withChildren(l.right, n.right));
+            }
+            return n.withChildren(l, n.right);
+        }
+        IdNode r = put(n.right, entry, priority);
+        if (r.priority > n.priority) { // Linksrotation
+            return r.withChildren(n.withChildren(n.left, r.left), r.right);
+        }
+        return n.withChildren(n.left, r);
+    }
+
+    private static IdNode removeId(IdNode n, String userId) {
+        if (n == null) {
+            return null;
+        }
+        int c = userId.compareTo(n.userId());
+        if (c == 0) {
+            return mergeIds(n.left, n.right);
+        }
+        if (c < 0) {
+            return n.withChildren(removeId(n.left, userId), n.right);
+        }
+        return n.withChildren(n.left, removeId(n.right, userId));
+    }
+
+    private static IdNode mergeIds(IdNode a, IdNode b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            return a.withChildren(a.left, mergeIds(a.right, b));
+        }
+        return b.withChildren(mergeIds(a, b.left), b.right);
+    }
+
+    private static Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            return a.withChildren(a.left, merge(a.right, b));
+        }
+        return b.withChildren(merge(a, b.left), b.right);
+    }
+}
@@ -0,0 +1,242 @@
+package de.nikl4s;
+
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Auszahlung des Einsatz-Topfs eines Monats, exakt in Cent.
+ *
+ * Der Topf (Teilnehmer × Einsatz) wird nach einem {@link Weighting} auf die ersten Plätze verteilt, per
+ * Largest-Remainder-Verfahren: jeder erhält den abgerundeten Anteil, die restlichen Cent gehen einzeln an die
+ * größten Divisionsreste (bei Gleichstand an den besseren Platz). Die Auszahlungen ergeben damit immer genau den Topf.
+ *
+ * Teilnehmer sind die Plätze, auf die verteilt wird: höchstens die eingestellte Spieleranzahl, aber nie mehr, als
+ * in der Rangliste stehen. Jeder von ihnen zahlt den Einsatz; Topf und Einsätze im {@link SettlementLedger} sind
+ * also gleich groß, die Kontostände aller Teilnehmer summieren sich zu 0.
+ */
+public final class Settlement {
+
+    /**
+     * Gewichtung der Plätze; Platz 1 steht an Index 0. Gewichte sind nicht negativ.
+     */
+    public interface Weighting {
+        /**
+         * Textform, wie sie gespeichert und von {@link Settlement#weighting(String)} gelesen wird.
+         */
+        String spec();
+
+        long[] weights(int places);
+    }
+
+    /**
+     * Bisherige Verteilung: Gewichte n-1, n-2, ..., 0; der Letzte geht leer aus.
+     */
+    public static final Weighting LINEAR = new Weighting() {
+        @Override
+        public String spec() {
+            return "linear";
+        }
+
+        @Override
+        public long[] weights(int places) {
+            long[] w = new long[places];
+            for (int i = 0; i < places; i++) {
+                w[i] = places - 1 - i;
+            }
+            return w;
+        }
+    };
+
+    /**
+     * Quadratische Gewichte (n-1)², (n-2)², ..., 0: mehr für die Spitze, der Letzte geht leer aus.
+     */
+    public static final Weighting TOP_HEAVY = new Weighting() {
+        @Override
+        public String spec() {
+            return "top-heavy";
+        }
+
+        @Override
+        public long[] weights(int places) {
+            long[] w = new long[places];
+            for (int i = 0; i < places; i++) {
+                long base = places - 1 - i;
+                w[i] = base * base;
+            }
+            return w;
+        }
+    };
+
+    /**
+     * Die ersten {@code k} Plätze teilen sich den Topf zu gleichen Teilen.
+     */
+    public static Weighting topK(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k muss mindestens 1 sein");
+        }
+        return new Weighting() {
+            @Override
+            public String spec() {
+                return "top-" + k;
+            }
+
+            @Override
+            public long[] weights(int places) {
+                long[] w = new long[places];
+                Arrays.fill(w, 0, Math.min(k, places), 1);
+                return w;
+            }
+        };
+    }
+
+    /**
+     * Liest "linear", "top-heavy" oder "top-&lt;k&gt;".
+     * @throws IllegalArgumentException bei unbekannter Angabe
+     */
+    public static Weighting weighting(String spec) {
+        String s = spec.trim().toLowerCase(Locale.ROOT);
+        if (s.equals(LINEAR.spec())) {
+            return LINEAR;
+        }
+        if (s.equals(TOP_HEAVY.spec())) {
+            return TOP_HEAVY;
+        }
+        if (s.startsWith("top-")) {
+            try {
+                return topK(Integer.parseInt(s.substring(4)));
+            } catch (NumberFormatException e) {
+                // unten gemeldet
+            }
+        }
+        throw new IllegalArgumentException("Unbekannte Verteilung: " + spec + " (linear, top-heavy, top-<k>)");
+    }
+
+    public final YearMonth month;
+    public final String scheme;
+    public final int playerCount;
+    /** Plätze, die den Einsatz zahlen und auf die verteilt wird: min(playerCount, Ranglistengröße). */
+    public final int participants;
+    public final int stakePerPlayerCents;
+    public final long potCents;
+    private final List<UserStats.Snapshot> places;
+    private final long[] payouts;
+
+    private Settlement(YearMonth month, String scheme, int playerCount, int participants, int stakePerPlayerCents,
+                       List<UserStats.Snapshot> places, long[] payouts) {
+        this.month = month;
+        this.scheme = scheme;
+        this.playerCount = playerCount;
+        this.participants = participants;
+        this.stakePerPlayerCents = stakePerPlayerCents;
+        this.potCents = (long) participants * Math.max(stakePerPlayerCents, 0);
+        this.places = places;
+        this.payouts = payouts;
+    }
+
+    /**
+     * Verteilt den Topf der ersten min(playerCount, ranking.size()) Plätze von {@code ranking} auf eben diese.
+     * Bei weniger als zwei Plätzen oder ohne Einsatzdaten wird nichts verteilt ({@link #isDistributed()}).
+     */
+    public static Settlement of(YearMonth month, List<UserStats.Snapshot> ranking, int playerCount,
+                                int stakePerPlayerCents, Weighting weighting) {
+        int n = Math.min(Math.max(playerCount, 0), ranking.size());
+        if (playerCount <= 0 || stakePerPlayerCents <= 0 || n <= 1) {
+            return new Settlement(month, weighting.spec(), playerCount, n, stakePerPlayerCents, List.of(), new long[0]);
+        }
+        long pot = (long) n * stakePerPlayerCents;
+        return new Settlement(month, weighting.spec(), playerCount, n, stakePerPlayerCents,
+                List.copyOf(ranking.subList(0, n)), allocate(pot, weighting.weights(n)));
+    }
+
+    /**
+     * Largest-Remainder-Verteilung von {@code total} nach {@code weights}; die Summe ist exakt {@code total}.
+     * Sind alle Gewichte 0, bekommt niemand etwas.
+     */
+    static long[] allocate(long total, long[] weights) {
+        int n = weights.length;
+        long sum = 0;
+        for (long w : weights) {
+            if (w < 0) {
+                throw new IllegalArgumentException("Negatives Gewicht");
+            }
+            sum = Math.addExact(sum, w);
+        }
+        long[] out = new long[n];
+        if (sum == 0) {
+            return out;
+        }
+        long[] remainders = new long[n];
+        long given = 0;
+        for (int i = 0; i < n; i++) {
+            long share = Math.multiplyExact(total, weights[i]);
+            out[i] = share / sum;
+            remainders[i] = share % sum;
+            given += out[i];
+        }
+        long left = total - given; // < Anzahl der Plätze mit Gewicht > 0
+        if (left > 0) {
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            // stabil: bei gleichem Rest bleibt der bessere Platz vorn
+            Arrays.sort(order, (a, b) -> Long.compare(remainders[b], remainders[a]));
+            for (int i = 0; i < left; i++) {
+                out[order[i]]++;
+            }
+        }
+        return out;
+    }
+
+    public boolean isDistributed() {
+        return payouts.length > 0;
+    }
+
+    /**
+     * Anzahl der Plätze, auf die verteilt wurde.
+     */
+    public int size() {
+        return payouts.length;
+    }
+
+    public UserStats.Snapshot placeAt(int index) {
+        return places.get(index);
+    }
+
+    public long payoutAt(int index) {
+        return payouts[index];
+    }
+
+    /**
+     * Auszahlungs-Abschnitt der Monatsabschluss-Nachricht.
+     */
+    public String message() {
+        if (playerCount <= 0 || stakePerPlayerCents <= 0) {
+            return "Keine Einsatzdaten gesetzt.";
+        }
+        if (!isDistributed()) {
+            return "Keine Verteilung (zu wenige Spieler), es wird kein Einsatz fällig.";
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(":moneybag: Einsatz-Topf: ").append(formatEuroCents(potCents)).append(" bei ").append(participants).append(" Spielern (je ").append(formatEuroCents(stakePerPlayerCents)).append(")\n");
+        for (int i = 0; i < payouts.length; i++) {
+            sb.append(i + 1)
+              .append(". ")
+              .append(places.get(i).displayName)
+              .append(": ")
+              .append(formatEuroCents(payouts[i]))
+              .append("\n");
+        }
+        return sb.toString();
+    }
+
+    static String formatEuroCents(long cents) {
+        long abs = Math.abs(cents);
+        long eur = abs / 100;
+        long rem = abs % 100;
+        String sign = cents < 0 ? "-" : "";
+        return sign + eur + "," + String.format("%02d", rem) + " €";
+    }
+}
@@ -0,0 +1,147 @@
+package de.nikl4s;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Append-only-Kassenbuch aller Monatsauszahlungen eines Servers (settlements.ldg).
+ *
+ * Pro verteiltem Platz ein Datensatz fester Länge:
+ *   [int Monat (Jahr*12 + Monat-1)][long userId][long Auszahlung in Cent][long Einsatz in Cent]
+ * Jeder Platz, auf den verteilt wurde, zahlt den Einsatz; da der Topf genau aus diesen Einsätzen besteht, ist die
+ * Summe aller Kontostände 0. Beim Öffnen wird die Datei einmal gelesen; danach werden
+ * die Summen je Nutzer beim Anhängen fortgeschrieben, ein Kontostand ist also ein Map-Lookup.
+ * Ein Monat wird höchstens einmal gebucht; ein angerissener letzter Datensatz (Absturz) wird abgeschnitten.
+ */
+public class SettlementLedger implements AutoCloseable {
+    static final int RECORD_BYTES = 4 + 8 + 8 + 8;
+
+    /**
+     * Summen eines Nutzers über alle gebuchten Monate.
+     */
+    public static final class Account {
+        public final long payoutsCents;
+        public final long stakesCents;
+        public final int months;
+
+        Account(long payoutsCents, long stakesCents, int months) {
+            this.payoutsCents = payoutsCents;
+            this.stakesCents = stakesCents;
+            this.months = months;
+        }
+
+        /**
+         * Auszahlungen minus Einsätze.
+         */
+        public long balanceCents() {
+            return payoutsCents - stakesCents;
+        }
+    }
+
+    private static final Account EMPTY = new Account(0, 0, 0);
+
+    private final FileChannel channel;
+    private final Map<Long, long[]> totals = new HashMap<>(); // {Auszahlungen, Einsätze, Monate}
+    private final Set<Integer> settledMonths = new HashSet<>();
+    private long records;
+
+    private SettlementLedger(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    public static SettlementLedger open(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        ByteBuffer buf = ByteBuffer.wrap(Files.exists(file) ? Files.readAllBytes(file) : new byte[0]);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        SettlementLedger ledger = new SettlementLedger(channel);
+        long count = buf.remaining() / RECORD_BYTES;
+        for (long i = 0; i < count; i++) {
+            ledger.apply(buf.getInt(), buf.getLong(), buf.getLong(), buf.getLong());
+        }
+        ledger.records = count;
+        try {
+            // Angerissenen Datensatz abschneiden, damit neue Einträge wieder ausgerichtet sind
+            channel.truncate(count * RECORD_BYTES);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return ledger;
+    }
+
+    private void apply(int month, long userId, long payout, long stake) {
+        long[] t = totals.computeIfAbsent(userId, id -> new long[3]);
+        t[0] += payout;
+        t[1] += stake;
+        t[2]++;
+        settledMonths.add(month);
+    }
+
+    private static int key(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+
+    /**
+     * Bucht eine Auszahlung. Nicht verteilte oder bereits gebuchte Monate werden übersprungen.
+     * @return true, wenn gebucht wurde
+     */
+    public synchronized boolean append(Settlement settlement) throws IOException {
+        int month = key(settlement.month);
+        if (!settlement.isDistributed() || settledMonths.contains(month)) {
+            return false;
+        }
+        int n = settlement.size();
+        long[] userIds = new long[n];
+        for (int i = 0; i < n; i++) {
+            userIds[i] = Long.parseUnsignedLong(settlement.placeAt(i).userId);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_BYTES * n);
+        for (int i = 0; i < n; i++) {
+            buf.putInt(month).putLong(userIds[i]).putLong(settlement.payoutAt(i)).putLong(settlement.stakePerPlayerCents);
+        }
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        channel.force(false);
+        for (int i = 0; i < n; i++) {
+            apply(month, userIds[i], settlement.payoutAt(i), settlement.stakePerPlayerCents);
+        }
+        records += n;
+        return true;
+    }
+
+    public synchronized boolean isSettled(YearMonth month) {
+        return settledMonths.contains(key(month));
+    }
+
+    /**
+     * Summen des Nutzers; ohne Buchungen alles 0. O(1).
+     */
+    public synchronized Account account(long userId) {
+        long[] t = totals.get(userId);
+        return t == null ? EMPTY : new Account(t[0], t[1], (int) t[2]);
+    }
+
+    public synchronized long size() {
+        return records;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+}
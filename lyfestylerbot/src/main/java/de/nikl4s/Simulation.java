@@ -0,0 +1,598 @@
+package de.nikl4s;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.zone.ZoneOffsetTransition;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Deterministische Simulation: spielt synthetischen Check-in-Verkehr über einen frei wählbaren Zeitraum mit einer
+ * vorgestellten {@link Clock} durch die echte Logik, so schnell die CPU kann. Beteiligt sind {@link GuildShards} samt
+ * Journal, Historie und Kassenbuch sowie der {@link JobScheduler} mit dem Monatsabschluss aus {@link MonthCloseJob}.
+ * Discord und die Bildprüfung fehlen: eine Nachricht ist hier nur Server, Nutzer, Art und Zeitstempel. Wie in den
+ * Trackern wird der Zeitstempel in der Zeitzone der Uhr zu Stichtag und Uhrzeit.
+ *
+ * Aufruf: java -cp lyfestylerbot.jar de.nikl4s.Simulation [--start 2024-01-01] [--days 366] [--guilds 4]
+ *         [--users 1500] [--zone Europe/Berlin] [--seed 42] [--dir &lt;pfad&gt;]
+ * Ohne --dir läuft sie in einem temporären Verzeichnis, das danach gelöscht wird.
+ *
+ * Ein Schattenmodell prüft nebenher:
+ * - Gym: höchstens einmal pro Tag; Punkte; Streak zählt aufeinanderfolgende Tage innerhalb des Monats; Best-Streak
+ * - Wake: Position = Ankunftsreihenfolge, Doppel-Check-ins abgelehnt, Erster und Letzter der Wake-Spieler
+ * - Abschluss: jeder Monat genau einmal und in Reihenfolge, Jahresende nur im Dezember, Endstände wie im
+ *   Schattenmodell, danach alle Monatspunkte 0, Auszahlungen ergeben den Topf
+ * - Verspätete Check-ins für einen abgeschlossenen Monat werden abgelehnt und setzen nichts zurück
+ * - Neustart: nach dem Schließen stellen Snapshot und Journal denselben Stand wieder her
+ * Jeder dritte Monatserste beginnt mit "Ausfall" bis Mittag; dann löst der erste Check-in den Wechsel aus und
+ * der nachgeholte Job liefert den Abschluss. Exit-Code 1, wenn eine Invariante verletzt ist.
+ */
+public class Simulation {
+    private static final long GUILD_BASE = 900_000_000_000_000_000L;
+    private static final long USER_BASE = 100_000_000_000_000_000L;
+    private static final int WAKE_PLAYERS = 8;
+    private static final int MAX_REPORTED_FAILURES = 20;
+    private static final Settlement.Weighting[] WEIGHTINGS = {
+        Settlement.LINEAR, Settlement.TOP_HEAVY, Settlement.topK(3)
+    };
+
+    /**
+     * Uhr, die nur die Simulation weiterstellt.
+     */
+    static final class SimulatedClock extends Clock {
+        private final ZoneId zone;
+        private volatile long millis;
+
+        SimulatedClock(ZoneId zone, Instant start) {
+            this.zone = zone;
+            this.millis = start.toEpochMilli();
+        }
+
+        void set(Instant instant) {
+            millis = instant.toEpochMilli();
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        @Override
+        public Clock withZone(ZoneId other) {
+            return Clock.fixed(instant(), other);
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+
+    /**
+     * Erwarteter Abschluss aus dem Schattenmodell.
+     */
+    private static final class ExpectedClose {
+        final YearMonth month;
+        final boolean yearEnded;
+        final int[] points;
+        final int[] yearPoints;
+
+        ExpectedClose(YearMonth month, boolean yearEnded, int[] points, int[] yearPoints) {
+            this.month = month;
+            this.yearEnded = yearEnded;
+            this.points = points;
+            this.yearPoints = yearPoints;
+        }
+    }
+
+    /**
+     * Schattenstand eines Servers; nur vom Simulations-Thread angefasst.
+     */
+    private static final class Shadow {
+        final long guildId;
+        YearMonth month;
+        final int[] points;
+        final int[] yearPoints;
+        final int[] streak;
+        final int[] bestStreak;
+        final long[] lastGymDay;
+        final ArrayDeque<ExpectedClose> expected = new ArrayDeque<>();
+        LocalDate wakeDay;
+        int wakeCount;
+        final BitSet awake;
+        int asleep;
+
+        Shadow(long guildId, YearMonth month, int users) {
+            this.guildId = guildId;
+            this.month = month;
+            points = new int[users];
+            yearPoints = new int[users];
+            streak = new int[users];
+            bestStreak = new int[users];
+            lastGymDay = new long[users];
+            Arrays.fill(lastGymDay, Long.MIN_VALUE);
+            awake = new BitSet(users);
+        }
+
+        void rollover(YearMonth newMonth) {
+            boolean yearEnded = newMonth.getYear() != month.getYear();
+            expected.add(new ExpectedClose(month, yearEnded, points.clone(), yearEnded ? yearPoints.clone() : null));
+            Arrays.fill(points, 0);
+            Arrays.fill(streak, 0);
+            Arrays.fill(lastGymDay, Long.MIN_VALUE);
+            if (yearEnded) {
+                Arrays.fill(yearPoints, 0);
+            }
+            month = newMonth;
+        }
+    }
+
+    private final SimulatedClock clock;
+    private final LocalDate start;
+    private final int days;
+    private final int users;
+    private final SplittableRandom random;
+    private final Path dir;
+    private final Shadow[] shadows;
+    private final Map<Long, Shadow> shadowByGuild = new HashMap<>();
+    private GuildShards shards;
+    private JobScheduler scheduler;
+
+    private long gymEvents;
+    private long wakeEvents;
+    private long closesVerified;
+    private long jobRuns;
+    private long bookedPotCents;
+    private long failures;
+
+    Simulation(ZoneId zone, LocalDate start, int days, int guilds, int users, long seed, Path dir) {
+        this.clock = new SimulatedClock(zone, start.atStartOfDay(zone).toInstant());
+        this.start = start;
+        this.days = days;
+        this.users = users;
+        this.random = new SplittableRandom(seed);
+        this.dir = dir;
+        this.shadows = new Shadow[guilds];
+        for (int g = 0; g < guilds; g++) {
+            shadows[g] = new Shadow(GUILD_BASE + g, YearMonth.from(start), users);
+            shadowByGuild.put(shadows[g].guildId, shadows[g]);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                System.err.println("Aufruf: Simulation [--start JJJJ-MM-TT] [--days n] [--guilds n] [--users n] "
+                        + "[--zone Zeitzone] [--seed n] [--dir pfad]");
+                System.exit(2);
+                return;
+            }
+            opts.put(args[i].substring(2), args[++i]);
+        }
+        ZoneId zone = ZoneId.of(opts.getOrDefault("zone", "Europe/Berlin"));
+        LocalDate start = LocalDate.parse(opts.getOrDefault("start", "2024-01-01"));
+        int days = Integer.parseInt(opts.getOrDefault("days", "366"));
+        int guilds = Integer.parseInt(opts.getOrDefault("guilds", "4"));
+        int users = Integer.parseInt(opts.getOrDefault("users", "1500"));
+        long seed = Long.parseLong(opts.getOrDefault("seed", "42"));
+        if (guilds < 1 || guilds > 1 << 16 || users < WAKE_PLAYERS || users > 1 << 22 || days < 1) {
+            throw new IllegalArgumentException("guilds 1-65536, users " + WAKE_PLAYERS + "-4194304, days >= 1");
+        }
+        boolean temporary = !opts.containsKey("dir");
+        Path dir = temporary ? Files.createTempDirectory("lyfe-sim") : Path.of(opts.get("dir"));
+
+        Simulation sim = new Simulation(zone, start, days, guilds, users, seed, dir);
+        try {
+            sim.run();
+        } finally {
+            if (temporary) {
+                deleteRecursively(dir);
+            }
+        }
+        System.exit(sim.failures == 0 ? 0 : 1);
+    }
+
+    void run() throws IOException {
+        ZoneId zone = clock.getZone();
+        System.out.println("[Simulation] " + start + " + " + days + " Tage, " + shadows.length + " Server à " + users
+                + " Nutzer, Zone " + zone + " (" + countTransitions(zone) + " Zeitumstellungen)");
+        shards = new GuildShards(dir, clock);
+        scheduler = JobScheduler.open(dir.resolve("scheduler.properties"), clock);
+        scheduler.schedule("month-close", JobScheduler.monthly(1, LocalTime.MIDNIGHT), Duration.ofDays(366), this::closeMonth);
+        setUp();
+        scheduler.runDue();
+
+        long begin = System.nanoTime();
+        for (int d = 0; d < days; d++) {
+            simulateDay(start.plusDays(d));
+        }
+        clock.set(start.plusDays(days).atStartOfDay(zone).toInstant());
+        scheduler.runDue();
+        long elapsed = System.nanoTime() - begin;
+
+        long events = gymEvents + wakeEvents;
+        double seconds = Math.max(1, elapsed) / 1e9;
+        System.out.printf("[Simulation] %d Check-ins (%d Gym, %d Wake) in %.1f s: %.0f Check-ins/s%n",
+                events, gymEvents, wakeEvents, seconds, events / seconds);
+        System.out.println("[Simulation] " + jobRuns + " Abschluss-Läufe, " + closesVerified + " Abschlüsse geprüft, "
+                + Settlement.formatEuroCents(bookedPotCents) + " ausgezahlt");
+
+        checkLedgerAndRestart();
+        for (Shadow shadow : shadows) {
+            if (!shadow.expected.isEmpty()) {
+                fail("Server " + shadow.guildId + ": " + shadow.expected.size() + " Abschluss/Abschlüsse nie geliefert, ab "
+                        + shadow.expected.peek().month);
+            }
+        }
+        System.out.println(failures == 0 ? "[Simulation] Alle Invarianten erfüllt"
+                : "[Simulation] " + failures + " Invarianten verletzt");
+    }
+
+    private void setUp() {
+        for (int g = 0; g < shadows.length; g++) {
+            try (GuildShards.Lease lease = shards.acquire(shadows[g].guildId)) {
+                PointsManager points = lease.points();
+                List<String> wakePlayers = new ArrayList<>(WAKE_PLAYERS);
+                for (int u = 0; u < WAKE_PLAYERS; u++) {
+                    wakePlayers.add(userId(g, u));
+                }
+                points.setWakePlayers(wakePlayers);
+                points.setPlayerCount(Math.min(users, 10));
+                points.setStakePerPlayerEuro(5);
+                points.setPayoutWeighting(WEIGHTINGS[g % WEIGHTINGS.length]);
+            }
+        }
+    }
+
+    /**
+     * Erzeugt die Check-ins eines Tages, sortiert nach Zeitstempel, und spielt sie ein.
+     * Schlüssel: [Sekunde seit Tagesbeginn:17][Server:16][Nutzer:22][Art:1]; die Sortierung ist damit deterministisch.
+     */
+    private void simulateDay(LocalDate day) {
+        ZoneId zone = clock.getZone();
+        long dayStart = day.atStartOfDay(zone).toEpochSecond();
+        long dayLength = day.plusDays(1).atStartOfDay(zone).toEpochSecond() - dayStart; // 23, 24 oder 25 Stunden
+        long[] keys = new long[shadows.length * users * 3];
+        int n = 0;
+        for (int g = 0; g < shadows.length; g++) {
+            for (int u = 0; u < users; u++) {
+                if (random.nextInt(100) < 55) {
+                    keys[n++] = key(random.nextLong(dayLength), g, u, 0);
+                    if (random.nextInt(50) == 0) {
+                        // zweites !gym am selben Tag
+                        keys[n++] = key(random.nextLong(dayLength), g, u, 0);
+                    }
+                }
+                if (random.nextInt(100) < (u < WAKE_PLAYERS ? 90 : 20)) {
+                    LocalTime wake = LocalTime.ofSecondOfDay(4 * 3600 + random.nextInt(5 * 3600));
+                    long second = ZonedDateTime.of(day, wake, zone).toEpochSecond() - dayStart;
+                    keys[n++] = key(second, g, u, 1);
+                }
+            }
+        }
+        Arrays.sort(keys, 0, n);
+
+        // Ausfall: an jedem dritten Monatsersten läuft der Scheduler erst ab Mittag
+        boolean outage = day.getDayOfMonth() == 1 && day.getMonthValue() % 3 == 0;
+        long schedulerBack = outage ? ZonedDateTime.of(day, LocalTime.NOON, zone).toEpochSecond() : dayStart;
+        clock.set(Instant.ofEpochSecond(dayStart));
+        if (!outage) {
+            scheduler.runDue();
+        }
+        for (int i = 0; i < n; i++) {
+            long k = keys[i];
+            long second = dayStart + (k >>> 39);
+            int g = (int) ((k >>> 23) & 0xFFFF);
+            int u = (int) ((k >>> 1) & 0x3FFFFF);
+            clock.set(Instant.ofEpochSecond(second));
+            if (outage && second >= schedulerBack) {
+                outage = false;
+            }
+            if (!outage) {
+                scheduler.runDue();
+            }
+            // wie in den Trackern: Zeitstempel der Nachricht in der Zeitzone der Uhr
+            ZonedDateTime sent = Instant.ofEpochSecond(second).atZone(zone);
+            if ((k & 1) == 0) {
+                gym(g, u, sent.toLocalDate());
+            } else {
+                wake(g, u, sent.toLocalDate(), sent.toLocalTime());
+            }
+        }
+    }
+
+    private static long key(long second, int guild, int user, int kind) {
+        return (second << 39) | ((long) guild << 23) | ((long) user << 1) | kind;
+    }
+
+    private void gym(int g, int u, LocalDate day) {
+        Shadow s = shadows[g];
+        YearMonth ym = YearMonth.from(day);
+        if (!ym.equals(s.month)) {
+            s.rollover(ym);
+        }
+        UserStats.AwardResult res;
+        try (GuildShards.Lease lease = shards.acquire(s.guildId)) {
+            res = lease.points().handleGym(userId(g, u), "Nutzer " + u, day, PointsManager.DEFAULT_GYM_POINTS);
+        }
+        gymEvents++;
+        long epochDay = day.toEpochDay();
+        boolean expectAccepted = s.lastGymDay[u] != epochDay;
+        if (expectAccepted) {
+            s.streak[u] = s.lastGymDay[u] == epochDay - 1 ? s.streak[u] + 1 : 1;
+            s.bestStreak[u] = Math.max(s.bestStreak[u], s.streak[u]);
+            s.points[u] += PointsManager.DEFAULT_GYM_POINTS;
+            s.yearPoints[u] += PointsManager.DEFAULT_GYM_POINTS;
+            s.lastGymDay[u] = epochDay;
+        }
+        if (res.accepted != expectAccepted || res.totalPoints != s.points[u] || res.currentStreak != s.streak[u]
+                || res.bestStreak != s.bestStreak[u]) {
+            fail("Gym " + day + " Server " + g + " Nutzer " + u + ": erwartet " + expectAccepted + "/" + s.points[u] + "/"
+                    + s.streak[u] + "/" + s.bestStreak[u] + ", bekommen " + res.accepted + "/" + res.totalPoints + "/"
+                    + res.currentStreak + "/" + res.bestStreak);
+        }
+    }
+
+    private void wake(int g, int u, LocalDate day, LocalTime time) {
+        Shadow s = shadows[g];
+        YearMonth ym = YearMonth.from(day);
+        if (!ym.equals(s.month)) {
+            s.rollover(ym);
+        }
+        if (!day.equals(s.wakeDay)) {
+            s.wakeDay = day;
+            s.wakeCount = 0;
+            s.awake.clear();
+            s.asleep = WAKE_PLAYERS;
+        }
+        PointsManager.WakeResult res;
+        try (GuildShards.Lease lease = shards.acquire(s.guildId)) {
+            res = lease.points().handleAwake(userId(g, u), "Nutzer " + u, day, time);
+        }
+        wakeEvents++;
+        boolean expectAccepted = !s.awake.get(u);
+        boolean expectLast = false;
+        if (expectAccepted) {
+            s.awake.set(u);
+            s.wakeCount++;
+            if (u < WAKE_PLAYERS) {
+                s.asleep--;
+                expectLast = s.asleep == 0;
+            }
+        }
+        if (res.accepted != expectAccepted || (expectAccepted && (res.position != s.wakeCount
+                || res.isFirst != (s.wakeCount == 1) || res.isLast != expectLast))) {
+            fail("Wake " + day + " " + time + " Server " + g + " Nutzer " + u + ": erwartet " + expectAccepted + " Platz "
+                    + s.wakeCount + " letzter " + expectLast + ", bekommen " + res.accepted + " Platz " + res.position
+                    + " erster " + res.isFirst + " letzter " + res.isLast);
+        }
+    }
+
+    /**
+     * Monatsabschluss-Job: derselbe Ablauf wie {@link MonthCloseJob}, nur wird geprüft statt gepostet.
+     */
+    private void closeMonth(ZonedDateTime scheduledFor) {
+        jobRuns++;
+        YearMonth month = YearMonth.from(scheduledFor);
+        boolean[] closedByJob = new boolean[shadows.length];
+        for (int g = 0; g < shadows.length; g++) {
+            if (month.isAfter(shadows[g].month)) {
+                shadows[g].rollover(month);
+                closedByJob[g] = true;
+            }
+        }
+        MonthCloseJob.closeAll(shards, month, new MonthCloseJob.Poster() {
+            @Override
+            public boolean post(long guildId, List<PeriodClose> closes) {
+                verifyCloses(guildId, closes);
+                return true;
+            }
+
+            @Override
+            public boolean postArchived(long guildId, YearMonth archived, String text) {
+                // jeder Abschluss wird im selben Lauf aus dem Speicher gepostet, die Ablage bleibt also leer
+                fail("Server " + guildId + ": Abschluss " + archived + " aus der Ablage erneut gepostet");
+                return true;
+            }
+        });
+        LocalDate lateDay = month.minusMonths(1).atEndOfMonth();
+        for (int g = 0; g < shadows.length; g++) {
+            try (GuildShards.Lease lease = shards.acquire(shadows[g].guildId)) {
+                PointsManager points = lease.points();
+                // Verspätete Check-ins für den abgeschlossenen Monat: abgelehnt, kein Zurückspringen
+                UserStats.AwardResult late = points.handleGym(userId(g, 0), "Nutzer 0", lateDay,
+                        PointsManager.DEFAULT_GYM_POINTS);
+                PointsManager.WakeResult lateWake = points.handleAwake(userId(g, 0), "Nutzer 0", lateDay, LocalTime.NOON);
+                if (late.accepted || !late.periodClosed || lateWake.accepted) {
+                    fail("Server " + g + ": verspäteter Check-in vom " + lateDay + " nach dem Abschluss angenommen");
+                }
+                // ebenso die Strafe für ein altes bzw. wiederholtes Bild in so einem Check-in
+                if (!points.penalize(userId(g, 0), "Nutzer 0", lateDay, -5).periodClosed) {
+                    fail("Server " + g + ": Strafe für einen Check-in vom " + lateDay + " im neuen Monat verbucht");
+                }
+                if (!points.getCurrentMonth().equals(month)) {
+                    fail("Server " + g + " steht nach dem Abschluss auf " + points.getCurrentMonth() + " statt " + month);
+                }
+                // Hat erst der Job gewechselt, gab es im neuen Monat noch keinen Check-in
+                List<UserStats.Snapshot> top = points.getTopRanking(1);
+                if (closedByJob[g] && !top.isEmpty() && top.get(0).points != 0) {
+                    fail("Server " + g + ": Monatspunkte nach dem Abschluss " + month + " nicht 0");
+                }
+            }
+        }
+    }
+
+    private void verifyCloses(long guildId, List<PeriodClose> closes) {
+        Shadow s = shadowByGuild.get(guildId);
+        for (PeriodClose close : closes) {
+            ExpectedClose e = s.expected.poll();
+            if (e == null || !e.month.equals(close.month)) {
+                fail("Server " + guildId + ": Abschluss " + close.month + " unerwartet (erwartet " + (e == null ? "keiner" : e.month) + ")");
+                continue;
+            }
+            closesVerified++;
+            if (close.yearEnded != e.yearEnded || close.yearEnded != (close.month.getMonthValue() == 12)) {
+                fail("Server " + guildId + ": Jahresende bei " + close.month + " = " + close.yearEnded);
+            }
+            compare(guildId, close.month + " Monat", close.monthRanking(), e.points, false);
+            if (e.yearEnded) {
+                compare(guildId, close.month + " Jahr", close.yearRanking(), e.yearPoints, true);
+            }
+            Settlement settlement = close.settlement();
+            if (settlement.isDistributed()) {
+                long sum = 0;
+                for (int i = 0; i < settlement.size(); i++) {
+                    sum += settlement.payoutAt(i);
+                }
+                if (settlement.potCents != (long) settlement.size() * settlement.stakePerPlayerCents) {
+                    fail("Server " + guildId + " " + close.month + ": Topf " + settlement.potCents + " bei "
+                            + settlement.size() + " Plätzen zu je " + settlement.stakePerPlayerCents);
+                }
+                if (sum != settlement.potCents) {
+                    fail("Server " + guildId + " " + close.month + ": Auszahlungen " + sum + " statt Topf " + settlement.potCents);
+                }
+                bookedPotCents += settlement.potCents;
+            }
+        }
+    }
+
+    private void compare(long guildId, String label, List<UserStats.Snapshot> ranking, int[] expected, boolean year) {
+        int g = (int) (guildId - GUILD_BASE);
+        int seen = 0;
+        int previous = Integer.MAX_VALUE;
+        for (UserStats.Snapshot snap : ranking) {
+            int u = (int) (Long.parseUnsignedLong(snap.userId) - USER_BASE - (long) g * 10_000_000L);
+            int actual = year ? snap.yearPoints : snap.points;
+            if (u < 0 || u >= users || actual != expected[u]) {
+                fail("Server " + guildId + " " + label + ": " + snap.userId + " hat " + actual + " Punkte, erwartet "
+                        + (u < 0 || u >= users ? "?" : expected[u]));
+                return;
+            }
+            if (actual > previous) {
+                fail("Server " + guildId + " " + label + ": Rangliste nicht absteigend sortiert");
+                return;
+            }
+            previous = actual;
+            seen++;
+        }
+        int active = 0;
+        for (int p : expected) {
+            if (p != 0) {
+                active++;
+            }
+        }
+        if (seen < active) {
+            fail("Server " + guildId + " " + label + ": " + seen + " Nutzer in der Rangliste, " + active + " mit Punkten");
+        }
+    }
+
+    /**
+     * Kassenbuch gegen die geprüften Auszahlungen, dann Neustart aus Snapshot und Journal gegen das Schattenmodell.
+     */
+    private void checkLedgerAndRestart() {
+        long paidOut = 0;
+        long staked = 0;
+        for (int g = 0; g < shadows.length; g++) {
+            try (GuildShards.Lease lease = shards.acquire(shadows[g].guildId)) {
+                SettlementLedger ledger = lease.points().getLedger();
+                for (int u = 0; u < users; u++) {
+                    SettlementLedger.Account account = ledger.account(Long.parseUnsignedLong(userId(g, u)));
+                    paidOut += account.payoutsCents;
+                    staked += account.stakesCents;
+                }
+            }
+        }
+        if (paidOut != bookedPotCents) {
+            fail("Kassenbuch: " + paidOut + " Cent ausgezahlt, Abschlüsse ergeben " + bookedPotCents);
+        }
+        if (staked != paidOut) {
+            fail("Kassenbuch: " + staked + " Cent Einsätze, aber " + paidOut + " Cent ausgezahlt");
+        }
+
+        long begin = System.nanoTime();
+        shards.close();
+        shards = new GuildShards(dir, clock);
+        for (int g = 0; g < shadows.length; g++) {
+            Shadow s = shadows[g];
+            try (GuildShards.Lease lease = shards.acquire(s.guildId)) {
+                PointsManager points = lease.points();
+                if (!points.getCurrentMonth().equals(s.month)) {
+                    fail("Neustart Server " + g + ": Monat " + points.getCurrentMonth() + " statt " + s.month);
+                }
+                for (UserStats.Snapshot snap : points.getRankingSlice(0, points.getRankedUserCount())) {
+                    int u = (int) (Long.parseUnsignedLong(snap.userId) - USER_BASE - (long) g * 10_000_000L);
+                    if (snap.points != s.points[u] || snap.yearPoints != s.yearPoints[u] || snap.currentStreak != s.streak[u]
+                            || snap.bestStreak != s.bestStreak[u]) {
+                        fail("Neustart Server " + g + " Nutzer " + u + ": " + snap.points + "/" + snap.yearPoints + "/"
+                                + snap.currentStreak + "/" + snap.bestStreak + " statt " + s.points[u] + "/" + s.yearPoints[u]
+                                + "/" + s.streak[u] + "/" + s.bestStreak[u]);
+                        break;
+                    }
+                }
+            }
+        }
+        shards.close();
+        System.out.println("[Simulation] Neustart geprüft in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) + " ms");
+    }
+
+    private static String userId(int guild, int user) {
+        return Long.toString(USER_BASE + (long) guild * 10_000_000L + user);
+    }
+
+    private void fail(String message) {
+        if (failures++ < MAX_REPORTED_FAILURES) {
+            System.err.println("[Simulation] VERLETZT: " + message);
+        }
+    }
+
+    private int countTransitions(ZoneId zone) {
+        Instant from = start.atStartOfDay(zone).toInstant();
+        Instant to = start.plusDays(days).atStartOfDay(zone).toInstant();
+        int count = 0;
+        ZoneOffsetTransition t = zone.getRules().nextTransition(from);
+        while (t != null && t.getInstant().isBefore(to)) {
+            count++;
+            t = zone.getRules().nextTransition(t.getInstant());
+        }
+        return count;
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.delete(p);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("[Simulation] " + dir + " nicht gelöscht: " + e.getMessage());
+        }
+    }
+}
@@ -1,22 +1,61 @@
 package de.nikl4s;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import net.dv8tion.jda.api.interactions.commands.OptionType;
 import net.dv8tion.jda.api.interactions.commands.build.Commands;
 import net.dv8tion.jda.api.interactions.commands.build.CommandData;
 import net.dv8tion.jda.api.interactions.commands.build.OptionData;
 import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.utils.FileUpload;
 
     /**
-     * Handler für Slash-Commands: /setpoints, /setstreak, /setstake, /setplayer, /setwakeplayers und /knecht
+     * Handler für Slash-Commands: /setpoints, /setstreak, /setstake, /setplayer, /setwakeplayers, /knecht,
+     * sowie /history und /stats (Abfragen über die {@link HistoryLog}), /rank ({@link LeaderboardPages}) und
+     * /botstats (Kennzahlen aus {@link Metrics}, nur für Owner) sowie /import und /export ({@link BulkTransfer}, nur für
+     * Owner). Die Latenz jedes Befehls wird in {@link Metrics} erfasst.
+     * Alle Änderungen betreffen nur den Shard des Servers, auf dem der Befehl ausgeführt wird.
      */
 public class SlashCommandHandler extends ListenerAdapter {
-    private static final String OWNER_ID = "1076562395595538572";
-    private final PointsManager pointsManager;
+    private static final DateTimeFormatter DAY_LABEL = DateTimeFormatter.ofPattern("dd.MM.");
+    private static final DateTimeFormatter MONTH_LABEL = DateTimeFormatter.ofPattern("LLL yyyy", Locale.GERMAN);
+    private static final int MAX_IMPORT_BYTES = 32 << 20;
+    private final GuildShards shards;
+    private final ConfigWatcher config;
+    private final LeaderboardPages leaderboard;
+    private final Clock clock;
 
-    public SlashCommandHandler(PointsManager pointsManager) {
-        this.pointsManager = pointsManager;
+    public SlashCommandHandler(GuildShards shards, ConfigWatcher config, Clock clock) {
+        this.shards = shards;
+        this.config = config;
+        this.clock = clock;
+        this.leaderboard = new LeaderboardPages(shards);
     }
 
     /**
@@ -50,35 +89,169 @@ public class SlashCommandHandler extends ListenerAdapter {
                 new OptionData(OptionType.INTEGER, "anzahl", "Spieleranzahl", true)
             );
 
+        CommandData setPayout = Commands.slash("setpayout", "Setzt, wie der Einsatz-Topf verteilt wird")
+            .addOptions(
+                new OptionData(OptionType.STRING, "verteilung", "Gewichtung der Plätze", true)
+                    .addChoice("Linear (bisher)", "linear")
+                    .addChoice("Spitzenlastig", "top-heavy")
+                    .addChoice("Gleich unter den Top k", "top-k"),
+                new OptionData(OptionType.INTEGER, "k", "Anzahl der Plätze bei \"Gleich unter den Top k\"", false)
+                    .setMinValue(1)
+            );
+
+        CommandData konto = Commands.slash("konto", "Zeigt Auszahlungen und Einsätze eines Members über alle Monate")
+            .addOptions(
+                new OptionData(OptionType.USER, "member", "Member (Standard: du selbst)", false)
+            );
+
         CommandData setWakePlayers = Commands.slash("setwakeplayers", "Setzt die Liste der WakeUp-Spieler (Mentions)")
             .addOptions(
                 new OptionData(OptionType.STRING, "liste", "Liste von User-Mentions, getrennt mit Leerzeichen", true)
             );
 
-        return new CommandData[] { setPoints, setStreak, knecht, setStake, setPlayer, setWakePlayers };
+        CommandData history = Commands.slash("history", "Zeigt die Gym-Tage eines Members in einem Monat")
+            .addOptions(
+                new OptionData(OptionType.USER, "member", "Member, dessen Historie gezeigt wird", true),
+                new OptionData(OptionType.STRING, "monat", "Monat im Format JJJJ-MM (Standard: aktueller Monat)", false)
+            );
+
+        CommandData stats = Commands.slash("stats", "Zeigt die Jahresstatistik eines Members")
+            .addOptions(
+                new OptionData(OptionType.USER, "member", "Member, dessen Statistik gezeigt wird", true),
+                new OptionData(OptionType.INTEGER, "jahr", "Jahr (Standard: aktuelles Jahr)", false)
+            );
+
+        CommandData rank = Commands.slash("rank", "Zeigt das Ranking seitenweise")
+            .addOptions(
+                new OptionData(OptionType.STRING, "liste", "Monats- oder Jahresranking (Standard: Monat)", false)
+                    .addChoice("Monat", "monat")
+                    .addChoice("Jahr", "jahr")
+            );
+
+        CommandData botStats = Commands.slash("botstats", "Zeigt Latenzen und Zähler des Bots (nur Owner)");
+
+        CommandData importStats = Commands.slash("import", "Übernimmt Punkte und Streaks aus einer Datei in einem Schritt (nur Owner)")
+            .addOptions(
+                new OptionData(OptionType.ATTACHMENT, "datei", "CSV (.csv) oder JSON Lines (.jsonl) mit Spalte user_id", true)
+            );
+
+        CommandData exportStats = Commands.slash("export", "Exportiert alle Statistiken und die Monatshistorie als CSV (nur Owner)");
+
+        return new CommandData[] { setPoints, setStreak, knecht, setStake, setPlayer, setPayout, konto, setWakePlayers, history, stats, rank, botStats,
+            importStats, exportStats };
+    }
+
+    /**
+     * Registriert die Commands nur, wenn sich ihre Definition (oder die Anwendung) seit der letzten erfolgreichen
+     * Registrierung geändert hat. Der Stand liegt als "&lt;applicationId&gt; &lt;sha256&gt;" in {@code stateFile};
+     * Löschen der Datei erzwingt eine neue Registrierung.
+     */
+    public static void registerIfChanged(JDA jda, Path stateFile) {
+        CommandData[] definitions = commandDefinitions();
+        String state = jda.getSelfUser().getApplicationId() + " " + definitionsHash(definitions);
+        try {
+            if (Files.exists(stateFile) && state.equals(Files.readString(stateFile, StandardCharsets.UTF_8).trim())) {
+                System.out.println("[SlashCommandHandler] Commands unverändert, keine Registrierung");
+                return;
+            }
+        } catch (IOException e) {
+            System.err.println("[SlashCommandHandler] " + stateFile + " nicht lesbar: " + e.getMessage());
+        }
+        jda.updateCommands().addCommands(definitions).queue(
+            registered -> {
+                try {
+                    Path tmp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+                    Files.writeString(tmp, state + "\n", StandardCharsets.UTF_8);
+                    Files.move(tmp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    System.err.println("[SlashCommandHandler] Registrierungsstand nicht gespeichert: " + e.getMessage());
+                }
+                System.out.println("[SlashCommandHandler] " + registered.size() + " Commands registriert");
+            },
+            error -> System.err.println("[SlashCommandHandler] Registrierung fehlgeschlagen: " + error.getMessage()));
+    }
+
+    /**
+     * SHA-256 über die JSON-Form aller Definitionen, so wie sie an Discord geschickt werden.
+     */
+    static String definitionsHash(CommandData[] definitions) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (CommandData definition : definitions) {
+            digest.update(definition.toData().toJson());
+            digest.update((byte) '\n');
+        }
+        return HexFormat.of().formatHex(digest.digest());
     }
 
     @Override
     public void onSlashCommandInteraction(SlashCommandInteractionEvent event) {
+        long start = System.nanoTime();
+        try {
+            dispatch(event);
+        } finally {
+            Metrics.slashCommand(event.getName()).recordSince(start);
+            Metrics.firstEventHandled();
+        }
+    }
+
+    private void dispatch(SlashCommandInteractionEvent event) {
         String name = event.getName();
-        if ("setpoints".equals(name)) {
-            handleSetPoints(event);
-        } else if ("setstreak".equals(name)) {
-            handleSetStreak(event);
-        } else if ("setstake".equals(name)) {
-            handleSetStake(event);
-        } else if ("setplayer".equals(name)) {
-            handleSetPlayer(event);
-        } else if ("setwakeplayers".equals(name)) {
-            handleSetWakePlayers(event);
-        } else if ("knecht".equals(name)) {
+        if ("knecht".equals(name)) {
             handleKnecht(event);
+            return;
+        }
+        if ("botstats".equals(name)) {
+            handleBotStats(event);
+            return;
+        }
+        if (event.getGuild() == null) {
+            event.reply("Dieser Befehl geht nur auf einem Server.").setEphemeral(true).queue();
+            return;
+        }
+        try (var lease = shards.acquire(event.getGuild().getIdLong())) {
+            PointsManager pointsManager = lease.points();
+            if ("setpoints".equals(name)) {
+                handleSetPoints(pointsManager, event);
+            } else if ("setstreak".equals(name)) {
+                handleSetStreak(pointsManager, event);
+            } else if ("setstake".equals(name)) {
+                handleSetStake(pointsManager, event);
+            } else if ("setplayer".equals(name)) {
+                handleSetPlayer(pointsManager, event);
+            } else if ("setpayout".equals(name)) {
+                handleSetPayout(pointsManager, event);
+            } else if ("konto".equals(name)) {
+                handleKonto(pointsManager, event);
+            } else if ("setwakeplayers".equals(name)) {
+                handleSetWakePlayers(pointsManager, event);
+            } else if ("history".equals(name)) {
+                handleHistory(pointsManager, event);
+            } else if ("stats".equals(name)) {
+                handleStats(pointsManager, event);
+            } else if ("rank".equals(name)) {
+                leaderboard.handleRank(pointsManager, event);
+            } else if ("import".equals(name)) {
+                handleImport(event);
+            } else if ("export".equals(name)) {
+                handleExport(event);
+            }
+        }
+    }
+
+    @Override
+    public void onButtonInteraction(ButtonInteractionEvent event) {
+        if (event.getComponentId().startsWith(LeaderboardPages.BUTTON_PREFIX)) {
+            leaderboard.handleButton(event);
         }
     }
 
-    private void handleSetPoints(SlashCommandInteractionEvent event) {
-        String invokerId = event.getUser().getId();
-        if (!OWNER_ID.equals(invokerId)) {
+    private void handleSetPoints(PointsManager pointsManager, SlashCommandInteractionEvent event) {
+        if (!config.current().isOwner(event.getUser().getIdLong())) {
             event.reply("Nur Niklas darf diesen Befehl verwenden. Er wird ihn nicht abusen. Vallah sogar.").setEphemeral(true).queue();
             return;
         }
@@ -100,9 +273,8 @@ public class SlashCommandHandler extends ListenerAdapter {
         event.reply("Punkte von " + displayName + " auf " + total + " gesetzt.").queue();
     }
 
-    private void handleSetStreak(SlashCommandInteractionEvent event) {
-        String invokerId = event.getUser().getId();
-        if (!OWNER_ID.equals(invokerId)) {
+    private void handleSetStreak(PointsManager pointsManager, SlashCommandInteractionEvent event) {
+        if (!config.current().isOwner(event.getUser().getIdLong())) {
             event.reply("Nur Niklas darf diesen Befehl verwenden. Er wird ihn nicht abusen. Vallah sogar.").setEphemeral(true).queue();
             return;
         }
@@ -124,9 +296,8 @@ public class SlashCommandHandler extends ListenerAdapter {
         event.reply("Streak von " + displayName + " auf " + resultStreak + " gesetzt.").queue();
     }
 
-    private void handleSetStake(SlashCommandInteractionEvent event) {
-        String invokerId = event.getUser().getId();
-        if (!OWNER_ID.equals(invokerId)) {
+    private void handleSetStake(PointsManager pointsManager, SlashCommandInteractionEvent event) {
+        if (!config.current().isOwner(event.getUser().getIdLong())) {
             event.reply("Nur Niklas darf diesen Befehl verwenden. Er wird ihn nicht abusen. Vallah sogar.").setEphemeral(true).queue();
             return;
         }
@@ -140,9 +311,8 @@ public class SlashCommandHandler extends ListenerAdapter {
         event.reply("Einsatz pro Spieler gesetzt auf " + String.format(java.util.Locale.GERMANY, "%.2f", euro) + " €").queue();
     }
 
-    private void handleSetPlayer(SlashCommandInteractionEvent event) {
-        String invokerId = event.getUser().getId();
-        if (!OWNER_ID.equals(invokerId)) {
+    private void handleSetPlayer(PointsManager pointsManager, SlashCommandInteractionEvent event) {
+        if (!config.current().isOwner(event.getUser().getIdLong())) {
             event.reply("Nur Niklas darf diesen Befehl verwenden. Er wird ihn nicht abusen. Vallah sogar.").setEphemeral(true).queue();
             return;
         }
@@ -156,9 +326,57 @@ public class SlashCommandHandler extends ListenerAdapter {
         event.reply("Spieleranzahl gesetzt auf " + count + ".").queue();
     }
 
-    private void handleSetWakePlayers(SlashCommandInteractionEvent event) {
-        String invokerId = event.getUser().getId();
-        if (!OWNER_ID.equals(invokerId)) {
+    private void handleSetPayout(PointsManager pointsManager, SlashCommandInteractionEvent event) {
+        if (!config.current().isOwner(event.getUser().getIdLong())) {
+            event.reply("Nur Niklas darf diesen Befehl verwenden. Er wird ihn nicht abusen. Vallah sogar.").setEphemeral(true).queue();
+            return;
+        }
+        var verteilungOpt = event.getOption("verteilung");
+        if (verteilungOpt == null) {
+            event.reply("Fehlende Option: verteilung").setEphemeral(true).queue();
+            return;
+        }
+        String spec = verteilungOpt.getAsString();
+        if ("top-k".equals(spec)) {
+            var kOpt = event.getOption("k");
+            if (kOpt == null) {
+                event.reply("Für \"Gleich unter den Top k\" fehlt die Option k.").setEphemeral(true).queue();
+                return;
+            }
+            spec = "top-" + kOpt.getAsInt();
+        }
+        Settlement.Weighting weighting;
+        try {
+            weighting = Settlement.weighting(spec);
+        } catch (IllegalArgumentException e) {
+            event.reply(e.getMessage()).setEphemeral(true).queue();
+            return;
+        }
+        pointsManager.setPayoutWeighting(weighting);
+        event.reply("Verteilung des Einsatz-Topfs gesetzt auf " + weighting.spec() + ".").queue();
+    }
+
+    private void handleKonto(PointsManager pointsManager, SlashCommandInteractionEvent event) {
+        var memberOpt = event.getOption("member");
+        Member target = memberOpt == null ? event.getMember() : memberOpt.getAsMember();
+        if (target == null) {
+            event.reply("Ungültiger Member.").setEphemeral(true).queue();
+            return;
+        }
+        SettlementLedger ledger = pointsManager.getLedger();
+        if (ledger == null) {
+            event.reply("Kein Kassenbuch vorhanden.").setEphemeral(true).queue();
+            return;
+        }
+        SettlementLedger.Account account = ledger.account(target.getIdLong());
+        event.reply(":ledger: Konto von " + target.getEffectiveName() + " (" + account.months + " Monate): "
+                + "Auszahlungen " + Settlement.formatEuroCents(account.payoutsCents)
+                + ", Einsätze " + Settlement.formatEuroCents(account.stakesCents)
+                + ", Saldo " + Settlement.formatEuroCents(account.balanceCents())).queue();
+    }
+
+    private void handleSetWakePlayers(PointsManager pointsManager, SlashCommandInteractionEvent event) {
+        if (!config.current().isOwner(event.getUser().getIdLong())) {
             event.reply("Nur Niklas darf diesen Befehl verwenden. Er wird ihn nicht abusen. Vallah sogar.").setEphemeral(true).queue();
             return;
         }
@@ -177,6 +395,238 @@ public class SlashCommandHandler extends ListenerAdapter {
         event.reply("WakeUp-Spieler gesetzt: " + ids.size()).queue();
     }
 
+    private void handleHistory(PointsManager pointsManager, SlashCommandInteractionEvent event) {
+        var memberOpt = event.getOption("member");
+        if (memberOpt == null || memberOpt.getAsMember() == null) {
+            event.reply("Ungültiger Member.").setEphemeral(true).queue();
+            return;
+        }
+        Member target = memberOpt.getAsMember();
+        HistoryLog history = pointsManager.getHistory();
+        if (history == null) {
+            event.reply("Keine Historie vorhanden.").setEphemeral(true).queue();
+            return;
+        }
+        YearMonth month;
+        var monthOpt = event.getOption("monat");
+        try {
+            month = monthOpt == null ? YearMonth.now(clock) : YearMonth.parse(monthOpt.getAsString().trim());
+        } catch (DateTimeParseException e) {
+            event.reply("Ungültiger Monat, erwartet z.B. 2025-03.").setEphemeral(true).queue();
+            return;
+        }
+        HistoryLog.UserSummary summary;
+        try {
+            summary = history.summarize(target.getIdLong(), month.atDay(1), month.atEndOfMonth());
+        } catch (IOException e) {
+            System.err.println("[History] " + e.getMessage());
+            event.reply("Historie konnte nicht gelesen werden.").setEphemeral(true).queue();
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(":calendar: ").append(target.getEffectiveName()).append(" im ")
+          .append(MONTH_LABEL.format(month)).append(": ")
+          .append(summary.gymDays).append(" Gym-Tage, ").append(summary.points).append(" Punkte");
+        if (summary.penalties > 0) {
+            sb.append(", ").append(summary.penalties).append("x altes Bild");
+        }
+        if (!summary.gymDates.isEmpty()) {
+            sb.append("\n");
+            for (int i = 0; i < summary.gymDates.size(); i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(DAY_LABEL.format(summary.gymDates.get(i)));
+            }
+        }
+        event.reply(sb.toString()).queue();
+    }
+
+    private void handleStats(PointsManager pointsManager, SlashCommandInteractionEvent event) {
+        var memberOpt = event.getOption("member");
+        if (memberOpt == null || memberOpt.getAsMember() == null) {
+            event.reply("Ungültiger Member.").setEphemeral(true).queue();
+            return;
+        }
+        Member target = memberOpt.getAsMember();
+        HistoryLog history = pointsManager.getHistory();
+        if (history == null) {
+            event.reply("Keine Historie vorhanden.").setEphemeral(true).queue();
+            return;
+        }
+        var yearOpt = event.getOption("jahr");
+        Year year = yearOpt == null ? Year.now(clock) : Year.of(yearOpt.getAsInt());
+        StringBuilder sb = new StringBuilder();
+        sb.append(":bar_chart: Statistik ").append(year).append(" für ").append(target.getEffectiveName()).append("\n");
+        int gymDays = 0, points = 0, wakeUps = 0, firstWakeUps = 0;
+        try {
+            for (int m = 1; m <= 12; m++) {
+                YearMonth month = year.atMonth(m);
+                if (month.isAfter(YearMonth.now(clock))) {
+                    break;
+                }
+                HistoryLog.UserSummary s = history.summarize(target.getIdLong(), month.atDay(1), month.atEndOfMonth());
+                gymDays += s.gymDays;
+                points += s.points;
+                wakeUps += s.wakeUps;
+                firstWakeUps += s.firstWakeUps;
+                if (s.gymDays == 0 && s.wakeUps == 0 && s.points == 0) {
+                    continue;
+                }
+                sb.append(MONTH_LABEL.format(month)).append(": ")
+                  .append(s.gymDays).append(" Gym-Tage, ")
+                  .append(s.points).append(" Punkte, ")
+                  .append(s.wakeUps).append(" Wake-Ups (").append(s.firstWakeUps).append("x Erster)\n");
+            }
+        } catch (IOException e) {
+            System.err.println("[History] " + e.getMessage());
+            event.reply("Historie konnte nicht gelesen werden.").setEphemeral(true).queue();
+            return;
+        }
+        sb.append("Gesamt: ").append(gymDays).append(" Gym-Tage, ").append(points).append(" Punkte, ")
+          .append(wakeUps).append(" Wake-Ups (").append(firstWakeUps).append("x Erster)");
+        event.reply(sb.toString()).queue();
+    }
+
+    private void handleBotStats(SlashCommandInteractionEvent event) {
+        if (!config.current().isOwner(event.getUser().getIdLong())) {
+            event.reply("Nur Niklas darf diesen Befehl verwenden. Er wird ihn nicht abusen. Vallah sogar.").setEphemeral(true).queue();
+            return;
+        }
+        String summary = Metrics.summary();
+        if (summary.isEmpty()) {
+            summary = "Noch keine Messwerte.\n";
+        }
+        // Antwort ist auf 2000 Zeichen begrenzt, Codeblock inklusive
+        if (summary.length() > 1990) {
+            summary = summary.substring(0, summary.lastIndexOf('\n', 1990) + 1);
+        }
+        event.reply("```\n" + summary + "```").setEphemeral(true).queue();
+    }
+
+    private void handleImport(SlashCommandInteractionEvent event) {
+        if (!config.current().isOwner(event.getUser().getIdLong())) {
+            event.reply("Nur Niklas darf diesen Befehl verwenden. Er wird ihn nicht abusen. Vallah sogar.").setEphemeral(true).queue();
+            return;
+        }
+        var fileOpt = event.getOption("datei");
+        if (fileOpt == null) {
+            event.reply("Fehlende Option: datei").setEphemeral(true).queue();
+            return;
+        }
+        Message.Attachment file = fileOpt.getAsAttachment();
+        BulkTransfer.Format format = BulkTransfer.formatOf(file.getFileName());
+        if (format == null) {
+            event.reply("Erwartet wird eine .csv- oder .jsonl-Datei.").setEphemeral(true).queue();
+            return;
+        }
+        if (file.getSize() > MAX_IMPORT_BYTES) {
+            event.reply("Datei ist zu groß (max. " + (MAX_IMPORT_BYTES >> 20) + " MB).").setEphemeral(true).queue();
+            return;
+        }
+        long guildId = event.getGuild().getIdLong();
+        event.deferReply(true).queue();
+        // Lesen und Prüfen laufen neben dem Gateway-Thread; den Shard hält erst das Übernehmen
+        file.getProxy().download().thenAcceptAsync(in -> {
+            long start = System.nanoTime();
+            String reply;
+            try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                BulkTransfer.Batch batch = BulkTransfer.parse(reader, format);
+                int applied;
+                try (var lease = shards.acquire(guildId)) {
+                    applied = lease.points().applyBatch(batch);
+                }
+                reply = applied + " Zeilen übernommen (" + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms).";
+            } catch (BulkTransfer.ImportException e) {
+                reply = "Nichts übernommen:\n" + e.getMessage();
+            } catch (IOException e) {
+                reply = "Datei konnte nicht gelesen werden: " + e.getMessage();
+            }
+            event.getHook().sendMessage(limit(reply)).queue();
+        }).exceptionally(error -> {
+            System.err.println("[Import] " + error.getMessage());
+            event.getHook().sendMessage("Import fehlgeschlagen: " + error.getMessage()).queue();
+            return null;
+        });
+    }
+
+    private void handleExport(SlashCommandInteractionEvent event) {
+        if (!config.current().isOwner(event.getUser().getIdLong())) {
+            event.reply("Nur Niklas darf diesen Befehl verwenden. Er wird ihn nicht abusen. Vallah sogar.").setEphemeral(true).queue();
+            return;
+        }
+        long guildId = event.getGuild().getIdLong();
+        event.deferReply(true).queue();
+        // Tabelle und Historie werden wie beim Import neben dem Gateway-Thread geschrieben; der Shard wird dafür
+        // eigens gehalten, da der Lease des Dispatchers mit dem Event endet
+        CompletableFuture.runAsync(() -> {
+            try (var lease = shards.acquire(guildId)) {
+                export(lease.points(), event);
+            }
+        }).exceptionally(error -> {
+            System.err.println("[Export] " + error.getMessage());
+            event.getHook().sendMessage("Export fehlgeschlagen: " + error.getMessage()).queue();
+            return null;
+        });
+    }
+
+    private void export(PointsManager pointsManager, SlashCommandInteractionEvent event) {
+        List<Path> files = new ArrayList<>();
+        try {
+            List<FileUpload> uploads = new ArrayList<>();
+            Path statsFile = Files.createTempFile("lyfe-stats", ".csv");
+            files.add(statsFile);
+            int users;
+            try (Writer out = Files.newBufferedWriter(statsFile, StandardCharsets.UTF_8)) {
+                users = BulkTransfer.exportStats(pointsManager, out);
+            }
+            uploads.add(FileUpload.fromData(statsFile, "stats.csv"));
+            String text = users + " Nutzer";
+            HistoryLog history = pointsManager.getHistory();
+            if (history != null) {
+                Path historyFile = Files.createTempFile("lyfe-history", ".csv");
+                files.add(historyFile);
+                int rows;
+                try (Writer out = Files.newBufferedWriter(historyFile, StandardCharsets.UTF_8)) {
+                    rows = BulkTransfer.exportHistory(history, out);
+                }
+                uploads.add(FileUpload.fromData(historyFile, "history.csv"));
+                text += ", " + rows + " Monatswerte";
+            }
+            event.getHook().sendMessage(text + ".").addFiles(uploads).queue(
+                sent -> deleteAll(files),
+                error -> {
+                    deleteAll(files);
+                    event.getHook().sendMessage("Export konnte nicht gesendet werden: " + error.getMessage()).queue();
+                });
+        } catch (IOException e) {
+            deleteAll(files);
+            System.err.println("[Export] " + e.getMessage());
+            event.getHook().sendMessage("Export fehlgeschlagen: " + e.getMessage()).queue();
+        }
+    }
+
+    private static void deleteAll(List<Path> files) {
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.err.println("[Export] " + file + " nicht gelöscht: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Kürzt eine Antwort zeilenweise auf das Discord-Limit von 2000 Zeichen.
+     */
+    private static String limit(String text) {
+        if (text.length() <= 2000) {
+            return text;
+        }
+        int cut = text.lastIndexOf('\n', 1990);
+        return text.substring(0, cut > 0 ? cut : 1990) + "\n…";
+    }
+
     private void handleKnecht(SlashCommandInteractionEvent event) {
         var memberOpt = event.getOption("member");
         if (memberOpt == null) {
@@ -188,11 +638,11 @@ public class SlashCommandHandler extends ListenerAdapter {
             event.reply("Ungültiger Member.").setEphemeral(true).queue();
             return;
         }
-        String invokerId = event.getUser().getId();
         String targetMention = target.getAsMention();
+        BotConfig current = config.current();
 
         // Falls jemand versucht, den Owner zu beleidigen, kehrt es sich um
-        if (OWNER_ID.equals(target.getId()) && !OWNER_ID.equals(invokerId)) {
+        if (current.isOwner(target.getIdLong()) && !current.isOwner(event.getUser().getIdLong())) {
             event.reply(event.getUser().getAsMention() + " ist selber ein Knecht.").queue();
             return;
         }
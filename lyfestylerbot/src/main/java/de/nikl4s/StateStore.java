@@ -0,0 +1,352 @@
+package de.nikl4s;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Persistenz für den Zustand des {@link PointsManager}: Write-Ahead-Journal plus kompakte Snapshots.
+ *
+ * Aufbau im Datenverzeichnis:
+ * - journal.log: Append-only Log aller Mutationen, je Eintrag [Länge][Seq][Op][Felder][CRC32]
+ * - snapshot.bin: binärer Gesamtzustand inkl. Sequenznummer des letzten enthaltenen Eintrags
+ *
+ * Alle Schreibzugriffe laufen über einen eigenen Writer-Thread, der anstehende Einträge
+ * gesammelt schreibt und pro Batch nur einmal fsynct (Group Commit). Der aufrufende Thread
+ * (z.B. der JDA-Event-Thread) legt die Einträge nur in die Queue und wartet nie auf die Platte.
+ * Dauerhaft ist ein Eintrag daher erst nach dem fsync seines Batches, nicht schon bei der Rückkehr aus
+ * {@link #append}: Stürzt der Prozess oder die Maschine ab (kill -9, Stromausfall), können die zuletzt bestätigten,
+ * noch nicht geschriebenen Änderungen fehlen. Ein geordnetes {@link #close()} schreibt alles Ausstehende.
+ *
+ * {@link #append} darf parallel aufgerufen werden. Der {@link PointsManager} journalt jede Mutation unter dem Lock,
+ * der sie schützt: Einträge eines Nutzers (Nutzer-Monitor), Wake-Ups samt Wake-Spielerliste (wakeLock) und
+ * Einstellungen (settingsLock) landen damit jeweils in ihrer tatsächlichen Reihenfolge. Nur Einträge ohne
+ * gemeinsamen Lock (z.B. zwei verschiedene Nutzer) können in anderer Reihenfolge als ihre Sequenznummern im
+ * Journal stehen; sie ändern disjunkten Zustand, die Wiederherstellung in Dateireihenfolge ergibt denselben Stand.
+ */
+public class StateStore implements AutoCloseable {
+    /** Nach so vielen Journal-Einträgen wird ein neuer Snapshot geschrieben und das Journal geleert. */
+    public static final int SNAPSHOT_EVERY = 10_000;
+
+    static final byte OP_GYM = 1;
+    static final byte OP_ADJUST_POINTS = 2;
+    static final byte OP_SET_POINTS = 3;
+    static final byte OP_SET_STREAK = 4;
+    static final byte OP_AWAKE = 5;
+    static final byte OP_ROLLOVER = 6;
+    static final byte OP_SET_STAKE = 7;
+    static final byte OP_SET_PLAYER_COUNT = 8;
+    static final byte OP_SET_WAKE_PLAYERS = 9;
+    static final byte OP_GYM_POINTS = 10; // wie OP_GYM, mit den vergebenen Punkten
+    static final byte OP_SET_PAYOUT_WEIGHTING = 11;
+    static final byte OP_PENALTY = 12; // Strafe zu einem Check-in, mit dessen Tag
+
+    private static final int SNAPSHOT_MAGIC = 0x4C594645; // "LYFE"
+    private static final int SNAPSHOT_VERSION = 2; // 2: Auszahlungs-Gewichtung am Ende; 1 wird weiterhin gelesen
+
+    private final Path journalFile;
+    private final Path snapshotFile;
+    private final Path snapshotTmpFile;
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private FileChannel journal;
+    private final AtomicInteger recordsSinceSnapshot = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    private static final Object SHUTDOWN = new Object();
+
+    /** Ein fertig kodierter Snapshot, der vom Writer-Thread geschrieben wird. */
+    private static final class SnapshotJob {
+        final byte[] data;
+
+        SnapshotJob(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    private StateStore(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        this.journalFile = dir.resolve("journal.log");
+        this.snapshotFile = dir.resolve("snapshot.bin");
+        this.snapshotTmpFile = dir.resolve("snapshot.bin.tmp");
+        this.writer = new Thread(this::writeLoop, "state-writer");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Öffnet (oder erstellt) das Datenverzeichnis. Der Writer-Thread startet erst mit {@link #recover(PointsManager)}.
+     */
+    public static StateStore open(Path dir) throws IOException {
+        return new StateStore(dir);
+    }
+
+    /**
+     * Stellt den Zustand aus Snapshot und Journal-Rest wieder her und startet anschließend den Writer.
+     * Ein abgeschnittener oder beschädigter Journal-Schwanz (z.B. nach Absturz mitten im Schreiben) wird verworfen.
+     */
+    void recover(PointsManager pointsManager) throws IOException {
+        long snapshotSeq = 0;
+        if (Files.exists(snapshotFile)) {
+            byte[] data = Files.readAllBytes(snapshotFile);
+            snapshotSeq = readSnapshot(data, pointsManager);
+        }
+        long lastSeq = snapshotSeq;
+        long validBytes = 0;
+        int replayed = 0;
+        if (Files.exists(journalFile)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalFile)))) {
+                while (true) {
+                    byte[] body = readFrame(in);
+                    if (body == null) {
+                        break;
+                    }
+                    DataInputStream rec = new DataInputStream(new ByteArrayInputStream(body));
+                    long seq = rec.readLong();
+                    byte op = rec.readByte();
+                    if (seq > snapshotSeq) {
+                        replay(op, rec, pointsManager);
+                        lastSeq = Math.max(lastSeq, seq);
+                        replayed++;
+                    }
+                    validBytes += 4 + body.length + 4;
+                }
+            }
+        }
+        pointsManager.restoreSequence(lastSeq);
+
+        journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (journal.size() > validBytes) {
+            System.err.println("[StateStore] Verwerfe beschädigten Journal-Rest ab Byte " + validBytes);
+            journal.truncate(validBytes);
+            journal.force(true);
+        }
+        journal.position(validBytes);
+        recordsSinceSnapshot.set(replayed);
+        writer.start();
+    }
+
+    /**
+     * Liest einen Frame [Länge][Body][CRC32]. Liefert null bei EOF, abgeschnittenem oder ungültigem Eintrag.
+     */
+    private static byte[] readFrame(DataInputStream in) throws IOException {
+        try {
+            int len = in.readInt();
+            if (len <= 0 || len > (1 << 20)) {
+                return null;
+            }
+            byte[] body = new byte[len];
+            in.readFully(body);
+            int crc = in.readInt();
+            CRC32 c = new CRC32();
+            c.update(body);
+            return (int) c.getValue() == crc ? body : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static void replay(byte op, DataInputStream in, PointsManager pm) throws IOException {
+        switch (op) {
+            case OP_GYM -> pm.handleGym(in.readUTF(), in.readUTF(), LocalDate.ofEpochDay(in.readLong()),
+                    PointsManager.DEFAULT_GYM_POINTS);
+            case OP_GYM_POINTS -> pm.handleGym(in.readUTF(), in.readUTF(), LocalDate.ofEpochDay(in.readLong()), in.readInt());
+            case OP_ADJUST_POINTS -> pm.adjustPoints(in.readUTF(), in.readUTF(), in.readInt());
+            case OP_PENALTY -> pm.penalize(in.readUTF(), in.readUTF(), LocalDate.ofEpochDay(in.readLong()), in.readInt());
+            case OP_SET_POINTS -> pm.setPoints(in.readUTF(), in.readUTF(), in.readInt());
+            case OP_SET_STREAK -> pm.setStreak(in.readUTF(), in.readUTF(), in.readInt());
+            case OP_AWAKE -> pm.handleAwake(in.readUTF(), in.readUTF(),
+                    LocalDate.ofEpochDay(in.readLong()), LocalTime.ofNanoOfDay(in.readLong()));
+            case OP_ROLLOVER -> pm.rolloverToNextMonth(YearMonth.of(in.readInt(), in.readInt()));
+            case OP_SET_STAKE -> pm.setStakePerPlayerEuro(in.readDouble());
+            case OP_SET_PLAYER_COUNT -> pm.setPlayerCount(in.readInt());
+            case OP_SET_PAYOUT_WEIGHTING -> pm.setPayoutWeighting(Settlement.weighting(in.readUTF()));
+            case OP_SET_WAKE_PLAYERS -> {
+                int n = in.readInt();
+                List<String> ids = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    ids.add(in.readUTF());
+                }
+                pm.setWakePlayers(ids);
+            }
+            default -> throw new IOException("Unbekannte Journal-Operation: " + op);
+        }
+    }
+
+    /**
+     * Hängt einen Journal-Eintrag an. Kehrt sofort zurück; geschrieben wird im Writer-Thread.
+     * @return true, wenn seit dem letzten Snapshot genug Einträge angefallen sind und ein neuer fällig ist
+     */
+    boolean append(long seq, byte op, Record record) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(seq);
+            out.writeByte(op);
+            record.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] body = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer frame = ByteBuffer.allocate(4 + body.length + 4);
+        frame.putInt(body.length).put(body).putInt((int) crc.getValue()).flip();
+        queue.add(frame);
+        return recordsSinceSnapshot.incrementAndGet() >= SNAPSHOT_EVERY;
+    }
+
+    /**
+     * Reiht einen Snapshot ein. Muss unter dem exklusiven Lock des {@link PointsManager} aufgerufen werden,
+     * damit alle zuvor eingereihten Journal-Einträge im Snapshot enthalten sind.
+     */
+    void snapshot(PointsManager pointsManager) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            pointsManager.writeSnapshot(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] body = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        byte[] data = ByteBuffer.allocate(body.length + 4).put(body).putInt((int) crc.getValue()).array();
+        recordsSinceSnapshot.set(0);
+        queue.add(new SnapshotJob(data));
+    }
+
+    private static long readSnapshot(byte[] data, PointsManager pm) throws IOException {
+        if (data.length < 4) {
+            throw new IOException("Snapshot zu kurz");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 4);
+        if ((int) crc.getValue() != ByteBuffer.wrap(data, data.length - 4, 4).getInt()) {
+            throw new IOException("Snapshot-Prüfsumme ungültig");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 4));
+        if (in.readInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("Unbekanntes Snapshot-Format");
+        }
+        int version = in.readInt();
+        if (version < 1 || version > SNAPSHOT_VERSION) {
+            throw new IOException("Nicht unterstützte Snapshot-Version: " + version);
+        }
+        return pm.readSnapshot(in, version);
+    }
+
+    private void writeLoop() {
+        List<Object> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            queue.drainTo(batch);
+            try {
+                boolean dirty = false;
+                for (Object item : batch) {
+                    if (item == SHUTDOWN) {
+                        running = false;
+                    } else if (item instanceof SnapshotJob job) {
+                        if (dirty) {
+                            journal.force(false);
+                            dirty = false;
+                        }
+                        writeSnapshotFile(job.data);
+                    } else {
+                        ByteBuffer frame = (ByteBuffer) item;
+                        while (frame.hasRemaining()) {
+                            journal.write(frame);
+                        }
+                        dirty = true;
+                    }
+                }
+                if (dirty) {
+                    journal.force(false);
+                }
+            } catch (IOException e) {
+                System.err.println("[StateStore] Schreiben fehlgeschlagen: " + e.getMessage());
+            }
+            batch.clear();
+        }
+        try {
+            journal.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    /**
+     * Schreibt den Snapshot atomar (tmp + fsync + move) und leert danach das Journal,
+     * da alle bisherigen Einträge im Snapshot enthalten sind.
+     */
+    private void writeSnapshotFile(byte[] data) throws IOException {
+        try (FileChannel ch = FileChannel.open(snapshotTmpFile,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(true);
+        }
+        Files.move(snapshotTmpFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal.truncate(0);
+        journal.position(0);
+        journal.force(true);
+    }
+
+    /**
+     * Schreibt alle ausstehenden Einträge, fsynct und beendet den Writer-Thread.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.add(SHUTDOWN);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Ohne gestarteten Writer (Wiederherstellung gescheitert) schließt sonst niemand das Journal
+        if (journal != null && journal.isOpen() && !writer.isAlive()) {
+            try {
+                journal.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    /**
+     * Kodiert die Felder eines Journal-Eintrags.
+     */
+    @FunctionalInterface
+    interface Record {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -1,91 +1,89 @@
 package de.nikl4s;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.time.LocalDate;
 
 /**
  * Hält monatliche Statistikdaten pro Nutzer: Punkte, aktueller/bester Streak und letztes Gym-Datum.
+ *
+ * Flyweight-Sicht auf eine Zeile des {@link UserStatsStore}; die Werte selbst liegen dort in primitiven Spalten.
+ * Sichten sind kurzlebig und werden pro Zugriff über {@link UserStatsStore#view(int)} erzeugt.
+ *
+ * Nicht thread-safe: der {@link PointsManager} ändert einen Datensatz nur unter {@link #lock()}.
+ * Für Leser gibt es mit {@link #snapshot()} einen unveränderlichen, konsistenten Stand.
  */
 public class UserStats {
-    private final String userId;
-    private String displayName;
-    private int points;
-    private int yearPoints;
-    private int currentStreak;
-    private int bestStreak;
-    private int bestMonthlyPoints;
-    private int bestYearlyPoints;
-    private LocalDate lastGymDate;
-    // WakeUp: Frühster Vogel Streak
-    private int wakeFirstCurrentStreak;
-    private int wakeFirstBestStreak;
-    private LocalDate lastWakeFirstDate;
-
-    /**
-     * Legt einen neuen Nutzer-Datensatz an.
-     * @param userId Discord User ID
-     * @param displayName Anzeigename für das Ranking
-     */
-    public UserStats(String userId, String displayName) {
-        this.userId = userId;
-        this.displayName = displayName;
-        this.points = 0;
-        this.yearPoints = 0;
-        this.currentStreak = 0;
-        this.bestStreak = 0;
-        this.bestMonthlyPoints = 0;
-        this.bestYearlyPoints = 0;
-        this.lastGymDate = null;
-        this.wakeFirstCurrentStreak = 0;
-        this.wakeFirstBestStreak = 0;
-        this.lastWakeFirstDate = null;
+    private final UserStatsStore store;
+    private final int row;
+
+    UserStats(UserStatsStore store, int row) {
+        this.store = store;
+        this.row = row;
+    }
+
+    /**
+     * Monitor, unter dem dieser Datensatz geändert wird.
+     */
+    public Object lock() {
+        return store.lock(row);
     }
 
     public String getUserId() {
-        return userId;
+        return Long.toUnsignedString(store.userId(row));
+    }
+
+    public long getUserIdLong() {
+        return store.userId(row);
     }
 
     public String getDisplayName() {
-        return displayName;
+        return store.name(row);
     }
 
     public void setDisplayName(String displayName) {
-        this.displayName = displayName;
+        store.setName(row, displayName);
     }
 
     public int getPoints() {
-        return points;
+        return store.get(row, UserStatsStore.POINTS);
     }
 
     public int getYearPoints() {
-        return yearPoints;
+        return store.get(row, UserStatsStore.YEAR_POINTS);
     }
 
     public int getCurrentStreak() {
-        return currentStreak;
+        return store.get(row, UserStatsStore.CURRENT_STREAK);
     }
 
     public int getBestStreak() {
-        return bestStreak;
+        return store.get(row, UserStatsStore.BEST_STREAK);
     }
 
     public int getBestMonthlyPoints() {
-        return bestMonthlyPoints;
+        return store.get(row, UserStatsStore.BEST_MONTHLY_POINTS);
     }
 
     public int getBestYearlyPoints() {
-        return bestYearlyPoints;
+        return store.get(row, UserStatsStore.BEST_YEARLY_POINTS);
     }
 
     public LocalDate getLastGymDate() {
-        return lastGymDate;
+        return toDate(store.get(row, UserStatsStore.LAST_GYM_DAY));
     }
 
     public int getWakeFirstCurrentStreak() {
-        return wakeFirstCurrentStreak;
+        return store.get(row, UserStatsStore.WAKE_FIRST_CURRENT_STREAK);
     }
 
     public int getWakeFirstBestStreak() {
-        return wakeFirstBestStreak;
+        return store.get(row, UserStatsStore.WAKE_FIRST_BEST_STREAK);
+    }
+
+    private static LocalDate toDate(int epochDay) {
+        return epochDay == UserStatsStore.NO_DAY ? null : LocalDate.ofEpochDay(epochDay);
     }
 
     /**
@@ -98,11 +96,11 @@ public class UserStats {
         if (newStreak < 0) {
             newStreak = 0;
         }
-        this.currentStreak = newStreak;
-        if (this.currentStreak > this.bestStreak) {
-            this.bestStreak = this.currentStreak;
+        store.set(row, UserStatsStore.CURRENT_STREAK, newStreak);
+        if (newStreak > getBestStreak()) {
+            store.set(row, UserStatsStore.BEST_STREAK, newStreak);
         }
-        return this.currentStreak;
+        return newStreak;
     }
 
     /**
@@ -114,8 +112,13 @@ public class UserStats {
      * @return Ergebnis mit hinzugefügten Punkten, Gesamtpunkten und Streak-Infos; accepted=false, wenn bereits gezählt
      */
     public AwardResult awardGymPoints(LocalDate today, int pointsPerGym) {
-        boolean isNewDay = lastGymDate == null || !lastGymDate.isEqual(today);
-        boolean consecutiveDay = lastGymDate != null && lastGymDate.plusDays(1).isEqual(today);
+        int day = (int) today.toEpochDay();
+        int lastGymDay = store.get(row, UserStatsStore.LAST_GYM_DAY);
+        int currentStreak = getCurrentStreak();
+        int bestStreak = getBestStreak();
+        int points = getPoints();
+        boolean isNewDay = lastGymDay != day;
+        boolean consecutiveDay = lastGymDay != UserStatsStore.NO_DAY && lastGymDay + 1 == day;
 
         if (isNewDay) {
             if (consecutiveDay) {
@@ -127,7 +130,10 @@ public class UserStats {
                 bestStreak = currentStreak;
             }
             points += pointsPerGym;
-            lastGymDate = today;
+            store.set(row, UserStatsStore.CURRENT_STREAK, currentStreak);
+            store.set(row, UserStatsStore.BEST_STREAK, bestStreak);
+            store.set(row, UserStatsStore.POINTS, points);
+            store.set(row, UserStatsStore.LAST_GYM_DAY, day);
             return new AwardResult(pointsPerGym, points, currentStreak, bestStreak, true);
         }
         return new AwardResult(0, points, currentStreak, bestStreak, false);
@@ -135,29 +141,27 @@ public class UserStats {
 
     /**
      * Setzt die Monatswerte zurück (für Rollover am Monatsanfang).
+     * Beim Rollover aller Nutzer läuft das spaltenweise über {@link UserStatsStore#closePeriod(boolean)}.
      */
     public void resetForNewMonth() {
-        points = 0;
-        currentStreak = 0;
-        lastGymDate = null;
+        store.set(row, UserStatsStore.POINTS, 0);
+        store.set(row, UserStatsStore.CURRENT_STREAK, 0);
+        store.set(row, UserStatsStore.LAST_GYM_DAY, UserStatsStore.NO_DAY);
     }
 
     /**
      * Erhöht die Jahrespunkte um den angegebenen Betrag.
      */
     public void addYearPoints(int delta) {
-        this.yearPoints += delta;
-        if (this.yearPoints < 0) {
-            this.yearPoints = 0;
-        }
+        store.set(row, UserStatsStore.YEAR_POINTS, Math.max(0, getYearPoints() + delta));
     }
 
     /**
      * Aktualisiert Monats-Highscore auf Basis der aktuellen Monats-Punkte.
      */
     public void finalizeMonthHighscore() {
-        if (this.points > this.bestMonthlyPoints) {
-            this.bestMonthlyPoints = this.points;
+        if (getPoints() > getBestMonthlyPoints()) {
+            store.set(row, UserStatsStore.BEST_MONTHLY_POINTS, getPoints());
         }
     }
 
@@ -165,8 +169,8 @@ public class UserStats {
      * Aktualisiert Jahres-Highscore auf Basis der aktuellen Jahres-Punkte.
      */
     public void finalizeYearHighscore() {
-        if (this.yearPoints > this.bestYearlyPoints) {
-            this.bestYearlyPoints = this.yearPoints;
+        if (getYearPoints() > getBestYearlyPoints()) {
+            store.set(row, UserStatsStore.BEST_YEARLY_POINTS, getYearPoints());
         }
     }
 
@@ -174,25 +178,25 @@ public class UserStats {
      * Setzt Jahreswerte für neues Jahr zurück.
      */
     public void resetForNewYear() {
-        this.yearPoints = 0;
+        store.set(row, UserStatsStore.YEAR_POINTS, 0);
     }
 
     /**
      * Markiert den Nutzer als "Frühster Vogel" für das angegebene Datum und pflegt Wake-First-Streak.
      */
     public void recordWakeFirst(LocalDate date) {
-        boolean consecutive = lastWakeFirstDate != null && lastWakeFirstDate.plusDays(1).isEqual(date);
-        if (lastWakeFirstDate == null || !lastWakeFirstDate.isEqual(date)) {
-            if (consecutive) {
-                wakeFirstCurrentStreak += 1;
-            } else {
-                wakeFirstCurrentStreak = 1;
-            }
-            if (wakeFirstCurrentStreak > wakeFirstBestStreak) {
-                wakeFirstBestStreak = wakeFirstCurrentStreak;
-            }
-            lastWakeFirstDate = date;
+        int day = (int) date.toEpochDay();
+        int lastDay = store.get(row, UserStatsStore.LAST_WAKE_FIRST_DAY);
+        if (lastDay == day) {
+            return;
+        }
+        boolean consecutive = lastDay != UserStatsStore.NO_DAY && lastDay + 1 == day;
+        int streak = consecutive ? getWakeFirstCurrentStreak() + 1 : 1;
+        store.set(row, UserStatsStore.WAKE_FIRST_CURRENT_STREAK, streak);
+        if (streak > getWakeFirstBestStreak()) {
+            store.set(row, UserStatsStore.WAKE_FIRST_BEST_STREAK, streak);
         }
+        store.set(row, UserStatsStore.LAST_WAKE_FIRST_DAY, day);
     }
 
     /**
@@ -201,8 +205,101 @@ public class UserStats {
      * @return neue Gesamtpunkte
      */
     public int adjustPoints(int delta) {
-        this.points += delta;
-        return this.points;
+        int points = getPoints() + delta;
+        store.set(row, UserStatsStore.POINTS, points);
+        return points;
+    }
+
+    /**
+     * Kopiert alle Kennzahl-Spalten in {@code values} (Index = Spalte im {@link UserStatsStore}).
+     */
+    void copyColumns(int[] values) {
+        for (int column = 0; column < UserStatsStore.COLUMNS; column++) {
+            values[column] = store.get(row, column);
+        }
+    }
+
+    /**
+     * Schreibt den vollständigen Datensatz binär (für Snapshots des {@link StateStore}).
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeUTF(getUserId());
+        out.writeUTF(getDisplayName());
+        out.writeInt(getPoints());
+        out.writeInt(getYearPoints());
+        out.writeInt(getCurrentStreak());
+        out.writeInt(getBestStreak());
+        out.writeInt(getBestMonthlyPoints());
+        out.writeInt(getBestYearlyPoints());
+        writeDay(out, store.get(row, UserStatsStore.LAST_GYM_DAY));
+        out.writeInt(getWakeFirstCurrentStreak());
+        out.writeInt(getWakeFirstBestStreak());
+        writeDay(out, store.get(row, UserStatsStore.LAST_WAKE_FIRST_DAY));
+    }
+
+    /**
+     * Liest einen mit {@link #writeTo(DataOutput)} geschriebenen Datensatz in eine neue Zeile des Stores.
+     */
+    static UserStats readInto(UserStatsStore store, DataInput in) throws IOException {
+        long userId = Long.parseUnsignedLong(in.readUTF());
+        int row = store.rowFor(userId, in.readUTF());
+        store.set(row, UserStatsStore.POINTS, in.readInt());
+        store.set(row, UserStatsStore.YEAR_POINTS, in.readInt());
+        store.set(row, UserStatsStore.CURRENT_STREAK, in.readInt());
+        store.set(row, UserStatsStore.BEST_STREAK, in.readInt());
+        store.set(row, UserStatsStore.BEST_MONTHLY_POINTS, in.readInt());
+        store.set(row, UserStatsStore.BEST_YEARLY_POINTS, in.readInt());
+        store.set(row, UserStatsStore.LAST_GYM_DAY, readDay(in));
+        store.set(row, UserStatsStore.WAKE_FIRST_CURRENT_STREAK, in.readInt());
+        store.set(row, UserStatsStore.WAKE_FIRST_BEST_STREAK, in.readInt());
+        store.set(row, UserStatsStore.LAST_WAKE_FIRST_DAY, readDay(in));
+        return store.view(row);
+    }
+
+    // Format unverändert: long Epoch-Day, Long.MIN_VALUE für "kein Datum"
+    private static void writeDay(DataOutput out, int epochDay) throws IOException {
+        out.writeLong(epochDay == UserStatsStore.NO_DAY ? Long.MIN_VALUE : epochDay);
+    }
+
+    private static int readDay(DataInput in) throws IOException {
+        long epochDay = in.readLong();
+        return epochDay == Long.MIN_VALUE ? UserStatsStore.NO_DAY : (int) epochDay;
+    }
+
+    /**
+     * Erstellt einen unveränderlichen Stand aller angezeigten Werte.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Unveränderlicher Stand eines Nutzers, z.B. für Ranglisten und Nachrichten.
+     */
+    public static final class Snapshot {
+        public final String userId;
+        public final String displayName;
+        public final int points;
+        public final int yearPoints;
+        public final int currentStreak;
+        public final int bestStreak;
+        public final int bestMonthlyPoints;
+        public final int bestYearlyPoints;
+        public final int wakeFirstCurrentStreak;
+        public final int wakeFirstBestStreak;
+
+        private Snapshot(UserStats s) {
+            this.userId = s.getUserId();
+            this.displayName = s.getDisplayName();
+            this.points = s.getPoints();
+            this.yearPoints = s.getYearPoints();
+            this.currentStreak = s.getCurrentStreak();
+            this.bestStreak = s.getBestStreak();
+            this.bestMonthlyPoints = s.getBestMonthlyPoints();
+            this.bestYearlyPoints = s.getBestYearlyPoints();
+            this.wakeFirstCurrentStreak = s.getWakeFirstCurrentStreak();
+            this.wakeFirstBestStreak = s.getWakeFirstBestStreak();
+        }
     }
 
     /**
@@ -214,13 +311,27 @@ public class UserStats {
         public final int currentStreak;
         public final int bestStreak;
         public final boolean accepted;
+        public final boolean periodClosed; // Check-in für einen bereits abgeschlossenen Monat, nichts geändert
 
         public AwardResult(int pointsAdded, int totalPoints, int currentStreak, int bestStreak, boolean accepted) {
+            this(pointsAdded, totalPoints, currentStreak, bestStreak, accepted, false);
+        }
+
+        private AwardResult(int pointsAdded, int totalPoints, int currentStreak, int bestStreak, boolean accepted,
+                            boolean periodClosed) {
             this.pointsAdded = pointsAdded;
             this.totalPoints = totalPoints;
             this.currentStreak = currentStreak;
             this.bestStreak = bestStreak;
             this.accepted = accepted;
+            this.periodClosed = periodClosed;
+        }
+
+        /**
+         * Abgelehnter Check-in, dessen Tag in einem bereits abgeschlossenen Monat liegt.
+         */
+        public static AwardResult periodClosed() {
+            return new AwardResult(0, 0, 0, 0, false, true);
         }
     }
 }
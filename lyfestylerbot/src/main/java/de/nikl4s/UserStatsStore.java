@@ -0,0 +1,254 @@
+package de.nikl4s;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Kompakte Ablage aller {@link UserStats} eines {@link PointsManager} als Struct-of-Arrays.
+ *
+ * - Jede Kennzahl ist eine eigene int-Spalte, Datumswerte als Epoch-Day ({@link #NO_DAY} = kein Datum).
+ * - Zeilen liegen in Blöcken zu {@link #CHUNK_SIZE}; Blöcke werden nie umkopiert, beim Wachsen wird nur
+ *   das Block-Array erweitert. Schreiber auf bestehende Zeilen stören sich dadurch nicht mit dem Wachstum.
+ * - Discord-IDs sind long-Schlüssel einer Open-Addressing-Tabelle (lineares Sondieren) auf die Zeilennummer.
+ *   Lesen läuft optimistisch über einen {@link StampedLock}, nur Einfügen nimmt den Schreib-Teil.
+ * - Anzeigenamen werden über {@link String#intern()} geteilt (gleicher Nutzer auf mehreren Servern); nicht mehr
+ *   benutzte Namen räumt der GC weg.
+ *
+ * Zeilen werden nie entfernt, nur mit {@link #clear()} insgesamt verworfen. Werte einer Zeile werden nur unter
+ * {@link #lock(int)} geändert; Schleifen über alle Zeilen nur, wenn keine Schreiber laufen (Schreib-Teil des periodLock).
+ */
+public class UserStatsStore {
+    public static final int NO_DAY = Integer.MIN_VALUE;
+
+    static final int POINTS = 0;
+    static final int YEAR_POINTS = 1;
+    static final int CURRENT_STREAK = 2;
+    static final int BEST_STREAK = 3;
+    static final int BEST_MONTHLY_POINTS = 4;
+    static final int BEST_YEARLY_POINTS = 5;
+    static final int LAST_GYM_DAY = 6;
+    static final int WAKE_FIRST_CURRENT_STREAK = 7;
+    static final int WAKE_FIRST_BEST_STREAK = 8;
+    static final int LAST_WAKE_FIRST_DAY = 9;
+    static final int COLUMNS = 10;
+
+    static final int CHUNK_BITS = 12;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int LOCK_STRIPES = 256;
+
+    private static final class Chunk {
+        final long[] ids = new long[CHUNK_SIZE];
+        final String[] names = new String[CHUNK_SIZE];
+        final int[][] columns = new int[COLUMNS][CHUNK_SIZE];
+    }
+
+    /**
+     * Schlüsseltabelle; rows enthält Zeile + 1, 0 steht für einen freien Platz.
+     */
+    private static final class Index {
+        final long[] keys;
+        final int[] rows;
+
+        Index(int capacity) {
+            this.keys = new long[capacity];
+            this.rows = new int[capacity];
+        }
+    }
+
+    private final StampedLock indexLock = new StampedLock();
+    private volatile Index index = new Index(16);
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile int size;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public UserStatsStore() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Monitor, unter dem die Werte der Zeile geändert werden (Lock-Striping).
+     */
+    public Object lock(int row) {
+        return locks[row & (LOCK_STRIPES - 1)];
+    }
+
+    public UserStats view(int row) {
+        return new UserStats(this, row);
+    }
+
+    private static int slot(long id, int mask) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static int probe(Index ix, long id) {
+        int mask = ix.rows.length - 1;
+        for (int i = slot(id, mask), n = 0; n <= mask; i = (i + 1) & mask, n++) {
+            int row = ix.rows[i];
+            if (row == 0) {
+                return -1;
+            }
+            if (ix.keys[i] == id) {
+                return row - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Zeile des Nutzers oder -1
+     */
+    public int row(long userId) {
+        long stamp = indexLock.tryOptimisticRead();
+        int row = probe(index, userId);
+        if (!indexLock.validate(stamp)) {
+            stamp = indexLock.readLock();
+            try {
+                row = probe(index, userId);
+            } finally {
+                indexLock.unlockRead(stamp);
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Zeile des Nutzers; legt sie mit {@code displayName} an, wenn es sie noch nicht gibt.
+     */
+    public int rowFor(long userId, String displayName) {
+        int row = row(userId);
+        if (row >= 0) {
+            return row;
+        }
+        long stamp = indexLock.writeLock();
+        try {
+            Index ix = index;
+            row = probe(ix, userId);
+            if (row >= 0) {
+                return row;
+            }
+            row = size;
+            int chunk = row >>> CHUNK_BITS;
+            Chunk[] current = chunks;
+            if (chunk == current.length) {
+                current = Arrays.copyOf(current, chunk + 1);
+                current[chunk] = new Chunk();
+                chunks = current;
+            }
+            Chunk c = current[chunk];
+            int offset = row & CHUNK_MASK;
+            c.ids[offset] = userId;
+            c.names[offset] = displayName.intern();
+            c.columns[LAST_GYM_DAY][offset] = NO_DAY;
+            c.columns[LAST_WAKE_FIRST_DAY][offset] = NO_DAY;
+            if ((row + 1) * 2 > ix.rows.length) {
+                ix = resize(ix);
+                index = ix;
+            }
+            insert(ix, userId, row);
+            size = row + 1;
+            return row;
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+    }
+
+    private static void insert(Index ix, long id, int row) {
+        int mask = ix.rows.length - 1;
+        int i = slot(id, mask);
+        while (ix.rows[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        ix.keys[i] = id;
+        ix.rows[i] = row + 1;
+    }
+
+    private static Index resize(Index old) {
+        Index bigger = new Index(old.rows.length * 2);
+        for (int i = 0; i < old.rows.length; i++) {
+            if (old.rows[i] != 0) {
+                insert(bigger, old.keys[i], old.rows[i] - 1);
+            }
+        }
+        return bigger;
+    }
+
+    /**
+     * Verwirft alle Zeilen. Nur aufrufen, wenn keine Schreiber laufen.
+     */
+    public void clear() {
+        long stamp = indexLock.writeLock();
+        try {
+            index = new Index(16);
+            chunks = new Chunk[0];
+            size = 0;
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+    }
+
+    long userId(int row) {
+        return chunks[row >>> CHUNK_BITS].ids[row & CHUNK_MASK];
+    }
+
+    String name(int row) {
+        return chunks[row >>> CHUNK_BITS].names[row & CHUNK_MASK];
+    }
+
+    void setName(int row, String name) {
+        String[] names = chunks[row >>> CHUNK_BITS].names;
+        int offset = row & CHUNK_MASK;
+        if (!name.equals(names[offset])) {
+            names[offset] = name.intern();
+        }
+    }
+
+    int get(int row, int column) {
+        return chunks[row >>> CHUNK_BITS].columns[column][row & CHUNK_MASK];
+    }
+
+    void set(int row, int column, int value) {
+        chunks[row >>> CHUNK_BITS].columns[column][row & CHUNK_MASK] = value;
+    }
+
+    /**
+     * Monatsabschluss (und mit {@code closeYear} auch Jahresabschluss) für alle Zeilen in einem Durchlauf:
+     * Highscores festschreiben, Punkte, Streak und letzten Gym-Tag bzw. Jahrespunkte zurücksetzen.
+     * Die Blöcke sind unabhängig und laufen ab zwei Blöcken parallel im Fork-Join-Pool.
+     */
+    void closePeriod(boolean closeYear) {
+        Chunk[] current = chunks;
+        int rows = size;
+        int count = (rows + CHUNK_MASK) >>> CHUNK_BITS;
+        IntStream blocks = IntStream.range(0, count);
+        (count > 1 ? blocks.parallel() : blocks).forEach(k ->
+                closeChunk(current[k], Math.min(CHUNK_SIZE, rows - (k << CHUNK_BITS)), closeYear));
+    }
+
+    private static void closeChunk(Chunk c, int n, boolean closeYear) {
+        keepBest(c.columns[POINTS], c.columns[BEST_MONTHLY_POINTS], n);
+        Arrays.fill(c.columns[POINTS], 0, n, 0);
+        Arrays.fill(c.columns[CURRENT_STREAK], 0, n, 0);
+        Arrays.fill(c.columns[LAST_GYM_DAY], 0, n, NO_DAY);
+        if (closeYear) {
+            keepBest(c.columns[YEAR_POINTS], c.columns[BEST_YEARLY_POINTS], n);
+            Arrays.fill(c.columns[YEAR_POINTS], 0, n, 0);
+        }
+    }
+
+    private static void keepBest(int[] points, int[] best, int n) {
+        for (int i = 0; i < n; i++) {
+            if (points[i] > best[i]) {
+                best[i] = points[i];
+            }
+        }
+    }
+}
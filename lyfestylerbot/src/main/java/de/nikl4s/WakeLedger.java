@@ -0,0 +1,178 @@
+package de.nikl4s;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wake-Ups eines Tages in Ankunftsreihenfolge.
+ *
+ * - IDs und Uhrzeiten liegen in parallelen Arrays in der Reihenfolge der Check-ins; Position = Index + 1.
+ * - Ein Index ID → Position macht Doppel-Check-ins und Positionsabfragen O(1).
+ * - Über die Wake-Spieler läuft ein Bitset "schläft noch" mit Zähler; der letzte Schläfer ist der Check-in,
+ *   der den Zähler auf 0 bringt, und die noch Schlafenden lassen sich in O(k) aufzählen.
+ *
+ * Änderungen nur unter einem gemeinsamen Lock (wakeLock im {@link PointsManager}); nur {@link #contains(String)}
+ * darf ohne Lock aufgerufen werden.
+ */
+public class WakeLedger {
+    private LocalDate date;
+    private String[] ids = new String[8];
+    private long[] nanos = new long[8];
+    private int size;
+    private final Map<String, Integer> positions = new ConcurrentHashMap<>();
+
+    private List<String> players = List.of();
+    private final Map<String, Integer> playerIndex = new HashMap<>();
+    private final BitSet asleep = new BitSet();
+    private int asleepCount;
+
+    public LocalDate date() {
+        return date;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Leert den Tag, falls {@code today} ein anderer ist. Alle Wake-Spieler schlafen danach wieder.
+     * @return true, wenn ein neuer Tag begonnen wurde
+     */
+    public boolean startDay(LocalDate today) {
+        if (date != null && date.isEqual(today)) {
+            return false;
+        }
+        reset(today);
+        return true;
+    }
+
+    /**
+     * Trägt einen Check-in ein.
+     * @return Position (1-basiert); negativ (-Position), wenn der Nutzer heute schon wach ist
+     */
+    public int add(String userId, LocalTime time) {
+        Integer existing = positions.get(userId);
+        if (existing != null) {
+            return -existing;
+        }
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            nanos = Arrays.copyOf(nanos, size * 2);
+        }
+        ids[size] = userId;
+        nanos[size] = time.toNanoOfDay();
+        size++;
+        positions.put(userId, size);
+        Integer player = playerIndex.get(userId);
+        if (player != null && asleep.get(player)) {
+            asleep.clear(player);
+            asleepCount--;
+        }
+        return size;
+    }
+
+    public boolean contains(String userId) {
+        return positions.containsKey(userId);
+    }
+
+    /**
+     * @return Position (1-basiert) oder 0, wenn der Nutzer heute noch nicht wach ist
+     */
+    public int position(String userId) {
+        Integer position = positions.get(userId);
+        return position == null ? 0 : position;
+    }
+
+    /**
+     * @param position 1-basiert
+     */
+    public String userAt(int position) {
+        return ids[position - 1];
+    }
+
+    /**
+     * @param position 1-basiert
+     */
+    public LocalTime timeAt(int position) {
+        return LocalTime.ofNanoOfDay(nanos[position - 1]);
+    }
+
+    /**
+     * Setzt die Wake-Spieler; wer heute schon eingecheckt hat, gilt sofort als wach. O(Spieler).
+     */
+    public void setPlayers(List<String> wakePlayers) {
+        players = List.copyOf(wakePlayers);
+        playerIndex.clear();
+        asleep.clear();
+        asleepCount = 0;
+        for (int i = 0; i < players.size(); i++) {
+            String id = players.get(i);
+            if (playerIndex.putIfAbsent(id, i) == null && !positions.containsKey(id)) {
+                asleep.set(i);
+                asleepCount++;
+            }
+        }
+    }
+
+    public int asleepCount() {
+        return asleepCount;
+    }
+
+    /**
+     * true, sobald alle (mindestens ein) Wake-Spieler heute eingecheckt haben.
+     */
+    public boolean allPlayersAwake() {
+        return !playerIndex.isEmpty() && asleepCount == 0;
+    }
+
+    /**
+     * Noch schlafende Wake-Spieler in der Reihenfolge der Spielerliste. O(k) über das Bitset.
+     */
+    public List<String> sleepers() {
+        List<String> out = new ArrayList<>(asleepCount);
+        for (int i = asleep.nextSetBit(0); i >= 0; i = asleep.nextSetBit(i + 1)) {
+            out.add(players.get(i));
+        }
+        return out;
+    }
+
+    /**
+     * Ersetzt den Tag durch gespeicherte Einträge (Snapshot). Ältere Snapshots speicherten in Hash-Reihenfolge;
+     * stabil nach Uhrzeit sortiert ergibt sich wieder die Ankunftsreihenfolge.
+     */
+    public void load(LocalDate day, List<String> userIds, long[] nanosOfDay) {
+        reset(day);
+        Integer[] order = new Integer[userIds.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(nanosOfDay[a], nanosOfDay[b]));
+        for (int i : order) {
+            add(userIds.get(i), LocalTime.ofNanoOfDay(nanosOfDay[i]));
+        }
+    }
+
+    private void reset(LocalDate day) {
+        date = day;
+        Arrays.fill(ids, 0, size, null);
+        size = 0;
+        positions.clear();
+        asleep.clear();
+        asleepCount = 0;
+        for (int i : playerIndex.values()) {
+            asleep.set(i);
+            asleepCount++;
+        }
+    }
+}
@@ -1,76 +1,142 @@
 package de.nikl4s;
 
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
 import net.dv8tion.jda.api.entities.channel.unions.MessageChannelUnion;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.Message.Attachment;
 
+import java.time.Clock;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
-public class WakeUpTracker extends ListenerAdapter {
-    private final PointsManager pointsManager;
+/**
+ * Handler für "!awake" im Frühe-Vögel-Kanal. Aufgerufen vom {@link MessageRouter}, der Kanal und
+ * Kommando bereits geprüft hat.
+ *
+ * Das Bild wird asynchron im {@link ImageVerifier} gehasht; ein bereits gepostetes Bild zählt nicht.
+ * Datum und Uhrzeit stammen aus dem Zeitstempel der Nachricht, nicht aus dem Ende der Prüfung.
+ * Pro Server werden die Ergebnisse in Eingangsreihenfolge verbucht, damit eine schneller fertige
+ * Prüfung niemanden in der Wake-Order überholt.
+ */
+public class WakeUpTracker {
+    private final GuildShards shards;
+    private final ImageVerifier imageVerifier;
+    private final OutboundQueue outbound;
+    private final Clock clock;
+    // letzte noch offene Verbuchung je Server
+    private final Map<Long, CompletableFuture<Void>> pending = new ConcurrentHashMap<>();
 
-    public WakeUpTracker(PointsManager pointsManager) {
-        this.pointsManager = pointsManager;
+    /**
+     * @param clock liefert die Zeitzone, in der der Zeitstempel einer Nachricht zu Datum und Uhrzeit wird
+     */
+    public WakeUpTracker(GuildShards shards, ImageVerifier imageVerifier, OutboundQueue outbound, Clock clock) {
+        this.shards = shards;
+        this.imageVerifier = imageVerifier;
+        this.outbound = outbound;
+        this.clock = clock;
     }
 
-    @Override
-    public void onMessageReceived(MessageReceivedEvent event) {
-        if (event.getAuthor().isBot()) return;
+    public void handleAwake(MessageReceivedEvent event) {
+        long start = System.nanoTime();
         MessageChannelUnion channel = event.getChannel();
-        String channelName = channel.getName();
-        if (channelName == null || !channelName.equalsIgnoreCase("╠►frühe-vögel")) return;
-
         Message msg = event.getMessage();
-        String content = msg.getContentRaw();
-        if (!content.toLowerCase().startsWith("!awake")) return;
-
         List<Attachment> atts = msg.getAttachments();
-        boolean hasImage = atts.stream().anyMatch(Attachment::isImage);
-        if (!hasImage) {
-            channel.sendMessage("Bild fehlt für !awake").queue();
+        Attachment image = atts.stream().filter(Attachment::isImage).findFirst().orElse(null);
+        if (image == null) {
+            outbound.send(channel, "Bild fehlt für !awake");
+            Metrics.AWAKE.recordSince(start);
             return;
         }
 
         String userId = event.getAuthor().getId();
         String displayName = event.getMember() != null ? event.getMember().getEffectiveName() : event.getAuthor().getName();
-        LocalDate today = LocalDate.now();
-        LocalTime now = LocalTime.now();
+        ZonedDateTime sent = msg.getTimeCreated().atZoneSameInstant(clock.getZone());
+        LocalDate today = sent.toLocalDate();
+        LocalTime now = sent.toLocalTime();
+
+        long guildId = event.getGuild().getIdLong();
+        GuildShards.Lease lease = shards.acquire(guildId);
+        try {
+            CompletableFuture<ImageVerifier.ImageCheck> inspection = imageVerifier.inspect(image, false)
+                    .exceptionally(error -> {
+                        System.err.println("[WakeUpTracker] " + error.getMessage());
+                        return null;
+                    });
+            pending.compute(guildId, (id, previous) -> {
+                CompletableFuture<?> before = previous == null ? inspection : previous;
+                return before.thenCombine(inspection, (ignored, check) -> {
+                    settle(lease, channel, check, userId, displayName, today, now, start);
+                    return null;
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            lease.close();
+            outbound.send(channel, displayName + ", gerade werden zu viele Bilder geprüft. Versuch es gleich nochmal.");
+            Metrics.AWAKE.recordSince(start);
+        }
+    }
 
+    /**
+     * Verbucht ein geprüftes !awake und gibt den Lease frei.
+     */
+    private void settle(GuildShards.Lease lease, MessageChannelUnion channel, ImageVerifier.ImageCheck check,
+                        String userId, String displayName, LocalDate today, LocalTime now, long start) {
+        try {
+            // nur nachsehen: aufgenommen wird das Bild erst, wenn das !awake zählt
+            ImageHashIndex.Match duplicate = lease.images().findRepost(check, userId, today);
+            if (duplicate != null) {
+                Metrics.CHEATS_REPOST.increment();
+                outbound.send(channel, "<@" + userId + "> das Bild wurde schon am " + duplicate.day
+                        + " gepostet. Zählt nicht!");
+                return;
+            }
+            if (applyAwake(lease.points(), channel, userId, displayName, today, now)) {
+                lease.images().accept(check, userId, today);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("[WakeUpTracker] " + e.getMessage());
+        } finally {
+            lease.close();
+            Metrics.AWAKE.recordSince(start);
+        }
+    }
+
+    /**
+     * @return true, wenn das !awake angenommen wurde
+     */
+    private boolean applyAwake(PointsManager pointsManager, MessageChannelUnion channel, String userId, String displayName,
+                               LocalDate today, LocalTime now) {
         PointsManager.WakeResult res = pointsManager.handleAwake(userId, displayName, today, now);
-        if (!res.accepted) return;
+        if (!res.accepted) return false;
 
         if (res.isFirst) {
-            channel.sendMessage("<@" + userId + "> ist der Frühste Vogel und hat den Wurm :worm: gefangen!").queue();
+            outbound.send(channel, "<@" + userId + "> ist der Frühste Vogel und hat den Wurm :worm: gefangen!");
             // Zweite Nachricht: Tagge noch schlafende Spieler, falls konfiguriert
-            var players = pointsManager.getWakePlayers();
-            if (!players.isEmpty()) {
-                StringBuilder sleepers = new StringBuilder();
-                for (String pid : players) {
-                    if (!pid.equals(userId)) {
-                        sleepers.append("<@").append(pid).append("> ");
-                    }
-                }
-                if (sleepers.length() > 0) {
-                    channel.sendMessage(sleepers.toString().trim() + "\nRaus aus den Federn, ihr Lappen!").queue();
-                }
+            StringBuilder sleepers = new StringBuilder();
+            for (String pid : pointsManager.getSleepers(today)) {
+                sleepers.append("<@").append(pid).append("> ");
+            }
+            if (sleepers.length() > 0) {
+                outbound.send(channel, sleepers.toString().trim() + "\nRaus aus den Federn, ihr Lappen!");
             }
         } else {
             // Nicht erster
-            var players = pointsManager.getWakePlayers();
-            int configuredPlayers = players.isEmpty() ? pointsManager.getPlayerCount() : players.size();
-            if (res.isLast && configuredPlayers > 0 && res.position >= configuredPlayers) {
-                channel.sendMessage("<@" + userId + "> hat es auch endlich geschafft, du siehst ziemlich beschissen aus dafür, dass du solange gepennt hast. Jetzt sind endlich alle wach!").queue();
-                channel.sendMessage(pointsManager.buildWakeOrderMessage()).queue();
+            if (res.isLast) {
+                outbound.send(channel, "<@" + userId + "> hat es auch endlich geschafft, du siehst ziemlich beschissen aus dafür, dass du solange gepennt hast. Jetzt sind endlich alle wach!");
+                outbound.send(channel, pointsManager.buildWakeOrderMessage());
             } else {
-                channel.sendMessage("<@" + userId + "> hat es auch endlich geschafft. Heute mal ausgeschlafen wa?").queue();
+                outbound.send(channel, "<@" + userId + "> hat es auch endlich geschafft. Heute mal ausgeschlafen wa?");
             }
         }
+        return true;
     }
 }
 
@@ -1,43 +1,154 @@
 package de.nikl4s;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalTime;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.OnlineStatus;
 import net.dv8tion.jda.api.entities.Activity;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.requests.GatewayIntent;
-import java.time.*;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-
 
+/**
+ * Startet den Bot. Läuft interaktiv (Token-Abfrage auf der Konsole) oder ohne Konsole als Dienst:
+ * - LYFE_TOKEN_FILE bzw. "--token-file &lt;pfad&gt;": Datei mit dem Token (z.B. systemd-Credential, Docker-Secret)
+ * - LYFE_TOKEN: Token direkt
+ * - LYFE_CONFIG: Pfad der config.properties (Standard: ./config.properties)
+ * - LYFE_DATA_DIR: Datenverzeichnis (Standard: ./data)
+ * - LYFE_SHUTDOWN_SECONDS: Frist für das Herunterfahren (Standard: 20)
+ *
+ * Bei SIGTERM/SIGINT fährt {@link GracefulShutdown} geordnet herunter, sodass ein Neustart unter einem
+ * Supervisor keine Check-ins, Antworten oder Zustände verliert. Bei einem harten Abbruch (kill -9, Absturz) können
+ * die letzten, noch nicht gefsyncten Journal-Einträge fehlen (siehe {@link StateStore}).
+ */
 public class mainClass {
+    private static final long DEFAULT_SHUTDOWN_SECONDS = 20;
+
     public static void main(String[] args) {
-        
-        Scanner scan = new Scanner(System.in);
-        System.out.println("Gebe deinen Discord-App-Token ein: ");
-        String token = scan.next();
+        Path dataDir = Path.of(env("LYFE_DATA_DIR", "data"));
+        Path configFile = Path.of(env("LYFE_CONFIG", "config.properties"));
+        String token;
+        try {
+            token = resolveToken(args);
+        } catch (IOException | IllegalStateException e) {
+            System.err.println("Kein Token: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
 
         JDABuilder confyg = JDABuilder.createDefault(token, GatewayIntent.GUILD_MESSAGES, GatewayIntent.MESSAGE_CONTENT, GatewayIntent.GUILD_MEMBERS);
-        
+        // JDAs eigener Hook würde JDA sofort beenden; das übernimmt GracefulShutdown nach dem Senden
+        confyg.setEnableShutdownHook(false);
         confyg.setStatus(OnlineStatus.ONLINE);
         confyg.setActivity(Activity.watching("auf dein Arsch 0.0"));
-        PointsManager pointsManager = new PointsManager();
-        confyg.addEventListeners(new GymTracker(pointsManager));
-        confyg.addEventListeners(new WakeUpTracker(pointsManager));
-        confyg.addEventListeners(new SlashCommandHandler(pointsManager));
+        // eine Uhr für Punkte, Tracker und Jobs; die Simulation ersetzt sie durch eine vorgestellte
+        Clock clock = Clock.systemDefaultZone();
+        ConfigWatcher config;
+        try {
+            config = ConfigWatcher.start(configFile);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Konfiguration konnte nicht geladen werden: " + e.getMessage());
+            return;
+        }
+        AttachmentCache attachments;
+        try {
+            attachments = AttachmentCache.open(dataDir.resolve("attachments"));
+        } catch (IOException e) {
+            System.err.println("Anhang-Cache konnte nicht geöffnet werden: " + e.getMessage());
+            closeQuietly(config);
+            return;
+        }
+        // alles, was den Start abbrechen kann, vor dem Anmelden bei Discord; danach steht der Shutdown-Hook sofort
+        JobScheduler scheduler;
+        try {
+            scheduler = JobScheduler.open(dataDir.resolve("scheduler.properties"), clock);
+        } catch (IOException e) {
+            System.err.println("Scheduler-Marken konnten nicht gelesen werden: " + e.getMessage());
+            closeQuietly(config);
+            return;
+        }
+        long shutdownSeconds = Long.parseLong(env("LYFE_SHUTDOWN_SECONDS", Long.toString(DEFAULT_SHUTDOWN_SECONDS)));
+        // Kennzahlen für Prometheus; ohne Endpunkt läuft der Bot trotzdem weiter
+        MetricsServer metrics = null;
+        try {
+            metrics = MetricsServer.start(MetricsServer.DEFAULT_PORT);
+            System.out.println("Metriken unter http://127.0.0.1:" + metrics.port() + "/metrics");
+        } catch (IOException e) {
+            System.err.println("Metrik-Endpunkt konnte nicht gestartet werden: " + e.getMessage());
+        }
+        // Pro Server ein eigener PointsManager; Zustand liegt unter data/guilds/<guildId>/
+        GuildShards shards = new GuildShards(dataDir, clock);
+        // gespeicherte Server laden, während JDA sich anmeldet und den Gateway-Handshake macht
+        long warmUpStart = System.nanoTime();
+        CompletableFuture<Integer> warmUp = shards.warmUp(Runtime.getRuntime().availableProcessors());
+        ImageVerifier imageVerifier = new ImageVerifier(attachments);
+        JdaSink sink = new JdaSink();
+        OutboundQueue outbound = new OutboundQueue(sink);
+        MessageRouter router = new MessageRouter(config, new GymTracker(shards, config, imageVerifier, outbound, clock),
+                new WakeUpTracker(shards, imageVerifier, outbound, clock));
+        SlashCommandHandler slashCommands = new SlashCommandHandler(shards, config, clock);
+        confyg.addEventListeners(router, slashCommands);
 
         JDA lyfeBot = confyg.build();
-        lyfeBot.updateCommands().addCommands(SlashCommandHandler.commandDefinitions()).queue();
+        sink.bind(lyfeBot);
+
+        // Steht, bevor irgendetwas nach dem Anmelden scheitern kann. Reihenfolge: erst keine neuen Events, dann alles
+        // Laufende abarbeiten und senden, zuletzt der Zustand
+        MetricsServer metricsServer = metrics;
+        new GracefulShutdown(TimeUnit.SECONDS.toMillis(shutdownSeconds))
+                .step("Events", remaining -> {
+                    lyfeBot.removeEventListener(router, slashCommands);
+                    return true;
+                })
+                .step("Bildprüfungen", imageVerifier::shutdown)
+                .step("Jobs", scheduler::shutdown)
+                .step("Nachrichten", outbound::shutdown)
+                .step("JDA", remaining -> {
+                    lyfeBot.shutdown();
+                    return lyfeBot.awaitShutdown(remaining, TimeUnit.MILLISECONDS);
+                })
+                .always("Zustand", remaining -> {
+                    shards.close();
+                    return true;
+                })
+                .always("Sonstiges", remaining -> {
+                    config.close();
+                    if (metricsServer != null) {
+                        metricsServer.stop();
+                    }
+                    return true;
+                })
+                .install();
+
         try {
             lyfeBot.awaitReady();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
+        System.out.println("[Startup] Gateway bereit " + (System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime()) + " ms nach Prozessstart");
+        warmUp.whenComplete((loaded, error) -> System.out.println("[Startup] " + (error == null ? loaded : 0) + " Server in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - warmUpStart) + " ms vorgeladen"));
+        // nur bei geänderten Definitionen neu registrieren
+        SlashCommandHandler.registerIfChanged(lyfeBot, dataDir.resolve("commands.sha256"));
+
+        // Monatsabschluss um Mitternacht, danach der Monatsanfangs-Post; verpasste Läufe werden nachgeholt
+        scheduler.schedule("month-close", JobScheduler.monthly(1, LocalTime.MIDNIGHT), Duration.ofDays(366),
+                new MonthCloseJob(lyfeBot, shards, config, outbound));
+        scheduler.schedule("monthly-lyrics", JobScheduler.monthly(1, LocalTime.of(7, 0)), Duration.ofHours(12),
+                scheduledFor -> postMonthlyLyrics(lyfeBot, config, outbound));
+        scheduler.start();
 
-        scheduleMonthlyLyrics(lyfeBot);
-        
         System.out.println();
         System.out.println( "\033[32m" + "4LyfeStyler is ready");
         System.out.println();
@@ -50,35 +161,61 @@ public class mainClass {
 
     }
 
-    private static void scheduleMonthlyLyrics(JDA jda) {
-        ScheduledExecutorService scheduler = jda.getGatewayPool();
-        if (scheduler == null) return;
-
-        Runnable task = () -> {
-            LocalDate today = LocalDate.now();
-            if (today.getDayOfMonth() != 1) return;
-            var channels = jda.getTextChannelsByName("╠►frühe-vögel", true);
-            if (channels.isEmpty()) return;
-            String lyrics = "Wake up (Wake up)\n" +
-                            "It's the first of the month (slatt, slatt)\n" +
-                            "I brush my teeth and count up (What? Slatt, slatt, slatt, slatt, woah)";
-            channels.get(0).sendMessage(lyrics).queue();
-        };
-
-        long initialDelay = computeInitialDelayToNext(LocalTime.of(7, 0));
-        long period = TimeUnit.DAYS.toSeconds(1);
-        scheduler.scheduleAtFixedRate(task, initialDelay, period, TimeUnit.SECONDS);
+    private static void closeQuietly(ConfigWatcher config) {
+        try {
+            config.close();
+        } catch (IOException e) {
+            System.err.println("Konfigurations-Watcher konnte nicht geschlossen werden: " + e.getMessage());
+        }
     }
 
-    private static long computeInitialDelayToNext(LocalTime runAt) {
-        ZoneId zone = ZoneId.systemDefault();
-        ZonedDateTime now = ZonedDateTime.now(zone);
-        ZonedDateTime next = now.withHour(runAt.getHour()).withMinute(runAt.getMinute()).withSecond(0).withNano(0);
-        if (!next.isAfter(now)) {
-            next = next.plusDays(1);
-        }
-        return Duration.between(now, next).getSeconds();
+    private static String env(String name, String fallback) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? fallback : value.trim();
     }
-}
 
+    /**
+     * Token aus Datei, Umgebung oder stdin (interaktiv bzw. per Pipe).
+     * @throws IllegalStateException wenn nirgends ein Token steht
+     */
+    private static String resolveToken(String[] args) throws IOException {
+        String tokenFile = System.getenv("LYFE_TOKEN_FILE");
+        for (int i = 0; i + 1 < args.length; i++) {
+            if ("--token-file".equals(args[i])) {
+                tokenFile = args[i + 1];
+            }
+        }
+        if (tokenFile != null && !tokenFile.isBlank()) {
+            String token = Files.readString(Path.of(tokenFile.trim()), StandardCharsets.UTF_8).trim();
+            if (token.isEmpty()) {
+                throw new IllegalStateException(tokenFile + " ist leer");
+            }
+            return token;
+        }
+        String token = System.getenv("LYFE_TOKEN");
+        if (token != null && !token.isBlank()) {
+            return token.trim();
+        }
+        Scanner scan = new Scanner(System.in);
+        if (System.console() != null) {
+            System.out.println("Gebe deinen Discord-App-Token ein: ");
+        }
+        // ohne Konsole (systemd, Docker) ist stdin meist leer; ein per Pipe übergebenes Token geht weiterhin
+        if (!scan.hasNext()) {
+            throw new IllegalStateException("LYFE_TOKEN oder LYFE_TOKEN_FILE setzen (keine Eingabe auf stdin)");
+        }
+        return scan.next();
+    }
 
+    private static void postMonthlyLyrics(JDA jda, ConfigWatcher config, OutboundQueue outbound) {
+        String lyrics = "Wake up (Wake up)\n" +
+                        "It's the first of the month (slatt, slatt)\n" +
+                        "I brush my teeth and count up (What? Slatt, slatt, slatt, slatt, woah)";
+        // in jeden Wake-Kanal jedes Servers, wie der Monatsabschluss in jeden Gym-Kanal
+        for (Guild guild : jda.getGuilds()) {
+            for (TextChannel channel : MessageRouter.channelsOf(guild, config.current(), MessageRouter.ChannelKind.WAKE)) {
+                outbound.send(channel, lyrics);
+            }
+        }
+    }
+}
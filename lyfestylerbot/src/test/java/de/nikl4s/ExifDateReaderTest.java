@@ -0,0 +1,267 @@
+package de.nikl4s;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * {@link ExifDateReader} gegen einen lokalen HTTP-Server mit einem 4 MiB großen JPEG: Range-Anfrage, Anzahl
+ * tatsächlich gelesener Bytes und die Wege, wenn der Server Range ignoriert oder der Header nicht im Präfix liegt.
+ */
+class ExifDateReaderTest {
+    private static final int IMAGE_BYTES = 4 * 1024 * 1024;
+    private static final LocalDate SHOT_DATE = LocalDate.of(2024, 3, 15);
+
+    private HttpServer server;
+    private final List<String> ranges = new CopyOnWriteArrayList<>(); // Range-Header je Anfrage, "" = keiner
+    private volatile byte[] image;
+    private volatile boolean honorRange;
+    private final CountDownLatch unstall = new CountDownLatch(1);
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/image.jpg", this::serve);
+        server.createContext("/stall.jpg", this::stall);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        unstall.countDown();
+        server.stop(0);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        ranges.add(range == null ? "" : range);
+        byte[] data = image;
+        int from = 0;
+        int to = data.length - 1;
+        int status = 200;
+        if (honorRange && range != null && range.startsWith("bytes=0-")) {
+            to = Math.min(to, Integer.parseInt(range.substring("bytes=0-".length())));
+            status = 206;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + data.length);
+        }
+        exchange.sendResponseHeaders(status, to - from + 1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(data, from, to - from + 1);
+        } catch (IOException e) {
+            // Client hat nach dem Header geschlossen
+        }
+    }
+
+    /**
+     * Schickt Header und JPEG-Anfang, dann nichts mehr, bis der Test endet.
+     */
+    private void stall(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(200, IMAGE_BYTES);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(new byte[] { (byte) 0xFF, (byte) 0xD8 });
+            out.flush();
+            unstall.await();
+        } catch (IOException | InterruptedException e) {
+            // Client hat abgebrochen
+        }
+    }
+
+    private ExifDateReader reader() {
+        return new ExifDateReader(HttpClient.newHttpClient(), Duration.ofSeconds(10));
+    }
+
+    private URI uri() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/image.jpg");
+    }
+
+    @Test
+    void requestsOnlyThePrefixAndStopsAfterApp1() throws Exception {
+        image = jpeg(0);
+        honorRange = true;
+        long before = Metrics.IMAGE_BYTES.get();
+
+        assertEquals(SHOT_DATE, reader().readShotDate(uri()));
+
+        assertEquals(List.of("bytes=0-" + (ExifDateReader.PREFIX_BYTES - 1)), ranges);
+        long read = Metrics.IMAGE_BYTES.get() - before;
+        assertTrue(read > 0 && read <= ExifDateReader.PREFIX_BYTES, "gelesen: " + read);
+        assertEquals(app1End(0), read);
+    }
+
+    @Test
+    void closesEarlyWhenServerIgnoresRange() throws Exception {
+        image = jpeg(0);
+        honorRange = false;
+        long before = Metrics.IMAGE_BYTES.get();
+
+        assertEquals(SHOT_DATE, reader().readShotDate(uri()));
+
+        // Volle 4 MiB angeboten, gelesen wird trotzdem nur bis zum Ende von APP1, und es bleibt bei einer Anfrage
+        assertEquals(1, ranges.size());
+        long read = Metrics.IMAGE_BYTES.get() - before;
+        assertTrue(read <= ExifDateReader.PREFIX_BYTES, "gelesen: " + read);
+        assertEquals(app1End(0), read);
+    }
+
+    @Test
+    void fallsBackToFullDownloadWhenHeaderExceedsPrefix() throws Exception {
+        // drei Kommentar-Segmente à ~64 KiB schieben APP1 hinter das 128-KiB-Präfix
+        image = jpeg(3);
+        honorRange = true;
+        long before = Metrics.IMAGE_BYTES.get();
+
+        assertEquals(SHOT_DATE, reader().readShotDate(uri()));
+
+        assertEquals(List.of("bytes=0-" + (ExifDateReader.PREFIX_BYTES - 1), ""), ranges);
+        long read = Metrics.IMAGE_BYTES.get() - before;
+        assertTrue(read > ExifDateReader.PREFIX_BYTES, "gelesen: " + read);
+    }
+
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void abortClosesStalledBody() {
+        // der Request-Timeout greift nur bis zu den Headern; den hängenden Body beendet erst abort()
+        URI stalled = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/stall.jpg");
+        DownloadHandle downloads = new DownloadHandle();
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        try {
+            timer.schedule(downloads::abort, 300, TimeUnit.MILLISECONDS);
+            assertThrows(IOException.class, () -> reader().readShotDate(stalled, downloads));
+            assertTrue(downloads.isAborted());
+            // nach dem Abbruch wird kein weiterer Body mehr gelesen
+            assertThrows(IOException.class, () -> reader().readShotDate(uri(), downloads));
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+
+    @Test
+    void returnsNullForJpegWithoutExif() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[] { (byte) 0xFF, (byte) 0xD8 });
+        writeScan(out, 1024);
+        image = out.toByteArray();
+        honorRange = true;
+
+        assertNull(reader().readShotDate(uri()));
+        assertEquals(1, ranges.size());
+    }
+
+    private static final int COMMENT_BYTES = 65_000;
+
+    /**
+     * Position direkt hinter dem APP1-Segment eines {@link #jpeg(int)}-Bildes.
+     */
+    private static long app1End(int comments) {
+        return 2 + (long) comments * (4 + COMMENT_BYTES) + 4 + exifPayload().length;
+    }
+
+    /**
+     * JPEG mit {@code comments} Kommentar-Segmenten, dann APP1 mit Aufnahmedatum, dann Bilddaten bis 4 MiB.
+     */
+    private static byte[] jpeg(int comments) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(IMAGE_BYTES);
+        out.write(new byte[] { (byte) 0xFF, (byte) 0xD8 });
+        for (int i = 0; i < comments; i++) {
+            writeSegment(out, 0xFE, new byte[COMMENT_BYTES]);
+        }
+        writeSegment(out, 0xE1, exifPayload());
+        writeScan(out, IMAGE_BYTES - out.size());
+        return out.toByteArray();
+    }
+
+    private static void writeSegment(ByteArrayOutputStream out, int marker, byte[] payload) {
+        int length = payload.length + 2;
+        out.write(0xFF);
+        out.write(marker);
+        out.write(length >>> 8);
+        out.write(length & 0xFF);
+        out.writeBytes(payload);
+    }
+
+    /**
+     * SOS-Segment, Füll-Bilddaten und EOI, zusammen {@code bytes} lang.
+     */
+    private static void writeScan(ByteArrayOutputStream out, int bytes) {
+        writeSegment(out, 0xDA, new byte[10]);
+        out.writeBytes(new byte[Math.max(0, bytes - 14 - 2)]);
+        out.write(0xFF);
+        out.write(0xD9);
+    }
+
+    private static byte[] exifPayload() {
+        return exifPayload("2024:03:15 12:00:00", null);
+    }
+
+    /**
+     * "Exif\0\0" plus minimales TIFF (big endian): IFD0 mit Verweis auf das Exif-IFD, darin DateTimeOriginal und
+     * optional OffsetTimeOriginal (z.B. "-05:00").
+     */
+    private static byte[] exifPayload(String dateTime, String offset) {
+        byte[] date = (dateTime + "\0").getBytes(StandardCharsets.US_ASCII);
+        byte[] zone = offset == null ? new byte[0] : (offset + "\0").getBytes(StandardCharsets.US_ASCII);
+        int entries = offset == null ? 1 : 2;
+        int dataStart = 26 + 2 + 12 * entries + 4; // Offsets relativ zum TIFF-Anfang
+        ByteBuffer tiff = ByteBuffer.allocate(6 + dataStart + date.length + zone.length);
+        tiff.put("Exif\0\0".getBytes(StandardCharsets.US_ASCII));
+        tiff.put(new byte[] { 'M', 'M', 0, 42 }).putInt(8);
+        // IFD0 (Offset 8): ExifIFDPointer -> 26
+        tiff.putShort((short) 1).putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(26).putInt(0);
+        // Exif-IFD (Offset 26): DateTimeOriginal, ggf. OffsetTimeOriginal, beide ASCII hinter dem IFD
+        tiff.putShort((short) entries);
+        tiff.putShort((short) 0x9003).putShort((short) 2).putInt(date.length).putInt(dataStart);
+        if (offset != null) {
+            tiff.putShort((short) 0x9011).putShort((short) 2).putInt(zone.length).putInt(dataStart + date.length);
+        }
+        tiff.putInt(0);
+        tiff.put(date).put(zone);
+        return tiff.array();
+    }
+
+    @Test
+    void shotDateIsTheCameraDateWhateverTheHostZone() {
+        TimeZone host = TimeZone.getDefault();
+        try {
+            // Host weit östlich bzw. westlich von UTC: 23:30 bzw. 00:30 Kamerazeit darf den Tag nicht verschieben
+            for (String zone : new String[] { "Pacific/Kiritimati", "Pacific/Pago_Pago", "UTC" }) {
+                TimeZone.setDefault(TimeZone.getTimeZone(zone));
+                assertEquals(SHOT_DATE, ExifDateReader.parseExif(exifPayload("2024:03:15 23:30:00", null)), zone);
+                assertEquals(SHOT_DATE, ExifDateReader.parseExif(exifPayload("2024:03:15 00:30:00", null)), zone);
+                // mit notiertem Offset bleibt es ebenfalls beim Datum auf der Kamera
+                assertEquals(SHOT_DATE, ExifDateReader.parseExif(exifPayload("2024:03:15 23:30:00", "-05:00")), zone);
+                assertEquals(SHOT_DATE, ExifDateReader.parseExif(exifPayload("2024:03:15 00:30:00", "+09:00")), zone);
+            }
+        } finally {
+            TimeZone.setDefault(host);
+        }
+    }
+}
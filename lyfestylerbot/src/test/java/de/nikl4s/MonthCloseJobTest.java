@@ -0,0 +1,148 @@
+package de.nikl4s;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * {@link MonthCloseJob#closeAll}: Abschlüsse werden genau einmal gepostet, auch wenn der Shard dazwischen
+ * ausgelagert bzw. der Bot neu gestartet wurde oder das Posten scheiterte.
+ */
+class MonthCloseJobTest {
+    private static final long GUILD = 7;
+    private static final YearMonth MARCH = YearMonth.of(2024, 3);
+    private static final YearMonth APRIL = YearMonth.of(2024, 4);
+    private static final ZoneId ZONE = ZoneId.of("Europe/Berlin");
+    private static final Clock CLOCK = Clock.fixed(ZonedDateTime.of(MARCH.atDay(15), LocalTime.NOON, ZONE).toInstant(), ZONE);
+
+    @TempDir
+    Path dataDir;
+
+    /** Merkt sich, was gepostet wurde; {@code succeed} steuert, ob das Posten gelingt. */
+    private static final class RecordingPoster implements MonthCloseJob.Poster {
+        final List<YearMonth> posted = new ArrayList<>();
+        final List<String> archivedTexts = new ArrayList<>();
+        boolean succeed = true;
+
+        @Override
+        public boolean post(long guildId, List<PeriodClose> closes) {
+            closes.forEach(c -> posted.add(c.month));
+            return succeed;
+        }
+
+        @Override
+        public boolean postArchived(long guildId, YearMonth month, String text) {
+            posted.add(month);
+            archivedTexts.add(text);
+            return succeed;
+        }
+    }
+
+    private Path closesDir() {
+        return dataDir.resolve("guilds").resolve(Long.toString(GUILD)).resolve("closes");
+    }
+
+    /**
+     * Check-in im März, dann einer im April: Der Wechsel (und damit der März-Abschluss) passiert durch den Check-in.
+     */
+    private static void checkInAcrossMonthEnd(GuildShards shards) {
+        try (GuildShards.Lease lease = shards.acquire(GUILD)) {
+            lease.points().handleGym("100", "Anna", MARCH.atDay(20));
+            lease.points().handleGym("100", "Anna", LocalDate.of(2024, 4, 1));
+        }
+    }
+
+    @Test
+    void closeTriggeredByCheckInSurvivesRestart() throws Exception {
+        GuildShards shards = new GuildShards(dataDir, CLOCK);
+        checkInAcrossMonthEnd(shards);
+        shards.close(); // Neustart, bevor der Job lief
+
+        assertTrue(Files.exists(closesDir().resolve(MARCH + PeriodClose.UNPOSTED_SUFFIX)));
+        shards = new GuildShards(dataDir, CLOCK);
+        RecordingPoster poster = new RecordingPoster();
+        MonthCloseJob.closeAll(shards, APRIL, poster);
+        assertEquals(List.of(MARCH), poster.posted);
+        assertTrue(poster.archivedTexts.get(0).contains("Gewinner " + MARCH + ": Anna"));
+        assertFalse(Files.exists(closesDir().resolve(MARCH + PeriodClose.UNPOSTED_SUFFIX)));
+
+        RecordingPoster again = new RecordingPoster();
+        MonthCloseJob.closeAll(shards, APRIL, again);
+        assertEquals(List.of(), again.posted);
+        shards.close();
+    }
+
+    @Test
+    void closeIsArchivedBeforeTheCheckInReturns() throws Exception {
+        // Ein Absturz direkt nach dem auslösenden Check-in darf den Abschluss nicht verlieren: Die Wiederherstellung
+        // erzeugt ihn nicht neu, also muss er schon in der Ablage liegen
+        GuildShards shards = new GuildShards(dataDir, CLOCK);
+        checkInAcrossMonthEnd(shards);
+        assertTrue(Files.exists(closesDir().resolve(MARCH + ".txt")));
+        assertTrue(Files.exists(closesDir().resolve(MARCH + PeriodClose.UNPOSTED_SUFFIX)));
+        shards.close();
+    }
+
+    @Test
+    void postedCloseLeavesNoMarker() throws Exception {
+        GuildShards shards = new GuildShards(dataDir, CLOCK);
+        checkInAcrossMonthEnd(shards);
+        RecordingPoster poster = new RecordingPoster();
+        MonthCloseJob.closeAll(shards, APRIL, poster);
+        assertEquals(List.of(MARCH), poster.posted);
+        assertTrue(poster.archivedTexts.isEmpty());
+        shards.close();
+
+        assertTrue(Files.exists(closesDir().resolve(MARCH + ".txt")));
+        assertFalse(Files.exists(closesDir().resolve(MARCH + PeriodClose.UNPOSTED_SUFFIX)));
+        shards = new GuildShards(dataDir, CLOCK);
+        RecordingPoster again = new RecordingPoster();
+        MonthCloseJob.closeAll(shards, APRIL, again);
+        assertEquals(List.of(), again.posted);
+        shards.close();
+    }
+
+    @Test
+    void failedPostIsRetriedFromArchive() throws Exception {
+        GuildShards shards = new GuildShards(dataDir, CLOCK);
+        checkInAcrossMonthEnd(shards);
+        RecordingPoster failing = new RecordingPoster();
+        failing.succeed = false;
+        MonthCloseJob.closeAll(shards, APRIL, failing);
+        assertEquals(List.of(MARCH), failing.posted);
+        shards.close();
+
+        shards = new GuildShards(dataDir, CLOCK);
+        RecordingPoster poster = new RecordingPoster();
+        MonthCloseJob.closeAll(shards, APRIL, poster);
+        assertEquals(List.of(MARCH), poster.posted);
+        assertEquals(1, poster.archivedTexts.size());
+        shards.close();
+    }
+
+    @Test
+    void archiveWithoutMarkerCountsAsPosted() throws Exception {
+        // Ablage aus der Zeit vor den Marken
+        Files.createDirectories(closesDir());
+        Files.writeString(closesDir().resolve("2023-12.txt"), "alter Abschluss");
+        GuildShards shards = new GuildShards(dataDir, CLOCK);
+        RecordingPoster poster = new RecordingPoster();
+        MonthCloseJob.closeAll(shards, MARCH, poster);
+        assertEquals(List.of(), poster.posted);
+        shards.close();
+    }
+}
@@ -0,0 +1,205 @@
+package de.nikl4s;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * {@link OutboundQueue} gegen eine Test-{@link OutboundQueue.Sink}: Teilen langer Texte, Bündeln innerhalb des
+ * Fensters bis zur 2000-Zeichen-Grenze, erneutes Senden nach einem 429 und die Reihenfolge je Kanal.
+ */
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class OutboundQueueTest {
+    private static final long CHANNEL = 1;
+    /** Bucket nie leer, damit nur das Bündeln und die Antworten der Sink den Ablauf bestimmen. */
+    private static final OutboundQueue.SendResult OPEN = new OutboundQueue.SendResult(OutboundQueue.BUCKET_SIZE, 0, 0);
+
+    private final List<OutboundQueue> queues = new ArrayList<>();
+
+    /** Merkt sich jede gesendete Nachricht als "Kanal:Inhalt" in Sendereihenfolge. */
+    private static final class RecordingSink implements OutboundQueue.Sink {
+        final List<String> sent = new CopyOnWriteArrayList<>();
+
+        @Override
+        public CompletableFuture<OutboundQueue.SendResult> send(long channelId, String content) {
+            sent.add(channelId + ":" + content);
+            return CompletableFuture.completedFuture(OPEN);
+        }
+    }
+
+    private OutboundQueue queue(OutboundQueue.Sink sink) {
+        OutboundQueue queue = new OutboundQueue(sink);
+        queues.add(queue);
+        return queue;
+    }
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        for (OutboundQueue queue : queues) {
+            queue.shutdown(0);
+        }
+    }
+
+    private static void awaitSize(List<?> list, int size) throws InterruptedException {
+        while (list.size() < size) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static String repeat(char c, int n) {
+        char[] chars = new char[n];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    @Test
+    void splitPrefersLineBreaksAndCutsOnlyOverlongLines() {
+        assertEquals(List.of("kurz"), OutboundQueue.split("kurz"));
+
+        String line = repeat('a', 1500);
+        // zwei Zeilen passen nicht in eine Nachricht: Teilung am Umbruch, der Umbruch selbst fällt weg
+        assertEquals(List.of(line, line), OutboundQueue.split(line + "\n" + line));
+
+        String overlong = repeat('b', 4500);
+        List<String> parts = OutboundQueue.split(overlong);
+        assertEquals(List.of(repeat('b', 2000), repeat('b', 2000), repeat('b', 500)), parts);
+
+        // Ranking-ähnlicher Text: jedes Stück hält das Limit, keine Zeile geht verloren oder wird zerschnitten
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            lines.add(i + 1 + ". Nutzer " + i + ": " + (1000 - i) + " Punkte");
+        }
+        List<String> rankParts = OutboundQueue.split(String.join("\n", lines));
+        assertTrue(rankParts.size() > 1);
+        List<String> rejoined = new ArrayList<>();
+        for (String part : rankParts) {
+            assertTrue(part.length() <= OutboundQueue.MAX_MESSAGE_LENGTH, "Länge " + part.length());
+            rejoined.addAll(List.of(part.split("\n")));
+        }
+        assertEquals(lines, rejoined);
+    }
+
+    @Test
+    void coalescesWithinTheWindow() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        OutboundQueue queue = queue(sink);
+        queue.send(CHANNEL, "a");
+        queue.send(CHANNEL, "b");
+        queue.send(CHANNEL, "c");
+        awaitSize(sink.sent, 1);
+        Thread.sleep(OutboundQueue.COALESCE_MILLIS);
+        assertEquals(List.of(CHANNEL + ":a\nb\nc"), sink.sent);
+
+        // nach dem Versand beginnt ein neues Fenster
+        queue.send(CHANNEL, "d");
+        awaitSize(sink.sent, 2);
+        assertEquals(List.of(CHANNEL + ":a\nb\nc", CHANNEL + ":d"), sink.sent);
+    }
+
+    @Test
+    void mergesUpToExactlyTheMessageLimit() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        OutboundQueue queue = queue(sink);
+        String first = repeat('x', 1000);
+        String fits = repeat('y', 999);   // 1000 + Umbruch + 999 = 2000
+        String tooLong = repeat('z', 1000);
+        queue.send(CHANNEL, first);
+        queue.send(CHANNEL, fits);
+        queue.send(CHANNEL, tooLong);
+        awaitSize(sink.sent, 2);
+        assertEquals(List.of(CHANNEL + ":" + first + "\n" + fits, CHANNEL + ":" + tooLong), sink.sent);
+        assertEquals(OutboundQueue.MAX_MESSAGE_LENGTH + 2, sink.sent.get(0).length()); // "1:" vorangestellt
+    }
+
+    @Test
+    void requeuesRejectedMessageInFrontAfterRateLimit() throws Exception {
+        List<String> sent = new CopyOnWriteArrayList<>();
+        AtomicInteger calls = new AtomicInteger();
+        OutboundQueue[] holder = new OutboundQueue[1];
+        OutboundQueue queue = queue((channelId, content) -> {
+            sent.add(content);
+            if (calls.incrementAndGet() == 1) {
+                // während des 429 fällt die nächste Nachricht an; sie darf die abgewiesene nicht überholen
+                holder[0].send(CHANNEL, "b");
+                return CompletableFuture.completedFuture(new OutboundQueue.SendResult(0, -1, 50));
+            }
+            return CompletableFuture.completedFuture(OPEN);
+        });
+        holder[0] = queue;
+        long start = System.nanoTime();
+        queue.send(CHANNEL, "a");
+        awaitSize(sent, 2);
+        assertEquals(List.of("a", "a\nb"), sent);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= OutboundQueue.COALESCE_MILLIS + 50);
+    }
+
+    @Test
+    void keepsOrderAndOneMessageInFlightPerChannel() throws Exception {
+        int channels = 3;
+        int perChannel = 200;
+        ScheduledExecutorService network = Executors.newScheduledThreadPool(4);
+        Map<Long, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+        Map<Long, List<String>> received = new ConcurrentHashMap<>();
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicInteger lines = new AtomicInteger();
+        try {
+            OutboundQueue queue = queue((channelId, content) -> {
+                if (inFlight.computeIfAbsent(channelId, id -> new AtomicInteger()).incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                CompletableFuture<OutboundQueue.SendResult> done = new CompletableFuture<>();
+                // Antworten kommen unterschiedlich schnell, teils mit 429
+                long delay = ThreadLocalRandom.current().nextLong(5);
+                boolean reject = ThreadLocalRandom.current().nextInt(10) == 0;
+                network.schedule(() -> {
+                    if (!reject) {
+                        List<String> parts = List.of(content.split("\n"));
+                        received.computeIfAbsent(channelId, id -> Collections.synchronizedList(new ArrayList<>())).addAll(parts);
+                        lines.addAndGet(parts.size());
+                    }
+                    inFlight.get(channelId).decrementAndGet();
+                    done.complete(reject ? new OutboundQueue.SendResult(0, -1, 5) : OPEN);
+                }, delay, TimeUnit.MILLISECONDS);
+                return done;
+            });
+            for (int i = 0; i < perChannel; i++) {
+                for (long c = 0; c < channels; c++) {
+                    queue.send(c, "k" + c + "-" + i);
+                }
+                if (i % 20 == 19) {
+                    Thread.sleep(OutboundQueue.COALESCE_MILLIS / 3);
+                }
+            }
+            while (lines.get() < channels * perChannel) {
+                Thread.sleep(5);
+            }
+        } finally {
+            network.shutdownNow();
+        }
+        assertEquals(0, overlaps.get(), "gleichzeitig unterwegs");
+        for (long c = 0; c < channels; c++) {
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < perChannel; i++) {
+                expected.add("k" + c + "-" + i);
+            }
+            assertEquals(expected, received.get(c), "Kanal " + c);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package de.nikl4s;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Lässt mehrere Threads gleichzeitig Gym-Check-ins, Wake-Ups und Punktkorrekturen auf gemeinsame und eigene Nutzer
+ * absetzen und prüft danach exakt: Punkte, Jahrespunkte, Streaks, Wake-Reihenfolge, Rangliste, Historie und den aus
+ * Snapshot und Journal wiederhergestellten Stand.
+ *
+ * Die Tage laufen in Phasen (Barriere je Tag), damit jeder Nutzer seine Tage in Reihenfolge sieht; innerhalb eines
+ * Tages ist die Reihenfolge der Threads beliebig.
+ */
+class PointsManagerConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int OWN_USERS = 50;    // je Thread, nur von diesem Thread benutzt
+    private static final int SHARED_USERS = 20; // von allen Threads gleichzeitig benutzt, zugleich Wake-Spieler
+    private static final int DAYS = 20;
+    private static final int GYM_POINTS = 10;
+    private static final YearMonth MONTH = YearMonth.of(2024, 3);
+    private static final ZoneId ZONE = ZoneId.of("Europe/Berlin");
+
+    @TempDir
+    Path dir;
+
+    private static String ownId(int thread, int i) {
+        return Long.toString(1_000_000L + thread * 1_000L + i);
+    }
+
+    private static String sharedId(int j) {
+        return Long.toString(9_000_000L + j);
+    }
+
+    private static String name(String id) {
+        return "Nutzer " + id;
+    }
+
+    @Test
+    @Timeout(value = 120, unit = TimeUnit.SECONDS)
+    void concurrentCheckInsEndInExactState() throws Exception {
+        Clock clock = Clock.fixed(ZonedDateTime.of(MONTH.atDay(DAYS), LocalTime.NOON, ZONE).toInstant(), ZONE);
+        PointsManager points = new PointsManager(GYM_POINTS, clock);
+        points.attachStore(StateStore.open(dir.resolve("state")));
+        HistoryLog history = HistoryLog.open(dir.resolve("history"));
+        points.attachHistory(history);
+        List<String> shared = new ArrayList<>();
+        for (int j = 0; j < SHARED_USERS; j++) {
+            shared.add(sharedId(j));
+        }
+        points.setWakePlayers(shared);
+
+        AtomicIntegerArray gymAccepted = new AtomicIntegerArray(SHARED_USERS * DAYS);
+        AtomicIntegerArray wakePositions = new AtomicIntegerArray(SHARED_USERS * DAYS); // Nutzer je Platz, +1
+        AtomicIntegerArray wakeFirst = new AtomicIntegerArray(DAYS);                    // erster Nutzer, +1
+        AtomicIntegerArray wakeLast = new AtomicIntegerArray(DAYS);
+        int[][] ownExpected = new int[THREADS][OWN_USERS];
+        CyclicBarrier dayDone = new CyclicBarrier(THREADS);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        // Leser fragt währenddessen Plätze ab: ein einmal gewerteter Nutzer verliert seinen Platz nie (kein Remove)
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger readerErrors = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            boolean[] ranked = new boolean[SHARED_USERS];
+            while (writing.get()) {
+                for (int j = 0; j < SHARED_USERS; j++) {
+                    int rank = points.getRankOf(sharedId(j));
+                    if (ranked[j] && rank == 0) {
+                        readerErrors.incrementAndGet();
+                    }
+                    ranked[j] |= rank > 0;
+                }
+            }
+        }, "rank-reader");
+        reader.start();
+        List<Callable<Void>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            workers.add(() -> {
+                Random random = new Random(thread);
+                List<Integer> order = new ArrayList<>();
+                for (int j = 0; j < SHARED_USERS; j++) {
+                    order.add(j);
+                }
+                for (int d = 0; d < DAYS; d++) {
+                    LocalDate day = MONTH.atDay(d + 1);
+                    Collections.shuffle(order, random);
+                    for (int j : order) {
+                        String id = sharedId(j);
+                        if (points.handleGym(id, name(id), day).accepted) {
+                            gymAccepted.incrementAndGet(j * DAYS + d);
+                        }
+                        PointsManager.WakeResult wake = points.handleAwake(id, name(id), day, LocalTime.of(6, j));
+                        if (wake.accepted) {
+                            wakePositions.set(d * SHARED_USERS + wake.position - 1, j + 1);
+                            if (wake.isFirst) {
+                                wakeFirst.set(d, j + 1);
+                            }
+                            if (wake.isLast) {
+                                wakeLast.incrementAndGet(d);
+                            }
+                        }
+                    }
+                    for (int i = 0; i < OWN_USERS; i++) {
+                        String id = ownId(thread, i);
+                        ownExpected[thread][i] += GYM_POINTS;
+                        assertEquals(ownExpected[thread][i], points.handleGym(id, name(id), day).totalPoints);
+                        if (d % 5 == 4) {
+                            ownExpected[thread][i] += 3 + i % 7;
+                            points.setPoints(id, name(id), ownExpected[thread][i]);
+                        }
+                    }
+                    dayDone.await();
+                }
+                // Alle setzen gleichzeitig dieselben Endstände der gemeinsamen Nutzer
+                Collections.shuffle(order, random);
+                for (int j : order) {
+                    String id = sharedId(j);
+                    points.setPoints(id, name(id), 500 + j);
+                }
+                return null;
+            });
+        }
+        for (Future<Void> f : pool.invokeAll(workers)) {
+            f.get();
+        }
+        pool.shutdown();
+        writing.set(false);
+        reader.join();
+        assertEquals(0, readerErrors.get(), "Plätze, die zwischendurch verschwanden");
+
+        // Jeder gemeinsame Nutzer genau ein Gym-Check-in pro Tag, jeder Wake-Platz genau einmal vergeben
+        for (int k = 0; k < SHARED_USERS * DAYS; k++) {
+            assertEquals(1, gymAccepted.get(k), "Gym-Check-ins von Nutzer/Tag " + k);
+        }
+        for (int d = 0; d < DAYS; d++) {
+            boolean[] seen = new boolean[SHARED_USERS];
+            for (int p = 0; p < SHARED_USERS; p++) {
+                int j = wakePositions.get(d * SHARED_USERS + p) - 1;
+                assertEquals(false, j < 0 || seen[j], "Tag " + (d + 1) + " Platz " + (p + 1));
+                seen[j] = true;
+            }
+            assertEquals(wakePositions.get(d * SHARED_USERS), wakeFirst.get(d), "Erster an Tag " + (d + 1));
+            assertEquals(1, wakeLast.get(d), "Letzter an Tag " + (d + 1));
+        }
+
+        // Erwarteter Endstand
+        Map<String, int[]> expected = new HashMap<>(); // {Punkte, Jahrespunkte, Streak, Best, WakeFirst, WakeFirstBest}
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 0; i < OWN_USERS; i++) {
+                expected.put(ownId(t, i), new int[] { ownExpected[t][i], DAYS * GYM_POINTS, DAYS, DAYS, 0, 0 });
+            }
+        }
+        int[] lastFirstDay = new int[SHARED_USERS];
+        int[] firstStreak = new int[SHARED_USERS];
+        int[] firstBest = new int[SHARED_USERS];
+        for (int d = 0; d < DAYS; d++) {
+            int j = wakeFirst.get(d) - 1;
+            firstStreak[j] = lastFirstDay[j] == d ? firstStreak[j] + 1 : 1; // lastFirstDay ist 1-basiert
+            firstBest[j] = Math.max(firstBest[j], firstStreak[j]);
+            lastFirstDay[j] = d + 1;
+        }
+        for (int j = 0; j < SHARED_USERS; j++) {
+            expected.put(sharedId(j), new int[] { 500 + j, DAYS * GYM_POINTS, DAYS, DAYS, firstStreak[j], firstBest[j] });
+        }
+
+        List<UserStats.Snapshot> ranking = points.getTopRanking(Integer.MAX_VALUE);
+        assertState(expected, ranking);
+        assertEquals(expectedOrder(expected), ranking.stream().map(s -> s.userId).toList());
+        List<String> order = expectedOrder(expected);
+        for (int i = 0; i < order.size(); i++) {
+            assertEquals(i + 1, points.getRankOf(order.get(i)), "Platz von " + order.get(i));
+        }
+
+        // Historie: jede Punktänderung genau einmal, Summe je Nutzer = Endstand
+        Map<Long, Integer> historyPoints = history.pointsByUser(MONTH);
+        assertEquals(expected.size(), historyPoints.size());
+        for (Map.Entry<String, int[]> e : expected.entrySet()) {
+            assertEquals(e.getValue()[0], historyPoints.get(Long.parseLong(e.getKey())), "Historie " + e.getKey());
+        }
+        HistoryLog.Month events = history.month(MONTH);
+        int gyms = 0;
+        int wakes = 0;
+        for (int i = 0; i < events.size(); i++) {
+            gyms += events.type(i) == HistoryLog.EVENT_GYM ? 1 : 0;
+            wakes += events.type(i) == HistoryLog.EVENT_AWAKE ? 1 : 0;
+        }
+        assertEquals((THREADS * OWN_USERS + SHARED_USERS) * DAYS, gyms);
+        assertEquals(SHARED_USERS * DAYS, wakes);
+
+        // Wiederherstellung aus Snapshot und Journal ergibt denselben Stand
+        points.detachStore();
+        PointsManager restored = new PointsManager(GYM_POINTS, clock);
+        restored.attachStore(StateStore.open(dir.resolve("state")));
+        List<UserStats.Snapshot> restoredRanking = restored.getTopRanking(Integer.MAX_VALUE);
+        assertState(expected, restoredRanking);
+        assertEquals(expectedOrder(expected), restoredRanking.stream().map(s -> s.userId).toList());
+        restored.detachStore();
+    }
+
+    private static void assertState(Map<String, int[]> expected, List<UserStats.Snapshot> ranking) {
+        assertEquals(expected.size(), ranking.size());
+        for (UserStats.Snapshot s : ranking) {
+            int[] e = expected.get(s.userId);
+            String who = "Nutzer " + s.userId;
+            assertEquals(e[0], s.points, who + " Punkte");
+            assertEquals(e[1], s.yearPoints, who + " Jahrespunkte");
+            assertEquals(e[2], s.currentStreak, who + " Streak");
+            assertEquals(e[3], s.bestStreak, who + " Best-Streak");
+            assertEquals(e[4], s.wakeFirstCurrentStreak, who + " Frühster-Vogel-Streak");
+            assertEquals(e[5], s.wakeFirstBestStreak, who + " Frühster-Vogel-Best");
+        }
+    }
+
+    /**
+     * Ranglisten-Reihenfolge wie im {@link RankIndex}: Punkte (desc), Best-Streak (desc), Name (asc), ID (asc).
+     */
+    private static List<String> expectedOrder(Map<String, int[]> expected) {
+        return expected.keySet().stream()
+                .sorted(Comparator.<String>comparingInt(id -> -expected.get(id)[0])
+                        .thenComparingInt(id -> -expected.get(id)[3])
+                        .thenComparing(PointsManagerConcurrencyTest::name)
+                        .thenComparing(Comparator.naturalOrder()))
+                .toList();
+    }
+}
@@ -0,0 +1,110 @@
+package de.nikl4s;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * {@link Settlement} und {@link SettlementLedger}: Die Auszahlungen ergeben exakt den Topf, der Topf besteht genau
+ * aus den gebuchten Einsätzen, und die Kontostände aller Nutzer summieren sich auch nach dem Wiederöffnen zu 0.
+ */
+class SettlementLedgerTest {
+    private static final YearMonth MARCH = YearMonth.of(2024, 3);
+    private static final ZoneId ZONE = ZoneId.of("Europe/Berlin");
+    // größte Discord-ID liegt oberhalb von Long.MAX_VALUE
+    private static final List<String> USERS = List.of("100", "200", "18446744073709551615", "300", "400");
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Rangliste mit {@code ranked} Nutzern; Nutzer i hat i+1 Check-ins, die Reihenfolge ist also eindeutig.
+     */
+    private static List<UserStats.Snapshot> ranking(int ranked) {
+        Clock clock = Clock.fixed(ZonedDateTime.of(MARCH.atEndOfMonth(), LocalTime.NOON, ZONE).toInstant(), ZONE);
+        PointsManager points = new PointsManager(10, clock);
+        for (int i = 0; i < ranked; i++) {
+            for (int d = 1; d <= i + 1; d++) {
+                points.handleGym(USERS.get(i), "Nutzer " + i, MARCH.atDay(d));
+            }
+        }
+        return points.getTopRanking(Integer.MAX_VALUE);
+    }
+
+    private static long balanceSum(SettlementLedger ledger) {
+        long sum = 0;
+        for (String id : USERS) {
+            sum += ledger.account(Long.parseUnsignedLong(id)).balanceCents();
+        }
+        return sum;
+    }
+
+    @Test
+    void potOnlyContainsStakesOfThePlacesPaidOut() {
+        // 10 eingestellte Spieler, aber nur 4 in der Rangliste: Topf aus 4 Einsätzen
+        Settlement settlement = Settlement.of(MARCH, ranking(4), 10, 333, Settlement.LINEAR);
+        assertEquals(4, settlement.size());
+        assertEquals(4, settlement.participants);
+        assertEquals(4 * 333, settlement.potCents);
+        long sum = 0;
+        for (int i = 0; i < settlement.size(); i++) {
+            sum += settlement.payoutAt(i);
+        }
+        assertEquals(settlement.potCents, sum);
+        assertTrue(settlement.message().contains("bei 4 Spielern"), settlement.message());
+    }
+
+    @Test
+    void balancesSumToZeroForEveryWeighting() throws Exception {
+        Settlement.Weighting[] weightings = { Settlement.LINEAR, Settlement.TOP_HEAVY, Settlement.topK(3) };
+        int[] playerCounts = { 5, 10, 3 };
+        int[] stakes = { 333, 1000, 7 };
+        Path file = dir.resolve("settlements.ldg");
+        try (SettlementLedger ledger = SettlementLedger.open(file)) {
+            for (int m = 0; m < weightings.length; m++) {
+                Settlement settlement = Settlement.of(MARCH.plusMonths(m), ranking(USERS.size() - m), playerCounts[m],
+                        stakes[m], weightings[m]);
+                assertTrue(ledger.append(settlement));
+                assertEquals(0, balanceSum(ledger), "nach " + settlement.month);
+            }
+            // derselbe Monat wird nicht ein zweites Mal gebucht
+            assertFalse(ledger.append(Settlement.of(MARCH, ranking(5), 5, 333, Settlement.LINEAR)));
+        }
+
+        try (SettlementLedger reopened = SettlementLedger.open(file)) {
+            assertEquals(0, balanceSum(reopened));
+            long payouts = 0;
+            long stakesBooked = 0;
+            for (String id : USERS) {
+                SettlementLedger.Account account = reopened.account(Long.parseUnsignedLong(id));
+                payouts += account.payoutsCents;
+                stakesBooked += account.stakesCents;
+            }
+            assertEquals(5L * 333 + 4L * 1000 + 3L * 7, stakesBooked);
+            assertEquals(stakesBooked, payouts);
+            // die ID oberhalb von Long.MAX_VALUE ist in allen drei Monaten dabei
+            assertEquals(3, reopened.account(Long.parseUnsignedLong("18446744073709551615")).months);
+        }
+    }
+
+    @Test
+    void tooFewPlayersBooksNothing() throws Exception {
+        Settlement settlement = Settlement.of(MARCH, ranking(1), 10, 500, Settlement.LINEAR);
+        assertFalse(settlement.isDistributed());
+        try (SettlementLedger ledger = SettlementLedger.open(dir.resolve("settlements.ldg"))) {
+            assertFalse(ledger.append(settlement));
+            assertEquals(0, ledger.size());
+        }
+    }
+}
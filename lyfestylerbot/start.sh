@@ -0,0 +1,23 @@
+#!/bin/sh
+# Startet den Bot aus dem Shade-Jar mit AppCDS (Class-Data-Sharing für die eigenen und JDA-Klassen).
+#
+# Erster Start nach jedem Build: die JVM schreibt beim Beenden ein Archiv der geladenen Klassen
+# (-XX:ArchiveClassesAtExit). Danach wird es mit -XX:SharedArchiveFile eingebunden; passt es nicht
+# mehr zum Jar, ignoriert die JVM es (-Xshare:auto) und das Skript legt beim nächsten Mal ein neues an.
+#
+#   mvn package && ./start.sh
+#
+# Die Startzeit bis zum ersten bearbeiteten Event steht im Log ("[Startup] Erstes Event ...") und
+# als lyfe_startup_seconds unter /metrics.
+set -e
+cd "$(dirname "$0")"
+
+JAR="$(ls target/lyfestylerbot-*.jar | grep -v original- | head -n 1)"
+JSA="target/lyfestylerbot.jsa"
+
+if [ ! -f "$JSA" ] || [ "$JAR" -nt "$JSA" ]; then
+    rm -f "$JSA"
+    echo "Kein passendes CDS-Archiv, wird beim Beenden nach $JSA geschrieben."
+    exec java -XX:ArchiveClassesAtExit="$JSA" -jar "$JAR" "$@"
+fi
+exec java -XX:SharedArchiveFile="$JSA" -Xshare:auto -jar "$JAR" "$@"